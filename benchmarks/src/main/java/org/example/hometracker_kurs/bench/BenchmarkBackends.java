@@ -0,0 +1,140 @@
+package org.example.hometracker_kurs.bench;
+
+import org.example.hometracker_kurs.dao.DailyCapacity;
+import org.example.hometracker_kurs.dao.ExcelTaskDAO;
+import org.example.hometracker_kurs.dao.H2TaskDAO;
+import org.example.hometracker_kurs.dao.Households;
+import org.example.hometracker_kurs.dao.PostgresTaskDAO;
+import org.example.hometracker_kurs.dao.TaskDAO;
+import org.example.hometracker_kurs.model.Task;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Создание изолированных экземпляров DAO для бенчмарков.
+ * H2 работает в памяти, Excel — во временном файле, PostgreSQL — в базе,
+ * заданной системными свойствами {@code bench.pg.url}, {@code bench.pg.user}, {@code bench.pg.password},
+ * в отдельном домохозяйстве {@code bench-<имя набора>}, чтобы не затрагивать задачи пользователей.
+ * Синтетические наборы назначают на один день десятки задач, поэтому предел задач на день
+ * ({@link DailyCapacity}) снимается, если он не задан явно.
+ */
+public final class BenchmarkBackends {
+    public static final String PG_URL = "bench.pg.url";
+    public static final String PG_USER = "bench.pg.user";
+    public static final String PG_PASSWORD = "bench.pg.password";
+    public static final String HOUSEHOLD_PREFIX = "bench-";
+
+    private BenchmarkBackends() {
+    }
+
+    /**
+     * Открывает пустое хранилище указанного типа.
+     *
+     * @param backend тип хранилища ("h2", "excel", "postgres")
+     * @param name    имя набора данных, чтобы разные бенчмарки не делили одну базу
+     * @return DAO без задач
+     */
+    public static TaskDAO open(String backend, String name) throws SQLException, IOException {
+        liftDailyCapacity();
+        switch (backend) {
+            case "h2":
+                return new H2TaskDAO("jdbc:h2:mem:bench_" + name + "_" + System.nanoTime() + ";DB_CLOSE_DELAY=-1",
+                        "sa", "");
+            case "excel":
+                Path file = Files.createTempFile("bench_" + name + "_", ".xlsx");
+                Files.delete(file);
+                file.toFile().deleteOnExit();
+                return new ExcelTaskDAO(file.toString());
+            case "postgres":
+                TaskDAO dao = openPostgres(name);
+                clear(dao);
+                return dao;
+            default:
+                throw new IllegalArgumentException("Неизвестный тип хранилища: " + backend);
+        }
+    }
+
+    /**
+     * Открывает несколько DAO над одним и тем же пустым хранилищем — по одному на поток нагрузки.
+     * Для SQL-хранилищ каждый DAO держит собственное соединение; файл Excel нельзя открыть
+     * несколько раз, поэтому для него все элементы списка — один и тот же DAO.
+     *
+     * @param backend тип хранилища ("h2", "excel", "postgres")
+     * @param name    имя набора данных
+     * @param size    количество DAO
+     * @return список DAO длины {@code size}
+     */
+    public static List<TaskDAO> openPool(String backend, String name, int size) throws SQLException, IOException {
+        liftDailyCapacity();
+        List<TaskDAO> pool = new ArrayList<>(size);
+        if ("h2".equals(backend)) {
+            String url = "jdbc:h2:mem:bench_" + name + "_" + System.nanoTime() + ";DB_CLOSE_DELAY=-1";
+            for (int i = 0; i < size; i++) {
+                pool.add(new H2TaskDAO(url, "sa", ""));
+            }
+            return pool;
+        }
+
+        TaskDAO first = open(backend, name);
+        if ("excel".equals(backend)) {
+            return Collections.nCopies(size, first);
+        }
+        pool.add(first);
+        for (int i = 1; i < size; i++) {
+            pool.add(openPostgres(name));
+        }
+        return pool;
+    }
+
+    /**
+     * Возвращает домохозяйство, в котором бенчмарк с данным именем набора хранит задачи.
+     *
+     * @param name имя набора данных
+     * @return идентификатор вида {@code bench-<name>}
+     */
+    public static String household(String name) {
+        return Households.validate(HOUSEHOLD_PREFIX + name);
+    }
+
+    private static TaskDAO openPostgres(String name) {
+        String url = System.getProperty(PG_URL);
+        if (url == null || url.isBlank()) {
+            throw new IllegalStateException("PostgreSQL не настроен: укажите -D" + PG_URL
+                    + " (или исключите backend=postgres)");
+        }
+        return new PostgresTaskDAO(url,
+                System.getProperty(PG_USER, "postgres"),
+                System.getProperty(PG_PASSWORD, ""),
+                household(name));
+    }
+
+    /**
+     * Снимает предел задач на день для хранилищ, создаваемых после вызова, если свойство
+     * {@code hometracker.dailyCapacity} не задано в командной строке.
+     */
+    public static void liftDailyCapacity() {
+        if (System.getProperty(DailyCapacity.PROPERTY) == null) {
+            System.setProperty(DailyCapacity.PROPERTY, String.valueOf(Integer.MAX_VALUE));
+        }
+    }
+
+    /**
+     * Удаляет все задачи домохозяйства, к которому привязан DAO, одной транзакцией.
+     * Нужно для PostgreSQL, где база переживает запуск; задачи других домохозяйств не затрагиваются.
+     */
+    public static void clear(TaskDAO dao) throws SQLException {
+        dao.inTransaction(tx -> {
+            List<Task> existing = List.copyOf(tx.getAllTasks());
+            for (Task task : existing) {
+                tx.deleteTask(task.getId());
+            }
+            return null;
+        });
+    }
+}
@@ -0,0 +1,48 @@
+package org.example.hometracker_kurs.bench;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Точка входа benchmarks.jar.
+ * Принимает обычные аргументы JMH, по умолчанию сохраняет результаты в JSON
+ * ({@code jmh-result.json}) и передаёт настройки PostgreSQL в дочерние JVM.
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions cli = new CommandLineOptions(args);
+        ChainedOptionsBuilder builder = new OptionsBuilder().parent(cli);
+
+        if (!cli.getResultFormat().hasValue()) {
+            builder.resultFormat(ResultFormatType.JSON);
+        }
+        if (!cli.getResult().hasValue()) {
+            builder.result("jmh-result.json");
+        }
+
+        List<String> forwarded = new ArrayList<>();
+        for (String property : List.of(BenchmarkBackends.PG_URL, BenchmarkBackends.PG_USER, BenchmarkBackends.PG_PASSWORD)) {
+            String value = System.getProperty(property);
+            if (value != null) {
+                forwarded.add("-D" + property + "=" + value);
+            }
+        }
+        if (!forwarded.isEmpty()) {
+            builder.jvmArgsAppend(forwarded.toArray(new String[0]));
+        }
+
+        new Runner(builder.build()).run();
+    }
+}
@@ -0,0 +1,235 @@
+package org.example.hometracker_kurs.bench;
+
+import org.example.hometracker_kurs.dao.ExcelTaskDAO;
+import org.example.hometracker_kurs.dao.H2TaskDAO;
+import org.example.hometracker_kurs.dao.TaskDAO;
+import org.example.hometracker_kurs.model.Task;
+import org.example.hometracker_kurs.model.TaskStatus;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Генератор синтетических наборов домашних задач с реалистичными распределениями.
+ * Типы задач совпадают со списком из {@code MainController.initializeComboBoxes}, исполнители — с
+ * выпадающим списком формы. Сроки сосредоточены около текущей даты, а у задач в прошлом есть история:
+ * большинство выполнено (с датой выполнения около срока), часть просрочена.
+ *
+ * <p>Запуск из командной строки:
+ * <pre>
+ * java -cp benchmarks.jar org.example.hometracker_kurs.bench.DatasetGenerator backend=excel count=100000 file=household_tasks.xlsx
+ * java -cp benchmarks.jar org.example.hometracker_kurs.bench.DatasetGenerator backend=h2 count=100000 file=household_tasks
+ * </pre>
+ * Для H2 нужно указать {@code file=} (путь к базе без расширения {@code .mv.db}) или {@code url=} —
+ * база в памяти исчезла бы вместе с процессом генератора.
+ */
+public class DatasetGenerator {
+    static final String[] TYPES = {"Уборка", "Покупки", "Приготовление еды", "Сад и огород",
+            "Ремонт и обслуживание", "Финансы", "Здоровье", "Хобби и личное", "Прочее"};
+    private static final int[] TYPE_WEIGHTS = {28, 18, 17, 7, 6, 8, 6, 5, 5};
+
+    static final String[] ASSIGNEES = {"Мама", "Папа", "Ребенок", "Другое"};
+    private static final int[] ASSIGNEE_WEIGHTS = {42, 30, 20, 8};
+
+    private static final int[] PRIORITY_WEIGHTS = {10, 22, 38, 20, 10};
+
+    private static final Map<String, String[]> NAMES = Map.of(
+            "Уборка", new String[]{"Пропылесосить квартиру", "Помыть полы", "Протереть пыль", "Помыть окна", "Вынести мусор"},
+            "Покупки", new String[]{"Купить продукты", "Купить бытовую химию", "Заказать корм коту", "Купить подарок"},
+            "Приготовление еды", new String[]{"Приготовить ужин", "Сварить суп", "Испечь пирог", "Заготовить обеды"},
+            "Сад и огород", new String[]{"Полить цветы", "Подстричь газон", "Пересадить рассаду"},
+            "Ремонт и обслуживание", new String[]{"Поменять лампочку", "Починить кран", "Заменить фильтр воды"},
+            "Финансы", new String[]{"Оплатить коммунальные услуги", "Оплатить интернет", "Заполнить бюджет"},
+            "Здоровье", new String[]{"Записаться к врачу", "Купить лекарства", "Сходить на прививку"},
+            "Хобби и личное", new String[]{"Разобрать фотографии", "Погулять с собакой", "Позаниматься спортом"},
+            "Прочее", new String[]{"Забрать посылку", "Позвонить бабушке", "Сдать вещи в химчистку"}
+    );
+
+    private final Random random;
+    private final LocalDate today = LocalDate.now();
+    private boolean withHistory = true;
+    private int counter;
+
+    /**
+     * Создаёт генератор с фиксированным зерном, чтобы наборы были воспроизводимыми.
+     *
+     * @param seed зерно генератора случайных чисел
+     */
+    public DatasetGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Включает или отключает историю статусов.
+     * Без истории все задачи активные и со сроком в будущем — так удобнее для микробенчмарков.
+     *
+     * @param withHistory true, чтобы генерировать выполненные и просроченные задачи в прошлом
+     * @return этот генератор
+     */
+    public DatasetGenerator withHistory(boolean withHistory) {
+        this.withHistory = withHistory;
+        return this;
+    }
+
+    /**
+     * Генерирует следующую задачу.
+     *
+     * @return новая задача без идентификатора
+     */
+    public Task next() {
+        int index = counter++;
+        String type = TYPES[weighted(TYPE_WEIGHTS)];
+        String[] names = NAMES.get(type);
+        String name = names[random.nextInt(names.length)];
+
+        LocalDate dueDate = withHistory ? randomDueDate() : today.plusDays(1 + random.nextInt(365));
+        TaskStatus status = TaskStatus.ACTIVE;
+        LocalDate lastCompleted = null;
+
+        if (dueDate.isBefore(today)) {
+            // Прошлые задачи: ~80% выполнены вовремя или с небольшим опозданием, остальные просрочены
+            if (random.nextInt(100) < 80) {
+                status = TaskStatus.COMPLETED;
+                LocalDate completed = dueDate.plusDays(random.nextInt(4) - 2);
+                lastCompleted = completed.isAfter(today) ? today : completed;
+            } else {
+                status = TaskStatus.OVERDUE;
+            }
+        } else if (withHistory) {
+            int roll = random.nextInt(100);
+            if (roll < 8) {
+                status = TaskStatus.POSTPONED;
+            } else if (roll < 12) {
+                status = TaskStatus.COMPLETED;
+                lastCompleted = today;
+            } else if (roll < 14) {
+                status = TaskStatus.CANCELLED;
+            }
+        }
+
+        Task task = new Task(0,
+                name,
+                name + " (#" + index + ")",
+                dueDate,
+                1 + weighted(PRIORITY_WEIGHTS),
+                ASSIGNEES[weighted(ASSIGNEE_WEIGHTS)],
+                status,
+                lastCompleted);
+        task.setType(type);
+        return task;
+    }
+
+    /**
+     * Генерирует список задач.
+     *
+     * @param count количество задач
+     * @return список новых задач
+     */
+    public List<Task> generate(int count) {
+        List<Task> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(next());
+        }
+        return result;
+    }
+
+    /**
+     * Загружает задачи в хранилище пачками; каждая пачка — одна единица работы
+     * (одна транзакция в SQL, одно сохранение файла в Excel).
+     *
+     * @param dao       хранилище
+     * @param count     количество задач
+     * @param batchSize размер пачки
+     * @return идентификаторы добавленных задач
+     */
+    public int[] load(TaskDAO dao, int count, int batchSize) throws SQLException {
+        int[] ids = new int[count];
+        for (int start = 0; start < count; start += batchSize) {
+            int from = start;
+            int to = Math.min(count, start + batchSize);
+            dao.inTransaction(tx -> {
+                for (int i = from; i < to; i++) {
+                    Task task = next();
+                    TaskStatus status = task.getStatus();
+                    LocalDate lastCompleted = task.getLastCompleted();
+                    tx.addTask(task);
+                    // SQL-хранилища помечают прошлые задачи просроченными при вставке — возвращаем историю
+                    if (status == TaskStatus.COMPLETED && task.getStatus() != TaskStatus.COMPLETED) {
+                        task.setStatus(TaskStatus.COMPLETED);
+                        task.setLastCompleted(lastCompleted);
+                        tx.updateTask(task);
+                    }
+                    ids[i] = task.getId();
+                }
+                return null;
+            });
+        }
+        return ids;
+    }
+
+    private LocalDate randomDueDate() {
+        // Двусторонний экспоненциальный разброс вокруг сегодняшнего дня: 40% в прошлом, 60% в будущем
+        int days = (int) Math.min(365, Math.round(-Math.log(1 - random.nextDouble()) * 21));
+        return random.nextInt(100) < 40 ? today.minusDays(1 + days) : today.plusDays(days);
+    }
+
+    private int weighted(int[] weights) {
+        int total = 0;
+        for (int weight : weights) {
+            total += weight;
+        }
+        int roll = random.nextInt(total);
+        for (int i = 0; i < weights.length; i++) {
+            roll -= weights[i];
+            if (roll < 0) {
+                return i;
+            }
+        }
+        return weights.length - 1;
+    }
+
+    private static TaskDAO openTarget(String backend, Map<String, String> options) throws SQLException, IOException {
+        switch (backend) {
+            case "excel":
+                return options.containsKey("file")
+                        ? new ExcelTaskDAO(options.get("file"))
+                        : BenchmarkBackends.open(backend, "dataset");
+            case "h2":
+                String url = options.get("url");
+                if (url == null && options.containsKey("file")) {
+                    url = "jdbc:h2:file:" + Path.of(options.get("file")).toAbsolutePath();
+                }
+                if (url == null) {
+                    throw new IllegalArgumentException(
+                            "Для backend=h2 укажите file=<путь к базе> или url=<jdbc:h2:...>: база в памяти не переживёт запуск");
+                }
+                return new H2TaskDAO(url, options.getOrDefault("user", "sa"), options.getOrDefault("password", ""));
+            default:
+                return BenchmarkBackends.open(backend, "dataset");
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = LoadDriver.parseArgs(args);
+        String backend = options.getOrDefault("backend", "excel");
+        int count = Integer.parseInt(options.getOrDefault("count", "10000"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+
+        BenchmarkBackends.liftDailyCapacity();
+        TaskDAO dao = openTarget(backend, options);
+        try {
+            long start = System.nanoTime();
+            new DatasetGenerator(seed).load(dao, count, 5_000);
+            System.out.printf("Загружено %d задач в %s за %d мс%n",
+                    count, backend, (System.nanoTime() - start) / 1_000_000);
+        } finally {
+            dao.close();
+        }
+    }
+}
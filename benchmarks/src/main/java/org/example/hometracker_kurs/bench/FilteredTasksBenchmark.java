@@ -0,0 +1,60 @@
+package org.example.hometracker_kurs.bench;
+
+import org.example.hometracker_kurs.dao.TaskDAO;
+import org.example.hometracker_kurs.model.Task;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link TaskDAO#getFilteredTasks} для каждой комбинации фильтра и сортировки из интерфейса.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilteredTasksBenchmark {
+
+    @Param({"h2", "excel"})
+    public String backend;
+
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    @Param({"none", "type", "status", "keyword", "all"})
+    public String filter;
+
+    @Param({"default", "due_date", "priority", "assigned_to"})
+    public String sort;
+
+    private TaskDAO dao;
+    private String type;
+    private String status;
+    private String keyword;
+    private String sortField;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dao = BenchmarkBackends.open(backend, "filter");
+        new DatasetGenerator(42).withHistory(false).load(dao, size, 1_000);
+
+        boolean all = "all".equals(filter);
+        type = all || "type".equals(filter) ? "Уборка" : null;
+        status = all || "status".equals(filter) ? "Активные" : null;
+        keyword = all || "keyword".equals(filter) ? "пыль" : null;
+        sortField = "default".equals(sort) ? null : sort;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        dao.close();
+    }
+
+    @Benchmark
+    public List<Task> getFilteredTasks() throws Exception {
+        return dao.getFilteredTasks(type, status, keyword, sortField, true);
+    }
+}
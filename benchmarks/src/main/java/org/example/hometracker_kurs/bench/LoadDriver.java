@@ -0,0 +1,310 @@
+package org.example.hometracker_kurs.bench;
+
+import org.example.hometracker_kurs.dao.TaskDAO;
+import org.example.hometracker_kurs.dao.metrics.LatencyHistogram;
+import org.example.hometracker_kurs.model.Task;
+import org.example.hometracker_kurs.model.TaskStatus;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Нагрузочный драйвер: воспроизводит смесь операций, типичных для интерфейса
+ * (инкрементальное обновление таблицы, фильтрация, просмотр, добавление, редактирование,
+ * выполнение и удаление задач), с заданной частотой из нескольких потоков.
+ *
+ * <p>Нагрузка открытая: каждый поток выполняет операции по расписанию, и задержка считается
+ * от запланированного момента старта, а не от фактического. Если хранилище не успевает,
+ * время ожидания в очереди попадает в перцентили, а не теряется.
+ *
+ * <p>Запуск:
+ * <pre>
+ * java -cp benchmarks.jar org.example.hometracker_kurs.bench.LoadDriver backend=h2 threads=8 rate=400 duration=60
+ * </pre>
+ * Параметры: {@code backend} (h2, excel, postgres), {@code threads}, {@code rate} — операций в секунду
+ * суммарно, {@code duration} — секунд, {@code count} — размер начального набора, {@code seed},
+ * {@code mix} — веса операций, например {@code delta:40,filter:20,get:20,load:2,add:8,update:6,complete:3,delete:1}.
+ */
+public class LoadDriver {
+    private static final String DEFAULT_MIX = "delta:40,filter:20,get:20,load:2,add:8,update:6,complete:3,delete:1";
+    private static final String[] STATUS_FILTERS = {null, "Активные", "Выполненные", "Просроченные"};
+    private static final String[] KEYWORDS = {null, null, null, "пыль", "купить", "оплатить"};
+    private static final String[] SORT_FIELDS = {null, "due_date", "priority", "assigned_to"};
+
+    private final List<TaskDAO> daos;
+    private final int threads;
+    private final double rate;
+    private final long durationNanos;
+    private final long seed;
+    private final Map<String, Integer> mix;
+    private final Map<String, LatencyHistogram> latencies = new LinkedHashMap<>();
+    private final Map<String, LongAdder> errors = new LinkedHashMap<>();
+    private final IdPool ids;
+
+    /**
+     * Создаёт драйвер над уже заполненным хранилищем.
+     *
+     * @param daos     по одному DAO на поток (допускается один и тот же экземпляр)
+     * @param ids      идентификаторы существующих задач
+     * @param rate     суммарная частота операций в секунду
+     * @param duration длительность прогона в секундах
+     * @param mix      веса операций
+     * @param seed     зерно генератора
+     */
+    public LoadDriver(List<TaskDAO> daos, int[] ids, double rate, long duration, Map<String, Integer> mix, long seed) {
+        this.daos = daos;
+        this.threads = daos.size();
+        this.rate = rate;
+        this.durationNanos = TimeUnit.SECONDS.toNanos(duration);
+        this.mix = mix;
+        this.seed = seed;
+        this.ids = new IdPool(ids);
+        for (String operation : mix.keySet()) {
+            latencies.put(operation, new LatencyHistogram());
+            errors.put(operation, new LongAdder());
+        }
+    }
+
+    /**
+     * Выполняет прогон и печатает отчёт.
+     */
+    public void run() throws InterruptedException {
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) * threads / rate);
+        long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        CountDownLatch done = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; t++) {
+            int worker = t;
+            Thread thread = new Thread(() -> {
+                try {
+                    runWorker(worker, start + intervalNanos * worker / threads, intervalNanos);
+                } finally {
+                    done.countDown();
+                }
+            }, "load-driver-" + t);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        done.await();
+        report((System.nanoTime() - start) / 1e9);
+    }
+
+    private void runWorker(int worker, long firstStart, long intervalNanos) {
+        TaskDAO dao = daos.get(worker);
+        Random random = new Random(seed + worker);
+        DatasetGenerator generator = new DatasetGenerator(seed * 31 + worker).withHistory(false);
+        String[] schedule = buildSchedule();
+        long version = 0;
+        long end = firstStart + durationNanos;
+
+        for (long intended = firstStart; intended < end; intended += intervalNanos) {
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                sleepNanos(wait);
+            }
+            String operation = schedule[random.nextInt(schedule.length)];
+            try {
+                // Файл Excel один на все потоки — доступ к нему сериализуется
+                synchronized (dao) {
+                    version = execute(operation, dao, random, generator, version);
+                }
+            } catch (SQLException | RuntimeException e) {
+                errors.get(operation).increment();
+            }
+            latencies.get(operation).record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intended));
+        }
+    }
+
+    private long execute(String operation, TaskDAO dao, Random random, DatasetGenerator generator, long version)
+            throws SQLException {
+        switch (operation) {
+            case "delta":
+                return dao.getChangesSince(version).getVersion();
+            case "load":
+                dao.getAllTasks();
+                return dao.getCurrentVersion();
+            case "filter":
+                dao.getFilteredTasks(
+                        random.nextBoolean() ? null : DatasetGenerator.TYPES[random.nextInt(DatasetGenerator.TYPES.length)],
+                        STATUS_FILTERS[random.nextInt(STATUS_FILTERS.length)],
+                        KEYWORDS[random.nextInt(KEYWORDS.length)],
+                        SORT_FIELDS[random.nextInt(SORT_FIELDS.length)],
+                        random.nextBoolean());
+                return version;
+            case "get":
+                dao.getTaskById(ids.random(random));
+                return version;
+            case "add": {
+                Task task = generator.next();
+                dao.addTask(task);
+                ids.add(task.getId());
+                return version;
+            }
+            case "update": {
+                Task task = dao.getTaskById(ids.random(random));
+                if (task != null && task.getStatus() == TaskStatus.ACTIVE) {
+                    task.setPriority(1 + random.nextInt(5));
+                    task.setAssignedTo(DatasetGenerator.ASSIGNEES[random.nextInt(DatasetGenerator.ASSIGNEES.length)]);
+                    dao.updateTask(task);
+                }
+                return version;
+            }
+            case "complete":
+                dao.updateTaskStatus(ids.random(random), TaskStatus.COMPLETED);
+                return version;
+            case "delete": {
+                int id = ids.removeRandom(random);
+                if (id > 0) {
+                    dao.deleteTask(id);
+                }
+                return version;
+            }
+            default:
+                throw new IllegalArgumentException("Неизвестная операция: " + operation);
+        }
+    }
+
+    private String[] buildSchedule() {
+        List<String> schedule = new ArrayList<>();
+        mix.forEach((operation, weight) -> {
+            for (int i = 0; i < weight; i++) {
+                schedule.add(operation);
+            }
+        });
+        return schedule.toArray(new String[0]);
+    }
+
+    private void report(double seconds) {
+        long total = 0;
+        System.out.printf("%-10s %10s %8s %10s %10s %10s %10s %10s%n",
+                "операция", "всего", "ошибок", "оп/с", "p50, мс", "p95, мс", "p99, мс", "max, мс");
+        for (Map.Entry<String, LatencyHistogram> entry : latencies.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            total += histogram.getCount();
+            System.out.printf("%-10s %10d %8d %10.1f %10.2f %10.2f %10.2f %10.2f%n",
+                    entry.getKey(),
+                    histogram.getCount(),
+                    errors.get(entry.getKey()).sum(),
+                    histogram.getCount() / seconds,
+                    histogram.getPercentile(50) / 1000.0,
+                    histogram.getPercentile(95) / 1000.0,
+                    histogram.getPercentile(99) / 1000.0,
+                    histogram.getMax() / 1000.0);
+        }
+        System.out.printf("Итого: %d операций за %.1f с, %.1f оп/с при целевых %.1f оп/с%n",
+                total, seconds, total / seconds, rate);
+    }
+
+    private static void sleepNanos(long nanos) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Разбирает аргументы вида {@code ключ=значение}.
+     *
+     * @param args аргументы командной строки
+     * @return параметры в порядке указания
+     */
+    public static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Ожидался аргумент вида ключ=значение: " + arg);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+
+    /**
+     * Разбирает веса операций вида {@code delta:40,filter:20}.
+     *
+     * @param spec строка с весами
+     * @return веса операций в порядке указания
+     */
+    public static Map<String, Integer> parseMix(String spec) {
+        Map<String, Integer> mix = new LinkedHashMap<>();
+        for (String part : spec.split(",")) {
+            String[] pair = part.trim().split(":");
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Ожидался вес вида операция:число: " + part);
+            }
+            mix.put(pair[0], Integer.parseInt(pair[1]));
+        }
+        return mix;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseArgs(args);
+        String backend = options.getOrDefault("backend", "h2");
+        int threads = Integer.parseInt(options.getOrDefault("threads", "8"));
+        double rate = Double.parseDouble(options.getOrDefault("rate", "200"));
+        long duration = Long.parseLong(options.getOrDefault("duration", "30"));
+        int count = Integer.parseInt(options.getOrDefault("count", "10000"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        Map<String, Integer> mix = parseMix(options.getOrDefault("mix", DEFAULT_MIX));
+
+        List<TaskDAO> daos = BenchmarkBackends.openPool(backend, "load", threads);
+        try {
+            int[] ids = new DatasetGenerator(seed).load(daos.get(0), count, 5_000);
+            System.out.printf("Хранилище %s: %d задач, %d потоков, %.1f оп/с, %d с%n",
+                    backend, count, threads, rate, duration);
+            new LoadDriver(daos, ids, rate, duration, mix, seed).run();
+        } finally {
+            Map<TaskDAO, Boolean> closed = new IdentityHashMap<>();
+            for (TaskDAO dao : daos) {
+                if (closed.put(dao, Boolean.TRUE) == null) {
+                    dao.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Общий для потоков набор идентификаторов существующих задач.
+     */
+    private static final class IdPool {
+        private int[] ids;
+        private int size;
+
+        IdPool(int[] initial) {
+            ids = initial.clone();
+            size = initial.length;
+        }
+
+        synchronized int random(Random random) {
+            return size == 0 ? -1 : ids[random.nextInt(size)];
+        }
+
+        synchronized void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(16, size * 2));
+            }
+            ids[size++] = id;
+        }
+
+        synchronized int removeRandom(Random random) {
+            if (size == 0) {
+                return -1;
+            }
+            int index = random.nextInt(size);
+            int id = ids[index];
+            ids[index] = ids[--size];
+            return id;
+        }
+    }
+}
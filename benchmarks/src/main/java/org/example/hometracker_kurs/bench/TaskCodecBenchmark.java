@@ -0,0 +1,90 @@
+package org.example.hometracker_kurs.bench;
+
+import org.example.hometracker_kurs.model.Task;
+import org.example.hometracker_kurs.sync.BinaryTaskCodec;
+import org.example.hometracker_kurs.sync.OperationJournal;
+import org.example.hometracker_kurs.sync.QueuedTaskOperation;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Кодирование и разбор очереди отложенных операций: строки JSON журнала против {@link BinaryTaskCodec}.
+ * Размеры обоих представлений выводятся при подготовке.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TaskCodecBenchmark {
+
+    @Param({"100", "10000"})
+    public int size;
+
+    private List<QueuedTaskOperation> operations;
+    private List<byte[]> jsonLines;
+    private ByteBuffer binary;
+    private ByteBuffer target;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        DatasetGenerator generator = new DatasetGenerator(42).withHistory(false);
+        String[] kinds = {"add", "update", "update", "delete"};
+        operations = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Task task = generator.next();
+            task.setId(i + 1);
+            QueuedTaskOperation operation = new QueuedTaskOperation(kinds[i % kinds.length], task);
+            operation.setSequence(i + 1);
+            operation.setIdempotencyKey("bench:" + (i + 1));
+            operations.add(operation);
+        }
+
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        jsonLines = new ArrayList<>(size);
+        for (QueuedTaskOperation operation : operations) {
+            byte[] line = OperationJournal.encodeLine(operation);
+            jsonLines.add(line);
+            json.write(line);
+        }
+        binary = BinaryTaskCodec.encodeOperations(operations);
+        target = ByteBuffer.allocate(binary.capacity());
+        System.out.printf("%n%d operations: JSON %d bytes, binary %d bytes%n", size, json.size(), binary.remaining());
+    }
+
+    @Benchmark
+    public void jsonEncode(Blackhole blackhole) throws Exception {
+        for (QueuedTaskOperation operation : operations) {
+            blackhole.consume(OperationJournal.encodeLine(operation));
+        }
+    }
+
+    @Benchmark
+    public void jsonDecode(Blackhole blackhole) throws Exception {
+        for (byte[] line : jsonLines) {
+            blackhole.consume(OperationJournal.decodeLine(line));
+        }
+    }
+
+    @Benchmark
+    public ByteBuffer binaryEncode() {
+        target.clear();
+        BinaryTaskCodec.Encoder encoder = BinaryTaskCodec.encoder(target);
+        for (QueuedTaskOperation operation : operations) {
+            encoder.writeOperation(operation);
+        }
+        return target;
+    }
+
+    @Benchmark
+    public List<QueuedTaskOperation> binaryDecode() throws Exception {
+        return BinaryTaskCodec.decodeOperations(binary.duplicate());
+    }
+}
@@ -0,0 +1,74 @@
+package org.example.hometracker_kurs.bench;
+
+import org.example.hometracker_kurs.dao.TaskDAO;
+import org.example.hometracker_kurs.model.Task;
+import org.example.hometracker_kurs.model.TaskStatus;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Основные операции DAO на наборах из 1k/10k/100k задач.
+ * По умолчанию измеряются H2 и Excel; PostgreSQL включается параметром {@code -p backend=postgres}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TaskDAOBenchmark {
+
+    @Param({"h2", "excel"})
+    public String backend;
+
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    private TaskDAO dao;
+    private int[] ids;
+    private int cursor;
+    private Random random;
+    private DatasetGenerator generator;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dao = BenchmarkBackends.open(backend, "dao");
+        generator = new DatasetGenerator(42).withHistory(false);
+        ids = generator.load(dao, size, 1_000);
+        random = new Random(7);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        dao.close();
+    }
+
+    @Benchmark
+    public List<Task> getAllTasks() throws Exception {
+        return dao.getAllTasks();
+    }
+
+    @Benchmark
+    public Task getTaskById() throws Exception {
+        return dao.getTaskById(ids[random.nextInt(ids.length)]);
+    }
+
+    @Benchmark
+    public Task addTask() throws Exception {
+        Task task = generator.next();
+        dao.addTask(task);
+        return task;
+    }
+
+    @Benchmark
+    public void updateTaskStatus() throws Exception {
+        // Первый проход по всем задачам переводит их в COMPLETED, второй — обратно в ACTIVE
+        int step = cursor++;
+        int id = ids[step % ids.length];
+        TaskStatus status = (step / ids.length) % 2 == 0 ? TaskStatus.COMPLETED : TaskStatus.ACTIVE;
+        dao.updateTaskStatus(id, status);
+    }
+}
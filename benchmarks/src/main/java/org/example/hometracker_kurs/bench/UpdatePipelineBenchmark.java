@@ -0,0 +1,87 @@
+package org.example.hometracker_kurs.bench;
+
+import org.example.hometracker_kurs.telegram.UpdatePipeline;
+import org.openjdk.jmh.annotations.*;
+import org.telegram.telegrambots.meta.api.objects.Chat;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Пропускная способность обработки обновлений бота: обработка прямо в потоке получения обновлений
+ * против {@link UpdatePipeline}. Обработчик имитирует блокирующий {@code execute} Bot API
+ * паузой {@code executeMillis}; результат — обновлений в секунду.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class UpdatePipelineBenchmark {
+    private static final int BATCH = 1000;
+
+    @Param({"1", "100"})
+    public int chats;
+
+    @Param({"1"})
+    public int executeMillis;
+
+    private UpdatePipeline pipeline;
+    private volatile CountDownLatch remaining;
+    private int nextUpdateId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pipeline = new UpdatePipeline("benchmark", update -> {
+            stubExecute();
+            remaining.countDown();
+        }, UpdatePipeline.DEFAULT_CAPACITY);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.printf("%nmax pending %d, blocked submits %d, p99 queue %d us%n",
+                pipeline.getMaxPending(), pipeline.getBlockedSubmits(), pipeline.getP99QueueMicros());
+        pipeline.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void inline() {
+        Consumer<Update> handler = update -> stubExecute();
+        for (int i = 0; i < BATCH; i++) {
+            handler.accept(nextUpdate(i));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void pipeline() throws InterruptedException {
+        remaining = new CountDownLatch(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            pipeline.submit(nextUpdate(i));
+        }
+        remaining.await();
+    }
+
+    private void stubExecute() {
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(executeMillis));
+    }
+
+    private Update nextUpdate(int index) {
+        Chat chat = new Chat();
+        chat.setId((long) (index % chats) + 1);
+        Message message = new Message();
+        message.setChat(chat);
+        message.setText("/tasks");
+        Update update = new Update();
+        update.setUpdateId(++nextUpdateId);
+        update.setMessage(message);
+        return update;
+    }
+}
@@ -2,15 +2,20 @@ module org.example.hometracker_kurs {
     requires javafx.controls;
     requires javafx.fxml;
     requires java.sql;
+    requires java.management;
     requires org.apache.poi.poi;
     requires org.apache.poi.ooxml;
     requires telegrambots;
     requires telegrambots.meta;
     requires org.junit.jupiter.api;
+    requires jdk.httpserver;
     requires com.fasterxml.jackson.core;
     requires com.fasterxml.jackson.databind;
 
 
+    exports org.example.hometracker_kurs.dao.metrics;
+    exports org.example.hometracker_kurs.scheduler;
+    exports org.example.hometracker_kurs.telegram;
     exports org.example.hometracker_kurs.controller;
     opens org.example.hometracker_kurs.controller to javafx.fxml;
     exports org.example.hometracker_kurs.model;
@@ -5,37 +5,65 @@ import javafx.application.Platform;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.collections.transformation.SortedList;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.scene.paint.Color;
 import org.example.hometracker_kurs.config.DatabaseConfig;
 import org.example.hometracker_kurs.config.ExcelConfig;
+import org.example.hometracker_kurs.controller.utils.DueDateIndex;
 import org.example.hometracker_kurs.controller.utils.FilterManager;
 import org.example.hometracker_kurs.controller.utils.FormHandler;
+import org.example.hometracker_kurs.controller.utils.PagedTaskList;
 import org.example.hometracker_kurs.controller.utils.StatisticsCalculator;
+import org.example.hometracker_kurs.controller.utils.TaskListReconciler;
+import org.example.hometracker_kurs.dao.DailyCapacity;
+import org.example.hometracker_kurs.dao.DailyCapacityExceededException;
 import org.example.hometracker_kurs.model.Task;
+import org.example.hometracker_kurs.model.TaskPatch;
 import org.example.hometracker_kurs.model.TaskStatus;
+import org.example.hometracker_kurs.service.AsyncTaskService;
 import org.example.hometracker_kurs.service.TaskManagerService;
 import org.example.hometracker_kurs.service.TaskService;
+import org.example.hometracker_kurs.sync.SyncWorker;
 
 import java.sql.SQLException;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 public class MainController {
+    // Начиная с этого числа задач таблица читает строки окнами, а не целиком
+    private static final int PAGED_THRESHOLD = 5_000;
+
     private final Logger logger = Logger.getLogger(getClass().getName());
-    private TaskService taskService;
+    private final AsyncTaskService asyncTaskService = new AsyncTaskService();
     private TaskManagerService taskManagerService;
     private FormHandler formHandler;
     private FilterManager filterManager;
     private StatisticsCalculator statisticsCalculator;
+    private final DueDateIndex dueDateIndex = new DueDateIndex(DailyCapacity.current());
+    private final TaskListReconciler reconciler = new TaskListReconciler();
+    // Сортировка столбцом переставляет только это представление, а список сопоставителя остаётся в порядке хранилища
+    private final SortedList<Task> sortedRows = new SortedList<>(reconciler.getItems());
+    private long loadedVersion = -1;
+    // Задача, которой заполнена форма; -1 — форма пуста
+    private int formTaskId = -1;
+    private boolean filtersApplied;
+
+    private record Snapshot(long version, ObservableList<Task> tasks) {}
+
+    private record Counts(long version, int total, int active, int completed, int overdue) {}
 
     @FXML private TableView<Task> taskTable;
     @FXML private TableColumn<Task, TaskStatus> statusColumn;
     @FXML private TableColumn<Task, LocalDate> dueDateColumn;
-    @FXML private ComboBox<String> taskTypeComboBox, statusComboBox, sortFieldComboBox, sortOrderComboBox, dataSourceComboBox, assigneeComboBox, typeComboBox;
+    @FXML private ComboBox<String> taskTypeComboBox, statusComboBox, sortFieldComboBox, sortOrderComboBox, dataSourceComboBox, assigneeComboBox, typeComboBox, recurrenceComboBox;
     @FXML private TextField searchField, nameField;
     @FXML private TextArea descriptionField;
     @FXML private DatePicker dueDatePicker;
@@ -49,8 +77,8 @@ public class MainController {
         setupTableColumns();
         setupStatusColumn();
 
-        formHandler = new FormHandler(nameField, descriptionField, dueDatePicker, priorityComboBox, assigneeComboBox, typeComboBox);
-        filterManager = new FilterManager(taskTypeComboBox, statusComboBox, searchField, sortFieldComboBox, sortOrderComboBox, taskManagerService);
+        formHandler = new FormHandler(nameField, descriptionField, dueDatePicker, priorityComboBox, assigneeComboBox, typeComboBox, recurrenceComboBox);
+        filterManager = new FilterManager(taskTypeComboBox, statusComboBox, searchField, sortFieldComboBox, sortOrderComboBox, asyncTaskService);
         statisticsCalculator = new StatisticsCalculator(totalTasksLabel, activeTasksLabel, completedTasksLabel, overdueTasksLabel);
     }
 
@@ -73,9 +101,33 @@ public class MainController {
 
     private void setupTableColumns() {
         taskTable.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY);
+        sortedRows.comparatorProperty().bind(taskTable.comparatorProperty());
+        taskTable.setItems(sortedRows);
         taskTable.getSelectionModel().selectedItemProperty().addListener((obs, oldSel, newSel) -> {
-            if (newSel != null) fillFormWithSelectedTask(newSel);
+            // Обновление выделенной строки заменяет её объект; форму с несохранёнными правками той же задачи
+            // не перезаписываем
+            if (newSel != null && !PagedTaskList.isPlaceholder(newSel) && newSel.getId() != formTaskId) {
+                fillFormWithSelectedTask(newSel);
+            }
+        });
+        dueDateIndex.track(taskTable.itemsProperty());
+        // Подсветка зависит от соседних строк: при пересечении предела перерисовываются все видимые ячейки
+        dueDateIndex.setOnOverbookingChanged(taskTable::refresh);
+
+        // Окно строк загружается, когда строка таблицы показывает его элемент
+        taskTable.setRowFactory(table -> new TableRow<>() {
+            @Override
+            public void updateIndex(int index) {
+                super.updateIndex(index);
+                if (getTableView().getItems() instanceof PagedTaskList paged) {
+                    paged.ensureLoaded(index);
+                }
+            }
         });
+        // Загруженные окнами строки упорядочены хранилищем; сортировка столбцом потребовала бы прочитать все.
+        // Для остальных строк стандартная политика лишь задаёт компаратор представлению sortedRows
+        taskTable.setSortPolicy(table -> !(table.getItems() instanceof PagedTaskList)
+                && TableView.DEFAULT_SORT_POLICY.call(table));
 
         dueDateColumn.setCellFactory(col -> new TableCell<>() {
             @Override
@@ -90,11 +142,7 @@ public class MainController {
                             dueDate.getMonthValue(),
                             dueDate.getYear());
 
-                    long count = taskTable.getItems().stream()
-                            .filter(t -> dueDate.equals(t.getDueDate()))
-                            .count();
-
-                    if (count > 1) {
+                    if (dueDateIndex.isOverbooked(dueDate)) {
                         setText("⚠ " + formattedDate);
                         setTextFill(Color.ORANGERED);
                     } else {
@@ -130,6 +178,17 @@ public class MainController {
         });
     }
 
+    /**
+     * Закрывает источник данных при завершении приложения, чтобы отложенные изменения попали в хранилище.
+     */
+    public void shutdown() {
+        try {
+            asyncTaskService.close();
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "Не удалось закрыть источник данных", e);
+        }
+    }
+
     @FXML private void refreshData() {
         reloadAndRefresh();
     }
@@ -140,40 +199,30 @@ public class MainController {
             return;
         }
 
-        LocalDate date = dueDatePicker.getValue();
-        if (isDateConflict(date, null)) {
-            showAlert("Ошибка", "На выбранную дату уже есть задача.");
-            return;
-        }
-
-        try {
-            taskManagerService.addTask(formHandler.createTaskFromForm());
-            formHandler.clearForm();
-            reloadAndRefresh();
-        } catch (SQLException e) {
-            showAlert("Ошибка добавления", e.getMessage());
-        }
+        // Предел задач на день проверяет хранилище: таблица может быть отфильтрована или устареть
+        asyncTaskService.addTask(formHandler.createTaskFromForm())
+                .thenCompose(ignored -> {
+                    formHandler.clearForm();
+                    formTaskId = -1;
+                    return reloadAndRefresh();
+                })
+                .exceptionally(e -> handleError("Ошибка добавления", e));
     }
 
     @FXML private void updateTask() {
         Task selected = getSelectedTaskOrAlert("обновления");
         if (selected == null || !formHandler.validateForm()) return;
 
-        try {
-            Task updated = formHandler.createTaskFromForm();
-            updated.setId(selected.getId());
-
-            if (isDateConflict(updated.getDueDate(), (int) selected.getId())) {
-                showAlert("Ошибка", "На эту дату уже есть другая задача.");
-                return;
-            }
-
-            taskManagerService.updateTask(updated);
-            taskTable.refresh();
-            reloadAndRefresh();
-        } catch (SQLException e) {
-            showAlert("Ошибка обновления", e.getMessage());
+        // Записываются только изменённые поля, поэтому правки других пользователей в остальных полях сохраняются
+        TaskPatch patch = formHandler.createPatchFromForm(selected);
+        if (patch.isEmpty()) {
+            showAlert("Информация", "Изменений нет");
+            return;
         }
+
+        asyncTaskService.patchTask(selected.getId(), patch)
+                .thenCompose(ignored -> reloadAndRefresh())
+                .exceptionally(e -> handleError("Ошибка обновления", e));
     }
 
     @FXML
@@ -188,13 +237,10 @@ public class MainController {
 
         Optional<ButtonType> result = confirmAlert.showAndWait();
         if (result.isPresent() && result.get() == ButtonType.OK) {
-            try {
-                taskManagerService.deleteTask(selected);
-                reloadAndRefresh();
-                showAlert("Успех", "Задача удалена");
-            } catch (SQLException e) {
-                showAlert("Ошибка удаления", e.getMessage());
-            }
+            asyncTaskService.deleteTask(selected)
+                    .thenCompose(ignored -> reloadAndRefresh())
+                    .thenRun(() -> showAlert("Успех", "Задача удалена"))
+                    .exceptionally(e -> handleError("Ошибка удаления", e));
         }
     }
 
@@ -202,13 +248,9 @@ public class MainController {
         Task selected = getSelectedTaskOrAlert("выполнения");
         if (selected == null) return;
 
-        try {
-            taskManagerService.completeTask(selected);
-            reloadAndRefresh();
-            taskTable.refresh();
-        } catch (SQLException e) {
-            showAlert("Ошибка выполнения", e.getMessage());
-        }
+        asyncTaskService.completeTask(selected.getId())
+                .thenCompose(ignored -> reloadAndRefresh())
+                .exceptionally(e -> handleError("Ошибка выполнения", e));
     }
 
     @FXML private void postponeTask() {
@@ -225,17 +267,18 @@ public class MainController {
 
         Optional<String> result = dialog.showAndWait();
         if (result.isPresent()) {
+            int daysToPostpone;
             try {
-                int daysToPostpone = Integer.parseInt(result.get());
-                taskManagerService.postponeTask(selected, daysToPostpone);
-                taskTable.refresh();
-                reloadAndRefresh();
-                showAlert("Успех", "Задача отложена на " + daysToPostpone + " дней");
+                daysToPostpone = Integer.parseInt(result.get());
             } catch (NumberFormatException e) {
                 showAlert("Ошибка", "Введите корректное число дней");
-            } catch (SQLException e) {
-                showAlert("Ошибка", "Не удалось отложить задачу: " + e.getMessage());
+                return;
             }
+
+            asyncTaskService.postponeTask(selected.getId(), daysToPostpone)
+                    .thenCompose(ignored -> reloadAndRefresh())
+                    .thenRun(() -> showAlert("Успех", "Задача отложена на " + daysToPostpone + " дней"))
+                    .exceptionally(e -> handleError("Ошибка", e, "Не удалось отложить задачу: "));
         }
     }
 
@@ -246,24 +289,20 @@ public class MainController {
             return;
         }
 
-        try {
-            taskManagerService.reactivateTask(selected);
-            refreshData();
-            taskTable.refresh();
-            showAlert("Успех", "Задача снова активна");
-        } catch (SQLException e) {
-            showAlert("Ошибка", "Не удалось активировать задачу: " + e.getMessage());
-        }
+        asyncTaskService.reactivateTask(selected.getId())
+                .thenCompose(ignored -> reloadAndRefresh())
+                .thenRun(() -> showAlert("Успех", "Задача снова активна"))
+                .exceptionally(e -> handleError("Ошибка", e, "Не удалось активировать задачу: "));
     }
 
     @FXML private void applyFilters() {
-        try {
-            ObservableList<Task> filtered = filterManager.applyFilters();
-            taskTable.setItems(filtered);
-            statisticsCalculator.updateStatistics(filtered);
-        } catch (SQLException e) {
-            showAlert("Ошибка фильтрации", e.getMessage());
-        }
+        filterManager.applyFilters()
+                .thenAccept(filtered -> {
+                    showReconciled(filtered);
+                    filtersApplied = true;
+                    statisticsCalculator.updateStatistics(filtered);
+                })
+                .exceptionally(e -> handleError("Ошибка фильтрации", e));
     }
 
     @FXML private void resetFilters() {
@@ -278,59 +317,165 @@ public class MainController {
             return;
         }
 
+        String daoKey;
         try {
-            if (taskService != null) taskService.close();
-
-            String daoKey = switch (selectedSource) {
+            daoKey = switch (selectedSource) {
                 case "PostgreSQL" -> "postgres";
                 case "Excel" -> "excel";
                 case "H2 Database" -> "h2";
+                case "Офлайн (H2 + PostgreSQL)" -> TaskService.OFFLINE;
                 default -> throw new IllegalArgumentException("Неизвестный источник: " + selectedSource);
             };
-
-            DatabaseConfig dbConfig = new DatabaseConfig();
-            ExcelConfig excelConfig = new ExcelConfig();
-            this.taskService = new TaskService(daoKey, dbConfig, excelConfig);
-            this.taskManagerService = new TaskManagerService(taskService);
-            this.filterManager = new FilterManager(taskTypeComboBox, statusComboBox, searchField,
-                    sortFieldComboBox, sortOrderComboBox, taskManagerService);
-
-            dataSourceLabel.setText("Источник: " + selectedSource);
-            reloadAndRefresh();
-            taskService.trySyncPendingTasks();
-            updateSyncStatusLabel("всё в порядке", Color.GREEN);
-
-        } catch (Exception e) {
+        } catch (IllegalArgumentException e) {
             showAlert("Ошибка подключения", e.getMessage());
-            updateSyncStatusLabel("ошибка синхронизации", Color.ORANGE);
+            return;
         }
+
+        updateSyncStatusLabel("подключение...", Color.GRAY);
+        asyncTaskService.connect(() -> new TaskService(daoKey, new DatabaseConfig(), new ExcelConfig()))
+                .thenCompose(service -> {
+                    this.taskManagerService = new TaskManagerService(service);
+                    dataSourceLabel.setText("Источник: " + selectedSource);
+                    loadedVersion = -1;
+                    // Идентификаторы другого хранилища не связаны с задачей в форме
+                    formTaskId = -1;
+                    return reloadAndRefresh();
+                })
+                .thenCompose(ignored -> asyncTaskService.submit(() -> {
+                    // Очередь разбирает фоновый поток; состояние приходит в showSyncState
+                    asyncTaskService.getTaskService().startSyncWorker(this::showSyncState);
+                    return null;
+                }))
+                .exceptionally(e -> {
+                    handleError("Ошибка подключения", e);
+                    updateSyncStatusLabel("ошибка синхронизации", Color.ORANGE);
+                    return null;
+                });
     }
 
     private Task getSelectedTaskOrAlert(String context) {
         Task selected = taskTable.getSelectionModel().getSelectedItem();
-        if (selected == null) {
+        if (selected == null || PagedTaskList.isPlaceholder(selected)) {
             showAlert("Ошибка", "Выберите задачу для " + context);
+            return null;
         }
         return selected;
     }
 
-    private void reloadAndRefresh() {
-        try {
-            ObservableList<Task> tasks = taskManagerService.refreshData();
-            taskTable.setItems(tasks);
-            statisticsCalculator.updateStatistics(tasks);
-        } catch (SQLException e) {
-            showAlert("Ошибка обновления", e.getMessage());
+    private CompletableFuture<Void> reloadAndRefresh() {
+        TaskManagerService manager = taskManagerService;
+        if (manager == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        CompletableFuture<Void> reload;
+        if (loadedVersion < 0 || filtersApplied || taskTable.getItems() instanceof PagedTaskList
+                || !reconciler.isDefaultOrder()) {
+            // Версию запоминаем до загрузки: изменения, сделанные во время чтения, придут повторно
+            reload = asyncTaskService.submitLatest("load", () -> {
+                        long version = manager.getCurrentVersion();
+                        int total = manager.countTasks(null);
+                        if (total >= PAGED_THRESHOLD) {
+                            return new Counts(version, total,
+                                    manager.countTasks(TaskStatus.ACTIVE),
+                                    manager.countTasks(TaskStatus.COMPLETED),
+                                    manager.countTasks(TaskStatus.OVERDUE));
+                        }
+                        return new Snapshot(version, manager.refreshData());
+                    })
+                    .thenAccept(loaded -> {
+                        if (loaded instanceof Counts counts) {
+                            showPaged(manager, counts);
+                        } else if (loaded instanceof Snapshot snapshot) {
+                            showReconciled(snapshot.tasks());
+                            loadedVersion = snapshot.version();
+                            statisticsCalculator.updateStatistics(snapshot.tasks());
+                        }
+                        filtersApplied = false;
+                    });
+        } else {
+            long since = loadedVersion;
+            reload = asyncTaskService.submitLatest("load", () -> manager.loadChanges(since))
+                    .thenAccept(changes -> {
+                        reconciler.apply(changes);
+                        loadedVersion = changes.getVersion();
+                        statisticsCalculator.updateStatistics(taskTable.getItems());
+                    });
+        }
+
+        return reload.exceptionally(e -> handleError("Ошибка обновления", e));
+    }
+
+    // Строки сопоставляются с уже показанными, так что выделение и прокрутка сохраняются
+    private void showReconciled(List<Task> tasks) {
+        reconciler.reconcile(tasks);
+        if (taskTable.getItems() != sortedRows) {
+            taskTable.setItems(sortedRows);
+        }
+    }
+
+    // Таблица остаётся тем же списком, поэтому позиция прокрутки после обновления сохраняется
+    private void showPaged(TaskManagerService manager, Counts counts) {
+        if (taskTable.getItems() instanceof PagedTaskList paged) {
+            paged.reset(counts.total());
+        } else {
+            reconciler.reconcile(List.of());
+            taskTable.setItems(new PagedTaskList(
+                    (offset, limit) -> asyncTaskService.submit(() -> manager.getTasksPage(offset, limit)),
+                    counts.total()));
         }
+        loadedVersion = counts.version();
+        statisticsCalculator.showCounts(counts.total(), counts.active(), counts.completed(), counts.overdue());
+    }
+
+    private Void handleError(String title, Throwable error) {
+        return handleError(title, error, "");
+    }
+
+    private Void handleError(String title, Throwable error, String prefix) {
+        Throwable cause = AsyncTaskService.unwrap(error);
+        if (cause instanceof DailyCapacityExceededException full) {
+            showAlert(title, String.format("На %02d.%02d.%d уже запланировано задач: %d — это предел на день.",
+                    full.getDueDate().getDayOfMonth(), full.getDueDate().getMonthValue(), full.getDueDate().getYear(),
+                    full.getCapacity()));
+            return null;
+        }
+        // Отменённый запрос был вытеснен более новым — сообщать не о чем
+        if (!(cause instanceof CancellationException)) {
+            logger.log(Level.WARNING, title, cause);
+            showAlert(title, prefix + cause.getMessage());
+        }
+        return null;
     }
 
     private void fillFormWithSelectedTask(Task task) {
+        formTaskId = task.getId();
         nameField.setText(task.getName());
         descriptionField.setText(task.getDescription());
         dueDatePicker.setValue(task.getDueDate());
         priorityComboBox.setValue(task.getPriority());
         assigneeComboBox.setValue(task.getAssignedTo());
         typeComboBox.setValue(task.getType());
+        formHandler.showRecurrence(task.getRecurrence());
+    }
+
+    // Вызывается в потоке синхронизации
+    private void showSyncState(SyncWorker.SyncState state) {
+        switch (state.status()) {
+            case ONLINE -> updateSyncStatusLabel("всё в порядке", Color.GREEN);
+            case SYNCING -> updateSyncStatusLabel("отправка операций: " + state.pending(), Color.GRAY);
+            case OFFLINE -> updateSyncStatusLabel("нет связи, в очереди " + state.pending()
+                    + retrySuffix(state.retryIn()), Color.ORANGE);
+            case FAILED -> updateSyncStatusLabel("ошибка синхронизации" + retrySuffix(state.retryIn()), Color.RED);
+        }
+        if (state.dataChanged()) {
+            // Синхронизация изменила данные — подтягиваем изменения в таблицу
+            Platform.runLater(this::reloadAndRefresh);
+        }
+    }
+
+    private static String retrySuffix(Duration retryIn) {
+        return retryIn == null ? "" : " (повтор через " + Math.max(1, retryIn.toSeconds()) + " с)";
     }
 
     private void updateSyncStatusLabel(String message, Color color) {
@@ -340,14 +485,6 @@ public class MainController {
         });
     }
 
-    private boolean isDateConflict(LocalDate date, Integer ignoreId) {
-        if (date == null) return false;
-        return taskTable.getItems().stream()
-                .filter(t -> date.equals(t.getDueDate()))
-                .filter(t -> ignoreId == null || !Objects.equals(t.getId(), ignoreId))
-                .count() > 0;
-    }
-
     private void showAlert(String title, String message) {
         Platform.runLater(() -> {
             Alert alert = new Alert(Alert.AlertType.INFORMATION);
@@ -0,0 +1,152 @@
+package org.example.hometracker_kurs.controller.utils;
+
+import javafx.beans.property.ObjectProperty;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import org.example.hometracker_kurs.model.Task;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Класс {@code DueDateIndex} ведёт число задач таблицы на каждую дату срока.
+ * Счётчики обновляются слушателем изменений списка, поэтому ячейка столбца срока
+ * получает число задач на дату за O(1), не перебирая строки таблицы.
+ * Предел при добавлении и переносе задач проверяет хранилище, а индекс служит только для подсветки.
+ * Для {@link PagedTaskList} учитываются только загруженные окна, а заглушки пропускаются.
+ * Когда дата становится перегруженной или перестаёт быть ею, вызывается обработчик
+ * {@link #setOnOverbookingChanged(Runnable)}: подсветка меняется у всех строк с этой датой,
+ * а не только у изменившейся.
+ */
+public class DueDateIndex {
+    private final int capacity;
+    private final Map<LocalDate, Integer> counts = new HashMap<>();
+
+    // Дата, под которой задача учтена: при удалении счётчик уменьшается по ней, даже если задачу успели изменить
+    private final Map<Integer, LocalDate> indexedDates = new HashMap<>();
+
+    private final ListChangeListener<Task> listener = this::onChanged;
+    private ObservableList<Task> tracked;
+    private Runnable onOverbookingChanged;
+    private boolean overbookingChanged;
+
+    /**
+     * Конструктор {@code DueDateIndex}.
+     *
+     * @param capacity наибольшее допустимое число задач на одну дату
+     */
+    public DueDateIndex(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Число задач на день должно быть положительным: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Начинает следить за списком строк таблицы, в том числе после замены самого списка.
+     *
+     * @param items свойство со списком строк, например {@code TableView.itemsProperty()}
+     */
+    public void track(ObjectProperty<ObservableList<Task>> items) {
+        items.addListener((obs, oldItems, newItems) -> attach(newItems));
+        attach(items.get());
+    }
+
+    private void attach(ObservableList<Task> items) {
+        if (tracked != null) {
+            tracked.removeListener(listener);
+        }
+        tracked = items;
+        counts.clear();
+        indexedDates.clear();
+        if (items != null) {
+            addAll(items);
+            items.addListener(listener);
+        }
+    }
+
+    /**
+     * Задаёт действие, которое выполняется после изменения списка, если хотя бы одна дата
+     * пересекла предел в ту или другую сторону.
+     *
+     * @param action действие, например перерисовка таблицы; null — ничего не делать
+     */
+    public void setOnOverbookingChanged(Runnable action) {
+        this.onOverbookingChanged = action;
+    }
+
+    private void onChanged(ListChangeListener.Change<? extends Task> change) {
+        overbookingChanged = false;
+        while (change.next()) {
+            if (change.wasPermutated()) {
+                continue;
+            }
+            // Замена приходит как удаление и добавление в одном изменении
+            for (Task task : change.getRemoved()) {
+                remove(task);
+            }
+            addAll(change.getAddedSubList());
+        }
+        // Перенос задачи между датами может перегрузить одну дату и разгрузить другую — хватит одной перерисовки
+        if (overbookingChanged && onOverbookingChanged != null) {
+            onOverbookingChanged.run();
+        }
+    }
+
+    private void addAll(List<? extends Task> tasks) {
+        for (Task task : tasks) {
+            if (PagedTaskList.isPlaceholder(task)) {
+                continue;
+            }
+            LocalDate date = task.getDueDate();
+            LocalDate previous = indexedDates.put(task.getId(), date);
+            decrement(previous);
+            if (date != null && counts.merge(date, 1, Integer::sum) == capacity + 1) {
+                overbookingChanged = true;
+            }
+        }
+    }
+
+    private void remove(Task task) {
+        if (PagedTaskList.isPlaceholder(task)) {
+            return;
+        }
+        decrement(indexedDates.remove(task.getId()));
+    }
+
+    private void decrement(LocalDate date) {
+        if (date == null) {
+            return;
+        }
+        Integer left = counts.computeIfPresent(date, (key, count) -> count > 1 ? count - 1 : null);
+        if (left != null && left == capacity) {
+            overbookingChanged = true;
+        }
+    }
+
+    /**
+     * Возвращает число задач таблицы с указанным сроком.
+     *
+     * @param date дата срока
+     * @return число задач; 0 для null
+     */
+    public int count(LocalDate date) {
+        return date == null ? 0 : counts.getOrDefault(date, 0);
+    }
+
+    /**
+     * Проверяет, что на дату назначено больше задач, чем допускает предел.
+     *
+     * @param date дата срока
+     * @return true, если дата перегружена
+     */
+    public boolean isOverbooked(LocalDate date) {
+        return count(date) > capacity;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
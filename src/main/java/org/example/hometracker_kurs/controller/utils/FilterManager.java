@@ -4,10 +4,10 @@ import javafx.collections.ObservableList;
 import javafx.scene.control.ComboBox;
 import javafx.scene.control.TextField;
 import org.example.hometracker_kurs.model.Task;
-import org.example.hometracker_kurs.service.TaskManagerService;
+import org.example.hometracker_kurs.service.AsyncTaskService;
 
-import java.sql.SQLException;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Класс {@code FilterManager} управляет фильтрацией и сортировкой задач
@@ -20,7 +20,7 @@ public class FilterManager {
     private final TextField searchField;
     private final ComboBox<String> sortFieldComboBox;
     private final ComboBox<String> sortOrderComboBox;
-    private final TaskManagerService taskManagerService;
+    private final AsyncTaskService asyncTaskService;
 
     /**
      * Карта отображения названий полей сортировки из интерфейса в имена столбцов базы данных.
@@ -39,26 +39,27 @@ public class FilterManager {
      * @param searchField        поле поиска по названию
      * @param sortFieldComboBox  выпадающий список с критериями сортировки
      * @param sortOrderComboBox  выпадающий список с направлением сортировки
-     * @param taskManagerService сервис для получения задач из хранилища
+     * @param asyncTaskService   асинхронный сервис для получения задач из хранилища
      */
     public FilterManager(ComboBox<String> taskTypeComboBox, ComboBox<String> statusComboBox,
                          TextField searchField, ComboBox<String> sortFieldComboBox,
-                         ComboBox<String> sortOrderComboBox, TaskManagerService taskManagerService) {
+                         ComboBox<String> sortOrderComboBox, AsyncTaskService asyncTaskService) {
         this.taskTypeComboBox = taskTypeComboBox;
         this.statusComboBox = statusComboBox;
         this.searchField = searchField;
         this.sortFieldComboBox = sortFieldComboBox;
         this.sortOrderComboBox = sortOrderComboBox;
-        this.taskManagerService = taskManagerService;
+        this.asyncTaskService = asyncTaskService;
     }
 
     /**
      * Применяет фильтры и сортировку к списку задач.
+     * Значения фильтров считываются в потоке JavaFX, а запрос выполняется в фоне;
+     * предыдущий незавершённый запрос отменяется.
      *
-     * @return отфильтрованный и отсортированный список задач
-     * @throws SQLException если происходит ошибка при получении данных
+     * @return будущее с отфильтрованным и отсортированным списком задач
      */
-    public ObservableList<Task> applyFilters() throws SQLException {
+    public CompletableFuture<ObservableList<Task>> applyFilters() {
         String type = "Все".equals(taskTypeComboBox.getValue()) ? null : taskTypeComboBox.getValue();
         String status = "Все".equals(statusComboBox.getValue()) ? null : statusComboBox.getValue();
         String keyword = searchField.getText().isBlank() ? null : searchField.getText();
@@ -66,7 +67,7 @@ public class FilterManager {
         String sortField = SORT_MAP.getOrDefault(sortFieldComboBox.getValue(), null);
         boolean ascending = "По возрастанию".equals(sortOrderComboBox.getValue());
 
-        return taskManagerService.applyFilters(type, status, keyword, sortField, ascending);
+        return asyncTaskService.getFilteredTasks(type, status, keyword, sortField, ascending);
     }
 
     /**
@@ -1,22 +1,46 @@
 package org.example.hometracker_kurs.controller.utils;
 
 import javafx.scene.control.*;
+import javafx.collections.FXCollections;
+import org.example.hometracker_kurs.model.RecurrenceRule;
 import org.example.hometracker_kurs.model.Task;
+import org.example.hometracker_kurs.model.TaskField;
+import org.example.hometracker_kurs.model.TaskPatch;
 import org.example.hometracker_kurs.model.TaskStatus;
 
 import java.time.LocalDate;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
 
 /**
  * Класс {@code FormHandler} отвечает за обработку формы задачи в пользовательском интерфейсе.
  * Предоставляет методы для валидации, создания объекта задачи и очистки полей формы.
  */
 public class FormHandler {
+    private static final String NO_RECURRENCE = "Не повторять";
+    private static final List<String> RECURRENCE_OPTIONS = List.of(NO_RECURRENCE,
+            "Каждый день", "Каждую неделю", "Каждые 2 недели",
+            "Через 7 дней после выполнения", "Через 30 дней после выполнения");
+
     private final TextField nameField;
     private final TextArea descriptionField;
     private final DatePicker dueDatePicker;
     private final ComboBox<Integer> priorityComboBox;
     private final ComboBox<String> assigneeComboBox;
     private final ComboBox<String> typeComboBox;
+    private final ComboBox<String> recurrenceComboBox;
+    private RecurrenceRule loadedRecurrence;
+
+    /**
+     * Поля задачи, которые редактируются в форме, включая срок; статус и дата последнего выполнения
+     * меняются отдельными действиями.
+     */
+    public static final Set<TaskField> EDITABLE_FIELDS = Collections.unmodifiableSet(EnumSet.of(
+            TaskField.NAME, TaskField.DESCRIPTION, TaskField.DUE_DATE, TaskField.PRIORITY,
+            TaskField.ASSIGNED_TO, TaskField.TYPE, TaskField.RECURRENCE));
 
     /**
      * Конструктор {@code FormHandler}.
@@ -27,16 +51,21 @@ public class FormHandler {
      * @param priorityComboBox   выпадающий список для выбора приоритета
      * @param assigneeComboBox   выпадающий список исполнителей
      * @param typeComboBox       выпадающий список типов задач
+     * @param recurrenceComboBox выпадающий список правил повторения
      */
     public FormHandler(TextField nameField, TextArea descriptionField, DatePicker dueDatePicker,
                        ComboBox<Integer> priorityComboBox, ComboBox<String> assigneeComboBox,
-                       ComboBox<String> typeComboBox) {
+                       ComboBox<String> typeComboBox, ComboBox<String> recurrenceComboBox) {
         this.nameField = nameField;
         this.descriptionField = descriptionField;
         this.dueDatePicker = dueDatePicker;
         this.priorityComboBox = priorityComboBox;
         this.assigneeComboBox = assigneeComboBox;
         this.typeComboBox = typeComboBox;
+        this.recurrenceComboBox = recurrenceComboBox;
+
+        recurrenceComboBox.setItems(FXCollections.observableArrayList(RECURRENCE_OPTIONS));
+        recurrenceComboBox.setValue(NO_RECURRENCE);
     }
 
     /**
@@ -62,7 +91,9 @@ public class FormHandler {
         Task task = new Task(
                 0,
                 nameField.getText().trim(),
-                descriptionField.getText().trim(),
+                // Описание не обрезается: иначе задача с пробелами или переводом строки в конце описания
+                // давала бы изменение DESCRIPTION, которого пользователь не делал
+                descriptionField.getText(),
                 dueDatePicker.getValue(),
                 priorityComboBox.getValue(),
                 assigneeComboBox.getValue(),
@@ -70,9 +101,79 @@ public class FormHandler {
                 null
         );
         task.setType(typeComboBox.getValue());
+        task.setRecurrence(recurrenceFromForm(dueDatePicker.getValue()));
         return task;
     }
 
+    /**
+     * Сравнивает форму с исходной задачей.
+     *
+     * @param original задача, загруженная в форму
+     * @return патч с полями, которые пользователь изменил
+     */
+    public TaskPatch createPatchFromForm(Task original) {
+        return TaskPatch.between(original, createTaskFromForm(), EDITABLE_FIELDS);
+    }
+
+    /**
+     * Показывает в форме правило повторения выбранной задачи.
+     *
+     * @param rule правило повторения или null для разовой задачи
+     */
+    public void showRecurrence(RecurrenceRule rule) {
+        loadedRecurrence = rule;
+        if (rule == null) {
+            recurrenceComboBox.setValue(NO_RECURRENCE);
+            return;
+        }
+        String option = optionFor(rule);
+        if (!recurrenceComboBox.getItems().contains(option)) {
+            recurrenceComboBox.getItems().add(option);
+        }
+        recurrenceComboBox.setValue(option);
+    }
+
+    private RecurrenceRule recurrenceFromForm(LocalDate start) {
+        String option = recurrenceComboBox.getValue();
+        // Если правило в форме не меняли, сохраняем исходное вместе с его датой начала
+        if (loadedRecurrence != null && Objects.equals(option, optionFor(loadedRecurrence))) {
+            return loadedRecurrence;
+        }
+        if (option == null || start == null) {
+            return null;
+        }
+        switch (option) {
+            case "Каждый день":
+                return RecurrenceRule.daily(start, 1);
+            case "Каждую неделю":
+                return RecurrenceRule.weekly(start, 1, null);
+            case "Каждые 2 недели":
+                return RecurrenceRule.weekly(start, 2, null);
+            case "Через 7 дней после выполнения":
+                return RecurrenceRule.afterCompletion(start, 7);
+            case "Через 30 дней после выполнения":
+                return RecurrenceRule.afterCompletion(start, 30);
+            default:
+                return null;
+        }
+    }
+
+    private static String optionFor(RecurrenceRule rule) {
+        if (rule.getFrequency() == RecurrenceRule.Frequency.CUSTOM
+                && (rule.getInterval() == 7 || rule.getInterval() == 30)) {
+            return "Через " + rule.getInterval() + " дней после выполнения";
+        }
+        if (rule.getFrequency() == RecurrenceRule.Frequency.DAILY && rule.getInterval() == 1) {
+            return "Каждый день";
+        }
+        if (rule.getFrequency() == RecurrenceRule.Frequency.WEEKLY && rule.getDaysOfWeek().size() == 1
+                && rule.getDaysOfWeek().contains(rule.getStart().getDayOfWeek())
+                && rule.getInterval() <= 2) {
+            return rule.getInterval() == 1 ? "Каждую неделю" : "Каждые 2 недели";
+        }
+        return rule.getDisplayName();
+    }
+
     /**
      * Очищает все поля формы и сбрасывает значения по умолчанию.
      */
@@ -83,5 +184,6 @@ public class FormHandler {
         priorityComboBox.setValue(3); // значение по умолчанию
         assigneeComboBox.getSelectionModel().clearSelection();
         typeComboBox.getSelectionModel().clearSelection();
+        showRecurrence(null);
     }
 }
@@ -0,0 +1,234 @@
+package org.example.hometracker_kurs.controller.utils;
+
+import javafx.collections.ObservableListBase;
+import org.example.hometracker_kurs.model.Task;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Класс {@code PagedTaskList} — список строк таблицы, который держит в памяти только окна задач
+ * возле видимой части таблицы.
+ *
+ * <p>Размер списка берётся из запроса количества, а строки читаются из хранилища окнами
+ * по {@value #PAGE_SIZE} задач. Пока окно не загружено, на его месте стоит строка-заглушка
+ * {@link #PLACEHOLDER}; после загрузки заглушки заменяются событием изменения списка.
+ * Вместе с запрошенным окном подгружается следующее в направлении прокрутки, а окна,
+ * к которым дольше всего не обращались, выгружаются, так что в памяти не больше
+ * {@value #MAX_PAGES} окон при любом числе задач.
+ *
+ * <p>Чтение элемента ничего не загружает: загрузку запрашивает строка таблицы через
+ * {@link #ensureLoaded(int)}, поэтому обход списка другими слушателями не читает всё хранилище.
+ * Все методы вызываются в потоке JavaFX.
+ */
+public class PagedTaskList extends ObservableListBase<Task> {
+    public static final int PAGE_SIZE = 200;
+    public static final int MAX_PAGES = 8;
+
+    /**
+     * Строка, показываемая вместо ещё не загруженной задачи.
+     */
+    public static final Task PLACEHOLDER = new Task(0, "Загрузка…", "", null, 0, "", null, null);
+
+    private static final Logger logger = Logger.getLogger(PagedTaskList.class.getName());
+
+    /**
+     * Источник окон задач.
+     */
+    @FunctionalInterface
+    public interface PageSource {
+        /**
+         * Читает окно задач в порядке таблицы.
+         *
+         * @param offset номер первой строки окна
+         * @param limit  наибольшее число строк
+         * @return будущее со строками окна, завершающееся в потоке JavaFX
+         */
+        CompletableFuture<List<Task>> load(int offset, int limit);
+    }
+
+    private final PageSource source;
+    private int size;
+
+    // Порядок доступа: первым выгружается окно, к которому дольше всего не обращались
+    private final LinkedHashMap<Integer, List<Task>> pages = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<Integer> loading = new HashSet<>();
+    private int lastPage;
+    private long generation;
+
+    /**
+     * Конструктор {@code PagedTaskList}.
+     *
+     * @param source источник окон задач
+     * @param size   число задач в хранилище
+     */
+    public PagedTaskList(PageSource source, int size) {
+        this.source = source;
+        this.size = size;
+    }
+
+    /**
+     * Проверяет, что строка — заглушка ещё не загруженной задачи.
+     *
+     * @param task строка таблицы
+     * @return true для заглушки
+     */
+    public static boolean isPlaceholder(Task task) {
+        return task == PLACEHOLDER;
+    }
+
+    @Override
+    public Task get(int index) {
+        Objects.checkIndex(index, size);
+        List<Task> rows = pages.get(index / PAGE_SIZE);
+        int offset = index % PAGE_SIZE;
+        return rows != null && offset < rows.size() ? rows.get(offset) : PLACEHOLDER;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Запрашивает окно, в которое попадает строка, если оно ещё не загружено,
+     * и следующее окно в направлении прокрутки.
+     *
+     * @param index номер видимой строки
+     */
+    public void ensureLoaded(int index) {
+        if (index < 0 || index >= size) {
+            return;
+        }
+        int page = index / PAGE_SIZE;
+        if (pages.get(page) == null) {
+            request(page);
+        }
+        if (page != lastPage) {
+            int next = page > lastPage ? page + 1 : page - 1;
+            lastPage = page;
+            if (next >= 0 && next * PAGE_SIZE < size && !pages.containsKey(next)) {
+                request(next);
+            }
+        }
+    }
+
+    /**
+     * Сбрасывает загруженные окна после изменения данных и заново загружает окно возле видимой части.
+     * Позиция прокрутки сохраняется, потому что сам список остаётся тем же.
+     *
+     * @param newSize новое число задач в хранилище
+     */
+    public void reset(int newSize) {
+        generation++;
+        loading.clear();
+        List<Task> removed = snapshot(size);
+        pages.clear();
+        size = newSize;
+
+        beginChange();
+        nextReplace(0, size, removed);
+        endChange();
+
+        if (size > 0) {
+            lastPage = Math.min(lastPage, (size - 1) / PAGE_SIZE);
+            request(lastPage);
+        }
+    }
+
+    /**
+     * Возвращает загруженные задачи без заглушек.
+     *
+     * @return задачи загруженных окон
+     */
+    public List<Task> getLoaded() {
+        List<Task> loaded = new ArrayList<>(pages.size() * PAGE_SIZE);
+        for (List<Task> rows : pages.values()) {
+            loaded.addAll(rows);
+        }
+        return loaded;
+    }
+
+    private void request(int page) {
+        if (!loading.add(page)) {
+            return;
+        }
+        long requestGeneration = generation;
+        source.load(page * PAGE_SIZE, PAGE_SIZE).whenComplete((rows, error) -> {
+            if (requestGeneration != generation) {
+                return;
+            }
+            loading.remove(page);
+            if (error != null) {
+                // Заглушки остаются; окно будет запрошено снова, когда строка опять станет видимой
+                logger.log(Level.WARNING, "Не удалось загрузить строки " + page * PAGE_SIZE, error);
+                return;
+            }
+            install(page, rows);
+        });
+    }
+
+    private void install(int page, List<Task> rows) {
+        int from = page * PAGE_SIZE;
+        int to = Math.min(size, from + PAGE_SIZE);
+        if (from >= to) {
+            return;
+        }
+        List<Task> removed = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            removed.add(get(i));
+        }
+        pages.put(page, List.copyOf(rows));
+
+        beginChange();
+        nextReplace(from, to, removed);
+        evict(page);
+        endChange();
+    }
+
+    // Выгруженные строки снова становятся заглушками, о чём слушатели узнают из того же события
+    private void evict(int keep) {
+        var iterator = pages.entrySet().iterator();
+        while (pages.size() > MAX_PAGES && iterator.hasNext()) {
+            Map.Entry<Integer, List<Task>> eldest = iterator.next();
+            if (eldest.getKey() == keep) {
+                continue;
+            }
+            int from = eldest.getKey() * PAGE_SIZE;
+            int to = Math.min(size, from + PAGE_SIZE);
+            List<Task> removed = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                removed.add(get(i));
+            }
+            iterator.remove();
+            nextReplace(from, to, removed);
+        }
+    }
+
+    // Прежнее содержимое списка без копирования: заглушки не хранятся, загруженные строки берутся из окон
+    private List<Task> snapshot(int oldSize) {
+        Map<Integer, List<Task>> oldPages = new LinkedHashMap<>(pages);
+        return new AbstractList<>() {
+            @Override
+            public Task get(int index) {
+                List<Task> rows = oldPages.get(index / PAGE_SIZE);
+                int offset = index % PAGE_SIZE;
+                return rows != null && offset < rows.size() ? rows.get(offset) : PLACEHOLDER;
+            }
+
+            @Override
+            public int size() {
+                return oldSize;
+            }
+        };
+    }
+}
@@ -43,6 +43,19 @@ public class StatisticsCalculator {
         int completed = countByStatus(tasks, TaskStatus.COMPLETED);
         int overdue = countByStatus(tasks, TaskStatus.OVERDUE);
 
+        showCounts(total, active, completed, overdue);
+    }
+
+    /**
+     * Показывает готовые значения статистики, например посчитанные хранилищем,
+     * когда таблица загружена не целиком.
+     *
+     * @param total     общее количество задач
+     * @param active    количество активных задач
+     * @param completed количество выполненных задач
+     * @param overdue   количество просроченных задач
+     */
+    public void showCounts(int total, int active, int completed, int overdue) {
         totalTasksLabel.setText(String.valueOf(total));
         activeTasksLabel.setText(String.valueOf(active));
         completedTasksLabel.setText(String.valueOf(completed));
@@ -0,0 +1,249 @@
+package org.example.hometracker_kurs.controller.utils;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import org.example.hometracker_kurs.model.Task;
+import org.example.hometracker_kurs.model.TaskChangeSet;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Класс {@code TaskListReconciler} ведёт один и тот же список строк таблицы между обновлениями.
+ *
+ * <p>Новые данные не заменяют список, а сопоставляются со строками по идентификатору задачи:
+ * список получает только добавления, удаления и замены изменившихся строк. Поэтому выделение
+ * и позиция прокрутки сохраняются, а перерисовываются только затронутые строки.
+ * Набор изменений из хранилища применяется за время, зависящее от размера набора, а не от числа строк,
+ * если список упорядочен по {@link #DEFAULT_ORDER}. Сортировка по столбцу таблицы не должна переставлять
+ * сам список: таблица показывает его через {@link javafx.collections.transformation.SortedList}.
+ * Все методы вызываются в потоке JavaFX.
+ */
+public class TaskListReconciler {
+    /**
+     * Порядок строк без фильтров; совпадает с ORDER BY due_date, priority DESC, id в {@code getAllTasks}.
+     */
+    public static final Comparator<Task> DEFAULT_ORDER = Comparator
+            .comparing(Task::getDueDate, Comparator.nullsLast(Comparator.<LocalDate>naturalOrder()))
+            .thenComparing(Comparator.comparingInt(Task::getPriority).reversed())
+            .thenComparingInt(Task::getId);
+
+    // Перестановки с поиском строки перебором обходятся примерно в (число разрывов порядка) × (число строк)
+    // сравнений; когда оценка выше этого предела, список заменяется целиком
+    private static final long MAX_REORDER_WORK = 1_000_000;
+
+    private final ObservableList<Task> items = FXCollections.observableArrayList();
+    private boolean defaultOrder = true;
+
+    // Строка списка по идентификатору: по ней находится прежнее положение задачи
+    private final Map<Integer, Task> byId = new HashMap<>();
+
+    /**
+     * Возвращает список строк, который остаётся тем же при любых обновлениях.
+     *
+     * @return список строк таблицы
+     */
+    public ObservableList<Task> getItems() {
+        return items;
+    }
+
+    /**
+     * Приводит список к полному результату запроса, сохраняя строки, которые не изменились.
+     *
+     * @param fresh задачи в порядке показа
+     */
+    public void reconcile(List<Task> fresh) {
+        defaultOrder = isDefaultOrder(fresh);
+        if (items.isEmpty() || fresh.isEmpty()) {
+            replaceAll(fresh);
+            return;
+        }
+
+        Set<Integer> freshIds = new HashSet<>(fresh.size() * 2);
+        for (Task task : fresh) {
+            freshIds.add(task.getId());
+        }
+        if (byId.keySet().removeIf(id -> !freshIds.contains(id))) {
+            items.removeIf(task -> !byId.containsKey(task.getId()));
+        }
+
+        if ((long) orderBreaks(fresh) * items.size() > MAX_REORDER_WORK) {
+            // Порядок изменился почти целиком, например после смены сортировки
+            replaceAll(fresh);
+            return;
+        }
+
+        // Теперь в списке только задачи из результата; идём по результату и правим расхождения по месту
+        int i = 0;
+        while (i < fresh.size()) {
+            Task task = fresh.get(i);
+            Task current = i < items.size() ? items.get(i) : null;
+            if (current != null && current.getId() == task.getId()) {
+                if (!sameContent(current, task)) {
+                    items.set(i, task);
+                }
+                byId.put(task.getId(), task);
+                i++;
+            } else if (i + 1 < items.size() && items.get(i + 1).getId() == task.getId()) {
+                // Сместилась вниз текущая строка: убираем её, и она будет добавлена на своё место позже
+                byId.remove(current.getId());
+                items.remove(i);
+            } else if (byId.containsKey(task.getId())) {
+                // Задача сместилась вверх: переносим её на новое место
+                items.remove(indexOf(task.getId(), i + 1));
+                items.add(i, task);
+                byId.put(task.getId(), task);
+                i++;
+            } else {
+                // Подряд идущие новые задачи добавляются одним изменением
+                int end = i;
+                while (end < fresh.size() && !byId.containsKey(fresh.get(end).getId())) {
+                    byId.put(fresh.get(end).getId(), fresh.get(end));
+                    end++;
+                }
+                items.addAll(i, fresh.subList(i, end));
+                i = end;
+            }
+        }
+    }
+
+    /**
+     * Проверяет, что последний полный результат был упорядочен по {@link #DEFAULT_ORDER}
+     * и к списку можно применять наборы изменений.
+     *
+     * @return true, если список упорядочен по {@link #DEFAULT_ORDER}
+     */
+    public boolean isDefaultOrder() {
+        return defaultOrder;
+    }
+
+    /**
+     * Применяет набор изменений к списку, упорядоченному по {@link #DEFAULT_ORDER}.
+     *
+     * @param changes изменения после версии, до которой загружен список
+     * @throws IllegalStateException если список упорядочен иначе ({@link #isDefaultOrder()})
+     */
+    public void apply(TaskChangeSet changes) {
+        if (!defaultOrder) {
+            throw new IllegalStateException("Список задач упорядочен не по умолчанию; нужна полная перезагрузка");
+        }
+        for (Integer id : changes.getDeletedIds()) {
+            Task removed = byId.remove(id);
+            if (removed != null) {
+                items.remove(locate(removed));
+            }
+        }
+        for (Task task : changes.getUpdated()) {
+            put(task);
+        }
+        for (Task task : changes.getInserted()) {
+            put(task);
+        }
+    }
+
+    private void replaceAll(List<Task> fresh) {
+        byId.clear();
+        for (Task task : fresh) {
+            byId.put(task.getId(), task);
+        }
+        items.setAll(fresh);
+    }
+
+    private static boolean isDefaultOrder(List<Task> tasks) {
+        for (int i = 1; i < tasks.size(); i++) {
+            if (DEFAULT_ORDER.compare(tasks.get(i - 1), tasks.get(i)) > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Сколько раз соседние в результате прежние строки не соседствуют в списке; одна перенесённая строка даёт
+    // не больше трёх разрывов, а полностью перемешанный список — по разрыву на строку
+    private int orderBreaks(List<Task> fresh) {
+        Map<Integer, Integer> positions = new HashMap<>(items.size() * 2);
+        for (int i = 0; i < items.size(); i++) {
+            positions.put(items.get(i).getId(), i);
+        }
+        int breaks = 0;
+        int previous = -1;
+        for (Task task : fresh) {
+            Integer position = positions.get(task.getId());
+            if (position == null) {
+                continue;
+            }
+            if (position != previous + 1) {
+                breaks++;
+            }
+            previous = position;
+        }
+        return breaks;
+    }
+
+    private void put(Task task) {
+        Task current = byId.put(task.getId(), task);
+        if (current == null) {
+            items.add(insertionPoint(task), task);
+            return;
+        }
+        int index = locate(current);
+        if (DEFAULT_ORDER.compare(current, task) == 0) {
+            if (!sameContent(current, task)) {
+                items.set(index, task);
+            }
+            return;
+        }
+        items.remove(index);
+        items.add(insertionPoint(task), task);
+    }
+
+    // Список упорядочен, поэтому строка находится двоичным поиском; если порядок нарушен — перебором
+    private int locate(Task task) {
+        int index = Collections.binarySearch(items, task, DEFAULT_ORDER);
+        if (index >= 0 && items.get(index).getId() == task.getId()) {
+            return index;
+        }
+        return indexOf(task.getId(), 0);
+    }
+
+    private int insertionPoint(Task task) {
+        int index = Collections.binarySearch(items, task, DEFAULT_ORDER);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    private int indexOf(int id, int from) {
+        for (int i = from; i < items.size(); i++) {
+            if (items.get(i).getId() == id) {
+                return i;
+            }
+        }
+        for (int i = 0; i < from && i < items.size(); i++) {
+            if (items.get(i).getId() == id) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Задача " + id + " отсутствует в таблице");
+    }
+
+    // Версия строки меняется при каждой записи, но статус просроченных задач выставляется без перечитывания,
+    // поэтому сравниваются и показываемые поля
+    private static boolean sameContent(Task a, Task b) {
+        return a.getVersion() == b.getVersion()
+                && a.getPriority() == b.getPriority()
+                && a.getStatus() == b.getStatus()
+                && Objects.equals(a.getName(), b.getName())
+                && Objects.equals(a.getDescription(), b.getDescription())
+                && Objects.equals(a.getDueDate(), b.getDueDate())
+                && Objects.equals(a.getAssignedTo(), b.getAssignedTo())
+                && Objects.equals(a.getType(), b.getType())
+                && Objects.equals(a.getLastCompleted(), b.getLastCompleted())
+                && Objects.equals(a.getRecurrence(), b.getRecurrence());
+    }
+}
@@ -0,0 +1,84 @@
+package org.example.hometracker_kurs.dao;
+
+import java.sql.SQLException;
+
+/**
+ * Предел числа задач с одним сроком выполнения в пределах домохозяйства.
+ * Значение берётся из системного свойства {@code hometracker.dailyCapacity}.
+ *
+ * <p>Предел ограничивает запись задачи на выбранную пользователем дату. Записи, которые двигают
+ * срок сами — переход повторяющейся задачи к следующему повторению, откладывание, воспроизведение
+ * операций, принятых без связи, — выполняются в {@link #exempt(Work)}: отказ в них потерял бы
+ * уже сделанное действие, а перегруженная дата всё равно подсвечивается в таблице.
+ */
+public final class DailyCapacity {
+    public static final int DEFAULT = 1;
+    public static final String PROPERTY = "hometracker.dailyCapacity";
+
+    private static final ThreadLocal<Boolean> EXEMPT = ThreadLocal.withInitial(() -> false);
+
+    /**
+     * Работа с хранилищем, выполняемая без проверки предела.
+     *
+     * @param <T> тип результата
+     */
+    @FunctionalInterface
+    public interface Work<T> {
+        T run() throws SQLException;
+    }
+
+    private DailyCapacity() {
+    }
+
+    /**
+     * Возвращает предел, выбранный для текущего запуска.
+     *
+     * @return значение свойства {@code hometracker.dailyCapacity} или {@link #DEFAULT}
+     * @throws IllegalArgumentException если значение не является положительным числом
+     */
+    public static int current() {
+        String value = System.getProperty(PROPERTY);
+        if (value == null || value.isBlank()) {
+            return DEFAULT;
+        }
+        try {
+            int capacity = Integer.parseInt(value.trim());
+            if (capacity > 0) {
+                return capacity;
+            }
+        } catch (NumberFormatException e) {
+            // Сообщение ниже
+        }
+        throw new IllegalArgumentException("Недопустимое число задач на день: " + value
+                + " (ожидается целое положительное число)");
+    }
+
+    /**
+     * Выполняет работу, в которой хранилища этого потока не проверяют предел.
+     * Вызовы DAO выполняются в вызывающем потоке, поэтому признак действует на все записи работы,
+     * в том числе внутри её транзакций.
+     *
+     * @param work работа
+     * @param <T>  тип результата
+     * @return результат работы
+     * @throws SQLException если работа завершилась ошибкой
+     */
+    public static <T> T exempt(Work<T> work) throws SQLException {
+        boolean previous = EXEMPT.get();
+        EXEMPT.set(true);
+        try {
+            return work.run();
+        } finally {
+            EXEMPT.set(previous);
+        }
+    }
+
+    /**
+     * Проверяет, должен ли предел соблюдаться при записи в текущем потоке.
+     *
+     * @return false внутри {@link #exempt(Work)}
+     */
+    public static boolean isEnforced() {
+        return !EXEMPT.get();
+    }
+}
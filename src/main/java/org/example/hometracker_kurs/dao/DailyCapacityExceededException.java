@@ -0,0 +1,29 @@
+package org.example.hometracker_kurs.dao;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+
+/**
+ * Задачу нельзя назначить на дату: на неё уже назначено столько задач, сколько допускает {@link DailyCapacity}.
+ */
+public class DailyCapacityExceededException extends SQLException {
+    // Код SQLSTATE нарушения ограничения CHECK
+    private static final String CHECK_VIOLATION = "23514";
+
+    private final LocalDate dueDate;
+    private final int capacity;
+
+    public DailyCapacityExceededException(LocalDate dueDate, int capacity) {
+        super("Daily capacity of " + capacity + " task(s) reached for " + dueDate, CHECK_VIOLATION);
+        this.dueDate = dueDate;
+        this.capacity = capacity;
+    }
+
+    public LocalDate getDueDate() {
+        return dueDate;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
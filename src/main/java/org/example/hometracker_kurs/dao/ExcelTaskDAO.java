@@ -5,7 +5,12 @@ import javafx.collections.ObservableList;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.example.hometracker_kurs.config.ExcelConfig;
+import org.example.hometracker_kurs.model.RecurrenceRule;
 import org.example.hometracker_kurs.model.Task;
+import org.example.hometracker_kurs.model.TaskChangeSet;
+import org.example.hometracker_kurs.model.TaskField;
+import org.example.hometracker_kurs.model.TaskOccurrence;
+import org.example.hometracker_kurs.model.TaskPatch;
 import org.example.hometracker_kurs.model.TaskStatus;
 
 import java.io.File;
@@ -13,22 +18,91 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Реализация интерфейса {@link TaskDAO} для работы с задачами, хранящимися в Excel-файле.
  * Использует Apache POI для чтения и записи данных в формате XLSX.
+ * Задачи хранятся на первом листе, сохранённые повторения повторяющихся задач — на листе "Occurrences".
+ * Каждое домохозяйство хранится в отдельном файле: для домохозяйства по умолчанию используется
+ * путь из конфигурации, для остальных — {@code <имя>_<домохозяйство>.xlsx} рядом с ним.
+ *
+ * <p>Книга записывается целиком, поэтому изменение отдельных полей ({@link #patchTask}) меняет только
+ * строку в памяти, а файл сохраняется один раз для всех патчей, накопившихся за {@code flushDelay}:
+ * фоновой записью, любой другой записью, методом {@link #flush()} или при {@link #close()}.
+ * Остальные изменения записываются сразу. Состояние в памяти защищено монитором экземпляра,
+ * который берёт и фоновая запись.
  */
 public class ExcelTaskDAO implements TaskDAO {
+    /**
+     * Задержка записи файла после первого несохранённого патча.
+     */
+    public static final Duration DEFAULT_FLUSH_DELAY = Duration.ofSeconds(2);
+
     private static final Logger logger = Logger.getLogger(ExcelTaskDAO.class.getName());
+
+    // Один поток отложенной записи на все файлы: домохозяйства и бенчмарки открывают их по нескольку
+    private static final ScheduledExecutorService FLUSH_SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "excel-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private final String filePath;
+    private final String householdId;
     private final ObservableList<Task> tasks = FXCollections.observableArrayList();
+    private final int dailyCapacity = DailyCapacity.current();
     private int nextId = 1;
+    private static final String OCCURRENCES_SHEET = "Occurrences";
+    private static final String APPLIED_OPERATIONS_SHEET = "AppliedOperations";
+    private static final String SCHEDULED_JOBS_SHEET = "ScheduledJobs";
+
+    // Порядок совпадает с ORDER BY due_date, priority DESC, id в SQL-хранилищах
+    private static final Comparator<Task> TABLE_ORDER = Comparator
+            .comparing(Task::getDueDate, Comparator.nullsLast(Comparator.<LocalDate>naturalOrder()))
+            .thenComparing(Comparator.comparingInt(Task::getPriority).reversed())
+            .thenComparingInt(Task::getId);
+
+    // Сохранённые повторения по задачам, отсортированные по дате повторения
+    private final Map<Integer, NavigableMap<LocalDate, TaskOccurrence>> occurrences = new HashMap<>();
+
+    // Ключи идемпотентности применённых отложенных операций и созданные ими задачи
+    private final Map<String, Integer> appliedOperations = new LinkedHashMap<>();
+
+    // Время последнего запуска фоновых заданий по имени задания
+    private final Map<String, Instant> jobLastRuns = new LinkedHashMap<>();
+
+    // Версии строк хранятся только в памяти: при загрузке файла нумерация начинается заново
+    private long currentVersion = 0;
+    private final Map<Integer, Long> createdVersions = new HashMap<>();
+    private final Map<Integer, Long> tombstones = new HashMap<>();
+
+    // Внутри единицы работы файл не перезаписывается после каждой операции;
+    // dirty — в памяти есть изменения, которых ещё нет в файле
+    private int transactionDepth;
+    private boolean dirty;
+    private final long flushDelayMillis;
+    private ScheduledFuture<?> pendingFlush;
 
     /**
      * Создаёт экземпляр ExcelTaskDAO с указанным конфигом.
@@ -37,10 +111,64 @@ public class ExcelTaskDAO implements TaskDAO {
      * @param config конфигурационный объект, содержащий путь к Excel-файлу
      */
     public ExcelTaskDAO(ExcelConfig config) {
-        this.filePath = config.getFilePath();
+        this(config, Households.current());
+    }
+
+    /**
+     * Создаёт экземпляр ExcelTaskDAO для указанного домохозяйства.
+     *
+     * @param config      конфигурационный объект, содержащий путь к Excel-файлу
+     * @param householdId идентификатор домохозяйства
+     */
+    public ExcelTaskDAO(ExcelConfig config, String householdId) {
+        this(config.getFilePath(), householdId);
+    }
+
+    /**
+     * Создаёт экземпляр ExcelTaskDAO для указанного файла.
+     *
+     * @param filePath путь к Excel-файлу
+     */
+    public ExcelTaskDAO(String filePath) {
+        this(filePath, Households.current());
+    }
+
+    /**
+     * Создаёт экземпляр ExcelTaskDAO для указанного файла и домохозяйства.
+     *
+     * @param filePath    путь к Excel-файлу домохозяйства по умолчанию
+     * @param householdId идентификатор домохозяйства
+     */
+    public ExcelTaskDAO(String filePath, String householdId) {
+        this(filePath, householdId, DEFAULT_FLUSH_DELAY);
+    }
+
+    /**
+     * Создаёт экземпляр ExcelTaskDAO с заданной задержкой записи патчей.
+     *
+     * @param filePath    путь к Excel-файлу домохозяйства по умолчанию
+     * @param householdId идентификатор домохозяйства
+     * @param flushDelay  через сколько после первого несохранённого патча записывается файл
+     */
+    public ExcelTaskDAO(String filePath, String householdId, Duration flushDelay) {
+        this.householdId = Households.validate(householdId);
+        this.filePath = filePathFor(filePath, this.householdId);
+        this.flushDelayMillis = flushDelay.toMillis();
         loadTasks();
     }
 
+    private static String filePathFor(String basePath, String householdId) {
+        if (Households.DEFAULT.equals(householdId)) {
+            return basePath;
+        }
+        int dot = basePath.lastIndexOf('.');
+        int separator = Math.max(basePath.lastIndexOf('/'), basePath.lastIndexOf(File.separatorChar));
+        if (dot <= separator) {
+            return basePath + "_" + householdId;
+        }
+        return basePath.substring(0, dot) + "_" + householdId + basePath.substring(dot);
+    }
+
     private void loadTasks() {
         File file = new File(filePath);
         if (!file.exists()) {
@@ -61,6 +189,9 @@ public class ExcelTaskDAO implements TaskDAO {
                 try {
                     Task task = extractTaskFromRow(row);
                     if (task != null) {
+                        long version = nextVersion();
+                        task.setVersion(version);
+                        createdVersions.put(task.getId(), version);
                         tasks.add(task);
                         nextId = Math.max(nextId, task.getId() + 1);
                     }
@@ -69,13 +200,135 @@ public class ExcelTaskDAO implements TaskDAO {
                             new Object[]{row.getRowNum(), e.getMessage()});
                 }
             }
+
+            Sheet occurrenceSheet = workbook.getSheet(OCCURRENCES_SHEET);
+            if (occurrenceSheet != null) {
+                loadOccurrences(occurrenceSheet);
+            }
+
+            Sheet appliedSheet = workbook.getSheet(APPLIED_OPERATIONS_SHEET);
+            if (appliedSheet != null) {
+                loadAppliedOperations(appliedSheet);
+            }
+
+            Sheet jobsSheet = workbook.getSheet(SCHEDULED_JOBS_SHEET);
+            if (jobsSheet != null) {
+                loadScheduledJobs(jobsSheet);
+            }
         } catch (IOException e) {
             logger.log(Level.SEVERE, "Error loading Excel file: " + e.getMessage(), e);
         }
     }
 
+    private void loadAppliedOperations(Sheet sheet) {
+        Iterator<Row> rowIterator = sheet.iterator();
+        if (rowIterator.hasNext()) rowIterator.next(); // Skip header
+
+        while (rowIterator.hasNext()) {
+            Row row = rowIterator.next();
+            String key = getCellStringValue(row.getCell(0));
+            if (!key.isEmpty()) {
+                appliedOperations.put(key, getCellIntValue(row.getCell(1)));
+            }
+        }
+    }
+
+    private void loadScheduledJobs(Sheet sheet) {
+        Iterator<Row> rowIterator = sheet.iterator();
+        if (rowIterator.hasNext()) rowIterator.next(); // Skip header
+
+        while (rowIterator.hasNext()) {
+            Row row = rowIterator.next();
+            String name = getCellStringValue(row.getCell(0));
+            try {
+                if (!name.isEmpty()) {
+                    jobLastRuns.put(name, Instant.parse(getCellStringValue(row.getCell(1))));
+                }
+            } catch (DateTimeParseException e) {
+                logger.log(Level.WARNING, "Error parsing scheduled job row: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private void loadOccurrences(Sheet sheet) {
+        Iterator<Row> rowIterator = sheet.iterator();
+        if (rowIterator.hasNext()) rowIterator.next(); // Skip header
+
+        while (rowIterator.hasNext()) {
+            Row row = rowIterator.next();
+            try {
+                TaskOccurrence occurrence = new TaskOccurrence(
+                        getCellIntValue(row.getCell(0)),
+                        getCellDateValue(row.getCell(1)),
+                        TaskStatus.valueOf(getCellStringValue(row.getCell(2))),
+                        getCellDateValue(row.getCell(3)),
+                        emptyToNull(getCellStringValue(row.getCell(4))),
+                        getCellDateValue(row.getCell(5)));
+                if (occurrence.getOccurrenceDate() != null) {
+                    occurrence.setMaterialized(true);
+                    occurrencesOf(occurrence.getTaskId()).put(occurrence.getOccurrenceDate(), occurrence);
+                }
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "Error parsing occurrence row {0}: {1}",
+                        new Object[]{row.getRowNum(), e.getMessage()});
+            }
+        }
+    }
+
+    private NavigableMap<LocalDate, TaskOccurrence> occurrencesOf(int taskId) {
+        return occurrences.computeIfAbsent(taskId, id -> new TreeMap<>());
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
     @Override
-    public ObservableList<Task> getFilteredTasks(
+    public synchronized List<Task> getTasksDueBetween(LocalDate from, LocalDate to, TaskStatus status) throws SQLException {
+        return tasks.stream()
+                .filter(task -> task.getDueDate() != null
+                        && !task.getDueDate().isBefore(from)
+                        && !task.getDueDate().isAfter(to)
+                        && (status == null || task.getStatus() == status))
+                .sorted(Comparator.comparing(Task::getDueDate)
+                        .thenComparing(Comparator.comparingInt(Task::getPriority).reversed())
+                        .thenComparingInt(Task::getId))
+                .map(this::copyOf)
+                .toList();
+    }
+
+    @Override
+    public synchronized int countTasksDueOn(LocalDate date, Integer excludeId) throws SQLException {
+        return (int) tasks.stream()
+                .filter(task -> date.equals(task.getDueDate()))
+                .filter(task -> excludeId == null || task.getId() != excludeId)
+                .count();
+    }
+
+    @Override
+    public synchronized int countTasks(TaskStatus status) throws SQLException {
+        return status == null ? tasks.size() : (int) tasks.stream().filter(task -> task.getStatus() == status).count();
+    }
+
+    @Override
+    public synchronized List<Task> getTasksPage(int offset, int limit) throws SQLException {
+        return tasks.stream()
+                .sorted(TABLE_ORDER)
+                .skip(offset)
+                .limit(limit)
+                .map(this::copyOf)
+                .toList();
+    }
+
+    // Файл принадлежит одному процессу, поэтому проверка и запись не разделяются другими клиентами
+    private void checkDailyCapacity(LocalDate date, Integer excludeId) throws SQLException {
+        if (date != null && DailyCapacity.isEnforced() && countTasksDueOn(date, excludeId) >= dailyCapacity) {
+            throw new DailyCapacityExceededException(date, dailyCapacity);
+        }
+    }
+
+    @Override
+    public synchronized ObservableList<Task> getFilteredTasks(
             String type,
             String status,
             String keyword,
@@ -113,6 +366,7 @@ public class ExcelTaskDAO implements TaskDAO {
                     return matchesType && matchesStatus && matchesKeyword;
                 })
                 .sorted(comparator)
+                .map(this::copyOf)
                 .collect(FXCollections::observableArrayList, ObservableList::add, ObservableList::addAll);
     }
 
@@ -160,10 +414,13 @@ public class ExcelTaskDAO implements TaskDAO {
             TaskStatus status = TaskStatus.valueOf(getCellStringValue(row.getCell(6)));
             LocalDate lastCompleted = getCellDateValue(row.getCell(7));
             String type = getCellStringValue(row.getCell(8));
+            String recurrence = getCellStringValue(row.getCell(9));
 
             Task task = new Task(id, name, description, dueDate, priority,
                     assignedTo, status, lastCompleted);
             task.setType(type);
+            task.setRecurrence(RecurrenceRule.parse(recurrence));
+            task.setHouseholdId(householdId);
             return task;
         } catch (Exception e) {
             logger.log(Level.WARNING, "Error extracting task from row: " + e.getMessage(), e);
@@ -213,6 +470,43 @@ public class ExcelTaskDAO implements TaskDAO {
         return null;
     }
 
+    private void persist() {
+        if (transactionDepth > 0) {
+            dirty = true;
+        } else {
+            saveToFile();
+        }
+    }
+
+    // Патчи копятся в памяти; запись запланирована один раз на все патчи, пришедшие до неё
+    private void persistLater() {
+        dirty = true;
+        if (transactionDepth == 0 && pendingFlush == null) {
+            pendingFlush = FLUSH_SCHEDULER.schedule(this::flushInBackground, flushDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void flushInBackground() {
+        pendingFlush = null;
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            // Изменения остаются в памяти и будут записаны следующей записью или при закрытии
+            logger.log(Level.WARNING, "Deferred save of " + filePath + " failed", e);
+        }
+    }
+
+    /**
+     * Записывает в файл изменения, сохранение которых отложено.
+     *
+     * @throws RuntimeException если файл не удалось записать
+     */
+    public synchronized void flush() {
+        if (dirty && transactionDepth == 0) {
+            saveToFile();
+        }
+    }
+
     private void saveToFile() {
         try (Workbook workbook = new XSSFWorkbook();
              FileOutputStream fos = new FileOutputStream(filePath)) {
@@ -226,7 +520,7 @@ public class ExcelTaskDAO implements TaskDAO {
 
             Row headerRow = sheet.createRow(0);
             String[] headers = {"ID", "Name", "Description", "Due Date", "Priority",
-                    "Assigned To", "Status", "Last Completed", "Type"};
+                    "Assigned To", "Status", "Last Completed", "Type", "Recurrence"};
 
             for (int i = 0; i < headers.length; i++) {
                 Cell cell = headerRow.createCell(i);
@@ -255,26 +549,110 @@ public class ExcelTaskDAO implements TaskDAO {
                 }
 
                 row.createCell(8).setCellValue(task.getType());
+
+                if (task.getRecurrence() != null) {
+                    row.createCell(9).setCellValue(task.getRecurrence().format());
+                }
             }
 
             for (int i = 0; i < headers.length; i++) {
                 sheet.autoSizeColumn(i);
             }
 
+            writeOccurrences(workbook.createSheet(OCCURRENCES_SHEET), headerStyle);
+            writeAppliedOperations(workbook.createSheet(APPLIED_OPERATIONS_SHEET), headerStyle);
+            writeScheduledJobs(workbook.createSheet(SCHEDULED_JOBS_SHEET), headerStyle);
+
             workbook.write(fos);
+            dirty = false;
+            if (pendingFlush != null) {
+                pendingFlush.cancel(false);
+                pendingFlush = null;
+            }
         } catch (IOException e) {
             logger.log(Level.SEVERE, "Error saving to Excel file: " + e.getMessage(), e);
             throw new RuntimeException("Failed to save tasks to Excel file", e);
         }
     }
 
+    private void writeAppliedOperations(Sheet sheet, CellStyle headerStyle) {
+        Row headerRow = sheet.createRow(0);
+        String[] headers = {"Operation Key", "Task ID"};
+        for (int i = 0; i < headers.length; i++) {
+            Cell cell = headerRow.createCell(i);
+            cell.setCellValue(headers[i]);
+            cell.setCellStyle(headerStyle);
+        }
+
+        int rowIndex = 1;
+        for (Map.Entry<String, Integer> entry : appliedOperations.entrySet()) {
+            Row row = sheet.createRow(rowIndex++);
+            row.createCell(0).setCellValue(entry.getKey());
+            row.createCell(1).setCellValue(entry.getValue());
+        }
+    }
+
+    private void writeScheduledJobs(Sheet sheet, CellStyle headerStyle) {
+        Row headerRow = sheet.createRow(0);
+        String[] headers = {"Job Name", "Last Run"};
+        for (int i = 0; i < headers.length; i++) {
+            Cell cell = headerRow.createCell(i);
+            cell.setCellValue(headers[i]);
+            cell.setCellStyle(headerStyle);
+        }
+
+        int rowIndex = 1;
+        for (Map.Entry<String, Instant> entry : jobLastRuns.entrySet()) {
+            Row row = sheet.createRow(rowIndex++);
+            row.createCell(0).setCellValue(entry.getKey());
+            row.createCell(1).setCellValue(entry.getValue().toString());
+        }
+    }
+
+    private void writeOccurrences(Sheet sheet, CellStyle headerStyle) {
+        Row headerRow = sheet.createRow(0);
+        String[] headers = {"Task ID", "Occurrence Date", "Status", "Due Date", "Assigned To", "Completed Date"};
+        for (int i = 0; i < headers.length; i++) {
+            Cell cell = headerRow.createCell(i);
+            cell.setCellValue(headers[i]);
+            cell.setCellStyle(headerStyle);
+        }
+
+        int rowIndex = 1;
+        for (NavigableMap<LocalDate, TaskOccurrence> byDate : occurrences.values()) {
+            for (TaskOccurrence occurrence : byDate.values()) {
+                Row row = sheet.createRow(rowIndex++);
+                row.createCell(0).setCellValue(occurrence.getTaskId());
+                row.createCell(1).setCellValue(occurrence.getOccurrenceDate().toString());
+                row.createCell(2).setCellValue(occurrence.getStatus().name());
+                if (occurrence.getDueDate() != null) {
+                    row.createCell(3).setCellValue(occurrence.getDueDate().toString());
+                }
+                if (occurrence.getAssignedTo() != null) {
+                    row.createCell(4).setCellValue(occurrence.getAssignedTo());
+                }
+                if (occurrence.getCompletedDate() != null) {
+                    row.createCell(5).setCellValue(occurrence.getCompletedDate().toString());
+                }
+            }
+        }
+    }
+
     @Override
-    public ObservableList<Task> getAllTasks() throws SQLException {
-        return tasks;
+    public synchronized ObservableList<Task> getAllTasks() throws SQLException {
+        // Вызывающий получает копии: изменения строк доходят до таблицы только через updateTask и getChangesSince
+        return tasks.stream()
+                .sorted(TABLE_ORDER)
+                .map(this::copyOf)
+                .collect(FXCollections::observableArrayList, ObservableList::add, ObservableList::addAll);
     }
 
     @Override
-    public Task getTaskById(int id) throws SQLException {
+    public synchronized Task getTaskById(int id) throws SQLException {
+        return copyOf(findTask(id));
+    }
+
+    private Task findTask(int id) throws SQLException {
         return tasks.stream()
                 .filter(task -> task.getId() == id)
                 .findFirst()
@@ -282,16 +660,21 @@ public class ExcelTaskDAO implements TaskDAO {
     }
 
     @Override
-    public void addTask(Task task) throws SQLException {
+    public synchronized void addTask(Task task) throws SQLException {
         validateTask(task);
 
         if (tasks.stream().anyMatch(t -> t.getId() == task.getId())) {
             throw new SQLException("Task with id " + task.getId() + " already exists");
         }
+        checkDailyCapacity(task.getDueDate(), null);
 
         task.setId(nextId++);
-        tasks.add(task);
-        saveToFile();
+        task.setHouseholdId(householdId);
+        long version = nextVersion();
+        task.setVersion(version);
+        createdVersions.put(task.getId(), version);
+        tasks.add(copyOf(task));
+        persist();
     }
 
     private void validateTask(Task task) throws SQLException {
@@ -313,10 +696,13 @@ public class ExcelTaskDAO implements TaskDAO {
     }
 
     @Override
-    public void updateTask(Task task) throws SQLException {
+    public synchronized void updateTask(Task task) throws SQLException {
         validateTask(task);
 
-        Task existing = getTaskById(task.getId());
+        Task existing = findTask(task.getId());
+        if (!Objects.equals(existing.getDueDate(), task.getDueDate())) {
+            checkDailyCapacity(task.getDueDate(), task.getId());
+        }
         existing.setName(task.getName());
         existing.setDescription(task.getDescription());
         existing.setDueDate(task.getDueDate());
@@ -325,66 +711,306 @@ public class ExcelTaskDAO implements TaskDAO {
         existing.setStatus(task.getStatus());
         existing.setLastCompleted(task.getLastCompleted());
         existing.setType(task.getType());
+        existing.setRecurrence(task.getRecurrence());
+
+        long version = nextVersion();
+        existing.setVersion(version);
+        task.setVersion(version);
+
+        persist();
+    }
+
+    @Override
+    public synchronized void patchTask(int id, TaskPatch patch) throws SQLException {
+        if (patch == null) {
+            throw new SQLException("Patch cannot be null");
+        }
+        if (patch.isEmpty()) {
+            return;
+        }
 
-        int index = tasks.indexOf(task);
-        if (index >= 0) {
-            tasks.set(index, task); // это заставит UI обновить строку
+        // Патч применяется к копии, чтобы недопустимое значение не оставило строку изменённой наполовину
+        Task existing = findTask(id);
+        Task patched = copyOf(existing);
+        try {
+            patch.applyTo(patched);
+        } catch (IllegalArgumentException e) {
+            throw new SQLException(e.getMessage(), e);
+        }
+        if (patch.contains(TaskField.DUE_DATE) && !patch.contains(TaskField.STATUS)) {
+            LocalDate dueDate = patched.getDueDate();
+            if (dueDate != null && dueDate.isBefore(LocalDate.now())) {
+                if (patched.getStatus() != TaskStatus.COMPLETED) {
+                    patched.setStatus(TaskStatus.OVERDUE);
+                }
+            } else if (patched.getStatus() == TaskStatus.OVERDUE) {
+                patched.setStatus(TaskStatus.ACTIVE);
+            }
+        }
+        validateTask(patched);
+        if (!Objects.equals(existing.getDueDate(), patched.getDueDate())) {
+            checkDailyCapacity(patched.getDueDate(), id);
         }
 
-        saveToFile();
+        patch.applyTo(existing);
+        if (existing.getStatus() != patched.getStatus()) {
+            existing.setStatus(patched.getStatus());
+        }
+        existing.setVersion(nextVersion());
+        persistLater();
     }
 
     @Override
-    public void deleteTask(int id) throws SQLException {
+    public synchronized void deleteTask(int id) throws SQLException {
         if (!tasks.removeIf(task -> task.getId() == id)) {
             throw new SQLException("Task not found with id: " + id);
         }
-        saveToFile();
+        createdVersions.remove(id);
+        occurrences.remove(id);
+        tombstones.put(id, nextVersion());
+        persist();
     }
 
     @Override
-    public void updateTaskStatus(int id, TaskStatus status) throws SQLException {
-        Task task = getTaskById(id);
+    public synchronized void updateTaskStatus(int id, TaskStatus status) throws SQLException {
+        Task task = findTask(id);
         task.setStatus(status);
 
         if (status == TaskStatus.COMPLETED) {
             task.setLastCompleted(LocalDate.now());
         }
+        task.setVersion(nextVersion());
 
-        saveToFile();
-
-        // Явно обновляем данные в списке
-        int index = tasks.indexOf(task);
-        if (index >= 0) {
-            tasks.set(index, task);
-        }
+        persist();
     }
 
     @Override
-    public void markTaskAsCompleted(int id) throws SQLException {
+    public synchronized void markTaskAsCompleted(int id) throws SQLException {
         updateTaskStatus(id, TaskStatus.COMPLETED);
     }
 
     @Override
-    public void postponeTask(Task task, int days) throws SQLException {
+    public synchronized void postponeTask(Task task, int days) throws SQLException {
         if (task.getStatus() != TaskStatus.ACTIVE && task.getStatus() != TaskStatus.OVERDUE) {
             throw new SQLException("Можно откладывать только активные или просроченные задачи");
         }
 
+        Task existing = findTask(task.getId());
         task.setStatus(TaskStatus.POSTPONED);
         task.setDueDate(task.getDueDate().plusDays(days));
+        task.setVersion(nextVersion());
+        existing.setStatus(task.getStatus());
+        existing.setDueDate(task.getDueDate());
+        existing.setVersion(task.getVersion());
 
-        // Явное обновление в списке
-        int index = tasks.indexOf(task);
-        if (index >= 0) {
-            tasks.set(index, task);
+        persist();
+    }
+
+    @Override
+    public synchronized long getCurrentVersion() throws SQLException {
+        return currentVersion;
+    }
+
+    @Override
+    public synchronized TaskChangeSet getChangesSince(long version) throws SQLException {
+        List<Task> inserted = new ArrayList<>();
+        List<Task> updated = new ArrayList<>();
+        List<Integer> deletedIds = new ArrayList<>();
+
+        for (Task task : tasks) {
+            if (task.getVersion() > version) {
+                if (createdVersions.getOrDefault(task.getId(), 0L) > version) {
+                    inserted.add(copyOf(task));
+                } else {
+                    updated.add(copyOf(task));
+                }
+            }
         }
+        tombstones.forEach((id, deletedAt) -> {
+            if (deletedAt > version) {
+                deletedIds.add(id);
+            }
+        });
 
-        saveToFile();
+        return new TaskChangeSet(inserted, updated, deletedIds, Math.max(version, currentVersion));
     }
 
     @Override
-    public void close() throws SQLException {
-        // Нет ресурсов для закрытия экселя
+    public synchronized void saveOccurrence(TaskOccurrence occurrence) throws SQLException {
+        if (occurrence == null || occurrence.getOccurrenceDate() == null || occurrence.getStatus() == null) {
+            throw new SQLException("Occurrence date and status cannot be null");
+        }
+        findTask(occurrence.getTaskId());
+
+        TaskOccurrence stored = copyOf(occurrence);
+        stored.setMaterialized(true);
+        occurrencesOf(occurrence.getTaskId()).put(occurrence.getOccurrenceDate(), stored);
+        occurrence.setMaterialized(true);
+        persist();
+    }
+
+    @Override
+    public synchronized List<TaskOccurrence> getOccurrences(LocalDate from, LocalDate to) throws SQLException {
+        List<TaskOccurrence> result = new ArrayList<>();
+        for (NavigableMap<LocalDate, TaskOccurrence> byDate : occurrences.values()) {
+            for (TaskOccurrence occurrence : byDate.subMap(from, true, to, true).values()) {
+                result.add(copyOf(occurrence));
+            }
+        }
+        result.sort(Comparator.comparing(TaskOccurrence::getOccurrenceDate)
+                .thenComparingInt(TaskOccurrence::getTaskId));
+        return result;
+    }
+
+    @Override
+    public synchronized List<TaskOccurrence> getOccurrences(int taskId) throws SQLException {
+        NavigableMap<LocalDate, TaskOccurrence> byDate = occurrences.get(taskId);
+        List<TaskOccurrence> result = new ArrayList<>();
+        if (byDate != null) {
+            for (TaskOccurrence occurrence : byDate.values()) {
+                result.add(copyOf(occurrence));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized Map<String, Integer> getAppliedOperations(Collection<String> keys) throws SQLException {
+        Map<String, Integer> result = new HashMap<>();
+        for (String key : keys) {
+            Integer taskId = appliedOperations.get(key);
+            if (taskId != null) {
+                result.put(key, taskId);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized void markOperationApplied(String key, int taskId) throws SQLException {
+        if (key == null || key.isBlank()) {
+            throw new SQLException("Operation key cannot be empty");
+        }
+        if (appliedOperations.putIfAbsent(key, taskId) != null) {
+            throw new SQLException("Operation already applied: " + key);
+        }
+        persist();
+    }
+
+    @Override
+    public synchronized Instant getJobLastRun(String name) throws SQLException {
+        return jobLastRuns.get(name);
+    }
+
+    /**
+     * Отмечает запуск задания. Файл принадлежит одному процессу, поэтому достаточно
+     * сравнить с последней отметкой под блокировкой DAO.
+     */
+    @Override
+    public synchronized boolean claimJobRun(String name, Instant scheduledFor) throws SQLException {
+        Instant lastRun = jobLastRuns.get(name);
+        if (lastRun != null && !lastRun.isBefore(scheduledFor)) {
+            return false;
+        }
+        jobLastRuns.put(name, scheduledFor);
+        persist();
+        return true;
+    }
+
+    @Override
+    public void ping() {
+        // Локальный файл доступен всегда, пока доступен сам процесс
+    }
+
+    /**
+     * Выполняет единицу работы с одним сохранением файла в конце.
+     * При ошибке состояние в памяти возвращается к моменту начала работы, файл не изменяется.
+     */
+    @Override
+    public synchronized <T> T inTransaction(UnitOfWork<T> work) throws SQLException {
+        if (transactionDepth > 0) {
+            return work.execute(this);
+        }
+
+        List<Task> snapshot = new ArrayList<>(tasks.size());
+        for (Task task : tasks) {
+            snapshot.add(copyOf(task));
+        }
+        int savedNextId = nextId;
+        long savedVersion = currentVersion;
+        Map<Integer, Long> savedCreatedVersions = new HashMap<>(createdVersions);
+        Map<Integer, Long> savedTombstones = new HashMap<>(tombstones);
+        Map<Integer, NavigableMap<LocalDate, TaskOccurrence>> savedOccurrences = new HashMap<>();
+        occurrences.forEach((id, byDate) -> savedOccurrences.put(id, new TreeMap<>(byDate)));
+        Map<String, Integer> savedAppliedOperations = new LinkedHashMap<>(appliedOperations);
+        Map<String, Instant> savedJobLastRuns = new LinkedHashMap<>(jobLastRuns);
+        boolean savedDirty = dirty;
+
+        transactionDepth++;
+        try {
+            T result = work.execute(this);
+            if (dirty) {
+                saveToFile();
+            }
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            tasks.setAll(snapshot);
+            nextId = savedNextId;
+            currentVersion = savedVersion;
+            createdVersions.clear();
+            createdVersions.putAll(savedCreatedVersions);
+            tombstones.clear();
+            tombstones.putAll(savedTombstones);
+            occurrences.clear();
+            occurrences.putAll(savedOccurrences);
+            appliedOperations.clear();
+            appliedOperations.putAll(savedAppliedOperations);
+            jobLastRuns.clear();
+            jobLastRuns.putAll(savedJobLastRuns);
+            // Патчи, отложенные до начала работы, остались в восстановленном состоянии и ждут записи
+            dirty = savedDirty;
+            throw e;
+        } finally {
+            transactionDepth--;
+        }
+    }
+
+    private Task copyOf(Task task) {
+        Task copy = new Task(task.getId(), task.getName(), task.getDescription(), task.getDueDate(),
+                task.getPriority(), task.getAssignedTo(), task.getStatus(), task.getLastCompleted());
+        copy.setType(task.getType());
+        copy.setVersion(task.getVersion());
+        copy.setRecurrence(task.getRecurrence());
+        copy.setHouseholdId(task.getHouseholdId());
+        return copy;
+    }
+
+    private TaskOccurrence copyOf(TaskOccurrence occurrence) {
+        TaskOccurrence copy = new TaskOccurrence(occurrence.getTaskId(), occurrence.getOccurrenceDate(),
+                occurrence.getStatus(), occurrence.getDueDate(), occurrence.getAssignedTo(),
+                occurrence.getCompletedDate());
+        copy.setMaterialized(occurrence.isMaterialized());
+        return copy;
+    }
+
+    private long nextVersion() {
+        return ++currentVersion;
+    }
+
+    @Override
+    public String getHouseholdId() {
+        return householdId;
+    }
+
+    /**
+     * Записывает отложенные изменения. Других ресурсов у файла нет.
+     */
+    @Override
+    public synchronized void close() throws SQLException {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            throw new SQLException("Failed to save tasks to Excel file " + filePath, e);
+        }
     }
 }
\ No newline at end of file
@@ -3,11 +3,28 @@ package org.example.hometracker_kurs.dao;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import org.example.hometracker_kurs.config.DatabaseConfig;
+import org.example.hometracker_kurs.model.RecurrenceRule;
 import org.example.hometracker_kurs.model.Task;
+import org.example.hometracker_kurs.model.TaskChangeSet;
+import org.example.hometracker_kurs.model.TaskField;
+import org.example.hometracker_kurs.model.TaskOccurrence;
+import org.example.hometracker_kurs.model.TaskPatch;
 import org.example.hometracker_kurs.model.TaskStatus;
 
 import java.sql.*;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -15,10 +32,21 @@ import java.util.logging.Logger;
  * Реализация интерфейса {@link TaskDAO}, использующая встроенную базу данных H2
  * для хранения и управления задачами.
  * Поддерживает операции CRUD и фильтрацию задач.
+ * Все запросы ограничены одним домохозяйством; индексы начинаются со столбца {@code household_id}.
+ * В офлайн-режиме служит локальной репликой: хранит метки {@link HybridLogicalClock},
+ * отметки синхронизации и соответствие локальных идентификаторов удалённым.
  */
-public class H2TaskDAO implements TaskDAO {
+public class H2TaskDAO implements ReplicaStore {
     private static final Logger logger = Logger.getLogger(H2TaskDAO.class.getName());
+    private static final int PING_TIMEOUT_SECONDS = 2;
+    // Одна блокировка на базу: с ней работают несколько соединений процесса, например реплика и её синхронизация
+    private static final Map<String, ReentrantReadWriteLock> VERSION_LOCKS = new ConcurrentHashMap<>();
     private final Connection connection;
+    private final ReentrantReadWriteLock versionLock;
+    private final String householdId;
+    private final HybridLogicalClock clock = HybridLogicalClock.system();
+    private final int dailyCapacity = DailyCapacity.current();
+    private int transactionDepth;
 
     /**
      * Конструктор, устанавливающий соединение с H2 и выполняющий инициализацию таблиц.
@@ -27,11 +55,45 @@ public class H2TaskDAO implements TaskDAO {
      * @throws SQLException если возникает ошибка при подключении
      */
     public H2TaskDAO(DatabaseConfig dbConfig) throws SQLException {
-        this.connection = DriverManager.getConnection(
-                dbConfig.getH2Url(),
-                dbConfig.getH2User(),
-                dbConfig.getH2Password()
-        );
+        this(dbConfig, Households.current());
+    }
+
+    /**
+     * Конструктор, устанавливающий соединение с H2 для указанного домохозяйства.
+     *
+     * @param dbConfig    конфигурационный объект с параметрами подключения к H2
+     * @param householdId идентификатор домохозяйства
+     * @throws SQLException если возникает ошибка при подключении
+     */
+    public H2TaskDAO(DatabaseConfig dbConfig, String householdId) throws SQLException {
+        this(dbConfig.getH2Url(), dbConfig.getH2User(), dbConfig.getH2Password(), householdId);
+    }
+
+    /**
+     * Конструктор, подключающийся к H2 по явно заданным параметрам.
+     *
+     * @param url      JDBC URL базы данных H2
+     * @param user     имя пользователя
+     * @param password пароль
+     * @throws SQLException если возникает ошибка при подключении
+     */
+    public H2TaskDAO(String url, String user, String password) throws SQLException {
+        this(url, user, password, Households.current());
+    }
+
+    /**
+     * Конструктор, подключающийся к H2 по явно заданным параметрам для указанного домохозяйства.
+     *
+     * @param url         JDBC URL базы данных H2
+     * @param user        имя пользователя
+     * @param password    пароль
+     * @param householdId идентификатор домохозяйства
+     * @throws SQLException если возникает ошибка при подключении
+     */
+    public H2TaskDAO(String url, String user, String password, String householdId) throws SQLException {
+        this.householdId = Households.validate(householdId);
+        this.versionLock = VERSION_LOCKS.computeIfAbsent(url, key -> new ReentrantReadWriteLock(true));
+        this.connection = DriverManager.getConnection(url, user, password);
         createTable();
         migrateDatabase();
         updateOverdueTasks();
@@ -48,7 +110,8 @@ public class H2TaskDAO implements TaskDAO {
                 assigned_to VARCHAR(50),
                 status VARCHAR(20) NOT NULL CHECK (status IN ('ACTIVE', 'COMPLETED', 'POSTPONED', 'CANCELLED', 'OVERDUE')),
                 last_completed DATE,
-                type VARCHAR(50)
+                type VARCHAR(50),
+                household_id VARCHAR(40) DEFAULT 'default' NOT NULL
             )
             """;
         try (Statement stmt = connection.createStatement()) {
@@ -58,23 +121,163 @@ public class H2TaskDAO implements TaskDAO {
 
     private void migrateDatabase() throws SQLException {
         try (Statement stmt = connection.createStatement()) {
+            stmt.execute("ALTER TABLE tasks ADD COLUMN IF NOT EXISTS recurrence VARCHAR(200)");
+            if (columnExists("TASKS", "FREQUENCY_DAYS")) {
+                // Старый столбец означал «повторять через N дней» — переносим его в правило повторения
+                stmt.executeUpdate("""
+                    UPDATE tasks SET recurrence = CONCAT('FREQ=CUSTOM;INTERVAL=', frequency_days,
+                                                         ';DTSTART=', COALESCE(due_date, CURRENT_DATE))
+                    WHERE frequency_days > 0 AND recurrence IS NULL
+                    """);
+            }
             stmt.execute("ALTER TABLE tasks DROP COLUMN IF EXISTS frequency_days");
             stmt.execute("ALTER TABLE tasks DROP COLUMN IF EXISTS created_at");
             stmt.execute("ALTER TABLE tasks DROP COLUMN IF EXISTS updated_at");
             stmt.execute("ALTER TABLE tasks ADD COLUMN IF NOT EXISTS type VARCHAR(50)");
             stmt.execute("UPDATE tasks SET type = 'Домашние дела' WHERE type IS NULL");
+
+            // Версии строк для инкрементального обновления: version меняется при каждой записи,
+            // created_version фиксируется при вставке, удаления попадают в task_tombstones
+            stmt.execute("CREATE SEQUENCE IF NOT EXISTS task_version_seq");
+            stmt.execute("ALTER TABLE tasks ADD COLUMN IF NOT EXISTS version BIGINT DEFAULT 0 NOT NULL");
+            stmt.execute("ALTER TABLE tasks ADD COLUMN IF NOT EXISTS created_version BIGINT DEFAULT 0 NOT NULL");
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS task_tombstones (
+                    id INTEGER PRIMARY KEY,
+                    version BIGINT NOT NULL
+                )
+                """);
+
+            // Повторения хранятся только выполненные или изменённые, остальные вычисляются по правилу
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS task_occurrences (
+                    task_id INTEGER NOT NULL,
+                    occurrence_date DATE NOT NULL,
+                    status VARCHAR(20) NOT NULL,
+                    due_date DATE,
+                    assigned_to VARCHAR(50),
+                    completed_date DATE,
+                    PRIMARY KEY (task_id, occurrence_date)
+                )
+                """);
+
+            // Домохозяйства: существующие строки относятся к домохозяйству по умолчанию,
+            // все индексы начинаются с household_id, чтобы запросы одной семьи не затрагивали чужие строки
+            stmt.execute("ALTER TABLE tasks ADD COLUMN IF NOT EXISTS household_id VARCHAR(40) DEFAULT 'default' NOT NULL");
+            stmt.execute("ALTER TABLE task_tombstones ADD COLUMN IF NOT EXISTS household_id VARCHAR(40) DEFAULT 'default' NOT NULL");
+            stmt.execute("ALTER TABLE task_occurrences ADD COLUMN IF NOT EXISTS household_id VARCHAR(40) DEFAULT 'default' NOT NULL");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_tasks_household_due ON tasks(household_id, due_date, priority)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_tasks_household_status_due ON tasks(household_id, status, due_date)");
+            // Окна таблицы читаются в порядке индекса, без сортировки всех задач на каждый запрос
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_tasks_household_page ON tasks(household_id, due_date, priority DESC, id)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_tasks_household_type ON tasks(household_id, type)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_tasks_household_version ON tasks(household_id, version)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_task_tombstones_household_version ON task_tombstones(household_id, version)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_task_occurrences_household_date ON task_occurrences(household_id, occurrence_date)");
+            // Версия повторения берётся из той же последовательности, что и версии задач: по ней реплика
+            // находит повторения, изменённые с прошлого обмена
+            stmt.execute("ALTER TABLE task_occurrences ADD COLUMN IF NOT EXISTS version BIGINT DEFAULT 0 NOT NULL");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_task_occurrences_household_version ON task_occurrences(household_id, version)");
+            stmt.execute("DROP INDEX IF EXISTS idx_tasks_household_status");
+            stmt.execute("DROP INDEX IF EXISTS idx_tasks_version");
+            stmt.execute("DROP INDEX IF EXISTS idx_task_tombstones_version");
+            stmt.execute("DROP INDEX IF EXISTS idx_task_occurrences_date");
+
+            // Ключи идемпотентности отложенных операций: повторная отправка уже применённой операции пропускается
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS applied_operations (
+                    op_key VARCHAR(64) PRIMARY KEY,
+                    household_id VARCHAR(40) NOT NULL,
+                    task_id INTEGER,
+                    applied_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL
+                )
+                """);
+
+            // Строка на каждую занятую дату: блокировка строки упорядочивает проверку предела задач на день
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS due_date_locks (
+                    household_id VARCHAR(40) NOT NULL,
+                    due_date DATE NOT NULL,
+                    PRIMARY KEY (household_id, due_date)
+                )
+                """);
+
+            // Время последнего запуска фоновых заданий: пропущенный запуск догоняется после перезапуска
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS scheduled_jobs (
+                    household_id VARCHAR(40) NOT NULL,
+                    name VARCHAR(64) NOT NULL,
+                    last_run TIMESTAMP WITH TIME ZONE NOT NULL,
+                    PRIMARY KEY (household_id, name)
+                )
+                """);
+
+            // Офлайн-режим: метка последнего изменения строки, отметки обмена с сервером
+            // и соответствие локальных идентификаторов серверным
+            stmt.execute("ALTER TABLE tasks ADD COLUMN IF NOT EXISTS hlc BIGINT DEFAULT 0 NOT NULL");
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS sync_watermarks (
+                    household_id VARCHAR(40) NOT NULL,
+                    name VARCHAR(20) NOT NULL,
+                    mark BIGINT NOT NULL,
+                    PRIMARY KEY (household_id, name)
+                )
+                """);
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS sync_id_map (
+                    household_id VARCHAR(40) NOT NULL,
+                    local_id INTEGER NOT NULL,
+                    remote_id INTEGER NOT NULL,
+                    PRIMARY KEY (household_id, local_id)
+                )
+                """);
+            stmt.execute("CREATE UNIQUE INDEX IF NOT EXISTS idx_sync_id_map_remote ON sync_id_map(household_id, remote_id)");
+        }
+    }
+
+    private boolean columnExists(String table, String column) throws SQLException {
+        try (ResultSet rs = connection.getMetaData().getColumns(null, null, table, column)) {
+            return rs.next();
         }
     }
 
     @Override
     public ObservableList<Task> getAllTasks() throws SQLException {
         ObservableList<Task> result = FXCollections.observableArrayList();
-        String sql = "SELECT * FROM tasks ORDER BY due_date, priority DESC";
+        String sql = "SELECT * FROM tasks WHERE household_id = ? ORDER BY due_date, priority DESC, id";
 
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            while (rs.next()) {
-                result.add(extractTaskFromResultSet(rs));
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, householdId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    result.add(extractTaskFromResultSet(rs));
+                }
+            }
+        }
+        return result;
+    }
+
+    // Запрос со статусом обслуживается индексом (household_id, status, due_date) одним диапазоном
+    @Override
+    public List<Task> getTasksDueBetween(LocalDate from, LocalDate to, TaskStatus status) throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT * FROM tasks WHERE household_id = ? AND due_date BETWEEN ? AND ?");
+        if (status != null) {
+            sql.append(" AND status = ?");
+        }
+        sql.append(" ORDER BY due_date, priority DESC, id");
+
+        List<Task> result = new ArrayList<>();
+        try (PreparedStatement stmt = connection.prepareStatement(sql.toString())) {
+            stmt.setString(1, householdId);
+            stmt.setDate(2, Date.valueOf(from));
+            stmt.setDate(3, Date.valueOf(to));
+            if (status != null) {
+                stmt.setString(4, status.name());
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    result.add(extractTaskFromResultSet(rs));
+                }
             }
         }
         return result;
@@ -83,7 +286,7 @@ public class H2TaskDAO implements TaskDAO {
     @Override
     public ObservableList<Task> getFilteredTasks(String type, String status, String keyword, String sortField, boolean ascending) throws SQLException {
         ObservableList<Task> result = FXCollections.observableArrayList();
-        StringBuilder sql = new StringBuilder("SELECT * FROM tasks WHERE 1=1");
+        StringBuilder sql = new StringBuilder("SELECT * FROM tasks WHERE household_id = ?");
 
         if (type != null && !type.isEmpty() && !type.equals("Все")) {
             sql.append(" AND type = ?");
@@ -117,6 +320,7 @@ public class H2TaskDAO implements TaskDAO {
 
         try (PreparedStatement stmt = connection.prepareStatement(sql.toString())) {
             int index = 1;
+            stmt.setString(index++, householdId);
 
             if (type != null && !type.isEmpty() && !type.equals("Все")) {
                 stmt.setString(index++, type);
@@ -150,14 +354,19 @@ public class H2TaskDAO implements TaskDAO {
                 rs.getDate("last_completed") != null ? rs.getDate("last_completed").toLocalDate() : null
         );
         task.setType(rs.getString("type"));
+        task.setVersion(rs.getLong("version"));
+        task.setRecurrence(RecurrenceRule.parse(rs.getString("recurrence")));
+        task.setHouseholdId(rs.getString("household_id"));
+        task.setHlc(rs.getLong("hlc"));
         return task;
     }
 
     @Override
     public Task getTaskById(int id) throws SQLException {
-        String sql = "SELECT * FROM tasks WHERE id = ?";
+        String sql = "SELECT * FROM tasks WHERE id = ? AND household_id = ?";
         try (PreparedStatement stmt = connection.prepareStatement(sql)) {
             stmt.setInt(1, id);
+            stmt.setString(2, householdId);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
                     return extractTaskFromResultSet(rs);
@@ -174,21 +383,28 @@ public class H2TaskDAO implements TaskDAO {
         }
 
         validateTask(task);
+        task.setHlc(clock.now());
+        inTransaction(dao -> {
+            reserveDueDate(task.getDueDate(), null);
+            insertTask(task);
+            return null;
+        });
+    }
 
+    private void insertTask(Task task) throws SQLException {
+        task.setHouseholdId(householdId);
+
+        // В H2 NEXT VALUE FOR возвращает одно и то же значение в пределах одной строки
         String sql = """
-            INSERT INTO tasks (name, description, due_date, priority, assigned_to, status, last_completed, type)
-            VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+            INSERT INTO tasks (name, description, due_date, priority, assigned_to, status, last_completed, type,
+                               recurrence, household_id, hlc, version, created_version)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, NEXT VALUE FOR task_version_seq, NEXT VALUE FOR task_version_seq)
             """;
 
         try (PreparedStatement stmt = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            stmt.setString(1, task.getName());
-            stmt.setString(2, task.getDescription());
-            stmt.setDate(3, task.getDueDate() != null ? Date.valueOf(task.getDueDate()) : null);
-            stmt.setInt(4, task.getPriority());
-            stmt.setString(5, task.getAssignedTo());
-            stmt.setString(6, task.getStatus().name());
-            stmt.setDate(7, task.getLastCompleted() != null ? Date.valueOf(task.getLastCompleted()) : null);
-            stmt.setString(8, task.getType());
+            bindTaskFields(stmt, task);
+            stmt.setString(10, householdId);
+            stmt.setLong(11, task.getHlc());
 
             stmt.executeUpdate();
             try (ResultSet rs = stmt.getGeneratedKeys()) {
@@ -208,48 +424,384 @@ public class H2TaskDAO implements TaskDAO {
         }
 
         validateTask(task);
+        task.setHlc(clock.now());
+        inTransaction(dao -> {
+            reserveMovedDueDate(task.getId(), task.getDueDate());
+            if (!updateRow(task, false)) {
+                throw new SQLException("Task not found with id: " + task.getId());
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void patchTask(int id, TaskPatch patch) throws SQLException {
+        validatePatch(patch);
+        if (patch.isEmpty()) {
+            return;
+        }
+        TaskPatch checked = withOverdueStatus(id, patch);
+        inTransaction(dao -> {
+            if (checked.contains(TaskField.DUE_DATE)) {
+                reserveMovedDueDate(id, (LocalDate) checked.get(TaskField.DUE_DATE));
+            }
+            patchRow(id, checked);
+            return null;
+        });
+    }
+
+    private void patchRow(int id, TaskPatch patch) throws SQLException {
+        StringBuilder sql = new StringBuilder("UPDATE tasks SET ");
+        for (TaskField field : patch.getFields()) {
+            // Имена столбцов берутся из перечисления, в запрос подставляются только параметры
+            sql.append(field.getColumn()).append(" = ?, ");
+        }
+        if (patch.contains(TaskField.DUE_DATE) && !patch.contains(TaskField.STATUS)) {
+            // Статус пересчитывается по новому сроку прямо в запросе, без чтения строки
+            LocalDate dueDate = (LocalDate) patch.get(TaskField.DUE_DATE);
+            sql.append(dueDate != null && dueDate.isBefore(LocalDate.now())
+                    ? "status = CASE WHEN status = 'COMPLETED' THEN status ELSE 'OVERDUE' END, "
+                    : "status = CASE WHEN status = 'OVERDUE' THEN 'ACTIVE' ELSE status END, ");
+        }
+        sql.append("hlc = ?, version = NEXT VALUE FOR task_version_seq WHERE id = ? AND household_id = ?");
+
+        try (PreparedStatement stmt = connection.prepareStatement(sql.toString())) {
+            int index = 1;
+            for (Map.Entry<TaskField, Object> entry : patch.getValues().entrySet()) {
+                bindPatchValue(stmt, index++, entry.getKey(), entry.getValue());
+            }
+            stmt.setLong(index++, clock.now());
+            stmt.setInt(index++, id);
+            stmt.setString(index, householdId);
+            if (stmt.executeUpdate() == 0) {
+                throw new SQLException("Task not found with id: " + id);
+            }
+        }
+    }
+
+    @Override
+    public int countTasksDueOn(LocalDate date, Integer excludeId) throws SQLException {
+        String sql = "SELECT COUNT(*) FROM tasks WHERE household_id = ? AND due_date = ?"
+                + (excludeId != null ? " AND id <> ?" : "");
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, householdId);
+            stmt.setDate(2, Date.valueOf(date));
+            if (excludeId != null) {
+                stmt.setInt(3, excludeId);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
 
+    @Override
+    public int countTasks(TaskStatus status) throws SQLException {
+        String sql = "SELECT COUNT(*) FROM tasks WHERE household_id = ?" + (status != null ? " AND status = ?" : "");
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, householdId);
+            if (status != null) {
+                stmt.setString(2, status.name());
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    // Порядок тот же, что в getAllTasks; id делает его однозначным, чтобы соседние окна не пересекались
+    @Override
+    public List<Task> getTasksPage(int offset, int limit) throws SQLException {
+        List<Task> result = new ArrayList<>(limit);
+        String sql = "SELECT * FROM tasks WHERE household_id = ? ORDER BY due_date, priority DESC, id LIMIT ? OFFSET ?";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, householdId);
+            stmt.setInt(2, limit);
+            stmt.setInt(3, offset);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    result.add(extractTaskFromResultSet(rs));
+                }
+            }
+        }
+        return result;
+    }
+
+    // Строка даты остаётся заблокированной до конца транзакции, поэтому клиенты, занимающие одну дату,
+    // проверяют предел по очереди и не могут вместе его превысить
+    private void reserveDueDate(LocalDate date, Integer excludeId) throws SQLException {
+        if (date == null || !DailyCapacity.isEnforced()) {
+            return;
+        }
+        String lockSql = "MERGE INTO due_date_locks (household_id, due_date) KEY (household_id, due_date) VALUES (?, ?)";
+        try (PreparedStatement stmt = connection.prepareStatement(lockSql)) {
+            stmt.setString(1, householdId);
+            stmt.setDate(2, Date.valueOf(date));
+            stmt.executeUpdate();
+        }
+        if (countTasksDueOn(date, excludeId) >= dailyCapacity) {
+            throw new DailyCapacityExceededException(date, dailyCapacity);
+        }
+    }
+
+    // Предел проверяется только при переносе: правка задачи на уже переполненной дате не блокируется
+    private void reserveMovedDueDate(int id, LocalDate date) throws SQLException {
+        if (date == null || !DailyCapacity.isEnforced()) {
+            return;
+        }
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "SELECT due_date FROM tasks WHERE id = ? AND household_id = ?")) {
+            stmt.setInt(1, id);
+            stmt.setString(2, householdId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next() && rs.getDate(1) != null && date.equals(rs.getDate(1).toLocalDate())) {
+                    return;
+                }
+            }
+        }
+        reserveDueDate(date, id);
+    }
+
+    // Смена статуса проверяется так же, как в updateTaskStatus; новый срок в прошлом делает задачу просроченной
+    private TaskPatch withOverdueStatus(int id, TaskPatch patch) throws SQLException {
+        if (!patch.contains(TaskField.STATUS)) {
+            return patch;
+        }
+        TaskStatus status = (TaskStatus) patch.get(TaskField.STATUS);
+        TaskStatus current = getTaskById(id).getStatus();
+        if (current != status && !TaskStatus.isTransitionAllowed(current, status)) {
+            throw new SQLException(String.format("Invalid status transition: %s -> %s",
+                    current.getDisplayName(), status.getDisplayName()));
+        }
+        LocalDate dueDate = (LocalDate) patch.get(TaskField.DUE_DATE);
+        if (dueDate != null && dueDate.isBefore(LocalDate.now()) && status != TaskStatus.COMPLETED) {
+            return patch.merge(new TaskPatch().set(TaskField.STATUS, TaskStatus.OVERDUE));
+        }
+        return patch;
+    }
+
+    private void bindPatchValue(PreparedStatement stmt, int index, TaskField field, Object value) throws SQLException {
+        switch (field) {
+            case DUE_DATE, LAST_COMPLETED -> stmt.setDate(index, value != null ? Date.valueOf((LocalDate) value) : null);
+            case PRIORITY -> stmt.setInt(index, (Integer) value);
+            default -> stmt.setString(index, field.format(value));
+        }
+    }
+
+    // Условие на метку превращает обновление в «последняя запись побеждает» без отдельного чтения строки
+    private boolean updateRow(Task task, boolean onlyIfOlder) throws SQLException {
         String sql = """
             UPDATE tasks SET 
             name = ?, description = ?, due_date = ?, priority = ?, 
-            assigned_to = ?, status = ?, last_completed = ?, type = ?
-            WHERE id = ?
-            """;
+            assigned_to = ?, status = ?, last_completed = ?, type = ?, recurrence = ?, hlc = ?,
+            version = NEXT VALUE FOR task_version_seq
+            WHERE id = ? AND household_id = ?
+            """ + (onlyIfOlder ? " AND hlc < ?" : "");
 
         try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, task.getName());
-            stmt.setString(2, task.getDescription());
-            stmt.setDate(3, task.getDueDate() != null ? Date.valueOf(task.getDueDate()) : null);
-            stmt.setInt(4, task.getPriority());
-            stmt.setString(5, task.getAssignedTo());
-            stmt.setString(6, task.getStatus().name());
-            stmt.setDate(7, task.getLastCompleted() != null ? Date.valueOf(task.getLastCompleted()) : null);
-            stmt.setString(8, task.getType());
-            stmt.setInt(9, task.getId());
-
-            int affectedRows = stmt.executeUpdate();
-            if (affectedRows == 0) {
-                throw new SQLException("Task not found with id: " + task.getId());
+            bindTaskFields(stmt, task);
+            stmt.setLong(10, task.getHlc());
+            stmt.setInt(11, task.getId());
+            stmt.setString(12, householdId);
+            if (onlyIfOlder) {
+                stmt.setLong(13, task.getHlc());
             }
+            return stmt.executeUpdate() > 0;
         }
     }
 
+    private void bindTaskFields(PreparedStatement stmt, Task task) throws SQLException {
+        stmt.setString(1, task.getName());
+        stmt.setString(2, task.getDescription());
+        stmt.setDate(3, task.getDueDate() != null ? Date.valueOf(task.getDueDate()) : null);
+        stmt.setInt(4, task.getPriority());
+        stmt.setString(5, task.getAssignedTo());
+        stmt.setString(6, task.getStatus().name());
+        stmt.setDate(7, task.getLastCompleted() != null ? Date.valueOf(task.getLastCompleted()) : null);
+        stmt.setString(8, task.getType());
+        stmt.setString(9, task.getRecurrence() != null ? task.getRecurrence().format() : null);
+    }
+
     @Override
     public void deleteTask(int id) throws SQLException {
-        String sql = "DELETE FROM tasks WHERE id = ?";
+        // Строка и её отметка об удалении появляются вместе: иначе удаление могло бы не попасть в журнал изменений
+        if (!inTransaction(dao -> deleteRow(id))) {
+            throw new SQLException("Task not found with id: " + id);
+        }
+    }
+
+    private boolean deleteRow(int id) throws SQLException {
+        String sql = "DELETE FROM tasks WHERE id = ? AND household_id = ?";
         try (PreparedStatement stmt = connection.prepareStatement(sql)) {
             stmt.setInt(1, id);
-            int affectedRows = stmt.executeUpdate();
-            if (affectedRows == 0) {
-                throw new SQLException("Task not found with id: " + id);
+            stmt.setString(2, householdId);
+            if (stmt.executeUpdate() == 0) {
+                return false;
+            }
+        }
+
+        String tombstoneSql = """
+            MERGE INTO task_tombstones (id, household_id, version) KEY (id)
+            VALUES (?, ?, NEXT VALUE FOR task_version_seq)
+            """;
+        try (PreparedStatement stmt = connection.prepareStatement(tombstoneSql)) {
+            stmt.setInt(1, id);
+            stmt.setString(2, householdId);
+            stmt.executeUpdate();
+        }
+
+        try (PreparedStatement stmt = connection.prepareStatement("DELETE FROM task_occurrences WHERE task_id = ?")) {
+            stmt.setInt(1, id);
+            stmt.executeUpdate();
+        }
+        return true;
+    }
+
+    @Override
+    public boolean applyReplicated(Task task) throws SQLException {
+        validateTask(task);
+        clock.observe(task.getHlc());
+        return inTransaction(dao -> {
+            if (task.getId() <= 0) {
+                insertTask(task);
+                return true;
+            }
+            return updateRow(task, true);
+        });
+    }
+
+    @Override
+    public boolean deleteReplicated(int id) throws SQLException {
+        return inTransaction(dao -> deleteRow(id));
+    }
+
+    /**
+     * Возвращает отметку синхронизации — версию, до которой включительно изменения уже переданы.
+     *
+     * @param name имя отметки
+     * @return значение или 0, если обмена ещё не было
+     */
+    public long getSyncWatermark(String name) throws SQLException {
+        String sql = "SELECT mark FROM sync_watermarks WHERE household_id = ? AND name = ?";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, householdId);
+            stmt.setString(2, name);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * Сохраняет отметку синхронизации.
+     *
+     * @param name  имя отметки
+     * @param value новое значение
+     */
+    public void setSyncWatermark(String name, long value) throws SQLException {
+        String sql = "MERGE INTO sync_watermarks (household_id, name, mark) KEY (household_id, name) VALUES (?, ?, ?)";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, householdId);
+            stmt.setString(2, name);
+            stmt.setLong(3, value);
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Считает строки и удаления, изменённые после версии.
+     *
+     * @param version исходная версия
+     * @return количество изменений
+     */
+    public int countChangesSince(long version) throws SQLException {
+        String sql = """
+            SELECT (SELECT COUNT(*) FROM tasks WHERE household_id = ? AND version > ?)
+                 + (SELECT COUNT(*) FROM task_tombstones WHERE household_id = ? AND version > ?)
+            """;
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, householdId);
+            stmt.setLong(2, version);
+            stmt.setString(3, householdId);
+            stmt.setLong(4, version);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
             }
         }
     }
 
+    /**
+     * Находит серверные идентификаторы локальных задач.
+     *
+     * @param localIds локальные идентификаторы
+     * @return локальный идентификатор -> серверный; задачи, ещё не переданные на сервер, отсутствуют
+     */
+    public Map<Integer, Integer> getRemoteIds(Collection<Integer> localIds) throws SQLException {
+        return lookupIds("local_id", "remote_id", localIds);
+    }
+
+    /**
+     * Находит локальные идентификаторы серверных задач.
+     *
+     * @param remoteIds серверные идентификаторы
+     * @return серверный идентификатор -> локальный; задачи, ещё не полученные с сервера, отсутствуют
+     */
+    public Map<Integer, Integer> getLocalIds(Collection<Integer> remoteIds) throws SQLException {
+        return lookupIds("remote_id", "local_id", remoteIds);
+    }
+
+    /**
+     * Запоминает, что локальная задача хранится на сервере под указанным идентификатором.
+     *
+     * @param localId  локальный идентификатор
+     * @param remoteId серверный идентификатор
+     */
+    public void mapIds(int localId, int remoteId) throws SQLException {
+        String sql = "MERGE INTO sync_id_map (household_id, local_id, remote_id) KEY (household_id, local_id) VALUES (?, ?, ?)";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, householdId);
+            stmt.setInt(2, localId);
+            stmt.setInt(3, remoteId);
+            stmt.executeUpdate();
+        }
+    }
+
+    private Map<Integer, Integer> lookupIds(String fromColumn, String toColumn, Collection<Integer> ids)
+            throws SQLException {
+        Map<Integer, Integer> result = new HashMap<>();
+        if (ids.isEmpty()) {
+            return result;
+        }
+        // Имена столбцов фиксированы в этом классе, в запрос подставляются только параметры
+        String sql = "SELECT " + fromColumn + ", " + toColumn + " FROM sync_id_map WHERE household_id = ? AND "
+                + fromColumn + " IN (" + String.join(", ", Collections.nCopies(ids.size(), "?")) + ")";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            int index = 1;
+            stmt.setString(index++, householdId);
+            for (Integer id : ids) {
+                stmt.setInt(index++, id);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    result.put(rs.getInt(1), rs.getInt(2));
+                }
+            }
+        }
+        return result;
+    }
+
     @Override
     public void updateTaskStatus(int id, TaskStatus status) throws SQLException {
         if (status == null) throw new SQLException("Status cannot be null");
+        inTransaction(dao -> {
+            updateStatusRow(id, status);
+            return null;
+        });
+    }
 
+    private void updateStatusRow(int id, TaskStatus status) throws SQLException {
         Task task = getTaskById(id);
 
         if (!TaskStatus.isTransitionAllowed(task.getStatus(), status)) {
@@ -260,14 +812,21 @@ public class H2TaskDAO implements TaskDAO {
         String sql = """
             UPDATE tasks SET 
             status = ?, 
-            last_completed = ?
-            WHERE id = ?
+            last_completed = ?,
+            hlc = ?,
+            version = NEXT VALUE FOR task_version_seq
+            WHERE id = ? AND household_id = ?
             """;
 
         try (PreparedStatement stmt = connection.prepareStatement(sql)) {
             stmt.setString(1, status.name());
-            stmt.setDate(2, status == TaskStatus.COMPLETED ? Date.valueOf(LocalDate.now()) : null);
-            stmt.setInt(3, id);
+            // Просрочка не отменяет последнее выполнение повторяющейся задачи
+            LocalDate lastCompleted = status == TaskStatus.COMPLETED ? LocalDate.now()
+                    : status == TaskStatus.OVERDUE ? task.getLastCompleted() : null;
+            stmt.setDate(2, lastCompleted != null ? Date.valueOf(lastCompleted) : null);
+            stmt.setLong(3, clock.now());
+            stmt.setInt(4, id);
+            stmt.setString(5, householdId);
 
             int affectedRows = stmt.executeUpdate();
             if (affectedRows == 0) {
@@ -286,16 +845,362 @@ public class H2TaskDAO implements TaskDAO {
 
     }
 
+    @Override
+    public long getCurrentVersion() throws SQLException {
+        return transaction(true, dao -> readCurrentVersion());
+    }
+
+    private long readCurrentVersion() throws SQLException {
+        String sql = """
+            SELECT GREATEST(
+                COALESCE((SELECT MAX(version) FROM tasks WHERE household_id = ?), 0),
+                COALESCE((SELECT MAX(version) FROM task_tombstones WHERE household_id = ?), 0))
+            """;
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, householdId);
+            stmt.setString(2, householdId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    @Override
+    public TaskChangeSet getChangesSince(long version) throws SQLException {
+        return transaction(true, dao -> readChangesSince(version));
+    }
+
+    private TaskChangeSet readChangesSince(long version) throws SQLException {
+        List<Task> inserted = new ArrayList<>();
+        List<Task> updated = new ArrayList<>();
+        List<Integer> deletedIds = new ArrayList<>();
+        long maxVersion = version;
+
+        String sql = "SELECT * FROM tasks WHERE household_id = ? AND version > ? ORDER BY version";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, householdId);
+            stmt.setLong(2, version);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Task task = extractTaskFromResultSet(rs);
+                    if (rs.getLong("created_version") > version) {
+                        inserted.add(task);
+                    } else {
+                        updated.add(task);
+                    }
+                    maxVersion = Math.max(maxVersion, task.getVersion());
+                }
+            }
+        }
+
+        String tombstoneSql = "SELECT id, version FROM task_tombstones WHERE household_id = ? AND version > ? ORDER BY version";
+        try (PreparedStatement stmt = connection.prepareStatement(tombstoneSql)) {
+            stmt.setString(1, householdId);
+            stmt.setLong(2, version);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    deletedIds.add(rs.getInt("id"));
+                    maxVersion = Math.max(maxVersion, rs.getLong("version"));
+                }
+            }
+        }
+
+        return new TaskChangeSet(inserted, updated, deletedIds, maxVersion);
+    }
+
+    @Override
+    public void saveOccurrence(TaskOccurrence occurrence) throws SQLException {
+        validateOccurrence(occurrence);
+
+        String sql = """
+            MERGE INTO task_occurrences (task_id, occurrence_date, status, due_date, assigned_to, completed_date,
+                                         household_id, version)
+            KEY (task_id, occurrence_date)
+            VALUES (?, ?, ?, ?, ?, ?, ?, NEXT VALUE FOR task_version_seq)
+            """;
+        inTransaction(dao -> {
+            try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                bindOccurrence(stmt, occurrence);
+                stmt.setString(7, householdId);
+                stmt.executeUpdate();
+            }
+            return null;
+        });
+        occurrence.setMaterialized(true);
+    }
+
+    @Override
+    public List<TaskOccurrence> getOccurrencesChangedSince(long version) throws SQLException {
+        String sql = "SELECT * FROM task_occurrences WHERE household_id = ? AND version > ? ORDER BY version";
+        return transaction(true, dao -> {
+            try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                stmt.setString(1, householdId);
+                stmt.setLong(2, version);
+                return readOccurrences(stmt);
+            }
+        });
+    }
+
+    /**
+     * Возвращает наибольшую версию сохранённых повторений.
+     *
+     * @return версия или 0, если повторений нет
+     */
+    public long getCurrentOccurrenceVersion() throws SQLException {
+        String sql = "SELECT COALESCE(MAX(version), 0) FROM task_occurrences WHERE household_id = ?";
+        return transaction(true, dao -> {
+            try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                stmt.setString(1, householdId);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    return rs.next() ? rs.getLong(1) : 0;
+                }
+            }
+        });
+    }
+
+    @Override
+    public List<TaskOccurrence> getOccurrences(LocalDate from, LocalDate to) throws SQLException {
+        String sql = """
+            SELECT * FROM task_occurrences
+            WHERE household_id = ? AND occurrence_date BETWEEN ? AND ?
+            ORDER BY occurrence_date, task_id
+            """;
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, householdId);
+            stmt.setDate(2, Date.valueOf(from));
+            stmt.setDate(3, Date.valueOf(to));
+            return readOccurrences(stmt);
+        }
+    }
+
+    @Override
+    public List<TaskOccurrence> getOccurrences(int taskId) throws SQLException {
+        String sql = "SELECT * FROM task_occurrences WHERE household_id = ? AND task_id = ? ORDER BY occurrence_date";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, householdId);
+            stmt.setInt(2, taskId);
+            return readOccurrences(stmt);
+        }
+    }
+
+    @Override
+    public Map<String, Integer> getAppliedOperations(Collection<String> keys) throws SQLException {
+        Map<String, Integer> result = new HashMap<>();
+        if (keys.isEmpty()) {
+            return result;
+        }
+        String sql = "SELECT op_key, task_id FROM applied_operations WHERE household_id = ? AND op_key IN ("
+                + String.join(", ", Collections.nCopies(keys.size(), "?")) + ")";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            int index = 1;
+            stmt.setString(index++, householdId);
+            for (String key : keys) {
+                stmt.setString(index++, key);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    result.put(rs.getString(1), rs.getInt(2));
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void markOperationApplied(String key, int taskId) throws SQLException {
+        if (key == null || key.isBlank()) {
+            throw new SQLException("Operation key cannot be empty");
+        }
+        String sql = "INSERT INTO applied_operations (op_key, household_id, task_id) VALUES (?, ?, ?)";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, key);
+            stmt.setString(2, householdId);
+            stmt.setInt(3, taskId);
+            stmt.executeUpdate();
+        }
+    }
+
+    @Override
+    public Instant getJobLastRun(String name) throws SQLException {
+        String sql = "SELECT last_run FROM scheduled_jobs WHERE household_id = ? AND name = ?";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, householdId);
+            stmt.setString(2, name);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getObject(1, OffsetDateTime.class).toInstant() : null;
+            }
+        }
+    }
+
+    /**
+     * Отмечает запуск задания, если его ещё не отметил другой клиент.
+     * Условное обновление и вставка без строки атомарны, поэтому из нескольких клиентов,
+     * одновременно запускающих задание за одно и то же время, отметку получает один.
+     */
+    @Override
+    public synchronized boolean claimJobRun(String name, Instant scheduledFor) throws SQLException {
+        OffsetDateTime runAt = OffsetDateTime.ofInstant(scheduledFor, ZoneOffset.UTC);
+        String update = "UPDATE scheduled_jobs SET last_run = ? WHERE household_id = ? AND name = ? AND last_run < ?";
+        try (PreparedStatement stmt = connection.prepareStatement(update)) {
+            stmt.setObject(1, runAt);
+            stmt.setString(2, householdId);
+            stmt.setString(3, name);
+            stmt.setObject(4, runAt);
+            if (stmt.executeUpdate() > 0) {
+                return true;
+            }
+        }
+        String insert = """
+            INSERT INTO scheduled_jobs (household_id, name, last_run)
+            SELECT ?, ?, ? WHERE NOT EXISTS (SELECT 1 FROM scheduled_jobs WHERE household_id = ? AND name = ?)
+            """;
+        try (PreparedStatement stmt = connection.prepareStatement(insert)) {
+            stmt.setString(1, householdId);
+            stmt.setString(2, name);
+            stmt.setObject(3, runAt);
+            stmt.setString(4, householdId);
+            stmt.setString(5, name);
+            return stmt.executeUpdate() > 0;
+        } catch (SQLException e) {
+            // Строку только что вставил другой клиент
+            if ("23505".equals(e.getSQLState())) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    private void validateOccurrence(TaskOccurrence occurrence) throws SQLException {
+        if (occurrence == null) throw new SQLException("Occurrence cannot be null");
+        if (occurrence.getOccurrenceDate() == null)
+            throw new SQLException("Occurrence date cannot be null");
+        if (occurrence.getStatus() == null)
+            throw new SQLException("Occurrence status cannot be null");
+    }
+
+    private void bindOccurrence(PreparedStatement stmt, TaskOccurrence occurrence) throws SQLException {
+        stmt.setInt(1, occurrence.getTaskId());
+        stmt.setDate(2, Date.valueOf(occurrence.getOccurrenceDate()));
+        stmt.setString(3, occurrence.getStatus().name());
+        stmt.setDate(4, occurrence.getDueDate() != null ? Date.valueOf(occurrence.getDueDate()) : null);
+        stmt.setString(5, occurrence.getAssignedTo());
+        stmt.setDate(6, occurrence.getCompletedDate() != null ? Date.valueOf(occurrence.getCompletedDate()) : null);
+    }
+
+    private List<TaskOccurrence> readOccurrences(PreparedStatement stmt) throws SQLException {
+        List<TaskOccurrence> result = new ArrayList<>();
+        try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                TaskOccurrence occurrence = new TaskOccurrence(
+                        rs.getInt("task_id"),
+                        rs.getDate("occurrence_date").toLocalDate(),
+                        TaskStatus.valueOf(rs.getString("status")),
+                        rs.getDate("due_date") != null ? rs.getDate("due_date").toLocalDate() : null,
+                        rs.getString("assigned_to"),
+                        rs.getDate("completed_date") != null ? rs.getDate("completed_date").toLocalDate() : null
+                );
+                occurrence.setMaterialized(true);
+                occurrence.setVersion(rs.getLong("version"));
+                result.add(occurrence);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String getHouseholdId() {
+        return householdId;
+    }
+
+    /**
+     * Проверяет, что база данных отвечает: самый дешёвый запрос с ограничением по времени.
+     *
+     * @throws SQLException если база недоступна
+     */
+    @Override
+    public void ping() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.setQueryTimeout(PING_TIMEOUT_SECONDS);
+            stmt.execute("SELECT 1");
+        }
+    }
+
+    /**
+     * Выполняет единицу работы в одной транзакции.
+     * Вложенные вызовы из того же потока присоединяются к внешней транзакции.
+     */
+    @Override
+    public <T> T inTransaction(UnitOfWork<T> work) throws SQLException {
+        return transaction(false, work);
+    }
+
+    /**
+     * Выполняет единицу работы в транзакции, во время которой другие соединения с этой базой не пишут.
+     * Нужна, когда отметка версий читается и сдвигается в одной транзакции: запись другого соединения
+     * между чтением и сдвигом осталась бы за отметкой.
+     *
+     * @param work единица работы
+     * @return результат работы
+     */
+    public <T> T inExclusiveTransaction(UnitOfWork<T> work) throws SQLException {
+        return transaction(true, work);
+    }
+
+    /**
+     * Транзакция, упорядоченная с чтением отметки версий.
+     *
+     * <p>Версия берётся из последовательности при записи, а видна после фиксации, поэтому запись
+     * с меньшей версией может зафиксироваться позже чтения большей, и {@code MAX(version)} пропустил бы её.
+     * Пишущие транзакции держат блокировку версий на чтение до фиксации, а чтение отметки берёт её
+     * на запись: оно дожидается всех начатых записей, а новые получают версии уже после него.
+     */
+    private synchronized <T> T transaction(boolean versionRead, UnitOfWork<T> work) throws SQLException {
+        if (transactionDepth > 0) {
+            return work.execute(this);
+        }
+
+        Lock lock = versionRead ? versionLock.writeLock() : versionLock.readLock();
+        lock.lock();
+        Connection conn = connection;
+        try {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            transactionDepth++;
+            try {
+                T result = work.execute(this);
+                conn.commit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                transactionDepth--;
+                conn.setAutoCommit(autoCommit);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
     public void updateOverdueTasks() throws SQLException {
+        inTransaction(dao -> {
+            markOverdueRows();
+            return null;
+        });
+    }
+
+    private void markOverdueRows() throws SQLException {
         String sql = """
             UPDATE tasks 
-            SET status = 'OVERDUE'
-            WHERE status IN ('ACTIVE', 'POSTPONED')
+            SET status = 'OVERDUE', version = NEXT VALUE FOR task_version_seq
+            WHERE household_id = ?
+              AND status IN ('ACTIVE', 'POSTPONED')
               AND due_date IS NOT NULL 
               AND due_date < CURRENT_DATE
             """;
 
         try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, householdId);
             int updatedCount = stmt.executeUpdate();
             if (updatedCount > 0) {
                 logger.log(Level.INFO, "Updated {0} tasks to OVERDUE status", updatedCount);
@@ -303,6 +1208,17 @@ public class H2TaskDAO implements TaskDAO {
         }
     }
 
+    private void validatePatch(TaskPatch patch) throws SQLException {
+        if (patch == null) throw new SQLException("Patch cannot be null");
+        if (patch.contains(TaskField.NAME) && ((String) patch.get(TaskField.NAME)).trim().isEmpty())
+            throw new SQLException("Task name cannot be empty");
+        Integer priority = (Integer) patch.get(TaskField.PRIORITY);
+        if (priority != null && (priority < 1 || priority > 5))
+            throw new SQLException("Priority must be between 1 and 5");
+        if (patch.contains(TaskField.TYPE) && ((String) patch.get(TaskField.TYPE)).trim().isEmpty())
+            throw new SQLException("Task type cannot be empty");
+    }
+
     private void validateTask(Task task) throws SQLException {
         if (task == null) throw new SQLException("Task cannot be null");
         if (task.getName() == null || task.getName().trim().isEmpty())
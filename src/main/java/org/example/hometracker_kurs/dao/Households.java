@@ -0,0 +1,44 @@
+package org.example.hometracker_kurs.dao;
+
+import java.util.regex.Pattern;
+
+/**
+ * Идентификаторы домохозяйств (арендаторов) общего хранилища.
+ * Каждый DAO работает в пределах одного домохозяйства; идентификатор по умолчанию
+ * берётся из системного свойства {@code hometracker.household}.
+ */
+public final class Households {
+    public static final String DEFAULT = "default";
+    public static final String PROPERTY = "hometracker.household";
+
+    // Идентификатор используется в именах секций PostgreSQL и файлов Excel, поэтому набор символов ограничен
+    private static final Pattern VALID_ID = Pattern.compile("[a-z0-9][a-z0-9_-]{0,39}");
+
+    private Households() {
+    }
+
+    /**
+     * Возвращает домохозяйство, выбранное для текущего запуска.
+     *
+     * @return значение свойства {@code hometracker.household} или {@link #DEFAULT}
+     */
+    public static String current() {
+        return validate(System.getProperty(PROPERTY, DEFAULT));
+    }
+
+    /**
+     * Проверяет и нормализует идентификатор домохозяйства.
+     *
+     * @param householdId идентификатор
+     * @return идентификатор в нижнем регистре
+     * @throws IllegalArgumentException если идентификатор пустой или содержит недопустимые символы
+     */
+    public static String validate(String householdId) {
+        String normalized = householdId == null ? "" : householdId.trim().toLowerCase();
+        if (!VALID_ID.matcher(normalized).matches()) {
+            throw new IllegalArgumentException("Недопустимый идентификатор домохозяйства: " + householdId
+                    + " (допустимы латинские буквы, цифры, '_' и '-', до 40 символов)");
+        }
+        return normalized;
+    }
+}
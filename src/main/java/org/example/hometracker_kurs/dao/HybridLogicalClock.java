@@ -0,0 +1,123 @@
+package org.example.hometracker_kurs.dao;
+
+import java.security.SecureRandom;
+import java.util.function.LongSupplier;
+
+/**
+ * Гибридные логические часы (HLC) для меток изменений задач.
+ *
+ * <p>Метка упакована в {@code long}: старшие 44 бита — физическое время в миллисекундах,
+ * затем 4 бита логического счётчика и 16 бит идентификатора узла. Метки одного узла строго возрастают
+ * даже при переводе системных часов назад, а метка, выданная после {@link #observe(long)},
+ * больше наблюдённой: изменение, сделанное после получения чужого, всегда считается более поздним.
+ * Идентификатор узла в младших битах делает метки разных узлов различными, поэтому
+ * сравнение меток — детерминированный порядок изменений.
+ *
+ * <p>Идентификатор узла случайный; 16 бит делают совпадение у устройств одного домохозяйства
+ * практически невозможным, а равные метки требуют ещё и той же миллисекунды и того же счётчика.
+ * Счётчику хватает 4 бит: при переполнении метка занимает следующую миллисекунду.
+ * Граница физического времени та же, что и при прежнем разбиении, поэтому сохранённые метки
+ * сравниваются с новыми по времени правильно.
+ */
+public final class HybridLogicalClock {
+    private static final int NODE_BITS = 16;
+    private static final int COUNTER_BITS = 4;
+    private static final long NODE_MASK = (1L << NODE_BITS) - 1;
+    private static final long COUNTER_MASK = (1L << COUNTER_BITS) - 1;
+    private static final int PHYSICAL_SHIFT = NODE_BITS + COUNTER_BITS;
+
+    private static final class Holder {
+        private static final HybridLogicalClock SYSTEM =
+                new HybridLogicalClock(new SecureRandom().nextInt(1 << NODE_BITS), System::currentTimeMillis);
+    }
+
+    private final int nodeId;
+    private final LongSupplier wallClock;
+    private long physical;
+    private long counter;
+
+    /**
+     * Создаёт часы.
+     *
+     * @param nodeId    идентификатор узла (0..65535)
+     * @param wallClock источник физического времени в миллисекундах
+     */
+    public HybridLogicalClock(int nodeId, LongSupplier wallClock) {
+        if (nodeId < 0 || nodeId > NODE_MASK) {
+            throw new IllegalArgumentException("Идентификатор узла должен быть от 0 до " + NODE_MASK + ": " + nodeId);
+        }
+        this.nodeId = nodeId;
+        this.wallClock = wallClock;
+    }
+
+    /**
+     * Часы процесса со случайным идентификатором узла.
+     *
+     * @return общий экземпляр
+     */
+    public static HybridLogicalClock system() {
+        return Holder.SYSTEM;
+    }
+
+    /**
+     * Выдаёт метку для локального изменения.
+     *
+     * @return метка, большая всех ранее выданных и наблюдённых
+     */
+    public synchronized long now() {
+        long wall = wallClock.getAsLong();
+        if (wall > physical) {
+            physical = wall;
+            counter = 0;
+        } else {
+            tick();
+        }
+        return encode();
+    }
+
+    /**
+     * Учитывает метку, полученную из другого хранилища.
+     *
+     * @param remote наблюдённая метка
+     */
+    public synchronized void observe(long remote) {
+        long remotePhysical = physicalMillis(remote);
+        long remoteCounter = (remote >>> NODE_BITS) & COUNTER_MASK;
+        long wall = wallClock.getAsLong();
+        if (wall > physical && wall > remotePhysical) {
+            physical = wall;
+            counter = 0;
+        } else if (remotePhysical > physical) {
+            physical = remotePhysical;
+            counter = remoteCounter;
+            tick();
+        } else if (remotePhysical == physical) {
+            counter = Math.max(counter, remoteCounter);
+            tick();
+        }
+    }
+
+    /**
+     * Физическое время метки.
+     *
+     * @param hlc метка
+     * @return миллисекунды с начала эпохи
+     */
+    public static long physicalMillis(long hlc) {
+        return hlc >>> PHYSICAL_SHIFT;
+    }
+
+    private void tick() {
+        // Переполнение счётчика занимает следующую миллисекунду — метки по-прежнему возрастают
+        if (counter == COUNTER_MASK) {
+            physical++;
+            counter = 0;
+        } else {
+            counter++;
+        }
+    }
+
+    private long encode() {
+        return (physical << PHYSICAL_SHIFT) | (counter << NODE_BITS) | nodeId;
+    }
+}
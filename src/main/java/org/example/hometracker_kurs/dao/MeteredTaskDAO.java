@@ -0,0 +1,310 @@
+package org.example.hometracker_kurs.dao;
+
+import javafx.collections.ObservableList;
+import org.example.hometracker_kurs.dao.metrics.DaoMethodMetrics;
+import org.example.hometracker_kurs.model.Task;
+import org.example.hometracker_kurs.model.TaskChangeSet;
+import org.example.hometracker_kurs.model.TaskOccurrence;
+import org.example.hometracker_kurs.model.TaskPatch;
+import org.example.hometracker_kurs.model.TaskStatus;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Декоратор {@link TaskDAO}, собирающий метрики по каждому методу:
+ * число вызовов и ошибок, гистограмму задержек и количество возвращённых строк.
+ * Метрики публикуются через JMX и периодически выводятся в журнал,
+ * что позволяет сравнивать хранилища PostgreSQL, H2 и Excel в работе.
+ */
+public class MeteredTaskDAO implements TaskDAO {
+    private static final Logger logger = Logger.getLogger(MeteredTaskDAO.class.getName());
+    private static final String JMX_DOMAIN = "org.example.hometracker_kurs";
+    private static final long SUMMARY_PERIOD_MINUTES = 5;
+
+    // Один поток сводок на все экземпляры: основное хранилище, реплика и бенчмарки создают их по нескольку
+    private static final ScheduledExecutorService SUMMARY_SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "dao-metrics");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+    @FunctionalInterface
+    private interface DaoCall<T> {
+        T call() throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface DaoAction {
+        void run() throws SQLException;
+    }
+
+    private final TaskDAO delegate;
+    private final String backend;
+    private final int instance = INSTANCES.incrementAndGet();
+    private final Map<String, DaoMethodMetrics> metrics = new ConcurrentHashMap<>();
+    private final ScheduledFuture<?> summaryTask;
+
+    /**
+     * Создаёт декоратор и запускает периодический вывод сводки в журнал.
+     *
+     * @param backend  тип хранилища, используется в именах MBean
+     * @param delegate исходная реализация DAO
+     */
+    public MeteredTaskDAO(String backend, TaskDAO delegate) {
+        this.backend = backend;
+        this.delegate = delegate;
+        this.summaryTask = SUMMARY_SCHEDULER.scheduleAtFixedRate(this::logSummary,
+                SUMMARY_PERIOD_MINUTES, SUMMARY_PERIOD_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Возвращает метрики всех вызывавшихся методов.
+     * @return неизменяемое представление метрик по имени метода
+     */
+    public Map<String, DaoMethodMetrics> getMetrics() {
+        return Map.copyOf(metrics);
+    }
+
+    @Override
+    public ObservableList<Task> getAllTasks() throws SQLException {
+        ObservableList<Task> result = timed("getAllTasks", delegate::getAllTasks);
+        metricsFor("getAllTasks").recordRows(result.size());
+        return result;
+    }
+
+    @Override
+    public Task getTaskById(int id) throws SQLException {
+        return timed("getTaskById", () -> delegate.getTaskById(id));
+    }
+
+    @Override
+    public void addTask(Task task) throws SQLException {
+        timedAction("addTask", () -> delegate.addTask(task));
+    }
+
+    @Override
+    public void updateTask(Task task) throws SQLException {
+        timedAction("updateTask", () -> delegate.updateTask(task));
+    }
+
+    @Override
+    public void patchTask(int id, TaskPatch patch) throws SQLException {
+        timedAction("patchTask", () -> delegate.patchTask(id, patch));
+    }
+
+    @Override
+    public void deleteTask(int id) throws SQLException {
+        timedAction("deleteTask", () -> delegate.deleteTask(id));
+    }
+
+    @Override
+    public List<Task> getTasksDueBetween(LocalDate from, LocalDate to, TaskStatus status) throws SQLException {
+        List<Task> result = timed("getTasksDueBetween", () -> delegate.getTasksDueBetween(from, to, status));
+        metricsFor("getTasksDueBetween").recordRows(result.size());
+        return result;
+    }
+
+    @Override
+    public int countTasksDueOn(LocalDate date, Integer excludeId) throws SQLException {
+        return timed("countTasksDueOn", () -> delegate.countTasksDueOn(date, excludeId));
+    }
+
+    @Override
+    public int countTasks(TaskStatus status) throws SQLException {
+        return timed("countTasks", () -> delegate.countTasks(status));
+    }
+
+    @Override
+    public List<Task> getTasksPage(int offset, int limit) throws SQLException {
+        List<Task> result = timed("getTasksPage", () -> delegate.getTasksPage(offset, limit));
+        metricsFor("getTasksPage").recordRows(result.size());
+        return result;
+    }
+
+    @Override
+    public ObservableList<Task> getFilteredTasks(String type, String status, String keyword,
+                                                 String sortField, boolean ascending) throws SQLException {
+        ObservableList<Task> result = timed("getFilteredTasks",
+                () -> delegate.getFilteredTasks(type, status, keyword, sortField, ascending));
+        metricsFor("getFilteredTasks").recordRows(result.size());
+        return result;
+    }
+
+    @Override
+    public void updateTaskStatus(int id, TaskStatus status) throws SQLException {
+        timedAction("updateTaskStatus", () -> delegate.updateTaskStatus(id, status));
+    }
+
+    @Override
+    public void markTaskAsCompleted(int id) throws SQLException {
+        timedAction("markTaskAsCompleted", () -> delegate.markTaskAsCompleted(id));
+    }
+
+    @Override
+    public void postponeTask(Task task, int days) throws SQLException {
+        timedAction("postponeTask", () -> delegate.postponeTask(task, days));
+    }
+
+    @Override
+    public long getCurrentVersion() throws SQLException {
+        return timed("getCurrentVersion", delegate::getCurrentVersion);
+    }
+
+    @Override
+    public TaskChangeSet getChangesSince(long version) throws SQLException {
+        TaskChangeSet changes = timed("getChangesSince", () -> delegate.getChangesSince(version));
+        metricsFor("getChangesSince").recordRows(
+                changes.getInserted().size() + changes.getUpdated().size() + changes.getDeletedIds().size());
+        return changes;
+    }
+
+    @Override
+    public void saveOccurrence(TaskOccurrence occurrence) throws SQLException {
+        timedAction("saveOccurrence", () -> delegate.saveOccurrence(occurrence));
+    }
+
+    @Override
+    public List<TaskOccurrence> getOccurrences(LocalDate from, LocalDate to) throws SQLException {
+        List<TaskOccurrence> result = timed("getOccurrences", () -> delegate.getOccurrences(from, to));
+        metricsFor("getOccurrences").recordRows(result.size());
+        return result;
+    }
+
+    @Override
+    public List<TaskOccurrence> getOccurrences(int taskId) throws SQLException {
+        List<TaskOccurrence> result = timed("getTaskOccurrences", () -> delegate.getOccurrences(taskId));
+        metricsFor("getTaskOccurrences").recordRows(result.size());
+        return result;
+    }
+
+    @Override
+    public Map<String, Integer> getAppliedOperations(Collection<String> keys) throws SQLException {
+        Map<String, Integer> result = timed("getAppliedOperations", () -> delegate.getAppliedOperations(keys));
+        metricsFor("getAppliedOperations").recordRows(result.size());
+        return result;
+    }
+
+    @Override
+    public void markOperationApplied(String key, int taskId) throws SQLException {
+        timedAction("markOperationApplied", () -> delegate.markOperationApplied(key, taskId));
+    }
+
+    @Override
+    public Instant getJobLastRun(String name) throws SQLException {
+        return timed("getJobLastRun", () -> delegate.getJobLastRun(name));
+    }
+
+    @Override
+    public boolean claimJobRun(String name, Instant scheduledFor) throws SQLException {
+        return timed("claimJobRun", () -> delegate.claimJobRun(name, scheduledFor));
+    }
+
+    @Override
+    public void ping() throws SQLException {
+        timedAction("ping", delegate::ping);
+    }
+
+    @Override
+    public <T> T inTransaction(UnitOfWork<T> work) throws SQLException {
+        // Операции внутри единицы работы тоже проходят через декоратор и попадают в метрики
+        return timed("inTransaction", () -> delegate.inTransaction(dao -> work.execute(this)));
+    }
+
+    @Override
+    public String getHouseholdId() {
+        return delegate.getHouseholdId();
+    }
+
+    @Override
+    public void close() throws SQLException {
+        summaryTask.cancel(false);
+        logSummary();
+        unregisterAll();
+        delegate.close();
+    }
+
+    private <T> T timed(String method, DaoCall<T> call) throws SQLException {
+        DaoMethodMetrics methodMetrics = metricsFor(method);
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            T result = call.call();
+            failed = false;
+            return result;
+        } finally {
+            methodMetrics.recordCall(System.nanoTime() - start, failed);
+        }
+    }
+
+    private void timedAction(String method, DaoAction action) throws SQLException {
+        timed(method, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    private DaoMethodMetrics metricsFor(String method) {
+        return metrics.computeIfAbsent(method, name -> {
+            DaoMethodMetrics created = new DaoMethodMetrics(backend, name);
+            register(created);
+            return created;
+        });
+    }
+
+    private void register(DaoMethodMetrics methodMetrics) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = objectName(methodMetrics.getMethod());
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(methodMetrics, name);
+        } catch (JMException e) {
+            logger.log(Level.WARNING, "Не удалось зарегистрировать MBean для " + methodMetrics.getMethod(), e);
+        }
+    }
+
+    private void unregisterAll() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (String method : metrics.keySet()) {
+            try {
+                ObjectName name = objectName(method);
+                if (server.isRegistered(name)) {
+                    server.unregisterMBean(name);
+                }
+            } catch (JMException e) {
+                logger.log(Level.WARNING, "Не удалось снять регистрацию MBean для " + method, e);
+            }
+        }
+    }
+
+    // Номер экземпляра различает несколько декораторов одного хранилища, например основное и реплику
+    private ObjectName objectName(String method) throws JMException {
+        return new ObjectName(JMX_DOMAIN + ":type=TaskDAO,backend=" + backend + ",instance=" + instance
+                + ",method=" + method);
+    }
+
+    private void logSummary() {
+        metrics.values().stream()
+                .filter(methodMetrics -> methodMetrics.getCalls() > 0)
+                .forEach(methodMetrics -> logger.log(Level.INFO, methodMetrics.summary()));
+    }
+}
@@ -3,21 +3,58 @@ package org.example.hometracker_kurs.dao;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import org.example.hometracker_kurs.config.DatabaseConfig;
+import org.example.hometracker_kurs.model.RecurrenceRule;
 import org.example.hometracker_kurs.model.Task;
+import org.example.hometracker_kurs.model.TaskChangeSet;
+import org.example.hometracker_kurs.model.TaskField;
+import org.example.hometracker_kurs.model.TaskOccurrence;
+import org.example.hometracker_kurs.model.TaskPatch;
 import org.example.hometracker_kurs.model.TaskStatus;
 
 import java.sql.*;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-public class PostgresTaskDAO implements TaskDAO {
+public class PostgresTaskDAO implements ReplicaStore {
     private static final Logger logger = Logger.getLogger(PostgresTaskDAO.class.getName());
-    private final DatabaseConfig dbConfig;
+    private static final int PING_TIMEOUT_SECONDS = 2;
+    // Пространство ключей рекомендательной блокировки версий; второй ключ — хэш домохозяйства
+    private static final int VERSION_LOCK_SPACE = 0x7461736B;
+    private final String url;
+    private final String user;
+    private final String password;
+    private final String householdId;
+    private final HybridLogicalClock clock = HybridLogicalClock.system();
+    private final int dailyCapacity = DailyCapacity.current();
     private Connection connection;
+    private int transactionDepth;
 
     public PostgresTaskDAO(DatabaseConfig dbConfig) {
-        this.dbConfig = dbConfig;
+        this(dbConfig, Households.current());
+    }
+
+    public PostgresTaskDAO(DatabaseConfig dbConfig, String householdId) {
+        this(dbConfig.getPostgresUrl(), dbConfig.getPostgresUser(), dbConfig.getPostgresPassword(), householdId);
+    }
+
+    public PostgresTaskDAO(String url, String user, String password) {
+        this(url, user, password, Households.current());
+    }
+
+    public PostgresTaskDAO(String url, String user, String password, String householdId) {
+        this.householdId = Households.validate(householdId);
+        this.url = url;
+        this.user = user;
+        this.password = password;
         initialize();
         try {
             updateOverdueTasks();
@@ -38,48 +75,187 @@ public class PostgresTaskDAO implements TaskDAO {
 
     private Connection getConnection() throws SQLException {
         if (connection == null || connection.isClosed()) {
-            connection = DriverManager.getConnection(
-                    dbConfig.getPostgresUrl(),
-                    dbConfig.getPostgresUser(),
-                    dbConfig.getPostgresPassword()
-            );
+            connection = DriverManager.getConnection(url, user, password);
         }
         return connection;
     }
 
     private void createTableIfNotExists() throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE SEQUENCE IF NOT EXISTS task_version_seq");
+            stmt.execute("CREATE SEQUENCE IF NOT EXISTS task_id_seq");
+            boolean legacy = isLegacyTasksTable();
+            if (legacy) {
+                // Таблица из прежних версий без секционирования: доводим её схему до текущей и откладываем для переноса
+                stmt.execute("ALTER TABLE tasks ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0");
+                stmt.execute("ALTER TABLE tasks ADD COLUMN IF NOT EXISTS created_version BIGINT NOT NULL DEFAULT 0");
+                stmt.execute("ALTER TABLE tasks ADD COLUMN IF NOT EXISTS recurrence VARCHAR(200)");
+                migrateLegacyFrequency();
+                stmt.execute("ALTER TABLE tasks RENAME TO tasks_unpartitioned");
+            }
+
+            // Задачи секционированы по домохозяйству: каждая семья живёт в своей секции,
+            // и запросы с условием на household_id читают только её
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS tasks (
+                    household_id VARCHAR(40) NOT NULL,
+                    id INTEGER NOT NULL DEFAULT nextval('task_id_seq'),
+                    name VARCHAR(100) NOT NULL,
+                    description TEXT,
+                    due_date DATE,
+                    priority INTEGER,
+                    assigned_to VARCHAR(50),
+                    status VARCHAR(20) NOT NULL CHECK (status IN ('ACTIVE', 'COMPLETED', 'POSTPONED', 'CANCELLED', 'OVERDUE')),
+                    last_completed DATE,
+                    type VARCHAR(50),
+                    recurrence VARCHAR(200),
+                    version BIGINT NOT NULL DEFAULT 0,
+                    created_version BIGINT NOT NULL DEFAULT 0,
+                    CONSTRAINT tasks_household_pkey PRIMARY KEY (household_id, id)
+                ) PARTITION BY LIST (household_id)
+                """);
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_tasks_household_due ON tasks(household_id, due_date, priority)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_tasks_household_status_due ON tasks(household_id, status, due_date)");
+            // Окна таблицы читаются в порядке индекса, без сортировки всех задач на каждый запрос
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_tasks_household_page ON tasks(household_id, due_date, priority DESC, id)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_tasks_household_type ON tasks(household_id, type)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_tasks_household_assigned ON tasks(household_id, assigned_to)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_tasks_household_version ON tasks(household_id, version)");
+            createPartition(stmt, householdId);
+            // Метка последнего изменения для слияния с офлайн-репликами
+            stmt.execute("ALTER TABLE tasks ADD COLUMN IF NOT EXISTS hlc BIGINT NOT NULL DEFAULT 0");
+
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS task_tombstones (
+                    id INTEGER PRIMARY KEY,
+                    version BIGINT NOT NULL
+                )
+                """);
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS task_occurrences (
+                    task_id INTEGER NOT NULL,
+                    occurrence_date DATE NOT NULL,
+                    status VARCHAR(20) NOT NULL,
+                    due_date DATE,
+                    assigned_to VARCHAR(50),
+                    completed_date DATE,
+                    PRIMARY KEY (task_id, occurrence_date)
+                )
+                """);
+            stmt.execute("ALTER TABLE task_tombstones ADD COLUMN IF NOT EXISTS household_id VARCHAR(40) NOT NULL DEFAULT 'default'");
+            stmt.execute("ALTER TABLE task_occurrences ADD COLUMN IF NOT EXISTS household_id VARCHAR(40) NOT NULL DEFAULT 'default'");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_task_tombstones_household_version ON task_tombstones(household_id, version)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_task_occurrences_household_date ON task_occurrences(household_id, occurrence_date)");
+            // Версия повторения для обмена с офлайн-репликами
+            stmt.execute("ALTER TABLE task_occurrences ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_task_occurrences_household_version ON task_occurrences(household_id, version)");
+            stmt.execute("DROP INDEX IF EXISTS idx_tasks_household_status");
+            stmt.execute("DROP INDEX IF EXISTS idx_task_tombstones_version");
+            stmt.execute("DROP INDEX IF EXISTS idx_task_occurrences_date");
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS applied_operations (
+                    op_key VARCHAR(64) PRIMARY KEY,
+                    household_id VARCHAR(40) NOT NULL,
+                    task_id INTEGER,
+                    applied_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+                )
+                """);
+
+            // Строка на каждую занятую дату: блокировка строки упорядочивает проверку предела задач на день
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS due_date_locks (
+                    household_id VARCHAR(40) NOT NULL,
+                    due_date DATE NOT NULL,
+                    PRIMARY KEY (household_id, due_date)
+                )
+                """);
+
+            // Время последнего запуска фоновых заданий: пропущенный запуск догоняется после перезапуска
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS scheduled_jobs (
+                    household_id VARCHAR(40) NOT NULL,
+                    name VARCHAR(64) NOT NULL,
+                    last_run TIMESTAMPTZ NOT NULL,
+                    PRIMARY KEY (household_id, name)
+                )
+                """);
+
+            if (legacy) {
+                copyLegacyTasks(stmt);
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    private boolean isLegacyTasksTable() throws SQLException {
+        String sql = "SELECT relkind FROM pg_class WHERE oid = to_regclass('tasks')";
+        try (PreparedStatement stmt = connection.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            return rs.next() && !"p".equals(rs.getString(1));
+        }
+    }
+
+    private void createPartition(Statement stmt, String household) throws SQLException {
+        // Идентификатор проверен Households.validate, поэтому его можно подставить в DDL как литерал
+        stmt.execute("CREATE TABLE IF NOT EXISTS \"tasks_" + household + "\" PARTITION OF tasks FOR VALUES IN ('"
+                + household + "')");
+    }
+
+    private void copyLegacyTasks(Statement stmt) throws SQLException {
+        createPartition(stmt, Households.DEFAULT);
+        int copied = stmt.executeUpdate("""
+            INSERT INTO tasks (household_id, id, name, description, due_date, priority, assigned_to, status,
+                               last_completed, type, recurrence, version, created_version)
+            SELECT 'default', id, name, description, due_date, priority, assigned_to, status,
+                   last_completed, type, recurrence, version, created_version
+            FROM tasks_unpartitioned
+            """);
+        if (copied > 0) {
+            stmt.execute("SELECT setval('task_id_seq', (SELECT MAX(id) FROM tasks))");
+        }
+        stmt.execute("DROP TABLE tasks_unpartitioned");
+        logger.log(Level.INFO, "Moved {0} tasks into the partition of the default household", copied);
+    }
+
+    private void migrateLegacyFrequency() throws SQLException {
+        try (ResultSet rs = connection.getMetaData().getColumns(null, null, "tasks", "frequency_days")) {
+            if (!rs.next()) {
+                return;
+            }
+        }
+
+        // Старый столбец означал «повторять через N дней» — переносим его в правило повторения
         String sql = """
-            CREATE TABLE IF NOT EXISTS tasks (
-                id SERIAL PRIMARY KEY,
-                name VARCHAR(100) NOT NULL,
-                description TEXT,
-                due_date DATE,
-                priority INTEGER,
-                assigned_to VARCHAR(50),
-                status VARCHAR(20) NOT NULL CHECK (status IN ('ACTIVE', 'COMPLETED', 'POSTPONED', 'CANCELLED', 'OVERDUE')),
-                last_completed DATE,
-                type VARCHAR(50)
-            );
-            CREATE INDEX IF NOT EXISTS idx_tasks_assigned_to ON tasks(assigned_to);
-            CREATE INDEX IF NOT EXISTS idx_tasks_due_date ON tasks(due_date);
-            CREATE INDEX IF NOT EXISTS idx_tasks_status ON tasks(status);
-            CREATE INDEX IF NOT EXISTS idx_tasks_type ON tasks(type);
+            UPDATE tasks SET recurrence = 'FREQ=CUSTOM;INTERVAL=' || frequency_days
+                || ';DTSTART=' || to_char(COALESCE(due_date, CURRENT_DATE), 'YYYY-MM-DD')
+            WHERE frequency_days > 0 AND recurrence IS NULL
             """;
-
         try (Statement stmt = connection.createStatement()) {
-            stmt.execute(sql);
+            int migrated = stmt.executeUpdate(sql);
+            if (migrated > 0) {
+                logger.log(Level.INFO, "Migrated {0} tasks from frequency_days to recurrence rules", migrated);
+            }
         }
     }
 
     @Override
     public ObservableList<Task> getAllTasks() throws SQLException {
         ObservableList<Task> tasks = FXCollections.observableArrayList();
-        String sql = "SELECT * FROM tasks ORDER BY due_date, priority DESC";
+        String sql = "SELECT * FROM tasks WHERE household_id = ? ORDER BY due_date, priority DESC, id";
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql);
-             ResultSet rs = stmt.executeQuery()) {
-            while (rs.next()) {
-                tasks.add(extractTaskFromResultSet(rs));
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, householdId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    tasks.add(extractTaskFromResultSet(rs));
+                }
             }
         }
         return tasks;
@@ -97,9 +273,39 @@ public class PostgresTaskDAO implements TaskDAO {
                 rs.getDate("last_completed") != null ? rs.getDate("last_completed").toLocalDate() : null
         );
         task.setType(rs.getString("type"));
+        task.setVersion(rs.getLong("version"));
+        task.setRecurrence(RecurrenceRule.parse(rs.getString("recurrence")));
+        task.setHouseholdId(rs.getString("household_id"));
+        task.setHlc(rs.getLong("hlc"));
         return task;
     }
 
+    // Запрос со статусом обслуживается индексом (household_id, status, due_date) одним диапазоном
+    @Override
+    public List<Task> getTasksDueBetween(LocalDate from, LocalDate to, TaskStatus status) throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT * FROM tasks WHERE household_id = ? AND due_date BETWEEN ? AND ?");
+        if (status != null) {
+            sql.append(" AND status = ?");
+        }
+        sql.append(" ORDER BY due_date, priority DESC, id");
+
+        List<Task> result = new ArrayList<>();
+        try (PreparedStatement stmt = connection.prepareStatement(sql.toString())) {
+            stmt.setString(1, householdId);
+            stmt.setDate(2, Date.valueOf(from));
+            stmt.setDate(3, Date.valueOf(to));
+            if (status != null) {
+                stmt.setString(4, status.name());
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    result.add(extractTaskFromResultSet(rs));
+                }
+            }
+        }
+        return result;
+    }
+
     @Override
     public ObservableList<Task> getFilteredTasks(
             String type,
@@ -109,7 +315,7 @@ public class PostgresTaskDAO implements TaskDAO {
             boolean ascending) throws SQLException {
 
         ObservableList<Task> result = FXCollections.observableArrayList();
-        StringBuilder sql = new StringBuilder("SELECT * FROM tasks WHERE 1=1");
+        StringBuilder sql = new StringBuilder("SELECT * FROM tasks WHERE household_id = ?");
 
         if (type != null && !type.isEmpty() && !type.equals("Все")) {
             sql.append(" AND type = ?");
@@ -148,6 +354,7 @@ public class PostgresTaskDAO implements TaskDAO {
 
         try (PreparedStatement stmt = connection.prepareStatement(sql.toString())) {
             int index = 1;
+            stmt.setString(index++, householdId);
 
             if (type != null && !type.isEmpty() && !type.equals("Все")) {
                 stmt.setString(index++, type);
@@ -171,9 +378,10 @@ public class PostgresTaskDAO implements TaskDAO {
 
     @Override
     public Task getTaskById(int id) throws SQLException {
-        String sql = "SELECT * FROM tasks WHERE id = ?";
+        String sql = "SELECT * FROM tasks WHERE household_id = ? AND id = ?";
         try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setInt(1, id);
+            stmt.setString(1, householdId);
+            stmt.setInt(2, id);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
                     return extractTaskFromResultSet(rs);
@@ -190,28 +398,35 @@ public class PostgresTaskDAO implements TaskDAO {
         }
 
         validateTask(task);
+        task.setHlc(clock.now());
+        inTransaction(dao -> {
+            reserveDueDate(task.getDueDate(), null);
+            insertTask(task);
+            return null;
+        });
+    }
+
+    private void insertTask(Task task) throws SQLException {
+        task.setHouseholdId(householdId);
 
         String sql = """
             INSERT INTO tasks 
             (name, description, due_date, priority, assigned_to, status, 
-             last_completed, type)
-            VALUES (?, ?, ?, ?, ?, ?, ?, ?)
-            RETURNING id
+             last_completed, type, recurrence, household_id, hlc, version, created_version)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?,
+                    nextval('task_version_seq'), currval('task_version_seq'))
+            RETURNING id, version
             """;
 
         try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, task.getName());
-            stmt.setString(2, task.getDescription());
-            stmt.setDate(3, task.getDueDate() != null ? Date.valueOf(task.getDueDate()) : null);
-            stmt.setInt(4, task.getPriority());
-            stmt.setString(5, task.getAssignedTo());
-            stmt.setString(6, task.getStatus().name());
-            stmt.setDate(7, task.getLastCompleted() != null ? Date.valueOf(task.getLastCompleted()) : null);
-            stmt.setString(8, task.getType());
+            bindTaskFields(stmt, task);
+            stmt.setString(10, householdId);
+            stmt.setLong(11, task.getHlc());
 
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
                     task.setId(rs.getInt("id"));
+                    task.setVersion(rs.getLong("version"));
                 }
             }
         } catch (SQLException e) {
@@ -220,6 +435,22 @@ public class PostgresTaskDAO implements TaskDAO {
         }
     }
 
+    private void validatePatch(TaskPatch patch) throws SQLException {
+        if (patch == null) {
+            throw new SQLException("Patch cannot be null");
+        }
+        if (patch.contains(TaskField.NAME) && ((String) patch.get(TaskField.NAME)).trim().isEmpty()) {
+            throw new SQLException("Task name cannot be empty");
+        }
+        Integer priority = (Integer) patch.get(TaskField.PRIORITY);
+        if (priority != null && (priority < 1 || priority > 5)) {
+            throw new SQLException("Priority must be between 1 and 5");
+        }
+        if (patch.contains(TaskField.TYPE) && ((String) patch.get(TaskField.TYPE)).trim().isEmpty()) {
+            throw new SQLException("Task type cannot be empty");
+        }
+    }
+
     private void validateTask(Task task) throws SQLException {
         if (task == null) {
             throw new SQLException("Task cannot be null");
@@ -248,48 +479,280 @@ public class PostgresTaskDAO implements TaskDAO {
         }
 
         validateTask(task);
+        task.setHlc(clock.now());
 
-        String sql = """
-            UPDATE tasks SET 
-            name = ?, description = ?, due_date = ?, priority = ?, 
-            assigned_to = ?, status = ?, last_completed = ?, type = ?
-            WHERE id = ?
-            """;
+        try {
+            inTransaction(dao -> {
+                reserveMovedDueDate(task.getId(), task.getDueDate());
+                if (!updateRow(task, false)) {
+                    throw new SQLException("Task not found with id: " + task.getId());
+                }
+                return null;
+            });
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Error updating task", e);
+            throw e;
+        }
+    }
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, task.getName());
-            stmt.setString(2, task.getDescription());
-            stmt.setDate(3, task.getDueDate() != null ? Date.valueOf(task.getDueDate()) : null);
-            stmt.setInt(4, task.getPriority());
-            stmt.setString(5, task.getAssignedTo());
-            stmt.setString(6, task.getStatus().name());
-            stmt.setDate(7, task.getLastCompleted() != null ? Date.valueOf(task.getLastCompleted()) : null);
-            stmt.setString(8, task.getType());
-            stmt.setInt(9, task.getId());
+    @Override
+    public void patchTask(int id, TaskPatch patch) throws SQLException {
+        validatePatch(patch);
+        if (patch.isEmpty()) {
+            return;
+        }
+        TaskPatch checked = withOverdueStatus(id, patch);
+        inTransaction(dao -> {
+            if (checked.contains(TaskField.DUE_DATE)) {
+                reserveMovedDueDate(id, (LocalDate) checked.get(TaskField.DUE_DATE));
+            }
+            patchRow(id, checked);
+            return null;
+        });
+    }
 
-            int affectedRows = stmt.executeUpdate();
-            if (affectedRows == 0) {
-                throw new SQLException("Task not found with id: " + task.getId());
+    private void patchRow(int id, TaskPatch patch) throws SQLException {
+        StringBuilder sql = new StringBuilder("UPDATE tasks SET ");
+        for (TaskField field : patch.getFields()) {
+            // Имена столбцов берутся из перечисления, в запрос подставляются только параметры
+            sql.append(field.getColumn()).append(" = ?, ");
+        }
+        if (patch.contains(TaskField.DUE_DATE) && !patch.contains(TaskField.STATUS)) {
+            // Статус пересчитывается по новому сроку прямо в запросе, без чтения строки
+            LocalDate dueDate = (LocalDate) patch.get(TaskField.DUE_DATE);
+            sql.append(dueDate != null && dueDate.isBefore(LocalDate.now())
+                    ? "status = CASE WHEN status = 'COMPLETED' THEN status ELSE 'OVERDUE' END, "
+                    : "status = CASE WHEN status = 'OVERDUE' THEN 'ACTIVE' ELSE status END, ");
+        }
+        sql.append("hlc = ?, version = nextval('task_version_seq') WHERE household_id = ? AND id = ?");
+
+        try (PreparedStatement stmt = connection.prepareStatement(sql.toString())) {
+            int index = 1;
+            for (Map.Entry<TaskField, Object> entry : patch.getValues().entrySet()) {
+                bindPatchValue(stmt, index++, entry.getKey(), entry.getValue());
+            }
+            stmt.setLong(index++, clock.now());
+            stmt.setString(index++, householdId);
+            stmt.setInt(index, id);
+            if (stmt.executeUpdate() == 0) {
+                throw new SQLException("Task not found with id: " + id);
             }
         } catch (SQLException e) {
-            logger.log(Level.SEVERE, "Error updating task", e);
+            logger.log(Level.SEVERE, "Error patching task", e);
             throw e;
         }
     }
 
     @Override
-    public void deleteTask(int id) throws SQLException {
-        String sql = "DELETE FROM tasks WHERE id = ?";
+    public int countTasksDueOn(LocalDate date, Integer excludeId) throws SQLException {
+        String sql = "SELECT COUNT(*) FROM tasks WHERE household_id = ? AND due_date = ?"
+                + (excludeId != null ? " AND id <> ?" : "");
         try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setInt(1, id);
-            int affectedRows = stmt.executeUpdate();
-            if (affectedRows == 0) {
-                throw new SQLException("Task not found with id: " + id);
+            stmt.setString(1, householdId);
+            stmt.setDate(2, Date.valueOf(date));
+            if (excludeId != null) {
+                stmt.setInt(3, excludeId);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    @Override
+    public int countTasks(TaskStatus status) throws SQLException {
+        String sql = "SELECT COUNT(*) FROM tasks WHERE household_id = ?" + (status != null ? " AND status = ?" : "");
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, householdId);
+            if (status != null) {
+                stmt.setString(2, status.name());
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    // Порядок тот же, что в getAllTasks; id делает его однозначным, чтобы соседние окна не пересекались
+    @Override
+    public List<Task> getTasksPage(int offset, int limit) throws SQLException {
+        List<Task> result = new ArrayList<>(limit);
+        String sql = "SELECT * FROM tasks WHERE household_id = ? ORDER BY due_date, priority DESC, id LIMIT ? OFFSET ?";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, householdId);
+            stmt.setInt(2, limit);
+            stmt.setInt(3, offset);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    result.add(extractTaskFromResultSet(rs));
+                }
+            }
+        }
+        return result;
+    }
+
+    // Строка даты остаётся заблокированной до конца транзакции, поэтому клиенты, занимающие одну дату,
+    // проверяют предел по очереди и не могут вместе его превысить; в READ COMMITTED подсчёт после
+    // получения блокировки видит задачи, добавленные предыдущим владельцем
+    private void reserveDueDate(LocalDate date, Integer excludeId) throws SQLException {
+        if (date == null || !DailyCapacity.isEnforced()) {
+            return;
+        }
+        String lockSql = """
+            INSERT INTO due_date_locks (household_id, due_date) VALUES (?, ?)
+            ON CONFLICT (household_id, due_date) DO UPDATE SET due_date = EXCLUDED.due_date
+            """;
+        try (PreparedStatement stmt = connection.prepareStatement(lockSql)) {
+            stmt.setString(1, householdId);
+            stmt.setDate(2, Date.valueOf(date));
+            stmt.executeUpdate();
+        }
+        if (countTasksDueOn(date, excludeId) >= dailyCapacity) {
+            throw new DailyCapacityExceededException(date, dailyCapacity);
+        }
+    }
+
+    // Предел проверяется только при переносе: правка задачи на уже переполненной дате не блокируется
+    private void reserveMovedDueDate(int id, LocalDate date) throws SQLException {
+        if (date == null || !DailyCapacity.isEnforced()) {
+            return;
+        }
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "SELECT due_date FROM tasks WHERE household_id = ? AND id = ?")) {
+            stmt.setString(1, householdId);
+            stmt.setInt(2, id);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next() && rs.getDate(1) != null && date.equals(rs.getDate(1).toLocalDate())) {
+                    return;
+                }
+            }
+        }
+        reserveDueDate(date, id);
+    }
+
+    // Смена статуса проверяется так же, как в updateTaskStatus; новый срок в прошлом делает задачу просроченной
+    private TaskPatch withOverdueStatus(int id, TaskPatch patch) throws SQLException {
+        if (!patch.contains(TaskField.STATUS)) {
+            return patch;
+        }
+        TaskStatus status = (TaskStatus) patch.get(TaskField.STATUS);
+        TaskStatus current = getTaskById(id).getStatus();
+        if (current != status && !TaskStatus.isTransitionAllowed(current, status)) {
+            throw new SQLException(String.format("Invalid status transition: %s -> %s",
+                    current.getDisplayName(), status.getDisplayName()));
+        }
+        LocalDate dueDate = (LocalDate) patch.get(TaskField.DUE_DATE);
+        if (dueDate != null && dueDate.isBefore(LocalDate.now()) && status != TaskStatus.COMPLETED) {
+            return patch.merge(new TaskPatch().set(TaskField.STATUS, TaskStatus.OVERDUE));
+        }
+        return patch;
+    }
+
+    private void bindPatchValue(PreparedStatement stmt, int index, TaskField field, Object value) throws SQLException {
+        switch (field) {
+            case DUE_DATE, LAST_COMPLETED -> stmt.setDate(index, value != null ? Date.valueOf((LocalDate) value) : null);
+            case PRIORITY -> stmt.setInt(index, (Integer) value);
+            default -> stmt.setString(index, field.format(value));
+        }
+    }
+
+    // Условие на метку превращает обновление в «последняя запись побеждает» без отдельного чтения строки
+    private boolean updateRow(Task task, boolean onlyIfOlder) throws SQLException {
+        String sql = """
+            UPDATE tasks SET 
+            name = ?, description = ?, due_date = ?, priority = ?, 
+            assigned_to = ?, status = ?, last_completed = ?, type = ?, recurrence = ?, hlc = ?,
+            version = nextval('task_version_seq')
+            WHERE household_id = ? AND id = ?
+            """ + (onlyIfOlder ? " AND hlc < ?" : "");
+
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            bindTaskFields(stmt, task);
+            stmt.setLong(10, task.getHlc());
+            stmt.setString(11, householdId);
+            stmt.setInt(12, task.getId());
+            if (onlyIfOlder) {
+                stmt.setLong(13, task.getHlc());
             }
+            return stmt.executeUpdate() > 0;
+        }
+    }
+
+    private void bindTaskFields(PreparedStatement stmt, Task task) throws SQLException {
+        stmt.setString(1, task.getName());
+        stmt.setString(2, task.getDescription());
+        stmt.setDate(3, task.getDueDate() != null ? Date.valueOf(task.getDueDate()) : null);
+        stmt.setInt(4, task.getPriority());
+        stmt.setString(5, task.getAssignedTo());
+        stmt.setString(6, task.getStatus().name());
+        stmt.setDate(7, task.getLastCompleted() != null ? Date.valueOf(task.getLastCompleted()) : null);
+        stmt.setString(8, task.getType());
+        stmt.setString(9, task.getRecurrence() != null ? task.getRecurrence().format() : null);
+    }
+
+    @Override
+    public void deleteTask(int id) throws SQLException {
+        boolean deleted;
+        try {
+            // Строка и её отметка об удалении появляются вместе: иначе удаление могло бы не попасть в журнал изменений
+            deleted = inTransaction(dao -> deleteRow(id));
         } catch (SQLException e) {
             logger.log(Level.SEVERE, "Error deleting task", e);
             throw e;
         }
+        if (!deleted) {
+            throw new SQLException("Task not found with id: " + id);
+        }
+    }
+
+    @Override
+    public boolean applyReplicated(Task task) throws SQLException {
+        validateTask(task);
+        clock.observe(task.getHlc());
+        return inTransaction(dao -> {
+            if (task.getId() <= 0) {
+                insertTask(task);
+                return true;
+            }
+            return updateRow(task, true);
+        });
+    }
+
+    @Override
+    public boolean deleteReplicated(int id) throws SQLException {
+        return inTransaction(dao -> deleteRow(id));
+    }
+
+    private boolean deleteRow(int id) throws SQLException {
+        String sql = "DELETE FROM tasks WHERE household_id = ? AND id = ?";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, householdId);
+            stmt.setInt(2, id);
+            if (stmt.executeUpdate() == 0) {
+                return false;
+            }
+        }
+
+        String tombstoneSql = """
+            INSERT INTO task_tombstones (id, household_id, version)
+            VALUES (?, ?, nextval('task_version_seq'))
+            ON CONFLICT (id) DO UPDATE SET version = EXCLUDED.version
+            """;
+        try (PreparedStatement stmt = connection.prepareStatement(tombstoneSql)) {
+            stmt.setInt(1, id);
+            stmt.setString(2, householdId);
+            stmt.executeUpdate();
+        }
+
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "DELETE FROM task_occurrences WHERE household_id = ? AND task_id = ?")) {
+            stmt.setString(1, householdId);
+            stmt.setInt(2, id);
+            stmt.executeUpdate();
+        }
+        return true;
     }
 
     @Override
@@ -298,6 +761,18 @@ public class PostgresTaskDAO implements TaskDAO {
             throw new SQLException("Status cannot be null");
         }
 
+        try {
+            inTransaction(dao -> {
+                updateStatusRow(id, status);
+                return null;
+            });
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Error updating task status", e);
+            throw e;
+        }
+    }
+
+    private void updateStatusRow(int id, TaskStatus status) throws SQLException {
         Task task = getTaskById(id);
         if (!TaskStatus.isTransitionAllowed(task.getStatus(), status)) {
             throw new SQLException(String.format("Invalid status transition: %s -> %s",
@@ -307,22 +782,26 @@ public class PostgresTaskDAO implements TaskDAO {
         String sql = """
             UPDATE tasks SET 
             status = ?, 
-            last_completed = ?
-            WHERE id = ?
+            last_completed = ?,
+            hlc = ?,
+            version = nextval('task_version_seq')
+            WHERE household_id = ? AND id = ?
             """;
 
         try (PreparedStatement stmt = connection.prepareStatement(sql)) {
             stmt.setString(1, status.name());
-            stmt.setDate(2, status == TaskStatus.COMPLETED ? Date.valueOf(LocalDate.now()) : null);
-            stmt.setInt(3, id);
+            // Просрочка не отменяет последнее выполнение повторяющейся задачи
+            LocalDate lastCompleted = status == TaskStatus.COMPLETED ? LocalDate.now()
+                    : status == TaskStatus.OVERDUE ? task.getLastCompleted() : null;
+            stmt.setDate(2, lastCompleted != null ? Date.valueOf(lastCompleted) : null);
+            stmt.setLong(3, clock.now());
+            stmt.setString(4, householdId);
+            stmt.setInt(5, id);
 
             int affectedRows = stmt.executeUpdate();
             if (affectedRows == 0) {
                 throw new SQLException("Task not found with id: " + id);
             }
-        } catch (SQLException e) {
-            logger.log(Level.SEVERE, "Error updating task status", e);
-            throw e;
         }
     }
 
@@ -336,16 +815,312 @@ public class PostgresTaskDAO implements TaskDAO {
 
     }
 
+    @Override
+    public long getCurrentVersion() throws SQLException {
+        return transaction(true, dao -> readCurrentVersion());
+    }
+
+    private long readCurrentVersion() throws SQLException {
+        String sql = """
+            SELECT GREATEST(
+                COALESCE((SELECT MAX(version) FROM tasks WHERE household_id = ?), 0),
+                COALESCE((SELECT MAX(version) FROM task_tombstones WHERE household_id = ?), 0))
+            """;
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, householdId);
+            stmt.setString(2, householdId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    @Override
+    public TaskChangeSet getChangesSince(long version) throws SQLException {
+        return transaction(true, dao -> readChangesSince(version));
+    }
+
+    private TaskChangeSet readChangesSince(long version) throws SQLException {
+        List<Task> inserted = new ArrayList<>();
+        List<Task> updated = new ArrayList<>();
+        List<Integer> deletedIds = new ArrayList<>();
+        long maxVersion = version;
+
+        String sql = "SELECT * FROM tasks WHERE household_id = ? AND version > ? ORDER BY version";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, householdId);
+            stmt.setLong(2, version);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Task task = extractTaskFromResultSet(rs);
+                    if (rs.getLong("created_version") > version) {
+                        inserted.add(task);
+                    } else {
+                        updated.add(task);
+                    }
+                    maxVersion = Math.max(maxVersion, task.getVersion());
+                }
+            }
+        }
+
+        String tombstoneSql = "SELECT id, version FROM task_tombstones WHERE household_id = ? AND version > ? ORDER BY version";
+        try (PreparedStatement stmt = connection.prepareStatement(tombstoneSql)) {
+            stmt.setString(1, householdId);
+            stmt.setLong(2, version);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    deletedIds.add(rs.getInt("id"));
+                    maxVersion = Math.max(maxVersion, rs.getLong("version"));
+                }
+            }
+        }
+
+        return new TaskChangeSet(inserted, updated, deletedIds, maxVersion);
+    }
+
+    @Override
+    public void saveOccurrence(TaskOccurrence occurrence) throws SQLException {
+        if (occurrence == null || occurrence.getOccurrenceDate() == null || occurrence.getStatus() == null) {
+            throw new SQLException("Occurrence date and status cannot be null");
+        }
+
+        String sql = """
+            INSERT INTO task_occurrences (task_id, occurrence_date, status, due_date, assigned_to, completed_date,
+                                          household_id, version)
+            VALUES (?, ?, ?, ?, ?, ?, ?, nextval('task_version_seq'))
+            ON CONFLICT (task_id, occurrence_date) DO UPDATE SET
+                status = EXCLUDED.status,
+                due_date = EXCLUDED.due_date,
+                assigned_to = EXCLUDED.assigned_to,
+                completed_date = EXCLUDED.completed_date,
+                version = EXCLUDED.version
+            """;
+        try {
+            inTransaction(dao -> {
+                try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                    stmt.setInt(1, occurrence.getTaskId());
+                    stmt.setDate(2, Date.valueOf(occurrence.getOccurrenceDate()));
+                    stmt.setString(3, occurrence.getStatus().name());
+                    stmt.setDate(4, occurrence.getDueDate() != null ? Date.valueOf(occurrence.getDueDate()) : null);
+                    stmt.setString(5, occurrence.getAssignedTo());
+                    stmt.setDate(6, occurrence.getCompletedDate() != null ? Date.valueOf(occurrence.getCompletedDate()) : null);
+                    stmt.setString(7, householdId);
+                    stmt.executeUpdate();
+                }
+                return null;
+            });
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Error saving task occurrence", e);
+            throw e;
+        }
+        occurrence.setMaterialized(true);
+    }
+
+    @Override
+    public List<TaskOccurrence> getOccurrences(LocalDate from, LocalDate to) throws SQLException {
+        String sql = """
+            SELECT * FROM task_occurrences
+            WHERE household_id = ? AND occurrence_date BETWEEN ? AND ?
+            ORDER BY occurrence_date, task_id
+            """;
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, householdId);
+            stmt.setDate(2, Date.valueOf(from));
+            stmt.setDate(3, Date.valueOf(to));
+            return readOccurrences(stmt);
+        }
+    }
+
+    @Override
+    public List<TaskOccurrence> getOccurrencesChangedSince(long version) throws SQLException {
+        String sql = "SELECT * FROM task_occurrences WHERE household_id = ? AND version > ? ORDER BY version";
+        return transaction(true, dao -> {
+            try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                stmt.setString(1, householdId);
+                stmt.setLong(2, version);
+                return readOccurrences(stmt);
+            }
+        });
+    }
+
+    @Override
+    public List<TaskOccurrence> getOccurrences(int taskId) throws SQLException {
+        String sql = "SELECT * FROM task_occurrences WHERE household_id = ? AND task_id = ? ORDER BY occurrence_date";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, householdId);
+            stmt.setInt(2, taskId);
+            return readOccurrences(stmt);
+        }
+    }
+
+    @Override
+    public Map<String, Integer> getAppliedOperations(Collection<String> keys) throws SQLException {
+        Map<String, Integer> result = new HashMap<>();
+        if (keys.isEmpty()) {
+            return result;
+        }
+        String sql = "SELECT op_key, task_id FROM applied_operations WHERE household_id = ? AND op_key = ANY(?)";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, householdId);
+            stmt.setArray(2, connection.createArrayOf("varchar", keys.toArray()));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    result.put(rs.getString(1), rs.getInt(2));
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void markOperationApplied(String key, int taskId) throws SQLException {
+        if (key == null || key.isBlank()) {
+            throw new SQLException("Operation key cannot be empty");
+        }
+        String sql = "INSERT INTO applied_operations (op_key, household_id, task_id) VALUES (?, ?, ?)";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, key);
+            stmt.setString(2, householdId);
+            stmt.setInt(3, taskId);
+            stmt.executeUpdate();
+        }
+    }
+
+    @Override
+    public Instant getJobLastRun(String name) throws SQLException {
+        String sql = "SELECT last_run FROM scheduled_jobs WHERE household_id = ? AND name = ?";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, householdId);
+            stmt.setString(2, name);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getObject(1, OffsetDateTime.class).toInstant() : null;
+            }
+        }
+    }
+
+    /**
+     * Отмечает запуск задания, если его ещё не отметил другой клиент.
+     * Вставка с условным обновлением выполняется одним оператором, поэтому из нескольких клиентов,
+     * одновременно запускающих задание за одно и то же время, отметку получает один.
+     */
+    @Override
+    public boolean claimJobRun(String name, Instant scheduledFor) throws SQLException {
+        String sql = """
+            INSERT INTO scheduled_jobs (household_id, name, last_run) VALUES (?, ?, ?)
+            ON CONFLICT (household_id, name) DO UPDATE SET last_run = EXCLUDED.last_run
+            WHERE scheduled_jobs.last_run < EXCLUDED.last_run
+            """;
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, householdId);
+            stmt.setString(2, name);
+            stmt.setObject(3, OffsetDateTime.ofInstant(scheduledFor, ZoneOffset.UTC));
+            return stmt.executeUpdate() > 0;
+        }
+    }
+
+    private List<TaskOccurrence> readOccurrences(PreparedStatement stmt) throws SQLException {
+        List<TaskOccurrence> result = new ArrayList<>();
+        try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                TaskOccurrence occurrence = new TaskOccurrence(
+                        rs.getInt("task_id"),
+                        rs.getDate("occurrence_date").toLocalDate(),
+                        TaskStatus.valueOf(rs.getString("status")),
+                        rs.getDate("due_date") != null ? rs.getDate("due_date").toLocalDate() : null,
+                        rs.getString("assigned_to"),
+                        rs.getDate("completed_date") != null ? rs.getDate("completed_date").toLocalDate() : null
+                );
+                occurrence.setMaterialized(true);
+                occurrence.setVersion(rs.getLong("version"));
+                result.add(occurrence);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized void ping() throws SQLException {
+        // Соединение, разорванное сетью, само не восстанавливается: открываем новое,
+        // чтобы после возвращения сервера DAO снова работал без перезапуска приложения
+        if (transactionDepth == 0 && connection != null && !connection.isValid(PING_TIMEOUT_SECONDS)) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                logger.log(Level.FINE, "Closing broken connection failed", e);
+            }
+        }
+        try (Statement stmt = getConnection().createStatement()) {
+            stmt.setQueryTimeout(PING_TIMEOUT_SECONDS);
+            stmt.execute("SELECT 1");
+        }
+    }
+
+    /**
+     * Выполняет единицу работы в одной транзакции.
+     * Вложенные вызовы из того же потока присоединяются к внешней транзакции.
+     */
+    @Override
+    public <T> T inTransaction(UnitOfWork<T> work) throws SQLException {
+        return transaction(false, work);
+    }
+
+    /**
+     * Транзакция, упорядоченная с чтением отметки версий.
+     *
+     * <p>Версии берутся из последовательности при записи, а видны после фиксации, поэтому
+     * транзакция с меньшей версией может зафиксироваться позже чтения большей, и {@code MAX(version)}
+     * пропустил бы её строки. Пишущие транзакции держат разделяемую рекомендательную блокировку
+     * домохозяйства до фиксации, а чтение отметки берёт её монопольно: оно дожидается всех начатых
+     * записей, а новые получают версии уже после него.
+     */
+    private synchronized <T> T transaction(boolean versionRead, UnitOfWork<T> work) throws SQLException {
+        if (transactionDepth > 0) {
+            return work.execute(this);
+        }
+
+        Connection conn = getConnection();
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        transactionDepth++;
+        try {
+            try (PreparedStatement stmt = conn.prepareStatement(versionRead
+                    ? "SELECT pg_advisory_xact_lock(?, hashtext(?))"
+                    : "SELECT pg_advisory_xact_lock_shared(?, hashtext(?))")) {
+                stmt.setInt(1, VERSION_LOCK_SPACE);
+                stmt.setString(2, householdId);
+                stmt.execute();
+            }
+            T result = work.execute(this);
+            conn.commit();
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            transactionDepth--;
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
     public void updateOverdueTasks() throws SQLException {
+        inTransaction(dao -> {
+            markOverdueRows();
+            return null;
+        });
+    }
+
+    private void markOverdueRows() throws SQLException {
         String sql = """
             UPDATE tasks 
-            SET status = 'OVERDUE'
-            WHERE status IN ('ACTIVE', 'POSTPONED')
+            SET status = 'OVERDUE', version = nextval('task_version_seq')
+            WHERE household_id = ?
+              AND status IN ('ACTIVE', 'POSTPONED')
               AND due_date IS NOT NULL 
               AND due_date < CURRENT_DATE
             """;
 
         try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, householdId);
             int updatedCount = stmt.executeUpdate();
             if (updatedCount > 0) {
                 logger.log(Level.INFO, "Updated {0} tasks to OVERDUE status", updatedCount);
@@ -356,6 +1131,11 @@ public class PostgresTaskDAO implements TaskDAO {
         }
     }
 
+    @Override
+    public String getHouseholdId() {
+        return householdId;
+    }
+
     @Override
     public void close() throws SQLException {
         if (connection != null && !connection.isClosed()) {
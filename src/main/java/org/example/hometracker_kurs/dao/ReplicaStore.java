@@ -0,0 +1,49 @@
+package org.example.hometracker_kurs.dao;
+
+import org.example.hometracker_kurs.model.Task;
+import org.example.hometracker_kurs.model.TaskOccurrence;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Хранилище, участвующее в синхронизации реплик.
+ * Обычные операции {@link TaskDAO} ставят на строку новую метку {@link HybridLogicalClock};
+ * операции этого интерфейса переносят изменение из другого хранилища вместе с его меткой.
+ *
+ * <p>Политика разрешения конфликтов детерминирована и одинакова в обе стороны:
+ * из двух изменений одной задачи остаётся изменение с большей меткой, удаление побеждает любое изменение.
+ * Сохранённые повторения ({@link TaskOccurrence}) переносятся целиком; их удаляет только удаление задачи.
+ */
+public interface ReplicaStore extends TaskDAO {
+
+    /**
+     * Применяет изменение задачи из другого хранилища.
+     * Задача с идентификатором {@code <= 0} вставляется, и ей присваивается идентификатор;
+     * существующая строка заменяется, только если её метка меньше метки задачи.
+     *
+     * @param task задача с меткой {@link Task#getHlc()}
+     * @return true, если строка изменилась
+     * @throws SQLException если запись не удалась
+     */
+    boolean applyReplicated(Task task) throws SQLException;
+
+    /**
+     * Применяет удаление задачи из другого хранилища. Отсутствующая строка не считается ошибкой.
+     *
+     * @param id идентификатор задачи в этом хранилище
+     * @return true, если строка была удалена
+     * @throws SQLException если запись не удалась
+     */
+    boolean deleteReplicated(int id) throws SQLException;
+
+    /**
+     * Возвращает сохранённые повторения, изменённые после версии, с их версиями.
+     * Чтение упорядочено с записями так же, как {@link #getChangesSince(long)}.
+     *
+     * @param version исходная версия
+     * @return повторения по возрастанию версии
+     * @throws SQLException если чтение не удалось
+     */
+    List<TaskOccurrence> getOccurrencesChangedSince(long version) throws SQLException;
+}
@@ -0,0 +1,207 @@
+package org.example.hometracker_kurs.dao;
+
+import javafx.collections.ObservableList;
+import org.example.hometracker_kurs.model.Task;
+import org.example.hometracker_kurs.model.TaskChangeSet;
+import org.example.hometracker_kurs.model.TaskOccurrence;
+import org.example.hometracker_kurs.model.TaskPatch;
+import org.example.hometracker_kurs.model.TaskStatus;
+
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Декоратор {@link TaskDAO}, пропускающий к хранилищу один поток за раз.
+ *
+ * <p>SQL-хранилища работают через одно JDBC-соединение, а {@link ExcelTaskDAO} держит задачи
+ * в обычном списке, поэтому одновременные вызовы из потока интерфейса, виртуальных потоков
+ * {@code AsyncTaskService}, планировщика и бота перемешивали бы запросы и транзакции друг друга.
+ * Блокировка справедливая: вызовы выполняются в порядке поступления. Единица работы
+ * {@link #inTransaction(UnitOfWork)} держит блокировку целиком, так что запросы других потоков
+ * не попадают в чужую транзакцию и не откатываются вместе с ней.
+ */
+public class SerializedTaskDAO implements TaskDAO {
+
+    @FunctionalInterface
+    private interface DaoCall<T> {
+        T call() throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface DaoAction {
+        void run() throws SQLException;
+    }
+
+    private final TaskDAO delegate;
+    private final ReentrantLock lock = new ReentrantLock(true);
+
+    /**
+     * Создаёт декоратор.
+     *
+     * @param delegate исходная реализация DAO
+     */
+    public SerializedTaskDAO(TaskDAO delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public ObservableList<Task> getAllTasks() throws SQLException {
+        return locked(delegate::getAllTasks);
+    }
+
+    @Override
+    public Task getTaskById(int id) throws SQLException {
+        return locked(() -> delegate.getTaskById(id));
+    }
+
+    @Override
+    public void addTask(Task task) throws SQLException {
+        lockedAction(() -> delegate.addTask(task));
+    }
+
+    @Override
+    public void updateTask(Task task) throws SQLException {
+        lockedAction(() -> delegate.updateTask(task));
+    }
+
+    @Override
+    public void patchTask(int id, TaskPatch patch) throws SQLException {
+        lockedAction(() -> delegate.patchTask(id, patch));
+    }
+
+    @Override
+    public void deleteTask(int id) throws SQLException {
+        lockedAction(() -> delegate.deleteTask(id));
+    }
+
+    @Override
+    public ObservableList<Task> getFilteredTasks(String type, String status, String keyword,
+                                                 String sortField, boolean ascending) throws SQLException {
+        return locked(() -> delegate.getFilteredTasks(type, status, keyword, sortField, ascending));
+    }
+
+    @Override
+    public List<Task> getTasksDueBetween(LocalDate from, LocalDate to, TaskStatus status) throws SQLException {
+        return locked(() -> delegate.getTasksDueBetween(from, to, status));
+    }
+
+    @Override
+    public int countTasksDueOn(LocalDate date, Integer excludeId) throws SQLException {
+        return locked(() -> delegate.countTasksDueOn(date, excludeId));
+    }
+
+    @Override
+    public int countTasks(TaskStatus status) throws SQLException {
+        return locked(() -> delegate.countTasks(status));
+    }
+
+    @Override
+    public List<Task> getTasksPage(int offset, int limit) throws SQLException {
+        return locked(() -> delegate.getTasksPage(offset, limit));
+    }
+
+    @Override
+    public void updateTaskStatus(int id, TaskStatus status) throws SQLException {
+        lockedAction(() -> delegate.updateTaskStatus(id, status));
+    }
+
+    @Override
+    public void markTaskAsCompleted(int id) throws SQLException {
+        lockedAction(() -> delegate.markTaskAsCompleted(id));
+    }
+
+    @Override
+    public void postponeTask(Task task, int days) throws SQLException {
+        lockedAction(() -> delegate.postponeTask(task, days));
+    }
+
+    @Override
+    public long getCurrentVersion() throws SQLException {
+        return locked(delegate::getCurrentVersion);
+    }
+
+    @Override
+    public TaskChangeSet getChangesSince(long version) throws SQLException {
+        return locked(() -> delegate.getChangesSince(version));
+    }
+
+    @Override
+    public void saveOccurrence(TaskOccurrence occurrence) throws SQLException {
+        lockedAction(() -> delegate.saveOccurrence(occurrence));
+    }
+
+    @Override
+    public List<TaskOccurrence> getOccurrences(LocalDate from, LocalDate to) throws SQLException {
+        return locked(() -> delegate.getOccurrences(from, to));
+    }
+
+    @Override
+    public List<TaskOccurrence> getOccurrences(int taskId) throws SQLException {
+        return locked(() -> delegate.getOccurrences(taskId));
+    }
+
+    @Override
+    public Map<String, Integer> getAppliedOperations(Collection<String> keys) throws SQLException {
+        return locked(() -> delegate.getAppliedOperations(keys));
+    }
+
+    @Override
+    public void markOperationApplied(String key, int taskId) throws SQLException {
+        lockedAction(() -> delegate.markOperationApplied(key, taskId));
+    }
+
+    @Override
+    public Instant getJobLastRun(String name) throws SQLException {
+        return locked(() -> delegate.getJobLastRun(name));
+    }
+
+    @Override
+    public boolean claimJobRun(String name, Instant scheduledFor) throws SQLException {
+        return locked(() -> delegate.claimJobRun(name, scheduledFor));
+    }
+
+    @Override
+    public void ping() throws SQLException {
+        lockedAction(delegate::ping);
+    }
+
+    @Override
+    public <T> T inTransaction(UnitOfWork<T> work) throws SQLException {
+        // Блокировка повторно входимая: вызовы внутри единицы работы идут через декоратор без ожидания
+        return locked(() -> delegate.inTransaction(dao -> work.execute(this)));
+    }
+
+    @Override
+    public String getHouseholdId() {
+        return delegate.getHouseholdId();
+    }
+
+    /**
+     * Закрывает хранилище после завершения вызова, который выполняется в этот момент.
+     */
+    @Override
+    public void close() throws SQLException {
+        lockedAction(delegate::close);
+    }
+
+    private <T> T locked(DaoCall<T> call) throws SQLException {
+        lock.lock();
+        try {
+            return call.call();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void lockedAction(DaoAction action) throws SQLException {
+        locked(() -> {
+            action.run();
+            return null;
+        });
+    }
+}
@@ -2,15 +2,24 @@ package org.example.hometracker_kurs.dao;
 
 import javafx.collections.ObservableList;
 import org.example.hometracker_kurs.model.Task;
+import org.example.hometracker_kurs.model.TaskChangeSet;
+import org.example.hometracker_kurs.model.TaskOccurrence;
+import org.example.hometracker_kurs.model.TaskPatch;
 import org.example.hometracker_kurs.model.TaskStatus;
 
 import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 public interface TaskDAO {
     ObservableList<Task> getAllTasks() throws SQLException;
     Task getTaskById(int id) throws SQLException;
     void addTask(Task task) throws SQLException;
     void updateTask(Task task) throws SQLException;
+    void patchTask(int id, TaskPatch patch) throws SQLException;
     void deleteTask(int id) throws SQLException;
 
     ObservableList<Task> getFilteredTasks(
@@ -21,8 +30,33 @@ public interface TaskDAO {
             boolean ascending
     ) throws SQLException;
 
+    List<Task> getTasksDueBetween(LocalDate from, LocalDate to, TaskStatus status) throws SQLException;
+    int countTasksDueOn(LocalDate date, Integer excludeId) throws SQLException;
+    int countTasks(TaskStatus status) throws SQLException;
+    List<Task> getTasksPage(int offset, int limit) throws SQLException;
+
     void updateTaskStatus(int id, TaskStatus status) throws SQLException;
     void markTaskAsCompleted(int id) throws SQLException;
     void postponeTask(Task task, int days) throws SQLException;
+
+    long getCurrentVersion() throws SQLException;
+    TaskChangeSet getChangesSince(long version) throws SQLException;
+
+    void saveOccurrence(TaskOccurrence occurrence) throws SQLException;
+    List<TaskOccurrence> getOccurrences(LocalDate from, LocalDate to) throws SQLException;
+    List<TaskOccurrence> getOccurrences(int taskId) throws SQLException;
+
+    Map<String, Integer> getAppliedOperations(Collection<String> keys) throws SQLException;
+    void markOperationApplied(String key, int taskId) throws SQLException;
+
+    Instant getJobLastRun(String name) throws SQLException;
+    boolean claimJobRun(String name, Instant scheduledFor) throws SQLException;
+
+    void ping() throws SQLException;
+
+    <T> T inTransaction(UnitOfWork<T> work) throws SQLException;
+
+    String getHouseholdId();
+
     void close() throws SQLException;
 }
\ No newline at end of file
@@ -13,6 +13,8 @@ public class TaskDAOFactory {
 
     /**
      * Создает и возвращает DAO объект для работы с задачами в зависимости от типа хранилища.
+     * Возвращаемый объект обёрнут в {@link SerializedTaskDAO}, чтобы к соединению обращался один поток за раз,
+     * и в {@link MeteredTaskDAO} для сбора метрик ({@link #decorate(String, TaskDAO)}).
      *
      * @param type         тип хранилища данных ("postgres", "excel", "h2")
      * @param dbConfig     конфигурация для PostgreSQL или H2
@@ -21,15 +23,49 @@ public class TaskDAOFactory {
      * @throws SQLException если возникает ошибка подключения к БД
      */
     public static TaskDAO createTaskDAO(String type, DatabaseConfig dbConfig, ExcelConfig excelConfig) throws SQLException {
-        switch (type.toLowerCase()) {
+        return createTaskDAO(type, dbConfig, excelConfig, Households.current());
+    }
+
+    /**
+     * Создает DAO объект, работающий с задачами указанного домохозяйства.
+     *
+     * @param type         тип хранилища данных ("postgres", "excel", "h2")
+     * @param dbConfig     конфигурация для PostgreSQL или H2
+     * @param excelConfig  конфигурация для Excel
+     * @param householdId  идентификатор домохозяйства
+     * @return реализацию TaskDAO
+     * @throws SQLException если возникает ошибка подключения к БД
+     */
+    public static TaskDAO createTaskDAO(String type, DatabaseConfig dbConfig, ExcelConfig excelConfig,
+                                        String householdId) throws SQLException {
+        String backend = type.toLowerCase();
+        TaskDAO dao;
+        switch (backend) {
             case "postgres":
-                return new PostgresTaskDAO(dbConfig);
+                dao = new PostgresTaskDAO(dbConfig, householdId);
+                break;
             case "excel":
-                return new ExcelTaskDAO(excelConfig);
+                dao = new ExcelTaskDAO(excelConfig, householdId);
+                break;
             case "h2":
-                return new H2TaskDAO(dbConfig);
+                dao = new H2TaskDAO(dbConfig, householdId);
+                break;
             default:
                 throw new IllegalArgumentException("Неизвестный тип DAO: " + type);
         }
+        return decorate(backend, dao);
+    }
+
+    /**
+     * Оборачивает хранилище в {@link SerializedTaskDAO}, а под ним — в {@link MeteredTaskDAO}.
+     * Метрики стоят под блокировкой, поэтому задержки в них — время работы хранилища
+     * без ожидания своей очереди к соединению.
+     *
+     * @param backend тип хранилища для имён MBean
+     * @param dao     исходная реализация DAO
+     * @return обёрнутый DAO
+     */
+    public static TaskDAO decorate(String backend, TaskDAO dao) {
+        return new SerializedTaskDAO(new MeteredTaskDAO(backend, dao));
     }
 }
@@ -0,0 +1,22 @@
+package org.example.hometracker_kurs.dao;
+
+import java.sql.SQLException;
+
+/**
+ * Набор операций над задачами, выполняемых как единое целое.
+ * В SQL-хранилищах выполняется в одной транзакции, в Excel — с одним сохранением файла.
+ *
+ * @param <T> тип результата
+ */
+@FunctionalInterface
+public interface UnitOfWork<T> {
+
+    /**
+     * Выполняет операции над переданным DAO.
+     *
+     * @param dao DAO, участвующий в текущей единице работы
+     * @return результат выполнения
+     * @throws SQLException если одна из операций завершилась ошибкой; все изменения будут отменены
+     */
+    T execute(TaskDAO dao) throws SQLException;
+}
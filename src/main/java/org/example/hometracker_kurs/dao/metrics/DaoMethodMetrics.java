@@ -0,0 +1,97 @@
+package org.example.hometracker_kurs.dao.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Метрики одного метода DAO: число вызовов, ошибок, возвращённых строк и гистограмма задержек.
+ */
+public class DaoMethodMetrics implements DaoMethodMetricsMBean {
+    private final String backend;
+    private final String method;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /**
+     * Конструктор метрик метода.
+     *
+     * @param backend тип хранилища ("postgres", "excel", "h2")
+     * @param method  имя метода DAO
+     */
+    public DaoMethodMetrics(String backend, String method) {
+        this.backend = backend;
+        this.method = method;
+    }
+
+    /**
+     * Регистрирует завершённый вызов.
+     *
+     * @param elapsedNanos длительность вызова в наносекундах
+     * @param failed       true, если вызов завершился исключением
+     */
+    public void recordCall(long elapsedNanos, boolean failed) {
+        calls.increment();
+        if (failed) {
+            errors.increment();
+        }
+        latency.record(elapsedNanos / 1_000);
+    }
+
+    /**
+     * Добавляет количество строк, возвращённых вызовом.
+     *
+     * @param count число строк
+     */
+    public void recordRows(int count) {
+        rows.add(count);
+    }
+
+    @Override
+    public String getBackend() { return backend; }
+
+    @Override
+    public String getMethod() { return method; }
+
+    @Override
+    public long getCalls() { return calls.sum(); }
+
+    @Override
+    public long getErrors() { return errors.sum(); }
+
+    @Override
+    public long getRows() { return rows.sum(); }
+
+    @Override
+    public double getMeanMicros() { return latency.getMean(); }
+
+    @Override
+    public long getP50Micros() { return latency.getPercentile(50); }
+
+    @Override
+    public long getP95Micros() { return latency.getPercentile(95); }
+
+    @Override
+    public long getP99Micros() { return latency.getPercentile(99); }
+
+    @Override
+    public long getMaxMicros() { return latency.getMax(); }
+
+    @Override
+    public void reset() {
+        calls.reset();
+        errors.reset();
+        rows.reset();
+        latency.reset();
+    }
+
+    /**
+     * Возвращает краткую сводку для журнала.
+     * @return строка со счётчиками и перцентилями
+     */
+    public String summary() {
+        return String.format("%s.%s calls=%d errors=%d rows=%d p50=%dµs p95=%dµs p99=%dµs max=%dµs",
+                backend, method, getCalls(), getErrors(), getRows(),
+                getP50Micros(), getP95Micros(), getP99Micros(), getMaxMicros());
+    }
+}
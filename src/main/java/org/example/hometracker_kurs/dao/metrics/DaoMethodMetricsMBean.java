@@ -0,0 +1,19 @@
+package org.example.hometracker_kurs.dao.metrics;
+
+/**
+ * JMX-интерфейс метрик одного метода DAO.
+ * Задержки публикуются в микросекундах.
+ */
+public interface DaoMethodMetricsMBean {
+    String getBackend();
+    String getMethod();
+    long getCalls();
+    long getErrors();
+    long getRows();
+    double getMeanMicros();
+    long getP50Micros();
+    long getP95Micros();
+    long getP99Micros();
+    long getMaxMicros();
+    void reset();
+}
@@ -0,0 +1,350 @@
+package org.example.hometracker_kurs.model;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.TextStyle;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Правило повторения задачи.
+ * Поддерживаются три вида правил:
+ * <ul>
+ *     <li>{@link Frequency#DAILY} — каждые N дней начиная с даты начала;</li>
+ *     <li>{@link Frequency#WEEKLY} — каждые N недель в указанные дни недели;</li>
+ *     <li>{@link Frequency#CUSTOM} — через N дней после последнего выполнения
+ *     (плавающий график, как у бывшего столбца {@code frequency_days}).</li>
+ * </ul>
+ * Даты повторений не хранятся, а вычисляются арифметически, поэтому поиск ближайшего
+ * повторения выполняется за постоянное время независимо от того, сколько их было в прошлом.
+ * Правило неизменяемо и хранится в одном текстовом столбце в формате, похожем на iCalendar RRULE:
+ * {@code FREQ=WEEKLY;INTERVAL=2;BYDAY=MO,TH;DTSTART=2025-01-06}.
+ */
+public final class RecurrenceRule {
+
+    /**
+     * Вид правила повторения.
+     */
+    public enum Frequency {
+        DAILY("Ежедневно"),
+        WEEKLY("Еженедельно"),
+        CUSTOM("После выполнения");
+
+        private final String displayName;
+
+        Frequency(String displayName) {
+            this.displayName = displayName;
+        }
+
+        /**
+         * Возвращает удобочитаемое название вида правила.
+         * @return отображаемое название
+         */
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    private static final String[] DAY_CODES = {"MO", "TU", "WE", "TH", "FR", "SA", "SU"};
+
+    private final Frequency frequency;
+    private final int interval;
+    private final Set<DayOfWeek> daysOfWeek;
+    private final LocalDate start;
+
+    private RecurrenceRule(Frequency frequency, int interval, Set<DayOfWeek> daysOfWeek, LocalDate start) {
+        if (frequency == null) {
+            throw new IllegalArgumentException("Не указан вид повторения");
+        }
+        if (interval < 1) {
+            throw new IllegalArgumentException("Интервал повторения должен быть положительным: " + interval);
+        }
+        if (start == null) {
+            throw new IllegalArgumentException("Не указана дата начала повторений");
+        }
+        this.frequency = frequency;
+        this.interval = interval;
+        this.start = start;
+
+        EnumSet<DayOfWeek> days = EnumSet.noneOf(DayOfWeek.class);
+        if (frequency == Frequency.WEEKLY) {
+            if (daysOfWeek != null) {
+                days.addAll(daysOfWeek);
+            }
+            if (days.isEmpty()) {
+                days.add(start.getDayOfWeek());
+            }
+        }
+        this.daysOfWeek = Collections.unmodifiableSet(days);
+    }
+
+    /**
+     * Создаёт правило «каждые N дней».
+     *
+     * @param start    дата первого повторения
+     * @param interval количество дней между повторениями
+     * @return правило повторения
+     */
+    public static RecurrenceRule daily(LocalDate start, int interval) {
+        return new RecurrenceRule(Frequency.DAILY, interval, null, start);
+    }
+
+    /**
+     * Создаёт правило «каждые N недель в указанные дни».
+     *
+     * @param start      дата начала; неделя, в которую она попадает, считается первой
+     * @param interval   количество недель между повторениями
+     * @param daysOfWeek дни недели; если пусто — день недели даты начала
+     * @return правило повторения
+     */
+    public static RecurrenceRule weekly(LocalDate start, int interval, Set<DayOfWeek> daysOfWeek) {
+        return new RecurrenceRule(Frequency.WEEKLY, interval, daysOfWeek, start);
+    }
+
+    /**
+     * Создаёт правило «через N дней после последнего выполнения».
+     *
+     * @param start дата первого повторения, пока задача ни разу не выполнялась
+     * @param days  количество дней после выполнения
+     * @return правило повторения
+     */
+    public static RecurrenceRule afterCompletion(LocalDate start, int days) {
+        return new RecurrenceRule(Frequency.CUSTOM, days, null, start);
+    }
+
+    /**
+     * Возвращает вид правила.
+     * @return вид правила
+     */
+    public Frequency getFrequency() { return frequency; }
+
+    /**
+     * Возвращает интервал повторения (в днях или неделях в зависимости от вида правила).
+     * @return интервал
+     */
+    public int getInterval() { return interval; }
+
+    /**
+     * Возвращает дни недели для еженедельного правила.
+     * @return неизменяемое множество дней (пустое для остальных видов)
+     */
+    public Set<DayOfWeek> getDaysOfWeek() { return daysOfWeek; }
+
+    /**
+     * Возвращает дату начала повторений.
+     * @return дата начала
+     */
+    public LocalDate getStart() { return start; }
+
+    /**
+     * Возвращает копию правила с другой датой начала.
+     *
+     * @param newStart новая дата начала
+     * @return новое правило
+     */
+    public RecurrenceRule withStart(LocalDate newStart) {
+        return new RecurrenceRule(frequency, interval, daysOfWeek, newStart);
+    }
+
+    /**
+     * Находит первое повторение, приходящееся на указанную дату или позже.
+     * Для всех видов правил вычисляется за O(1).
+     *
+     * @param date          дата, с которой начинается поиск
+     * @param lastCompleted дата последнего выполнения (учитывается только правилом {@link Frequency#CUSTOM})
+     * @return дата повторения
+     */
+    public LocalDate nextOnOrAfter(LocalDate date, LocalDate lastCompleted) {
+        switch (frequency) {
+            case DAILY:
+                return alignToInterval(start, date);
+            case CUSTOM:
+                LocalDate anchor = lastCompleted != null ? lastCompleted.plusDays(interval) : start;
+                return alignToInterval(anchor, date);
+            case WEEKLY:
+            default:
+                return nextWeekly(date);
+        }
+    }
+
+    /**
+     * Находит первое повторение строго после указанной даты.
+     *
+     * @param date          дата предыдущего повторения
+     * @param lastCompleted дата последнего выполнения
+     * @return дата следующего повторения
+     */
+    public LocalDate nextAfter(LocalDate date, LocalDate lastCompleted) {
+        return nextOnOrAfter(date.plusDays(1), lastCompleted);
+    }
+
+    /**
+     * Перечисляет повторения в заданном окне дат.
+     * Повторения вычисляются только внутри окна, предыдущие не перебираются.
+     *
+     * @param from          начало окна (включительно)
+     * @param to            конец окна (включительно)
+     * @param lastCompleted дата последнего выполнения
+     * @return даты повторений по возрастанию
+     */
+    public List<LocalDate> occurrencesBetween(LocalDate from, LocalDate to, LocalDate lastCompleted) {
+        List<LocalDate> result = new ArrayList<>();
+        for (LocalDate date = nextOnOrAfter(from, lastCompleted);
+             !date.isAfter(to);
+             date = nextAfter(date, lastCompleted)) {
+            result.add(date);
+        }
+        return result;
+    }
+
+    private LocalDate alignToInterval(LocalDate anchor, LocalDate date) {
+        if (!date.isAfter(anchor)) {
+            return anchor;
+        }
+        long days = ChronoUnit.DAYS.between(anchor, date);
+        long steps = (days + interval - 1) / interval;
+        return anchor.plusDays(steps * interval);
+    }
+
+    private LocalDate nextWeekly(LocalDate date) {
+        LocalDate from = date.isBefore(start) ? start : date;
+        LocalDate firstMonday = start.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        LocalDate monday = from.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+
+        long weeks = ChronoUnit.WEEKS.between(firstMonday, monday);
+        if (weeks % interval != 0) {
+            // Неделя без повторений — переходим к понедельнику следующей подходящей недели
+            monday = firstMonday.plusWeeks((weeks / interval + 1) * interval);
+            from = monday;
+        }
+
+        for (DayOfWeek day : daysOfWeek) {
+            LocalDate candidate = monday.plusDays(day.getValue() - 1L);
+            if (!candidate.isBefore(from)) {
+                return candidate;
+            }
+        }
+        // В текущей неделе дней не осталось — первый день следующей подходящей недели
+        LocalDate nextMonday = monday.plusWeeks(interval);
+        return nextMonday.plusDays(daysOfWeek.iterator().next().getValue() - 1L);
+    }
+
+    /**
+     * Возвращает правило в виде строки для хранения.
+     * @return строка вида {@code FREQ=DAILY;INTERVAL=1;DTSTART=2025-01-01}
+     */
+    public String format() {
+        StringBuilder sb = new StringBuilder("FREQ=").append(frequency.name())
+                .append(";INTERVAL=").append(interval);
+        if (frequency == Frequency.WEEKLY) {
+            sb.append(";BYDAY=").append(daysOfWeek.stream()
+                    .map(day -> DAY_CODES[day.getValue() - 1])
+                    .collect(Collectors.joining(",")));
+        }
+        return sb.append(";DTSTART=").append(start).toString();
+    }
+
+    /**
+     * Разбирает правило из строки, сохранённой методом {@link #format()}.
+     *
+     * @param value строка правила
+     * @return правило или null, если строка пустая
+     * @throws IllegalArgumentException если строка имеет неверный формат
+     */
+    public static RecurrenceRule parse(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+
+        Frequency frequency = null;
+        int interval = 1;
+        Set<DayOfWeek> days = EnumSet.noneOf(DayOfWeek.class);
+        LocalDate start = null;
+
+        for (String part : value.trim().split(";")) {
+            int eq = part.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Неверный формат правила повторения: " + value);
+            }
+            String key = part.substring(0, eq).trim().toUpperCase(Locale.ROOT);
+            String val = part.substring(eq + 1).trim();
+            switch (key) {
+                case "FREQ":
+                    frequency = Frequency.valueOf(val.toUpperCase(Locale.ROOT));
+                    break;
+                case "INTERVAL":
+                    interval = Integer.parseInt(val);
+                    break;
+                case "BYDAY":
+                    for (String code : val.split(",")) {
+                        days.add(dayOf(code.trim()));
+                    }
+                    break;
+                case "DTSTART":
+                    start = LocalDate.parse(val);
+                    break;
+                default:
+                    // Неизвестные параметры пропускаем, чтобы старые версии читали новые правила
+                    break;
+            }
+        }
+        return new RecurrenceRule(frequency, interval, days, start);
+    }
+
+    private static DayOfWeek dayOf(String code) {
+        for (int i = 0; i < DAY_CODES.length; i++) {
+            if (DAY_CODES[i].equalsIgnoreCase(code)) {
+                return DayOfWeek.of(i + 1);
+            }
+        }
+        throw new IllegalArgumentException("Неизвестный день недели: " + code);
+    }
+
+    /**
+     * Возвращает описание правила для интерфейса, например «Каждые 2 нед.: пн, чт».
+     * @return описание правила
+     */
+    public String getDisplayName() {
+        switch (frequency) {
+            case DAILY:
+                return interval == 1 ? "Каждый день" : "Каждые " + interval + " дн.";
+            case WEEKLY:
+                String days = daysOfWeek.stream()
+                        .map(day -> day.getDisplayName(TextStyle.SHORT, Locale.forLanguageTag("ru")))
+                        .collect(Collectors.joining(", "));
+                return (interval == 1 ? "Каждую неделю" : "Каждые " + interval + " нед.") + ": " + days;
+            case CUSTOM:
+            default:
+                return "Через " + interval + " дн. после выполнения";
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof RecurrenceRule)) return false;
+        RecurrenceRule other = (RecurrenceRule) obj;
+        return frequency == other.frequency
+                && interval == other.interval
+                && daysOfWeek.equals(other.daysOfWeek)
+                && start.equals(other.start);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(frequency, interval, daysOfWeek, start);
+    }
+
+    @Override
+    public String toString() {
+        return format();
+    }
+}
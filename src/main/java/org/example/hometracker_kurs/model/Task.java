@@ -16,6 +16,10 @@ public class Task {
     private TaskStatus status;
     private String type;
     private LocalDate lastCompleted;
+    private long version;
+    private RecurrenceRule recurrence;
+    private String householdId;
+    private long hlc;
 
     /**
      * Конструктор для создания новой задачи.
@@ -144,6 +148,63 @@ public class Task {
      */
     public void setLastCompleted(LocalDate lastCompleted) { this.lastCompleted = lastCompleted; }
 
+    /**
+     * Возвращает версию строки в хранилище.
+     * Версия увеличивается при каждом изменении задачи и используется для инкрементального обновления.
+     * @return номер версии (0, если задача ещё не сохранена)
+     */
+    public long getVersion() { return version; }
+
+    /**
+     * Устанавливает версию строки в хранилище.
+     * @param version номер версии
+     */
+    public void setVersion(long version) { this.version = version; }
+
+    /**
+     * Возвращает правило повторения задачи.
+     * Для повторяющейся задачи срок выполнения — это срок ближайшего невыполненного повторения.
+     * @return правило повторения или null, если задача разовая
+     */
+    public RecurrenceRule getRecurrence() { return recurrence; }
+
+    /**
+     * Устанавливает правило повторения задачи.
+     * @param recurrence правило повторения или null для разовой задачи
+     */
+    public void setRecurrence(RecurrenceRule recurrence) { this.recurrence = recurrence; }
+
+    /**
+     * Проверяет, является ли задача повторяющейся.
+     * @return true, если у задачи есть правило повторения
+     */
+    public boolean isRecurring() { return recurrence != null; }
+
+    /**
+     * Возвращает идентификатор домохозяйства, которому принадлежит задача.
+     * @return идентификатор домохозяйства или null, если задача ещё не сохранена
+     */
+    public String getHouseholdId() { return householdId; }
+
+    /**
+     * Устанавливает идентификатор домохозяйства.
+     * @param householdId идентификатор домохозяйства
+     */
+    public void setHouseholdId(String householdId) { this.householdId = householdId; }
+
+    /**
+     * Возвращает гибридную логическую метку времени последнего изменения.
+     * В отличие от версии метка сравнима между хранилищами и используется при слиянии реплик.
+     * @return метка времени (0, если задача не сохранялась)
+     */
+    public long getHlc() { return hlc; }
+
+    /**
+     * Устанавливает гибридную логическую метку времени последнего изменения.
+     * @param hlc метка времени
+     */
+    public void setHlc(long hlc) { this.hlc = hlc; }
+
     /**
      * Изменяет статус задачи с проверкой допустимости перехода.
      *
@@ -179,6 +240,20 @@ public class Task {
         }
     }
 
+    /**
+     * Создаёт независимую копию задачи со всеми полями, включая версию и метку времени.
+     * @return копия задачи
+     */
+    public Task copy() {
+        Task copy = new Task(id, name, description, dueDate, priority, assignedTo, status, lastCompleted);
+        copy.type = type;
+        copy.version = version;
+        copy.recurrence = recurrence;
+        copy.householdId = householdId;
+        copy.hlc = hlc;
+        return copy;
+    }
+
     /**
      * Сравнивает задачи по идентификатору.
      * @param obj объект для сравнения
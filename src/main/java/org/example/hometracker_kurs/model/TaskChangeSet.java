@@ -0,0 +1,62 @@
+package org.example.hometracker_kurs.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Набор изменений задач, произошедших в хранилище после указанной версии.
+ * Используется для инкрементального обновления таблицы вместо полной перезагрузки.
+ */
+public class TaskChangeSet {
+    private final List<Task> inserted;
+    private final List<Task> updated;
+    private final List<Integer> deletedIds;
+    private final long version;
+
+    /**
+     * Конструктор набора изменений.
+     *
+     * @param inserted   задачи, добавленные после исходной версии
+     * @param updated    задачи, изменённые после исходной версии
+     * @param deletedIds идентификаторы удалённых задач
+     * @param version    версия хранилища, до которой включительно учтены изменения
+     */
+    public TaskChangeSet(List<Task> inserted, List<Task> updated, List<Integer> deletedIds, long version) {
+        this.inserted = Collections.unmodifiableList(inserted);
+        this.updated = Collections.unmodifiableList(updated);
+        this.deletedIds = Collections.unmodifiableList(deletedIds);
+        this.version = version;
+    }
+
+    /**
+     * Возвращает добавленные задачи.
+     * @return список добавленных задач
+     */
+    public List<Task> getInserted() { return inserted; }
+
+    /**
+     * Возвращает изменённые задачи.
+     * @return список изменённых задач
+     */
+    public List<Task> getUpdated() { return updated; }
+
+    /**
+     * Возвращает идентификаторы удалённых задач.
+     * @return список идентификаторов
+     */
+    public List<Integer> getDeletedIds() { return deletedIds; }
+
+    /**
+     * Возвращает версию, которую следует передать при следующем запросе изменений.
+     * @return номер версии
+     */
+    public long getVersion() { return version; }
+
+    /**
+     * Проверяет, есть ли в наборе хотя бы одно изменение.
+     * @return true, если изменений нет
+     */
+    public boolean isEmpty() {
+        return inserted.isEmpty() && updated.isEmpty() && deletedIds.isEmpty();
+    }
+}
@@ -0,0 +1,165 @@
+package org.example.hometracker_kurs.model;
+
+import java.time.LocalDate;
+
+/**
+ * Изменяемые поля задачи, которые можно обновлять по отдельности ({@link TaskPatch}).
+ * У каждого поля есть имя столбца в базе данных и текстовое представление значения
+ * для журнала отложенных операций.
+ * Порядковые номера используются в двоичном формате, поэтому новые поля добавляются только в конец.
+ */
+public enum TaskField {
+    NAME("name", String.class, false),
+    DESCRIPTION("description", String.class, true),
+    DUE_DATE("due_date", LocalDate.class, true),
+    PRIORITY("priority", Integer.class, false),
+    ASSIGNED_TO("assigned_to", String.class, true),
+    STATUS("status", TaskStatus.class, false),
+    LAST_COMPLETED("last_completed", LocalDate.class, true),
+    TYPE("type", String.class, false),
+    RECURRENCE("recurrence", RecurrenceRule.class, true);
+
+    private final String column;
+    private final Class<?> valueType;
+    private final boolean nullable;
+
+    TaskField(String column, Class<?> valueType, boolean nullable) {
+        this.column = column;
+        this.valueType = valueType;
+        this.nullable = nullable;
+    }
+
+    /**
+     * Возвращает имя столбца таблицы {@code tasks}.
+     * @return имя столбца
+     */
+    public String getColumn() { return column; }
+
+    /**
+     * Возвращает тип значения поля.
+     * @return класс значения
+     */
+    public Class<?> getValueType() { return valueType; }
+
+    /**
+     * Проверяет, может ли поле быть пустым.
+     * @return true, если допускается null
+     */
+    public boolean isNullable() { return nullable; }
+
+    /**
+     * Читает значение поля из задачи.
+     *
+     * @param task задача
+     * @return значение поля
+     */
+    public Object get(Task task) {
+        return switch (this) {
+            case NAME -> task.getName();
+            case DESCRIPTION -> task.getDescription();
+            case DUE_DATE -> task.getDueDate();
+            case PRIORITY -> task.getPriority();
+            case ASSIGNED_TO -> task.getAssignedTo();
+            case STATUS -> task.getStatus();
+            case LAST_COMPLETED -> task.getLastCompleted();
+            case TYPE -> task.getType();
+            case RECURRENCE -> task.getRecurrence();
+        };
+    }
+
+    /**
+     * Записывает значение поля в задачу. Статус меняется через {@link Task#setStatus(TaskStatus)}
+     * с проверкой допустимости перехода.
+     *
+     * @param task  задача
+     * @param value значение подходящего типа
+     * @throws IllegalArgumentException если переход статуса недопустим
+     */
+    public void set(Task task, Object value) {
+        switch (this) {
+            case NAME -> task.setName((String) value);
+            case DESCRIPTION -> task.setDescription((String) value);
+            case DUE_DATE -> task.setDueDate((LocalDate) value);
+            case PRIORITY -> task.setPriority((Integer) value);
+            case ASSIGNED_TO -> task.setAssignedTo((String) value);
+            case STATUS -> task.setStatus((TaskStatus) value);
+            case LAST_COMPLETED -> task.setLastCompleted((LocalDate) value);
+            case TYPE -> task.setType((String) value);
+            case RECURRENCE -> task.setRecurrence((RecurrenceRule) value);
+        }
+    }
+
+    /**
+     * Проверяет, что значение подходит полю.
+     *
+     * @param value значение
+     * @throws IllegalArgumentException если значение пустое для обязательного поля или имеет другой тип
+     */
+    public void check(Object value) {
+        if (value == null) {
+            if (!nullable) {
+                throw new IllegalArgumentException("Поле " + column + " не может быть пустым");
+            }
+            return;
+        }
+        if (!valueType.isInstance(value)) {
+            throw new IllegalArgumentException("Поле " + column + " ожидает " + valueType.getSimpleName()
+                    + ", получено " + value.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * Преобразует значение в текст для журнала: даты в ISO, статус по имени, правило повторения
+     * в формате {@link RecurrenceRule#format()}.
+     *
+     * @param value значение поля
+     * @return текст или null
+     */
+    public String format(Object value) {
+        if (value == null) {
+            return null;
+        }
+        return switch (this) {
+            case STATUS -> ((TaskStatus) value).name();
+            case RECURRENCE -> ((RecurrenceRule) value).format();
+            default -> value.toString();
+        };
+    }
+
+    /**
+     * Разбирает значение, сохранённое методом {@link #format(Object)}.
+     *
+     * @param text текст или null
+     * @return значение поля
+     * @throws RuntimeException если текст не разбирается ({@link IllegalArgumentException}
+     *                          или {@link java.time.format.DateTimeParseException})
+     */
+    public Object parse(String text) {
+        if (text == null) {
+            return null;
+        }
+        return switch (this) {
+            case DUE_DATE, LAST_COMPLETED -> LocalDate.parse(text);
+            case PRIORITY -> Integer.valueOf(text);
+            case STATUS -> TaskStatus.valueOf(text);
+            case RECURRENCE -> RecurrenceRule.parse(text);
+            default -> text;
+        };
+    }
+
+    /**
+     * Находит поле по имени столбца.
+     *
+     * @param column имя столбца
+     * @return поле
+     * @throws IllegalArgumentException если такого поля нет
+     */
+    public static TaskField ofColumn(String column) {
+        for (TaskField field : values()) {
+            if (field.column.equals(column)) {
+                return field;
+            }
+        }
+        throw new IllegalArgumentException("Неизвестное поле задачи: " + column);
+    }
+}
@@ -0,0 +1,163 @@
+package org.example.hometracker_kurs.model;
+
+import java.time.LocalDate;
+import java.util.Objects;
+
+/**
+ * Отдельное повторение повторяющейся задачи.
+ * Повторения вычисляются по {@link RecurrenceRule} и сохраняются в хранилище только тогда,
+ * когда их выполнили или изменили (перенесли, назначили другого исполнителя).
+ * Ключ повторения — пара (идентификатор задачи, дата по расписанию).
+ */
+public class TaskOccurrence {
+    private final int taskId;
+    private final LocalDate occurrenceDate;
+    private TaskStatus status;
+    private LocalDate dueDate;
+    private String assignedTo;
+    private LocalDate completedDate;
+    private boolean materialized;
+    private long version;
+
+    /**
+     * Конструктор повторения.
+     *
+     * @param taskId         идентификатор повторяющейся задачи
+     * @param occurrenceDate дата повторения по расписанию
+     * @param status         статус повторения
+     * @param dueDate        фактический срок (отличается от даты по расписанию, если повторение перенесли)
+     * @param assignedTo     исполнитель этого повторения или null, если совпадает с исполнителем задачи
+     * @param completedDate  дата выполнения или null
+     */
+    public TaskOccurrence(int taskId, LocalDate occurrenceDate, TaskStatus status,
+                          LocalDate dueDate, String assignedTo, LocalDate completedDate) {
+        this.taskId = taskId;
+        this.occurrenceDate = occurrenceDate;
+        this.status = status;
+        this.dueDate = dueDate != null ? dueDate : occurrenceDate;
+        this.assignedTo = assignedTo;
+        this.completedDate = completedDate;
+    }
+
+    /**
+     * Создаёт вычисленное (ещё не сохранённое) повторение задачи.
+     *
+     * @param task           повторяющаяся задача
+     * @param occurrenceDate дата повторения по расписанию
+     * @return активное повторение
+     */
+    public static TaskOccurrence projected(Task task, LocalDate occurrenceDate) {
+        TaskStatus status = occurrenceDate.isBefore(LocalDate.now()) ? TaskStatus.OVERDUE : TaskStatus.ACTIVE;
+        return new TaskOccurrence(task.getId(), occurrenceDate, status, occurrenceDate, null, null);
+    }
+
+    /**
+     * Возвращает идентификатор задачи.
+     * @return идентификатор задачи
+     */
+    public int getTaskId() { return taskId; }
+
+    /**
+     * Возвращает дату повторения по расписанию.
+     * @return дата по расписанию
+     */
+    public LocalDate getOccurrenceDate() { return occurrenceDate; }
+
+    /**
+     * Возвращает статус повторения.
+     * @return статус
+     */
+    public TaskStatus getStatus() { return status; }
+
+    /**
+     * Устанавливает статус повторения.
+     * @param status новый статус
+     */
+    public void setStatus(TaskStatus status) { this.status = status; }
+
+    /**
+     * Возвращает фактический срок повторения.
+     * @return срок
+     */
+    public LocalDate getDueDate() { return dueDate; }
+
+    /**
+     * Устанавливает фактический срок повторения.
+     * @param dueDate новый срок
+     */
+    public void setDueDate(LocalDate dueDate) { this.dueDate = dueDate; }
+
+    /**
+     * Возвращает исполнителя этого повторения.
+     * @return исполнитель или null, если совпадает с исполнителем задачи
+     */
+    public String getAssignedTo() { return assignedTo; }
+
+    /**
+     * Устанавливает исполнителя этого повторения.
+     * @param assignedTo исполнитель или null
+     */
+    public void setAssignedTo(String assignedTo) { this.assignedTo = assignedTo; }
+
+    /**
+     * Возвращает дату выполнения.
+     * @return дата выполнения или null
+     */
+    public LocalDate getCompletedDate() { return completedDate; }
+
+    /**
+     * Устанавливает дату выполнения.
+     * @param completedDate дата выполнения или null
+     */
+    public void setCompletedDate(LocalDate completedDate) { this.completedDate = completedDate; }
+
+    /**
+     * Проверяет, сохранено ли повторение в хранилище.
+     * @return true, если повторение прочитано из хранилища или уже сохранено
+     */
+    public boolean isMaterialized() { return materialized; }
+
+    /**
+     * Отмечает, что повторение сохранено в хранилище.
+     * @param materialized признак сохранения
+     */
+    public void setMaterialized(boolean materialized) { this.materialized = materialized; }
+
+    /**
+     * Возвращает версию строки повторения в журнале изменений хранилища.
+     * @return версия или 0 для несохранённого повторения
+     */
+    public long getVersion() { return version; }
+
+    /**
+     * Устанавливает версию строки повторения.
+     * @param version версия
+     */
+    public void setVersion(long version) { this.version = version; }
+
+    /**
+     * Проверяет, закрыто ли повторение (выполнено или отменено).
+     * @return true, если повторение больше не требует действий
+     */
+    public boolean isDone() {
+        return status == TaskStatus.COMPLETED || status == TaskStatus.CANCELLED;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj == null || getClass() != obj.getClass()) return false;
+        TaskOccurrence other = (TaskOccurrence) obj;
+        return taskId == other.taskId && occurrenceDate.equals(other.occurrenceDate);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(taskId, occurrenceDate);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("#%d @ %s [%s, %s]", taskId, occurrenceDate, status.getDisplayName(), dueDate);
+    }
+}
@@ -0,0 +1,145 @@
+package org.example.hometracker_kurs.model;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Частичное изменение задачи: новые значения только тех полей, которые действительно поменялись.
+ * Хранилища записывают лишь эти столбцы, а журнал отложенных операций хранит патч вместо всей задачи,
+ * поэтому правки разных полей одной задачи разными пользователями не затирают друг друга.
+ */
+public final class TaskPatch {
+    private final EnumMap<TaskField, Object> values = new EnumMap<>(TaskField.class);
+
+    /**
+     * Создаёт патч из различий двух состояний задачи.
+     *
+     * @param before исходное состояние
+     * @param after  новое состояние
+     * @return патч со всеми изменившимися полями
+     */
+    public static TaskPatch between(Task before, Task after) {
+        return between(before, after, EnumSet.allOf(TaskField.class));
+    }
+
+    /**
+     * Создаёт патч из различий двух состояний задачи, сравнивая только указанные поля.
+     *
+     * @param before исходное состояние
+     * @param after  новое состояние
+     * @param fields поля, которые следует сравнить
+     * @return патч с изменившимися полями из указанных
+     */
+    public static TaskPatch between(Task before, Task after, Set<TaskField> fields) {
+        TaskPatch patch = new TaskPatch();
+        for (TaskField field : fields) {
+            Object value = field.get(after);
+            if (!Objects.equals(field.get(before), value)) {
+                patch.set(field, value);
+            }
+        }
+        return patch;
+    }
+
+    /**
+     * Задаёт новое значение поля.
+     *
+     * @param field поле
+     * @param value значение (null — очистить поле)
+     * @return этот патч
+     * @throws IllegalArgumentException если значение не подходит полю
+     */
+    public TaskPatch set(TaskField field, Object value) {
+        field.check(value);
+        values.put(field, value);
+        return this;
+    }
+
+    /**
+     * Возвращает новое значение поля.
+     *
+     * @param field поле
+     * @return значение или null, если поле не меняется или очищается
+     */
+    public Object get(TaskField field) {
+        return values.get(field);
+    }
+
+    /**
+     * Проверяет, меняется ли поле.
+     *
+     * @param field поле
+     * @return true, если патч содержит поле
+     */
+    public boolean contains(TaskField field) {
+        return values.containsKey(field);
+    }
+
+    /**
+     * Возвращает изменённые поля в порядке объявления.
+     * @return неизменяемое множество полей
+     */
+    public Set<TaskField> getFields() {
+        return Collections.unmodifiableSet(values.keySet());
+    }
+
+    /**
+     * Возвращает изменённые поля со значениями.
+     * @return неизменяемое отображение поле -> значение
+     */
+    public Map<TaskField, Object> getValues() {
+        return Collections.unmodifiableMap(values);
+    }
+
+    /**
+     * Проверяет, есть ли в патче изменения.
+     * @return true, если изменений нет
+     */
+    public boolean isEmpty() {
+        return values.isEmpty();
+    }
+
+    /**
+     * Объединяет патч с последующим: значения последующего патча побеждают.
+     *
+     * @param later последующий патч
+     * @return новый патч
+     */
+    public TaskPatch merge(TaskPatch later) {
+        TaskPatch result = new TaskPatch();
+        result.values.putAll(values);
+        result.values.putAll(later.values);
+        return result;
+    }
+
+    /**
+     * Применяет патч к задаче.
+     *
+     * @param task задача
+     * @throws IllegalArgumentException если патч меняет статус недопустимым переходом
+     */
+    public void applyTo(Task task) {
+        for (Map.Entry<TaskField, Object> entry : values.entrySet()) {
+            entry.getKey().set(task, entry.getValue());
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof TaskPatch other && values.equals(other.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return values.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "TaskPatch" + values;
+    }
+}
@@ -0,0 +1,187 @@
+package org.example.hometracker_kurs.scheduler;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.BitSet;
+
+/**
+ * Календарное расписание в формате cron из пяти полей: {@code минута час день месяц день_недели}.
+ * Поле задаётся как {@code *}, число или диапазон {@code a-b}, за которыми может идти шаг {@code /n},
+ * либо как список таких значений через запятую. Воскресенье — 0 или 7. Если ограничены и день месяца,
+ * и день недели, подходит день, удовлетворяющий любому из них, как в обычном cron.
+ *
+ * <p>Время считается в заданном часовом поясе. Запуск, попавший в пропущенный при переходе
+ * на летнее время час, сдвигается вперёд на длину перехода; время, повторяющееся при переходе
+ * на зимнее время, срабатывает один раз — по первому наступлению.
+ */
+public final class CalendarTrigger {
+    public static final String ZONE_PROPERTY = "hometracker.zone";
+
+    // Ближайшее 29 февраля может быть через 8 лет
+    private static final int SEARCH_DAYS = 8 * 366;
+
+    private final String expression;
+    private final ZoneId zone;
+    private final BitSet minutes;
+    private final BitSet hours;
+    private final BitSet daysOfMonth;
+    private final BitSet months;
+    private final BitSet daysOfWeek;
+    private final boolean anyDayOfMonth;
+    private final boolean anyDayOfWeek;
+
+    private CalendarTrigger(String expression, ZoneId zone) {
+        String[] fields = expression.trim().split("\\s+");
+        if (fields.length != 5) {
+            throw new IllegalArgumentException("Расписание должно состоять из 5 полей: " + expression);
+        }
+        this.expression = expression.trim();
+        this.zone = zone;
+        this.minutes = parseField(fields[0], 0, 59, expression);
+        this.hours = parseField(fields[1], 0, 23, expression);
+        this.daysOfMonth = parseField(fields[2], 1, 31, expression);
+        this.months = parseField(fields[3], 1, 12, expression);
+        this.daysOfWeek = parseField(fields[4], 0, 7, expression);
+        if (daysOfWeek.get(7)) {
+            daysOfWeek.set(0);
+        }
+        this.anyDayOfMonth = fields[2].startsWith("*");
+        this.anyDayOfWeek = fields[4].startsWith("*");
+    }
+
+    /**
+     * Разбирает расписание в часовом поясе из свойства {@value #ZONE_PROPERTY}.
+     *
+     * @param expression выражение cron из пяти полей
+     * @return расписание
+     * @throws IllegalArgumentException если выражение записано неверно
+     */
+    public static CalendarTrigger parse(String expression) {
+        return parse(expression, configuredZone());
+    }
+
+    /**
+     * Разбирает расписание в заданном часовом поясе.
+     *
+     * @param expression выражение cron из пяти полей
+     * @param zone       часовой пояс
+     * @return расписание
+     * @throws IllegalArgumentException если выражение записано неверно
+     */
+    public static CalendarTrigger parse(String expression, ZoneId zone) {
+        return new CalendarTrigger(expression, zone);
+    }
+
+    /**
+     * Возвращает часовой пояс расписаний: свойство {@value #ZONE_PROPERTY}, иначе системный.
+     * @return часовой пояс
+     */
+    public static ZoneId configuredZone() {
+        String zone = System.getProperty(ZONE_PROPERTY);
+        return zone == null || zone.isBlank() ? ZoneId.systemDefault() : ZoneId.of(zone.trim());
+    }
+
+    /**
+     * Находит ближайший запуск строго после заданного момента.
+     *
+     * @param after момент, после которого ищется запуск
+     * @return время запуска или null, если расписание больше не срабатывает
+     */
+    public Instant next(Instant after) {
+        LocalDateTime start = LocalDateTime.ofInstant(after, zone).truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
+        LocalDate date = start.toLocalDate();
+        for (int day = 0; day <= SEARCH_DAYS; day++, date = date.plusDays(1)) {
+            if (!matchesDate(date)) {
+                continue;
+            }
+            boolean firstDay = date.equals(start.toLocalDate());
+            for (int hour = hours.nextSetBit(firstDay ? start.getHour() : 0); hour >= 0; hour = hours.nextSetBit(hour + 1)) {
+                boolean firstHour = firstDay && hour == start.getHour();
+                for (int minute = minutes.nextSetBit(firstHour ? start.getMinute() : 0); minute >= 0;
+                     minute = minutes.nextSetBit(minute + 1)) {
+                    // В перекрытии выбирается ранний сдвиг, в разрыве время сдвигается вперёд
+                    Instant candidate = ZonedDateTime.ofLocal(date.atTime(hour, minute), zone, null).toInstant();
+                    if (candidate.isAfter(after)) {
+                        return candidate;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    private boolean matchesDate(LocalDate date) {
+        if (!months.get(date.getMonthValue())) {
+            return false;
+        }
+        boolean dayOfMonth = daysOfMonth.get(date.getDayOfMonth());
+        boolean dayOfWeek = daysOfWeek.get(date.getDayOfWeek() == DayOfWeek.SUNDAY ? 0 : date.getDayOfWeek().getValue());
+        if (anyDayOfMonth || anyDayOfWeek) {
+            return dayOfMonth && dayOfWeek;
+        }
+        return dayOfMonth || dayOfWeek;
+    }
+
+    private static BitSet parseField(String field, int min, int max, String expression) {
+        BitSet values = new BitSet(max + 1);
+        for (String part : field.split(",")) {
+            String range = part;
+            int step = 1;
+            int slash = part.indexOf('/');
+            if (slash >= 0) {
+                range = part.substring(0, slash);
+                step = parseNumber(part.substring(slash + 1), 1, max, expression);
+            }
+            int from;
+            int to;
+            if (range.equals("*")) {
+                from = min;
+                to = max;
+            } else if (range.contains("-")) {
+                String[] bounds = range.split("-", 2);
+                from = parseNumber(bounds[0], min, max, expression);
+                to = parseNumber(bounds[1], min, max, expression);
+                if (from > to) {
+                    throw new IllegalArgumentException("Неверный диапазон '" + range + "' в расписании: " + expression);
+                }
+            } else {
+                from = parseNumber(range, min, max, expression);
+                to = slash >= 0 ? max : from;
+            }
+            for (int value = from; value <= to; value += step) {
+                values.set(value);
+            }
+        }
+        return values;
+    }
+
+    private static int parseNumber(String value, int min, int max, String expression) {
+        try {
+            int number = Integer.parseInt(value);
+            if (number < min || number > max) {
+                throw new IllegalArgumentException("Значение " + number + " вне диапазона " + min + "-" + max
+                        + " в расписании: " + expression);
+            }
+            return number;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Неверное значение '" + value + "' в расписании: " + expression, e);
+        }
+    }
+
+    /**
+     * Возвращает расписание вместе с часовым поясом, например {@code 0 8 * * * Europe/Moscow}.
+     */
+    @Override
+    public String toString() {
+        return expression + " " + zone.getId();
+    }
+}
@@ -0,0 +1,250 @@
+package org.example.hometracker_kurs.scheduler;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Общий планировщик фоновых заданий приложения.
+ *
+ * <p>Расписание ведёт один поток, а сами задания выполняются в виртуальных потоках, так что долгое
+ * задание не задерживает остальные. Каждое задание запускается по календарному расписанию
+ * {@link CalendarTrigger} и никогда не выполняется параллельно с самим собой.
+ *
+ * <p>Перед запуском задание отмечается в {@link JobStore}; отметка в общем хранилище не даёт двум клиентам
+ * выполнить один запуск дважды, а по последней отметке после перезапуска догоняется пропущенный запуск.
+ * Если пропущено несколько запусков подряд — приложение было выключено или машина спала, —
+ * выполняется один, за последнее пропущенное время. Запуск, завершившийся ошибкой, не повторяется
+ * до следующего времени по расписанию.
+ *
+ * <p>Метрики каждого задания публикуются через JMX ({@code type=Job}).
+ */
+public final class JobScheduler implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(JobScheduler.class.getName());
+    private static final String JMX_DOMAIN = "org.example.hometracker_kurs";
+    // Во время сна машины ожидание потока может не идти, поэтому время по расписанию
+    // сверяется с настенными часами не реже, чем раз в полминуты
+    private static final long MAX_WAIT_MILLIS = 30_000;
+    // Запуск, начавшийся позже этого срока, считается пропущенным
+    private static final Duration MISFIRE_THRESHOLD = Duration.ofMinutes(1);
+
+    private static final class Shared {
+        static final JobScheduler INSTANCE = new JobScheduler("job-scheduler");
+    }
+
+    final Object lock = new Object();
+    private final List<ScheduledJob> jobs = new ArrayList<>();
+    private final ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+    private boolean closed;
+
+    /**
+     * Создаёт планировщик со своим потоком расписания.
+     * Приложение пользуется общим экземпляром {@link #shared()}.
+     *
+     * @param threadName имя потока расписания
+     */
+    public JobScheduler(String threadName) {
+        Thread driver = new Thread(this::runLoop, threadName);
+        driver.setDaemon(true);
+        driver.start();
+    }
+
+    /**
+     * Возвращает общий планировщик приложения.
+     * @return планировщик, работающий до завершения процесса
+     */
+    public static JobScheduler shared() {
+        return Shared.INSTANCE;
+    }
+
+    /**
+     * Возвращает исполнитель для разовых фоновых работ, например, начальной проверки при запуске.
+     * @return исполнитель на виртуальных потоках
+     */
+    public Executor workers() {
+        return workers;
+    }
+
+    /**
+     * Ставит задание на расписание. Если по отметкам хранилища запуск был пропущен,
+     * задание выполняется сразу.
+     *
+     * @param name    имя задания в хранилище и в JMX
+     * @param trigger расписание
+     * @param store   хранилище отметок о запусках
+     * @param action  действие; исключения записываются в журнал и учитываются в метриках
+     * @return зарегистрированное задание
+     * @throws IllegalStateException если планировщик остановлен
+     */
+    public ScheduledJob schedule(String name, CalendarTrigger trigger, JobStore store, Runnable action) {
+        ScheduledJob job = new ScheduledJob(this, name, trigger, store, action);
+        Instant lastRun = null;
+        try {
+            lastRun = store.lastRun(name);
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "Не удалось прочитать последний запуск задания " + name, e);
+        }
+        Instant firstFire = trigger.next(lastRun != null ? lastRun : Instant.now());
+
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("Планировщик остановлен");
+            }
+            job.nextFire = firstFire;
+            jobs.add(job);
+            job.objectName = register(job);
+            lock.notifyAll();
+        }
+        return job;
+    }
+
+    void cancel(ScheduledJob job) {
+        synchronized (lock) {
+            if (job.cancelled) {
+                return;
+            }
+            job.cancelled = true;
+            jobs.remove(job);
+            unregister(job);
+            lock.notifyAll();
+        }
+    }
+
+    private void runLoop() {
+        synchronized (lock) {
+            while (!closed) {
+                Instant now = Instant.now();
+                Instant earliest = null;
+                for (ScheduledJob job : jobs) {
+                    if (job.running || job.nextFire == null) {
+                        continue;
+                    }
+                    if (!job.nextFire.isAfter(now)) {
+                        dispatch(job, now);
+                    } else if (earliest == null || job.nextFire.isBefore(earliest)) {
+                        earliest = job.nextFire;
+                    }
+                }
+                long waitMillis = earliest == null ? MAX_WAIT_MILLIS
+                        : Math.max(1, Math.min(MAX_WAIT_MILLIS, Duration.between(now, earliest).toMillis()));
+                try {
+                    lock.wait(waitMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    // Вызывается под блокировкой: пропущенные запуски сводятся к одному, за последнее наступившее время
+    private void dispatch(ScheduledJob job, Instant now) {
+        Instant scheduledFor = job.nextFire;
+        long missed = 0;
+        for (Instant fire = job.trigger().next(scheduledFor); fire != null && !fire.isAfter(now);
+             fire = job.trigger().next(fire)) {
+            scheduledFor = fire;
+            missed++;
+        }
+        if (Duration.between(scheduledFor, now).compareTo(MISFIRE_THRESHOLD) > 0) {
+            missed++;
+        }
+        job.recordMisfires(missed);
+        job.nextFire = job.trigger().next(now);
+        job.running = true;
+
+        Instant fireTime = scheduledFor;
+        workers.execute(() -> execute(job, fireTime));
+    }
+
+    private void execute(ScheduledJob job, Instant scheduledFor) {
+        try {
+            if (!job.store().claim(job.getName(), scheduledFor)) {
+                // Этот запуск уже выполнил другой клиент того же хранилища
+                job.recordSkipped();
+                return;
+            }
+            long start = System.nanoTime();
+            try {
+                job.action().run();
+                job.recordRun(scheduledFor, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            } catch (RuntimeException e) {
+                job.recordFailure();
+                logger.log(Level.WARNING, "Ошибка выполнения задания " + job.getName(), e);
+            }
+        } catch (SQLException e) {
+            job.recordFailure();
+            logger.log(Level.WARNING, "Не удалось отметить запуск задания " + job.getName(), e);
+        } finally {
+            synchronized (lock) {
+                job.running = false;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    // Несколько экземпляров одного задания (например, у двух сервисов) получают разные имена MBean
+    private ObjectName register(ScheduledJob job) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            String base = JMX_DOMAIN + ":type=Job,name=" + job.getName();
+            ObjectName objectName = new ObjectName(base);
+            for (int instance = 2; server.isRegistered(objectName); instance++) {
+                objectName = new ObjectName(base + ",instance=" + instance);
+            }
+            server.registerMBean(job, objectName);
+            return objectName;
+        } catch (JMException e) {
+            logger.log(Level.WARNING, "Не удалось зарегистрировать MBean задания " + job.getName(), e);
+            return null;
+        }
+    }
+
+    private void unregister(ScheduledJob job) {
+        if (job.objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(job.objectName);
+        } catch (JMException e) {
+            logger.log(Level.WARNING, "Не удалось снять регистрацию MBean задания " + job.getName(), e);
+        }
+        job.objectName = null;
+    }
+
+    /**
+     * Снимает все задания с расписания и дожидается завершения уже начавшихся запусков.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            for (ScheduledJob job : jobs) {
+                job.cancelled = true;
+                unregister(job);
+            }
+            jobs.clear();
+            lock.notifyAll();
+        }
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(10, TimeUnit.SECONDS)) {
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package org.example.hometracker_kurs.scheduler;
+
+import org.example.hometracker_kurs.dao.TaskDAO;
+
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Хранилище отметок о запусках заданий {@link JobScheduler}.
+ * По последнему запуску планировщик догоняет запуски, пропущенные, пока приложение было выключено,
+ * а отметка перед запуском не даёт нескольким клиентам одного хранилища выполнить один и тот же запуск дважды.
+ */
+public interface JobStore {
+
+    /**
+     * Возвращает время последнего отмеченного запуска задания.
+     *
+     * @param job имя задания
+     * @return время запуска по расписанию или null, если задание ещё не запускалось
+     * @throws SQLException при ошибке хранилища
+     */
+    Instant lastRun(String job) throws SQLException;
+
+    /**
+     * Отмечает запуск задания, если он ещё не отмечен.
+     *
+     * @param job          имя задания
+     * @param scheduledFor время запуска по расписанию
+     * @return true, если запуск достался вызывающему; false, если этот или более поздний запуск уже отмечен
+     * @throws SQLException при ошибке хранилища
+     */
+    boolean claim(String job, Instant scheduledFor) throws SQLException;
+
+    /**
+     * Хранилище в памяти для заданий, которые должны выполняться в каждом процессе,
+     * например, для подготовки локального кэша. Пропущенные запуски после перезапуска не догоняются.
+     *
+     * @return новое пустое хранилище
+     */
+    static JobStore inMemory() {
+        Map<String, Instant> lastRuns = new HashMap<>();
+        return new JobStore() {
+            @Override
+            public synchronized Instant lastRun(String job) {
+                return lastRuns.get(job);
+            }
+
+            @Override
+            public synchronized boolean claim(String job, Instant scheduledFor) {
+                Instant lastRun = lastRuns.get(job);
+                if (lastRun != null && !lastRun.isBefore(scheduledFor)) {
+                    return false;
+                }
+                lastRuns.put(job, scheduledFor);
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Хранилище в активном источнике данных: отметки видны всем клиентам той же базы и переживают перезапуск.
+     *
+     * @param taskDAO источник данных
+     * @return хранилище поверх DAO
+     */
+    static JobStore of(TaskDAO taskDAO) {
+        return new JobStore() {
+            @Override
+            public Instant lastRun(String job) throws SQLException {
+                return taskDAO.getJobLastRun(job);
+            }
+
+            @Override
+            public boolean claim(String job, Instant scheduledFor) throws SQLException {
+                return taskDAO.claimJobRun(job, scheduledFor);
+            }
+        };
+    }
+}
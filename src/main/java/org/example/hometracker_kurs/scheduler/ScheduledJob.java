@@ -0,0 +1,126 @@
+package org.example.hometracker_kurs.scheduler;
+
+import org.example.hometracker_kurs.dao.metrics.LatencyHistogram;
+
+import javax.management.ObjectName;
+import java.time.Instant;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Задание, зарегистрированное в {@link JobScheduler}: расписание, действие и метрики запусков.
+ * Возвращается из {@link JobScheduler#schedule} и служит для отмены задания.
+ */
+public final class ScheduledJob implements ScheduledJobMBean {
+    private final JobScheduler scheduler;
+    private final String name;
+    private final CalendarTrigger trigger;
+    private final JobStore store;
+    private final Runnable action;
+
+    // Изменяются только под блокировкой планировщика
+    Instant nextFire;
+    boolean running;
+    boolean cancelled;
+    ObjectName objectName;
+
+    private volatile Instant lastRun;
+    private volatile long lastDurationMillis;
+    private final LongAdder runs = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder misfires = new LongAdder();
+    private final LatencyHistogram durations = new LatencyHistogram();
+
+    ScheduledJob(JobScheduler scheduler, String name, CalendarTrigger trigger, JobStore store, Runnable action) {
+        this.scheduler = scheduler;
+        this.name = name;
+        this.trigger = trigger;
+        this.store = store;
+        this.action = action;
+    }
+
+    /**
+     * Снимает задание с расписания. Уже начавшийся запуск доводится до конца.
+     */
+    public void cancel() {
+        scheduler.cancel(this);
+    }
+
+    CalendarTrigger trigger() {
+        return trigger;
+    }
+
+    JobStore store() {
+        return store;
+    }
+
+    Runnable action() {
+        return action;
+    }
+
+    void recordRun(Instant scheduledFor, long durationMillis) {
+        runs.increment();
+        lastRun = scheduledFor;
+        lastDurationMillis = durationMillis;
+        durations.record(durationMillis);
+    }
+
+    void recordFailure() {
+        failures.increment();
+    }
+
+    void recordSkipped() {
+        skipped.increment();
+    }
+
+    void recordMisfires(long count) {
+        misfires.add(count);
+    }
+
+    @Override
+    public String getName() { return name; }
+
+    @Override
+    public String getSchedule() { return trigger.toString(); }
+
+    @Override
+    public long getRuns() { return runs.sum(); }
+
+    @Override
+    public long getFailures() { return failures.sum(); }
+
+    @Override
+    public long getSkipped() { return skipped.sum(); }
+
+    @Override
+    public long getMisfires() { return misfires.sum(); }
+
+    @Override
+    public boolean isRunning() {
+        synchronized (scheduler.lock) {
+            return running;
+        }
+    }
+
+    @Override
+    public String getLastRun() {
+        Instant value = lastRun;
+        return value == null ? null : value.toString();
+    }
+
+    @Override
+    public String getNextFire() {
+        synchronized (scheduler.lock) {
+            return nextFire == null || cancelled ? null : nextFire.toString();
+        }
+    }
+
+    @Override
+    public long getLastDurationMillis() { return lastDurationMillis; }
+
+    @Override
+    public double getMeanDurationMillis() { return durations.getMean(); }
+
+    @Override
+    public long getP99DurationMillis() { return durations.getPercentile(99); }
+}
@@ -0,0 +1,20 @@
+package org.example.hometracker_kurs.scheduler;
+
+/**
+ * JMX-интерфейс метрик задания планировщика.
+ * Длительности публикуются в миллисекундах, время запусков — в формате ISO-8601.
+ */
+public interface ScheduledJobMBean {
+    String getName();
+    String getSchedule();
+    long getRuns();
+    long getFailures();
+    long getSkipped();
+    long getMisfires();
+    boolean isRunning();
+    String getLastRun();
+    String getNextFire();
+    long getLastDurationMillis();
+    double getMeanDurationMillis();
+    long getP99DurationMillis();
+}
\ No newline at end of file
@@ -0,0 +1,227 @@
+package org.example.hometracker_kurs.service;
+
+import javafx.application.Platform;
+import javafx.collections.ObservableList;
+import org.example.hometracker_kurs.model.Task;
+import org.example.hometracker_kurs.model.TaskChangeSet;
+import org.example.hometracker_kurs.model.TaskPatch;
+
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Асинхронный фасад над {@link TaskService}.
+ * Все обращения к хранилищу выполняются на виртуальных потоках, а результат
+ * возвращается в поток JavaFX через {@link Platform#runLater(Runnable)},
+ * поэтому обработчики интерфейса никогда не блокируются на вводе-выводе.
+ * Сами вызовы хранилища выполняются по одному: их упорядочивает {@code SerializedTaskDAO}
+ * внутри {@link TaskService}.
+ */
+public class AsyncTaskService {
+
+    /**
+     * Операция над хранилищем, которая может завершиться {@link SQLException}.
+     *
+     * @param <T> тип результата
+     */
+    @FunctionalInterface
+    public interface StorageCall<T> {
+        T call() throws SQLException;
+    }
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<String, CompletableFuture<?>> latestByKey = new ConcurrentHashMap<>();
+    private volatile TaskService taskService;
+
+    /**
+     * Возвращает текущий синхронный сервис.
+     *
+     * @return сервис задач или null, если источник данных ещё не выбран
+     */
+    public TaskService getTaskService() {
+        return taskService;
+    }
+
+    /**
+     * Подключает новый источник данных вне потока JavaFX и закрывает предыдущий.
+     * Все незавершённые запросы к старому источнику отменяются.
+     *
+     * @param factory создаёт новый {@link TaskService}
+     * @return будущее с подключённым сервисом
+     */
+    public CompletableFuture<TaskService> connect(StorageCall<TaskService> factory) {
+        cancelAll();
+        return submit(() -> {
+            TaskService previous = taskService;
+            if (previous != null) {
+                previous.close();
+            }
+            TaskService created = factory.call();
+            taskService = created;
+            return created;
+        });
+    }
+
+    /**
+     * Выполняет произвольную операцию над хранилищем на виртуальном потоке.
+     * Зависимые этапы, добавленные через {@code thenAccept}/{@code thenCompose},
+     * выполняются в потоке JavaFX.
+     *
+     * @param call операция
+     * @param <T>  тип результата
+     * @return будущее с результатом
+     */
+    public <T> CompletableFuture<T> submit(StorageCall<T> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> running = executor.submit(() -> {
+            try {
+                T value = call.call();
+                Platform.runLater(() -> result.complete(value));
+            } catch (Throwable e) {
+                Platform.runLater(() -> result.completeExceptionally(e));
+            }
+        });
+        // Отмена снимает ещё не начатый запрос, но не прерывает выполняющийся: прерывание потока,
+        // ждущего ответа JDBC, может закрыть общее соединение. Результат отменённого будущего отбрасывается
+        result.whenComplete((value, error) -> {
+            if (result.isCancelled()) {
+                running.cancel(false);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Выполняет операцию, отменяя предыдущую с тем же ключом, если она ещё не завершилась.
+     * Подходит для запросов, у которых важен только последний результат
+     * (обновление таблицы, фильтрация).
+     *
+     * @param key  ключ группы запросов
+     * @param call операция
+     * @param <T>  тип результата
+     * @return будущее с результатом
+     */
+    public <T> CompletableFuture<T> submitLatest(String key, StorageCall<T> call) {
+        CompletableFuture<T> future = submit(call);
+        CompletableFuture<?> superseded = latestByKey.put(key, future);
+        if (superseded != null) {
+            superseded.cancel(false);
+        }
+        future.whenComplete((value, error) -> latestByKey.remove(key, future));
+        return future;
+    }
+
+    public CompletableFuture<ObservableList<Task>> getAllTasks() {
+        return submitLatest("load", () -> requireService().getAllTasks());
+    }
+
+    public CompletableFuture<ObservableList<Task>> getFilteredTasks(
+            String type, String status, String keyword, String sortField, boolean ascending) {
+        return submitLatest("load", () ->
+                requireService().getFilteredTasks(type, status, keyword, sortField, ascending));
+    }
+
+    public CompletableFuture<TaskChangeSet> changesSince(long version) {
+        return submitLatest("load", () -> requireService().changesSince(version));
+    }
+
+    public CompletableFuture<Void> addTask(Task task) {
+        return submit(() -> {
+            requireService().addTask(task);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> updateTask(Task task) {
+        return submit(() -> {
+            requireService().updateTask(task);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> patchTask(int id, TaskPatch patch) {
+        return submit(() -> {
+            requireService().patchTask(id, patch);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> deleteTask(Task task) {
+        return submit(() -> {
+            requireService().deleteTask(task);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> completeTask(int id) {
+        return submit(() -> {
+            requireService().completeTask(id);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> postponeTask(int id, int days) {
+        return submit(() -> {
+            requireService().postponeTask(id, days);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> reactivateTask(int id) {
+        return submit(() -> {
+            requireService().reactivateTask(id);
+            return null;
+        });
+    }
+
+    /**
+     * Отменяет все незавершённые запросы, ожидающие последнего результата.
+     */
+    public void cancelAll() {
+        latestByKey.values().forEach(future -> future.cancel(false));
+        latestByKey.clear();
+    }
+
+    /**
+     * Закрывает текущий источник данных и останавливает пул виртуальных потоков.
+     * Выполняющиеся запросы не прерываются: источник закрывается после них.
+     *
+     * @throws SQLException если не удалось закрыть источник данных
+     */
+    public void close() throws SQLException {
+        cancelAll();
+        executor.shutdown();
+        TaskService current = taskService;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    /**
+     * Извлекает исходную причину ошибки, завёрнутую в {@link CompletionException}.
+     *
+     * @param error ошибка из будущего
+     * @return исходное исключение
+     */
+    public static Throwable unwrap(Throwable error) {
+        Throwable cause = error;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    private TaskService requireService() throws SQLException {
+        TaskService current = taskService;
+        if (current == null) {
+            throw new SQLException("Источник данных не выбран");
+        }
+        return current;
+    }
+}
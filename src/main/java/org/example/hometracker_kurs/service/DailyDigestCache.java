@@ -0,0 +1,193 @@
+package org.example.hometracker_kurs.service;
+
+import org.example.hometracker_kurs.dao.TaskDAO;
+import org.example.hometracker_kurs.model.Task;
+import org.example.hometracker_kurs.model.TaskChangeSet;
+import org.example.hometracker_kurs.model.TaskStatus;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Кэш сводки активных задач на день для Telegram-бота.
+ * Сводка читается индексированным запросом {@link TaskDAO#getTasksDueBetween} и хранится в памяти,
+ * так что команда {@code /tasks} и утренняя рассылка не читают таблицу.
+ *
+ * <p>Записи через этот же сервис сбрасывают сводку, только если затрагивают её: задача уже есть в сводке
+ * или её новый срок совпадает с днём сводки; после сброса сводка пересчитывается в фоне.
+ * Хранилище общее для нескольких клиентов, поэтому не чаще раза в {@code validationInterval}
+ * сводка сверяется с версией хранилища, и по изменениям после её версии решается, нужен ли пересчёт.
+ */
+public class DailyDigestCache {
+    public static final Duration DEFAULT_VALIDATION_INTERVAL = Duration.ofSeconds(30);
+
+    private final TaskDAO taskDAO;
+    private final Executor refresher;
+    private final long validationIntervalNanos;
+    private final AtomicBoolean refreshScheduled = new AtomicBoolean();
+
+    private volatile Digest digest;
+    private long generation; // под this; растёт при каждом сбросе, чтобы не сохранить сводку, прочитанную до него
+
+    private record Digest(LocalDate date, List<Task> tasks, Set<Integer> taskIds, long version, long validatedAt) {
+        Digest validated(long version, long now) {
+            return new Digest(date, tasks, taskIds, version, now);
+        }
+    }
+
+    /**
+     * Создаёт кэш сводки.
+     *
+     * @param taskDAO            хранилище задач
+     * @param refresher          исполнитель фонового пересчёта
+     * @param validationInterval как часто сверять сводку с версией хранилища
+     */
+    public DailyDigestCache(TaskDAO taskDAO, Executor refresher, Duration validationInterval) {
+        this.taskDAO = taskDAO;
+        this.refresher = refresher;
+        this.validationIntervalNanos = validationInterval.toNanos();
+    }
+
+    /**
+     * Возвращает активные задачи со сроком на указанный день.
+     *
+     * @param date день
+     * @return задачи, отсортированные по приоритету; список неизменяем
+     * @throws SQLException если сводку пришлось пересчитать и запрос не удался
+     */
+    public List<Task> get(LocalDate date) throws SQLException {
+        Digest current = digest;
+        if (current == null || !current.date().equals(date)) {
+            return load(date).tasks();
+        }
+        long now = System.nanoTime();
+        if (now - current.validatedAt() < validationIntervalNanos) {
+            return current.tasks();
+        }
+
+        long generationBefore = generation();
+        TaskChangeSet changes = taskDAO.getChangesSince(current.version());
+        if (affects(current, changes)) {
+            return load(date).tasks();
+        }
+        store(current.validated(changes.getVersion(), now), generationBefore);
+        return current.tasks();
+    }
+
+    /**
+     * Пересчитывает сводку на день, если она ещё не вычислена.
+     *
+     * @param date день
+     * @throws SQLException если запрос не удался
+     */
+    public void precompute(LocalDate date) throws SQLException {
+        Digest current = digest;
+        if (current == null || !current.date().equals(date)) {
+            load(date);
+        }
+    }
+
+    /**
+     * Сообщает о записи задачи с известным новым сроком.
+     *
+     * @param taskId  идентификатор задачи
+     * @param dueDate новый срок; null — срок неизвестен, сводка сбрасывается
+     */
+    public void taskChanged(int taskId, LocalDate dueDate) {
+        Digest current = digest;
+        if (current != null && (dueDate == null || current.date().equals(dueDate) || current.taskIds().contains(taskId))) {
+            invalidate();
+        }
+    }
+
+    /**
+     * Сообщает о записи задачи, не менявшей ни срок, ни статус (или об удалении задачи).
+     *
+     * @param taskId идентификатор задачи
+     */
+    public void taskChanged(int taskId) {
+        Digest current = digest;
+        if (current != null && current.taskIds().contains(taskId)) {
+            invalidate();
+        }
+    }
+
+    /**
+     * Сбрасывает сводку и запускает её пересчёт в фоне.
+     */
+    public void invalidate() {
+        synchronized (this) {
+            generation++;
+            digest = null;
+        }
+        scheduleRefresh();
+    }
+
+    private void scheduleRefresh() {
+        if (!refreshScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            refresher.execute(() -> {
+                refreshScheduled.set(false);
+                try {
+                    precompute(LocalDate.now());
+                } catch (SQLException e) {
+                    System.err.println("Ошибка пересчёта сводки задач: " + e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Сервис закрывается; сводка пересчитается при следующем запросе
+            refreshScheduled.set(false);
+        }
+    }
+
+    private Digest load(LocalDate date) throws SQLException {
+        long generationBefore = generation();
+        // Версия читается до задач: запись между двумя запросами будет замечена при следующей сверке
+        long version = taskDAO.getCurrentVersion();
+        List<Task> tasks = List.copyOf(taskDAO.getTasksDueBetween(date, date, TaskStatus.ACTIVE));
+        Set<Integer> ids = new HashSet<>();
+        for (Task task : tasks) {
+            ids.add(task.getId());
+        }
+        Digest loaded = new Digest(date, tasks, Set.copyOf(ids), version, System.nanoTime());
+        store(loaded, generationBefore);
+        return loaded;
+    }
+
+    private synchronized long generation() {
+        return generation;
+    }
+
+    private synchronized void store(Digest value, long generationBefore) {
+        if (generation == generationBefore) {
+            digest = value;
+        }
+    }
+
+    private static boolean affects(Digest digest, TaskChangeSet changes) {
+        for (Integer id : changes.getDeletedIds()) {
+            if (digest.taskIds().contains(id)) {
+                return true;
+            }
+        }
+        return affects(digest, changes.getInserted()) || affects(digest, changes.getUpdated());
+    }
+
+    private static boolean affects(Digest digest, List<Task> tasks) {
+        for (Task task : tasks) {
+            if (digest.taskIds().contains(task.getId()) || digest.date().equals(task.getDueDate())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
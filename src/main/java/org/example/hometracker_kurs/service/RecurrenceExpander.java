@@ -0,0 +1,238 @@
+package org.example.hometracker_kurs.service;
+
+import org.example.hometracker_kurs.dao.TaskDAO;
+import org.example.hometracker_kurs.model.RecurrenceRule;
+import org.example.hometracker_kurs.model.Task;
+import org.example.hometracker_kurs.model.TaskOccurrence;
+import org.example.hometracker_kurs.model.TaskStatus;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Ленивое развёртывание повторяющихся задач.
+ * Повторения вычисляются по правилу только внутри запрошенного окна дат; в хранилище попадают
+ * лишь выполненные или изменённые повторения, поэтому таблица задач не разрастается.
+ *
+ * <p>Для каждой задачи, к которой уже обращались, в памяти хранится индекс сохранённых повторений
+ * ({@link TreeMap} по дате), так что поиск ближайшего невыполненного повторения стоит O(1) на вычисление
+ * даты по правилу и O(log n) на проверку индекса.
+ */
+public class RecurrenceExpander {
+    private final TaskDAO taskDAO;
+    private final Map<Integer, OccurrenceIndex> indexes = new HashMap<>();
+
+    /**
+     * Создаёт развёртку повторений над указанным хранилищем.
+     *
+     * @param taskDAO хранилище задач и сохранённых повторений
+     */
+    public RecurrenceExpander(TaskDAO taskDAO) {
+        this.taskDAO = taskDAO;
+    }
+
+    /**
+     * Разворачивает повторяющиеся задачи в окне дат.
+     * Вычисленные повторения начинаются с текущего срока задачи (ближайшего невыполненного повторения),
+     * сохранённые повторения возвращаются всегда, даже если они раньше этого срока.
+     *
+     * @param tasks задачи; разовые пропускаются
+     * @param from  начало окна (включительно)
+     * @param to    конец окна (включительно)
+     * @return повторения, отсортированные по сроку
+     */
+    public List<TaskOccurrence> expand(Collection<Task> tasks, LocalDate from, LocalDate to) throws SQLException {
+        Map<Integer, Map<LocalDate, TaskOccurrence>> stored = new HashMap<>();
+        for (TaskOccurrence occurrence : taskDAO.getOccurrences(from, to)) {
+            stored.computeIfAbsent(occurrence.getTaskId(), id -> new HashMap<>())
+                    .put(occurrence.getOccurrenceDate(), occurrence);
+        }
+
+        List<TaskOccurrence> result = new ArrayList<>();
+        for (Task task : tasks) {
+            if (!task.isRecurring()) {
+                continue;
+            }
+            Map<LocalDate, TaskOccurrence> saved = stored.getOrDefault(task.getId(), Map.of());
+            result.addAll(saved.values());
+
+            if (task.getStatus() == TaskStatus.CANCELLED || task.getDueDate() == null) {
+                continue;
+            }
+            LocalDate windowStart = from.isAfter(task.getDueDate()) ? from : task.getDueDate();
+            for (LocalDate date : task.getRecurrence().occurrencesBetween(windowStart, to, task.getLastCompleted())) {
+                if (!saved.containsKey(date)) {
+                    result.add(TaskOccurrence.projected(task, date));
+                }
+            }
+        }
+
+        result.sort(Comparator.comparing(TaskOccurrence::getDueDate)
+                .thenComparingInt(TaskOccurrence::getTaskId));
+        return result;
+    }
+
+    /**
+     * Находит ближайшее невыполненное повторение, приходящееся на дату или позже.
+     *
+     * @param task повторяющаяся задача
+     * @param date дата начала поиска
+     * @return сохранённое незакрытое повторение или вычисленное новое
+     */
+    public synchronized TaskOccurrence nextOccurrence(Task task, LocalDate date) throws SQLException {
+        RecurrenceRule rule = requireRule(task);
+        OccurrenceIndex index = indexFor(task.getId());
+
+        LocalDate candidate = rule.nextOnOrAfter(date, task.getLastCompleted());
+        // Каждый шаг пропускает одно закрытое повторение, поэтому шагов не больше, чем сохранённых строк
+        for (int steps = 0; steps <= index.byDate.size(); steps++) {
+            TaskOccurrence saved = index.byDate.get(candidate);
+            if (saved == null) {
+                return TaskOccurrence.projected(task, candidate);
+            }
+            if (!saved.isDone()) {
+                return saved;
+            }
+            candidate = rule.nextAfter(candidate, task.getLastCompleted());
+        }
+        return TaskOccurrence.projected(task, candidate);
+    }
+
+    /**
+     * Возвращает повторение, которому соответствует текущий срок задачи.
+     * Если повторение переносили, его дата по расписанию отличается от срока — такое повторение
+     * уже сохранено и находится по индексу незакрытых повторений.
+     *
+     * @param task повторяющаяся задача
+     * @return текущее повторение
+     */
+    public synchronized TaskOccurrence currentOccurrence(Task task) throws SQLException {
+        requireRule(task);
+        OccurrenceIndex index = indexFor(task.getId());
+        if (!index.open.isEmpty()) {
+            TaskOccurrence earliestOpen = index.byDate.get(index.open.first());
+            if (earliestOpen.getDueDate().equals(task.getDueDate())) {
+                return earliestOpen;
+            }
+        }
+        TaskOccurrence saved = index.byDate.get(task.getDueDate());
+        return saved != null ? saved : TaskOccurrence.projected(task, task.getDueDate());
+    }
+
+    /**
+     * Отмечает текущее повторение выполненным и переводит задачу на следующее повторение.
+     * Пропущенные повторения в прошлом не сохраняются: следующим становится ближайшее не раньше сегодняшнего дня.
+     *
+     * @param task  повторяющаяся задача (изменяется на месте)
+     * @param today дата выполнения
+     * @return выполненное повторение
+     */
+    public synchronized TaskOccurrence completeCurrent(Task task, LocalDate today) throws SQLException {
+        TaskOccurrence current = currentOccurrence(task);
+        current.setStatus(TaskStatus.COMPLETED);
+        current.setCompletedDate(today);
+        save(current);
+
+        task.setLastCompleted(today);
+        LocalDate afterCurrent = current.getOccurrenceDate().plusDays(1);
+        TaskOccurrence next = nextOccurrence(task, afterCurrent.isAfter(today) ? afterCurrent : today);
+        task.setDueDate(next.getDueDate());
+        if (task.getStatus() != TaskStatus.ACTIVE) {
+            task.setStatus(TaskStatus.ACTIVE);
+        }
+        return current;
+    }
+
+    /**
+     * Переносит текущее повторение на указанное количество дней.
+     *
+     * @param task повторяющаяся задача
+     * @param days количество дней
+     * @return перенесённое повторение
+     */
+    public synchronized TaskOccurrence postponeCurrent(Task task, int days) throws SQLException {
+        TaskOccurrence current = currentOccurrence(task);
+        current.setDueDate(current.getDueDate().plusDays(days));
+        current.setStatus(TaskStatus.POSTPONED);
+        save(current);
+        return current;
+    }
+
+    /**
+     * Сохраняет изменённое повторение и обновляет индекс.
+     *
+     * @param occurrence повторение
+     */
+    public synchronized void save(TaskOccurrence occurrence) throws SQLException {
+        taskDAO.saveOccurrence(occurrence);
+        OccurrenceIndex index = indexes.get(occurrence.getTaskId());
+        if (index != null) {
+            index.put(occurrence);
+        }
+    }
+
+    /**
+     * Сбрасывает индекс задачи после изменения её правила или удаления.
+     *
+     * @param taskId идентификатор задачи
+     */
+    public synchronized void invalidate(int taskId) {
+        indexes.remove(taskId);
+    }
+
+    /**
+     * Сбрасывает все индексы, например после отката транзакции.
+     */
+    public synchronized void invalidateAll() {
+        indexes.clear();
+    }
+
+    private OccurrenceIndex indexFor(int taskId) throws SQLException {
+        OccurrenceIndex index = indexes.get(taskId);
+        if (index == null) {
+            index = new OccurrenceIndex();
+            for (TaskOccurrence occurrence : taskDAO.getOccurrences(taskId)) {
+                index.put(occurrence);
+            }
+            indexes.put(taskId, index);
+        }
+        return index;
+    }
+
+    private static RecurrenceRule requireRule(Task task) throws SQLException {
+        if (task == null || !task.isRecurring()) {
+            throw new SQLException("Задача не является повторяющейся");
+        }
+        if (task.getDueDate() == null) {
+            throw new SQLException("У повторяющейся задачи не задан срок");
+        }
+        return task.getRecurrence();
+    }
+
+    /**
+     * Сохранённые повторения одной задачи: все по дате и отдельно незакрытые (перенесённые, изменённые).
+     */
+    private static final class OccurrenceIndex {
+        private final NavigableMap<LocalDate, TaskOccurrence> byDate = new TreeMap<>();
+        private final NavigableSet<LocalDate> open = new TreeSet<>();
+
+        void put(TaskOccurrence occurrence) {
+            byDate.put(occurrence.getOccurrenceDate(), occurrence);
+            if (occurrence.isDone()) {
+                open.remove(occurrence.getOccurrenceDate());
+            } else {
+                open.add(occurrence.getOccurrenceDate());
+            }
+        }
+    }
+}
@@ -2,10 +2,13 @@ package org.example.hometracker_kurs.service;
 
 import javafx.collections.ObservableList;
 import org.example.hometracker_kurs.model.Task;
+import org.example.hometracker_kurs.model.TaskChangeSet;
+import org.example.hometracker_kurs.model.TaskPatch;
 import org.example.hometracker_kurs.model.TaskStatus;
 
 import java.sql.SQLException;
 import java.time.LocalDate;
+import java.util.List;
 
 public class TaskManagerService {
     private final TaskService taskService;
@@ -16,10 +19,26 @@ public class TaskManagerService {
 
     public ObservableList<Task> refreshData() throws SQLException {
         ObservableList<Task> tasks = taskService.getAllTasks();
-        updateOverdueTasks();
+        updateOverdueTasks(tasks);
         return tasks;
     }
 
+    public long getCurrentVersion() throws SQLException {
+        return taskService.getCurrentVersion();
+    }
+
+    public TaskChangeSet loadChanges(long version) throws SQLException {
+        return taskService.changesSince(version);
+    }
+
+    public int countTasks(TaskStatus status) throws SQLException {
+        return taskService.countTasks(status);
+    }
+
+    public List<Task> getTasksPage(int offset, int limit) throws SQLException {
+        return taskService.getTasksPage(offset, limit);
+    }
+
     public void addTask(Task task) throws SQLException {
         taskService.addTask(task);
     }
@@ -28,6 +47,10 @@ public class TaskManagerService {
         taskService.updateTask(task);
     }
 
+    public void patchTask(int id, TaskPatch patch) throws SQLException {
+        taskService.patchTask(id, patch);
+    }
+
     public void deleteTask(Task task) throws SQLException {
         if (task != null) {
             taskService.deleteTask(task);
@@ -63,26 +86,27 @@ public class TaskManagerService {
                 type, status, keyword, sortField, ascending);
     }
 
-    private void updateOverdueTasks() {
-        try {
-            ObservableList<Task> tasks = taskService.getAllTasks();
-            boolean updated = false;
-
-            for (Task task : tasks) {
-                if (task.getStatus() == TaskStatus.ACTIVE &&
+    private void updateOverdueTasks(ObservableList<Task> tasks) {
+        List<Task> overdue = tasks.stream()
+                .filter(task -> task.getStatus() == TaskStatus.ACTIVE &&
                         task.getDueDate() != null &&
-                        task.getDueDate().isBefore(LocalDate.now()) &&
-                        task.getStatus() != TaskStatus.OVERDUE) {
-
-                    task.setStatus(TaskStatus.OVERDUE);
-                    taskService.updateTask(task);
-                    updated = true;
+                        task.getDueDate().isBefore(LocalDate.now()))
+                .toList();
+        if (overdue.isEmpty()) {
+            return;
+        }
+        try {
+            // Меняется только статус, поэтому проверки формы (срок не в прошлом) и очередь офлайн-операций
+            // не участвуют: просроченная задача по определению имеет срок в прошлом
+            taskService.inTransaction(dao -> {
+                for (Task task : overdue) {
+                    dao.updateTaskStatus(task.getId(), TaskStatus.OVERDUE);
                 }
-            }
-
-            if (updated) {
-                System.out.println("Обновленны просроченные задачи");
-            }
+                return null;
+            });
+            // Строки таблицы меняются только после фиксации, чтобы откат не оставил их просроченными
+            overdue.forEach(task -> task.setStatus(TaskStatus.OVERDUE));
+            System.out.println("Обновленны просроченные задачи");
         } catch (SQLException e) {
             System.err.println("Ошибка при обновлении просроченных задач: " + e.getMessage());
         }
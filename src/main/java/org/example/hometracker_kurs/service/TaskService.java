@@ -4,55 +4,169 @@ import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import org.example.hometracker_kurs.config.DatabaseConfig;
 import org.example.hometracker_kurs.config.ExcelConfig;
+import org.example.hometracker_kurs.dao.DailyCapacity;
+import org.example.hometracker_kurs.dao.H2TaskDAO;
+import org.example.hometracker_kurs.dao.Households;
+import org.example.hometracker_kurs.dao.PostgresTaskDAO;
+import org.example.hometracker_kurs.dao.ReplicaStore;
 import org.example.hometracker_kurs.dao.TaskDAO;
 import org.example.hometracker_kurs.dao.TaskDAOFactory;
+import org.example.hometracker_kurs.dao.UnitOfWork;
 import org.example.hometracker_kurs.model.Task;
+import org.example.hometracker_kurs.model.TaskChangeSet;
+import org.example.hometracker_kurs.model.TaskField;
+import org.example.hometracker_kurs.model.TaskOccurrence;
+import org.example.hometracker_kurs.model.TaskPatch;
 import org.example.hometracker_kurs.model.TaskStatus;
+import org.example.hometracker_kurs.scheduler.CalendarTrigger;
+import org.example.hometracker_kurs.scheduler.JobScheduler;
+import org.example.hometracker_kurs.scheduler.JobStore;
+import org.example.hometracker_kurs.scheduler.ScheduledJob;
+import org.example.hometracker_kurs.sync.Backoff;
+import org.example.hometracker_kurs.sync.CircuitBreaker;
+import org.example.hometracker_kurs.sync.NetworkErrors;
+import org.example.hometracker_kurs.sync.OperationJournal;
 import org.example.hometracker_kurs.sync.PendingTaskQueue;
-import org.example.hometracker_kurs.sync.QueuedTaskOperation;
+import org.example.hometracker_kurs.sync.ReplayEngine;
+import org.example.hometracker_kurs.sync.ReplicationEngine;
+import org.example.hometracker_kurs.sync.SyncWorker;
+import org.example.hometracker_kurs.sync.Synchronizer;
 
+import java.io.IOException;
 import java.sql.SQLException;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.List;
-import java.util.concurrent.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class TaskService {
+    public static final String OFFLINE = "offline";
+
     private final TaskDAO taskDAO;
-    private ScheduledExecutorService statusCheckScheduler;
+    private final ReplicationEngine replicationEngine;
+    private final RecurrenceExpander recurrenceExpander;
+    private final DailyDigestCache dailyDigest;
+    private final List<ScheduledJob> jobs = new CopyOnWriteArrayList<>();
+    private ReplayEngine replayEngine;
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker(3);
+    private volatile SyncWorker syncWorker;
+
+    // Общие для всех сервисов процесса: интерфейс и бот работают с разными экземплярами над одним хранилищем
+    private static final List<Runnable> changeListeners = new CopyOnWriteArrayList<>();
 
     public TaskService(String daoType, DatabaseConfig dbConfig, ExcelConfig excelConfig) {
+        this(daoType, dbConfig, excelConfig, Households.current());
+    }
+
+    public TaskService(String daoType, DatabaseConfig dbConfig, ExcelConfig excelConfig, String householdId) {
         try {
-            this.taskDAO = TaskDAOFactory.createTaskDAO(daoType, dbConfig, excelConfig);
+            if (OFFLINE.equalsIgnoreCase(daoType)) {
+                // Приложение работает с локальной H2, сервер догоняется фоновым обменом изменениями
+                H2TaskDAO replica = new H2TaskDAO(dbConfig, householdId);
+                this.taskDAO = TaskDAOFactory.decorate(OFFLINE, replica);
+                // У синхронизации своё соединение с репликой: её транзакции не смешиваются с транзакциями интерфейса
+                this.replicationEngine = new ReplicationEngine(new H2TaskDAO(dbConfig, householdId),
+                        () -> connectServer(dbConfig, householdId));
+            } else {
+                this.taskDAO = TaskDAOFactory.createTaskDAO(daoType, dbConfig, excelConfig, householdId);
+                this.replicationEngine = null;
+            }
+            this.recurrenceExpander = new RecurrenceExpander(taskDAO);
+            this.dailyDigest = new DailyDigestCache(taskDAO, JobScheduler.shared().workers(),
+                    DailyDigestCache.DEFAULT_VALIDATION_INTERVAL);
             startStatusChecker();
+            scheduleDailyDigest();
         } catch (SQLException e) {
             throw new RuntimeException("Не удалось создать DAO: " + e.getMessage(), e);
         }
     }
 
+    private static ReplicaStore connectServer(DatabaseConfig dbConfig, String householdId) throws SQLException {
+        try {
+            return new PostgresTaskDAO(dbConfig, householdId);
+        } catch (RuntimeException e) {
+            // Конструктор заворачивает ошибку подключения; для классификации сетевых ошибок нужна исходная
+            if (e.getCause() instanceof SQLException cause) throw cause;
+            throw e;
+        }
+    }
+
+    public boolean isOfflineFirst() {
+        return replicationEngine != null;
+    }
+
+    public String getHouseholdId() {
+        return taskDAO.getHouseholdId();
+    }
+
+    // Отметка запуска в базе не даёт нескольким клиентам одного домохозяйства проверять задачи одновременно
     private void startStatusChecker() {
-        statusCheckScheduler = Executors.newSingleThreadScheduledExecutor();
-        statusCheckScheduler.scheduleAtFixedRate(this::checkOverdueTasks, 0, 24, TimeUnit.HOURS);
+        JobScheduler.shared().workers().execute(this::checkOverdueTasks);
+        scheduleJob("overdue-check", CalendarTrigger.parse("0 0 * * *"), this::checkOverdueTasks);
+    }
+
+    // Сводка на новый день считается сразу после полуночи, к утренней рассылке она уже в памяти.
+    // Кэш у каждого сервиса свой, поэтому и отметки запусков хранятся в памяти
+    private void scheduleDailyDigest() {
+        JobScheduler.shared().workers().execute(this::precomputeDailyDigest);
+        jobs.add(JobScheduler.shared().schedule("daily-digest", CalendarTrigger.parse("0 0 * * *"),
+                JobStore.inMemory(), this::precomputeDailyDigest));
+    }
+
+    public static void addChangeListener(Runnable listener) {
+        changeListeners.add(listener);
+    }
+
+    public static void removeChangeListener(Runnable listener) {
+        changeListeners.remove(listener);
+    }
+
+    // Слушатели узнают только о факте записи; что именно изменилось, они читают по версиям хранилища
+    private static void notifyChanged() {
+        for (Runnable listener : changeListeners) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                System.err.println("Ошибка оповещения об изменении задач: " + e.getMessage());
+            }
+        }
+    }
+
+    public ScheduledJob scheduleJob(String name, CalendarTrigger trigger, Runnable action) {
+        ScheduledJob job = JobScheduler.shared().schedule(name, trigger, JobStore.of(taskDAO), action);
+        jobs.add(job);
+        return job;
+    }
+
+    private void precomputeDailyDigest() {
+        try {
+            dailyDigest.precompute(LocalDate.now());
+        } catch (SQLException e) {
+            System.err.println("Ошибка подготовки сводки задач: " + e.getMessage());
+        }
+    }
+
+    public List<Task> getDailyDigest(LocalDate date) throws SQLException {
+        return dailyDigest.get(date);
     }
 
     public void checkOverdueTasks() {
         try {
-            ObservableList<Task> tasks = taskDAO.getAllTasks();
-            boolean needsRefresh = false;
-
-            for (Task task : tasks) {
-                if (task.getStatus() == TaskStatus.ACTIVE &&
-                        task.getDueDate() != null &&
-                        task.getDueDate().isBefore(LocalDate.now())) {
-
-                    if (task.getStatus() != TaskStatus.OVERDUE) {
-                        task.setStatus(TaskStatus.OVERDUE);
-                        taskDAO.updateTask(task);
-                        needsRefresh = true;
+            boolean needsRefresh = taskDAO.inTransaction(dao -> {
+                boolean updated = false;
+                for (Task task : dao.getAllTasks()) {
+                    if (task.getStatus() == TaskStatus.ACTIVE &&
+                            task.getDueDate() != null &&
+                            task.getDueDate().isBefore(LocalDate.now())) {
+                        dao.updateTaskStatus(task.getId(), TaskStatus.OVERDUE);
+                        updated = true;
                     }
                 }
-            }
+                return updated;
+            });
 
             if (needsRefresh) {
+                notifyChanged();
                 System.out.println("Обновлены статусы просроченных задач");
             }
         } catch (SQLException e) {
@@ -64,6 +178,26 @@ public class TaskService {
         return FXCollections.observableArrayList(taskDAO.getAllTasks());
     }
 
+    public long getCurrentVersion() throws SQLException {
+        return taskDAO.getCurrentVersion();
+    }
+
+    public TaskChangeSet changesSince(long version) throws SQLException {
+        return taskDAO.getChangesSince(version);
+    }
+
+    public int countTasks(TaskStatus status) throws SQLException {
+        return taskDAO.countTasks(status);
+    }
+
+    public List<Task> getTasksPage(int offset, int limit) throws SQLException {
+        return taskDAO.getTasksPage(offset, limit);
+    }
+
+    public List<Task> getTasksDueBetween(LocalDate from, LocalDate to, TaskStatus status) throws SQLException {
+        return taskDAO.getTasksDueBetween(from, to, status);
+    }
+
     public ObservableList<Task> getFilteredTasks(
             String type,
             String status,
@@ -75,60 +209,203 @@ public class TaskService {
     }
 
     public void addTask(Task task) throws SQLException {
+        validateTask(task);
         try {
-            validateTask(task);
-            taskDAO.addTask(task);
+            if (canWriteDirectly()) {
+                taskDAO.addTask(task);
+                dailyDigest.taskChanged(task.getId(), task.getDueDate());
+                notifyChanged();
+                return;
+            }
         } catch (SQLException e) {
-            if (isNetworkIssue(e)) {
-                PendingTaskQueue.enqueue(task, "add");
-                System.err.println("⛔ Соединение потеряно, задача добавлена в очередь: " + task.getName());
-            } else throw e;
+            if (!isNetworkIssue(e)) throw e;
+            reportNetworkFailure();
+        }
+        long sequence = PendingTaskQueue.enqueue(task, "add");
+        if (task.getId() <= 0) {
+            // Как и при добавлении в хранилище, задача получает идентификатор, по которому её можно менять дальше
+            task.setId(OperationJournal.provisionalId(sequence));
         }
+        System.err.println("⛔ Нет связи с хранилищем, задача добавлена в очередь: " + task.getName());
     }
 
     public void updateTask(Task task) throws SQLException {
+        validateTask(task);
+        try {
+            if (canWriteDirectly()) {
+                taskDAO.updateTask(task);
+                recurrenceExpander.invalidate(task.getId());
+                dailyDigest.taskChanged(task.getId(), task.getDueDate());
+                notifyChanged();
+                return;
+            }
+        } catch (SQLException e) {
+            if (!isNetworkIssue(e)) throw e;
+            reportNetworkFailure();
+        }
+        PendingTaskQueue.enqueue(task, "update");
+        System.err.println("⛔ Нет связи с хранилищем, обновление сохранено локально: " + task.getName());
+    }
+
+    public void patchTask(int id, TaskPatch patch) throws SQLException {
+        if (patch == null || patch.isEmpty()) {
+            return;
+        }
+        validatePatch(patch);
         try {
-            validateTask(task);
-            taskDAO.updateTask(task);
+            if (canWriteDirectly()) {
+                taskDAO.patchTask(id, patch);
+                recurrenceExpander.invalidate(id);
+                if (patch.contains(TaskField.DUE_DATE)) {
+                    dailyDigest.taskChanged(id, (LocalDate) patch.get(TaskField.DUE_DATE));
+                } else if (patch.contains(TaskField.STATUS)) {
+                    dailyDigest.taskChanged(id, null);
+                } else {
+                    dailyDigest.taskChanged(id);
+                }
+                notifyChanged();
+                return;
+            }
         } catch (SQLException e) {
-            if (isNetworkIssue(e)) {
-                PendingTaskQueue.enqueue(task, "update");
-                System.err.println("⛔ Соединение потеряно, обновление сохранено локально: " + task.getName());
-            } else throw e;
+            if (!isNetworkIssue(e)) throw e;
+            reportNetworkFailure();
         }
+        PendingTaskQueue.enqueuePatch(id, patch);
+        System.err.println("⛔ Нет связи с хранилищем, изменение полей " + patch.getFields() + " сохранено локально");
     }
 
     public void deleteTask(Task task) throws SQLException {
+        if (task == null) {
+            return;
+        }
         try {
-            if (task != null) taskDAO.deleteTask(task.getId());
+            if (canWriteDirectly()) {
+                taskDAO.deleteTask(task.getId());
+                recurrenceExpander.invalidate(task.getId());
+                dailyDigest.taskChanged(task.getId());
+                notifyChanged();
+                return;
+            }
         } catch (SQLException e) {
-            if (isNetworkIssue(e)) {
-                PendingTaskQueue.enqueue(task, "delete");
-                System.err.println("⛔ Соединение потеряно, удаление сохранено локально: " + task.getName());
-            } else throw e;
+            if (!isNetworkIssue(e)) throw e;
+            reportNetworkFailure();
+        }
+        PendingTaskQueue.enqueue(task, "delete");
+        System.err.println("⛔ Нет связи с хранилищем, удаление сохранено локально: " + task.getName());
+    }
+
+    // Пока предохранитель разомкнут, не ждём тайм-аута соединения; пока фоновая синхронизация
+    // не разобрала очередь, новые операции встают за ней, чтобы хранилище увидело их в исходном порядке
+    private boolean canWriteDirectly() {
+        if (replicationEngine != null) {
+            return true;
         }
+        if (!circuitBreaker.allowRequest()) {
+            return false;
+        }
+        SyncWorker worker = syncWorker;
+        if (worker != null && PendingTaskQueue.journal().pendingCount() > 0) {
+            worker.requestSync();
+            return false;
+        }
+        return true;
     }
 
     public void completeTask(int id) throws SQLException {
-        taskDAO.markTaskAsCompleted(id);
+        // Следующее повторение встаёт на дату по расписанию задачи, даже если эта дата уже заполнена до предела
+        Task task = DailyCapacity.exempt(() -> inRecurrenceTransaction(dao -> {
+            Task current = dao.getTaskById(id);
+            if (!current.isRecurring()) {
+                dao.markTaskAsCompleted(id);
+                return current;
+            }
+            // Выполняется только текущее повторение, сама задача переходит к следующему
+            recurrenceExpander.completeCurrent(current, LocalDate.now());
+            dao.updateTask(current);
+            return current;
+        }));
+        dailyDigest.taskChanged(id, task.getDueDate());
+        notifyChanged();
     }
 
     public void postponeTask(int id, int days) throws SQLException {
-        Task task = taskDAO.getTaskById(id);
-        task.postpone(days);
-        taskDAO.updateTask(task);
+        Task task = DailyCapacity.exempt(() -> inRecurrenceTransaction(dao -> {
+            Task current = dao.getTaskById(id);
+            if (current.isRecurring()) {
+                recurrenceExpander.postponeCurrent(current, days);
+            }
+            current.postpone(days);
+            dao.updateTask(current);
+            return current;
+        }));
+        dailyDigest.taskChanged(id, task.getDueDate());
+        notifyChanged();
+    }
+
+    public List<TaskOccurrence> getOccurrences(LocalDate from, LocalDate to) throws SQLException {
+        return recurrenceExpander.expand(taskDAO.getAllTasks(), from, to);
+    }
+
+    public TaskOccurrence nextOccurrence(int taskId, LocalDate date) throws SQLException {
+        return recurrenceExpander.nextOccurrence(taskDAO.getTaskById(taskId), date);
+    }
+
+    private <T> T inRecurrenceTransaction(UnitOfWork<T> work) throws SQLException {
+        try {
+            return taskDAO.inTransaction(work);
+        } catch (SQLException | RuntimeException e) {
+            // Индекс повторений мог опередить откатившуюся транзакцию
+            recurrenceExpander.invalidateAll();
+            throw e;
+        }
     }
 
     public void reactivateTask(int id) throws SQLException {
         taskDAO.updateTaskStatus(id, TaskStatus.ACTIVE);
+        dailyDigest.taskChanged(id, null);
+        notifyChanged();
+    }
+
+    public <T> T inTransaction(UnitOfWork<T> work) throws SQLException {
+        T result = taskDAO.inTransaction(work);
+        dailyDigest.invalidate();
+        notifyChanged();
+        return result;
     }
 
     public void close() throws SQLException {
+        for (ScheduledJob job : jobs) {
+            job.cancel();
+        }
+        jobs.clear();
+        stopSyncWorker();
+        if (replicationEngine != null) {
+            replicationEngine.close();
+        }
         if (taskDAO != null) {
             taskDAO.close();
         }
-        if (statusCheckScheduler != null) {
-            statusCheckScheduler.shutdown();
+    }
+
+    // Те же правила, что и для целой задачи, но только для изменяемых полей: патч приоритета
+    // просроченной задачи не должен отклоняться из-за её срока в прошлом
+    private void validatePatch(TaskPatch patch) throws SQLException {
+        if (patch.contains(TaskField.NAME)
+                && (patch.get(TaskField.NAME) == null || ((String) patch.get(TaskField.NAME)).trim().isEmpty())) {
+            throw new SQLException("Название задачи не может быть пустым");
+        }
+        if (patch.contains(TaskField.STATUS) && patch.get(TaskField.STATUS) == null) {
+            throw new SQLException("Статус задачи не может быть null");
+        }
+        if (patch.contains(TaskField.DUE_DATE) && patch.get(TaskField.DUE_DATE) != null
+                && ((LocalDate) patch.get(TaskField.DUE_DATE)).isBefore(LocalDate.now())) {
+            throw new SQLException("Дата выполнения не может быть в прошлом");
+        }
+        if (patch.contains(TaskField.PRIORITY)) {
+            Integer priority = (Integer) patch.get(TaskField.PRIORITY);
+            if (priority == null || priority < 1 || priority > 5) {
+                throw new SQLException("Приоритет должен быть между 1 и 5");
+            }
         }
     }
 
@@ -150,35 +427,87 @@ public class TaskService {
         }
     }
 
-    private boolean isNetworkIssue(SQLException e) {
-        String msg = e.getMessage().toLowerCase();
-        return msg.contains("connection") || msg.contains("refused") || msg.contains("timeout");
+    private static boolean isNetworkIssue(SQLException e) {
+        return NetworkErrors.isNetworkError(e);
     }
 
-    public void trySyncPendingTasks() {
-        List<QueuedTaskOperation> queue = PendingTaskQueue.loadQueue();
-        if (queue.isEmpty()) {
-            System.out.println("✅ Нет отложенных операций для синхронизации");
-            return;
+    private void reportNetworkFailure() {
+        SyncWorker worker = syncWorker;
+        if (worker != null) {
+            worker.reportFailure();
+        } else {
+            circuitBreaker.recordFailure();
         }
+    }
+
+    public synchronized SyncWorker startSyncWorker(SyncWorker.Listener listener) {
+        stopSyncWorker();
+        Synchronizer synchronizer = replicationEngine != null ? replicationEngine : replayEngine();
+        SyncWorker.Listener withDigest = state -> {
+            if (state.dataChanged()) {
+                dailyDigest.invalidate();
+                notifyChanged();
+            }
+            listener.onStateChanged(state);
+        };
+        syncWorker = new SyncWorker(synchronizer, circuitBreaker, new Backoff(Duration.ofSeconds(1), Duration.ofMinutes(5)), SyncWorker.DEFAULT_IDLE_INTERVAL, withDigest);
+        syncWorker.start();
+        return syncWorker;
+    }
+
+    public synchronized void stopSyncWorker() {
+        if (syncWorker != null) {
+            syncWorker.stop();
+            syncWorker = null;
+        }
+    }
 
-        int success = 0;
-        for (QueuedTaskOperation op : queue) {
+    public void trySyncPendingTasks() {
+        if (replicationEngine != null) {
             try {
-                Task task = op.getTask();
-                switch (op.getOperation()) {
-                    case "add" -> taskDAO.addTask(task);
-                    case "update" -> taskDAO.updateTask(task);
-                    case "delete" -> taskDAO.deleteTask(task.getId());
+                if (replicationEngine.synchronize()) {
+                    dailyDigest.invalidate();
+                    notifyChanged();
                 }
-                success++;
+                System.out.println("✅ Локальная копия синхронизирована с сервером");
             } catch (SQLException e) {
                 System.err.println("❌ Ошибка при синхронизации: " + e.getMessage());
-                return; // Прерываем — оставим в очереди
             }
+            return;
+        }
+
+        if (PendingTaskQueue.journal().pendingCount() == 0) {
+            System.out.println("✅ Нет отложенных операций для синхронизации");
+            return;
+        }
+
+        // Очередь уплотняется и применяется пакетами по транзакции на пакет; после сбоя повторяется только
+        // незавершённый пакет, а уже применённые операции распознаются по ключам идемпотентности
+        ReplayEngine.Result result;
+        try {
+            result = replayEngine().replay();
+        } catch (SQLException | IOException e) {
+            System.err.println("❌ Ошибка при синхронизации: " + e.getMessage());
+            return; // Прерываем — неприменённое останется в очереди
         }
 
-        PendingTaskQueue.clearQueue();
-        System.out.println("✅ Синхронизировано операций: " + success);
+        if (result.applied() > 0) {
+            dailyDigest.invalidate();
+            notifyChanged();
+        }
+        System.out.println("✅ Синхронизировано операций: " + result.applied()
+                + (result.skipped() > 0 ? " (пропущено уже применённых: " + result.skipped() + ")" : ""));
+        if (result.deadLettered() > 0) {
+            System.err.println("❌ Хранилище отвергло операций: " + result.deadLettered()
+                    + ", они сохранены в " + PendingTaskQueue.journal().getDeadLetterPath());
+        }
+    }
+
+    private synchronized ReplayEngine replayEngine() {
+        if (replayEngine == null) {
+            replayEngine = new ReplayEngine(taskDAO, PendingTaskQueue.journal(), PendingTaskQueue.compactor(),
+                    ReplayEngine.DEFAULT_BATCH_SIZE);
+        }
+        return replayEngine;
     }
 }
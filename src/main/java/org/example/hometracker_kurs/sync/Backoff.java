@@ -0,0 +1,48 @@
+package org.example.hometracker_kurs.sync;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Экспоненциальная задержка между попытками с полным разбросом (full jitter):
+ * n-я задержка выбирается равномерно из {@code [0, min(max, base * 2^n)]}.
+ * Разброс не даёт нескольким клиентам, потерявшим связь одновременно, обращаться к серверу синхронно.
+ */
+public class Backoff {
+    private final long baseMillis;
+    private final long maxMillis;
+    private int attempt;
+
+    /**
+     * Создаёт расписание задержек.
+     *
+     * @param base начальная задержка
+     * @param max  наибольшая задержка
+     */
+    public Backoff(Duration base, Duration max) {
+        if (base.isNegative() || base.isZero() || max.compareTo(base) < 0) {
+            throw new IllegalArgumentException("Некорректные границы задержки: " + base + ", " + max);
+        }
+        this.baseMillis = base.toMillis();
+        this.maxMillis = max.toMillis();
+    }
+
+    /**
+     * Возвращает задержку перед следующей попыткой и увеличивает счётчик попыток.
+     *
+     * @return задержка
+     */
+    public synchronized Duration nextDelay() {
+        // Сдвиг ограничен, чтобы произведение не переполнилось
+        long ceiling = attempt >= 30 ? maxMillis : Math.min(maxMillis, baseMillis << attempt);
+        attempt++;
+        return Duration.ofMillis(ThreadLocalRandom.current().nextLong(ceiling + 1));
+    }
+
+    /**
+     * Сбрасывает расписание после успешной попытки.
+     */
+    public synchronized void reset() {
+        attempt = 0;
+    }
+}
@@ -0,0 +1,559 @@
+package org.example.hometracker_kurs.sync;
+
+import org.example.hometracker_kurs.model.RecurrenceRule;
+import org.example.hometracker_kurs.model.Task;
+import org.example.hometracker_kurs.model.TaskField;
+import org.example.hometracker_kurs.model.TaskPatch;
+import org.example.hometracker_kurs.model.TaskStatus;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Компактный двоичный формат задач и отложенных операций для очередей, снимков и кэшей вне баз данных.
+ *
+ * <p>Поток начинается с заголовка ({@code 'H' 'T'} и номера версии формата), за ним идут записи.
+ * Запись — последовательность полей «ключ, значение», завершённая нулевым ключом. Ключ — varint
+ * {@code (номер поля << 2) | тип}; типы значений:
+ * <ul>
+ *     <li>{@code VARINT} — целое в LEB128, знаковые значения (идентификаторы, даты) в zigzag;</li>
+ *     <li>{@code STRING} — ссылка на строку: нечётное {@code (длина << 1) | 1} и UTF-8 байты новой строки
+ *     или чётное {@code (индекс + 1) << 1} для строки, уже встречавшейся в этом потоке;</li>
+ *     <li>{@code OBJECT} — вложенная запись;</li>
+ *     <li>{@code BYTES} — длина и байты (зарезервировано для будущих полей).</li>
+ * </ul>
+ * Даты хранятся номером дня эпохи, статус — порядковым номером {@link TaskStatus}
+ * (новые статусы допускается только дописывать в конец перечисления). Поле со значением null не пишется.
+ *
+ * <p>Схема расширяется без смены версии: новое поле получает следующий номер, а читатель пропускает
+ * неизвестные поля по их типу (строки при этом всё равно попадают в таблицу, чтобы ссылки не сдвигались).
+ * Версия формата меняется только при несовместимом изменении, и читатель отклоняет более новые версии.
+ *
+ * <p>Кодирование пишет прямо в переданный {@link ByteBuffer}, декодирование читает из него без
+ * промежуточных копий: строки создаются из массива буфера, повторяющиеся строки возвращаются одним экземпляром.
+ */
+public final class BinaryTaskCodec {
+    public static final int FORMAT_VERSION = 1;
+    private static final byte MAGIC_0 = 'H';
+    private static final byte MAGIC_1 = 'T';
+
+    private static final int VARINT = 0;
+    private static final int STRING = 1;
+    private static final int OBJECT = 2;
+    private static final int BYTES = 3;
+    private static final int END = 0;
+
+    // Поля задачи
+    private static final int TASK_ID = 1;
+    private static final int TASK_NAME = 2;
+    private static final int TASK_DESCRIPTION = 3;
+    private static final int TASK_DUE_DATE = 4;
+    private static final int TASK_PRIORITY = 5;
+    private static final int TASK_ASSIGNED_TO = 6;
+    private static final int TASK_STATUS = 7;
+    private static final int TASK_LAST_COMPLETED = 8;
+    private static final int TASK_TYPE = 9;
+    private static final int TASK_RECURRENCE = 10;
+    private static final int TASK_VERSION = 11;
+    private static final int TASK_HOUSEHOLD = 12;
+    private static final int TASK_HLC = 13;
+
+    // Поля операции
+    private static final int OP_OPERATION = 1;
+    private static final int OP_SEQUENCE = 2;
+    private static final int OP_KEY = 3;
+    private static final int OP_TASK = 4;
+    private static final int OP_TASK_ID = 5;
+    private static final int OP_PATCH = 6;
+
+    // Поле патча — порядковый номер TaskField плюс один; значение — строка TaskField.format
+    // или VARINT 0, если поле очищается
+    private static final TaskField[] PATCH_FIELDS = TaskField.values();
+
+    private static final TaskStatus[] STATUSES = TaskStatus.values();
+    private static final int INITIAL_CAPACITY = 4096;
+
+    private BinaryTaskCodec() {
+    }
+
+    /**
+     * Начинает запись потока в буфер: записывает заголовок.
+     *
+     * @param target буфер; запись идёт с текущей позиции
+     * @return кодировщик потока
+     * @throws BufferOverflowException если буфер переполнился
+     */
+    public static Encoder encoder(ByteBuffer target) {
+        return new Encoder(target);
+    }
+
+    /**
+     * Начинает чтение потока из буфера: проверяет заголовок.
+     *
+     * @param source буфер; чтение идёт с текущей позиции до границы
+     * @return декодировщик потока
+     * @throws IOException если заголовок не распознан или версия формата новее поддерживаемой
+     */
+    public static Decoder decoder(ByteBuffer source) throws IOException {
+        return new Decoder(source);
+    }
+
+    /**
+     * Кодирует операции в новый буфер подходящего размера.
+     *
+     * @param operations операции
+     * @return буфер, подготовленный к чтению
+     */
+    public static ByteBuffer encodeOperations(Collection<QueuedTaskOperation> operations) {
+        int capacity = Math.max(INITIAL_CAPACITY, operations.size() * 64);
+        while (true) {
+            ByteBuffer buffer = ByteBuffer.allocate(capacity);
+            try {
+                Encoder encoder = encoder(buffer);
+                for (QueuedTaskOperation operation : operations) {
+                    encoder.writeOperation(operation);
+                }
+                return buffer.flip();
+            } catch (BufferOverflowException e) {
+                // Таблица строк уже заполнена частью потока, поэтому кодируем заново в буфер вдвое больше
+                capacity = Math.multiplyExact(capacity, 2);
+            }
+        }
+    }
+
+    /**
+     * Декодирует все операции из буфера.
+     *
+     * @param source буфер, подготовленный к чтению
+     * @return операции в порядке записи
+     * @throws IOException если данные повреждены
+     */
+    public static List<QueuedTaskOperation> decodeOperations(ByteBuffer source) throws IOException {
+        Decoder decoder = decoder(source);
+        List<QueuedTaskOperation> result = new ArrayList<>();
+        while (decoder.hasNext()) {
+            result.add(decoder.readOperation());
+        }
+        return result;
+    }
+
+    /**
+     * Запись одного потока. Таблица строк общая для всех записей потока.
+     */
+    public static final class Encoder {
+        private final ByteBuffer buffer;
+        private final Map<String, Integer> strings = new HashMap<>();
+
+        private Encoder(ByteBuffer buffer) {
+            this.buffer = buffer;
+            buffer.put(MAGIC_0).put(MAGIC_1);
+            writeVarint(FORMAT_VERSION);
+        }
+
+        /**
+         * Записывает задачу отдельной записью.
+         *
+         * @param task задача
+         * @return этот кодировщик
+         */
+        public Encoder writeTask(Task task) {
+            writeTaskFields(task);
+            writeVarint(END);
+            return this;
+        }
+
+        /**
+         * Записывает отложенную операцию отдельной записью.
+         *
+         * @param operation операция
+         * @return этот кодировщик
+         */
+        public Encoder writeOperation(QueuedTaskOperation operation) {
+            writeString(OP_OPERATION, operation.getOperation());
+            writeUnsigned(OP_SEQUENCE, operation.getSequence());
+            writeString(OP_KEY, operation.getIdempotencyKey());
+            if (operation.getTask() != null) {
+                writeKey(OP_TASK, OBJECT);
+                writeTask(operation.getTask());
+            }
+            if (operation.getPatch() != null) {
+                writeSigned(OP_TASK_ID, operation.getTaskId());
+                writeKey(OP_PATCH, OBJECT);
+                writePatch(operation.getPatch());
+            }
+            writeVarint(END);
+            return this;
+        }
+
+        public ByteBuffer buffer() {
+            return buffer;
+        }
+
+        private void writeTaskFields(Task task) {
+            writeSigned(TASK_ID, task.getId());
+            writeString(TASK_NAME, task.getName());
+            writeString(TASK_DESCRIPTION, task.getDescription());
+            writeDate(TASK_DUE_DATE, task.getDueDate());
+            writeUnsigned(TASK_PRIORITY, task.getPriority());
+            writeString(TASK_ASSIGNED_TO, task.getAssignedTo());
+            if (task.getStatus() != null) {
+                // Нулевой порядковый номер — тоже статус, поэтому он пишется всегда
+                writeKey(TASK_STATUS, VARINT);
+                writeVarint(task.getStatus().ordinal());
+            }
+            writeDate(TASK_LAST_COMPLETED, task.getLastCompleted());
+            writeString(TASK_TYPE, task.getType());
+            writeString(TASK_RECURRENCE, task.getRecurrence() != null ? task.getRecurrence().format() : null);
+            writeUnsigned(TASK_VERSION, task.getVersion());
+            writeString(TASK_HOUSEHOLD, task.getHouseholdId());
+            writeUnsigned(TASK_HLC, task.getHlc());
+        }
+
+        private void writePatch(TaskPatch patch) {
+            for (Map.Entry<TaskField, Object> entry : patch.getValues().entrySet()) {
+                int field = entry.getKey().ordinal() + 1;
+                if (entry.getValue() == null) {
+                    writeKey(field, VARINT);
+                    writeVarint(0);
+                } else {
+                    writeString(field, entry.getKey().format(entry.getValue()));
+                }
+            }
+            writeVarint(END);
+        }
+
+        private void writeUnsigned(int field, long value) {
+            // Нулевые значения совпадают со значениями по умолчанию и не пишутся
+            if (value != 0) {
+                writeKey(field, VARINT);
+                writeVarint(value);
+            }
+        }
+
+        private void writeSigned(int field, long value) {
+            if (value != 0) {
+                writeKey(field, VARINT);
+                writeVarint((value << 1) ^ (value >> 63));
+            }
+        }
+
+        private void writeDate(int field, LocalDate date) {
+            if (date != null) {
+                // День эпохи может быть нулевым, поэтому дата пишется всегда, когда она задана
+                long day = date.toEpochDay();
+                writeKey(field, VARINT);
+                writeVarint((day << 1) ^ (day >> 63));
+            }
+        }
+
+        private void writeString(int field, String value) {
+            if (value == null) {
+                return;
+            }
+            writeKey(field, STRING);
+            Integer index = strings.get(value);
+            if (index != null) {
+                writeVarint((long) (index + 1) << 1);
+                return;
+            }
+            writeVarint(((long) utf8Length(value) << 1) | 1);
+            writeUtf8(value);
+            strings.put(value, strings.size());
+        }
+
+        private void writeKey(int field, int type) {
+            writeVarint(((long) field << 2) | type);
+        }
+
+        private void writeVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        private void writeUtf8(String value) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    buffer.put((byte) c);
+                } else if (c < 0x800) {
+                    buffer.put((byte) (0xC0 | (c >> 6)));
+                    buffer.put((byte) (0x80 | (c & 0x3F)));
+                } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                    buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                    buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                    buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+                } else if (Character.isSurrogate(c)) {
+                    // Одиночный суррогат не представим в UTF-8; String.getBytes заменяет его так же
+                    buffer.put((byte) '?');
+                } else {
+                    buffer.put((byte) (0xE0 | (c >> 12)));
+                    buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                    buffer.put((byte) (0x80 | (c & 0x3F)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Чтение одного потока.
+     */
+    public static final class Decoder {
+        private final ByteBuffer buffer;
+        private final List<String> strings = new ArrayList<>();
+        private byte[] scratch;
+
+        private Decoder(ByteBuffer buffer) throws IOException {
+            this.buffer = buffer;
+            try {
+                if (buffer.get() != MAGIC_0 || buffer.get() != MAGIC_1) {
+                    throw new IOException("Неизвестный формат данных");
+                }
+                long version = readVarint();
+                if (version < 1 || version > FORMAT_VERSION) {
+                    throw new IOException("Неподдерживаемая версия формата: " + version);
+                }
+            } catch (BufferUnderflowException e) {
+                throw new EOFException("Данные обрываются в заголовке");
+            }
+        }
+
+        public boolean hasNext() {
+            return buffer.hasRemaining();
+        }
+
+        /**
+         * Читает запись задачи.
+         *
+         * @return задача
+         * @throws IOException если запись повреждена
+         */
+        public Task readTask() throws IOException {
+            try {
+                return readTaskFields();
+            } catch (BufferUnderflowException e) {
+                throw new EOFException("Запись задачи обрывается");
+            }
+        }
+
+        /**
+         * Читает запись отложенной операции.
+         *
+         * @return операция
+         * @throws IOException если запись повреждена
+         */
+        public QueuedTaskOperation readOperation() throws IOException {
+            try {
+                QueuedTaskOperation operation = new QueuedTaskOperation();
+                long key;
+                while ((key = readVarint()) != END) {
+                    int field = (int) (key >>> 2);
+                    int type = (int) (key & 3);
+                    if (field == OP_OPERATION && type == STRING) {
+                        operation.setOperation(readString());
+                    } else if (field == OP_SEQUENCE && type == VARINT) {
+                        operation.setSequence(readVarint());
+                    } else if (field == OP_KEY && type == STRING) {
+                        operation.setIdempotencyKey(readString());
+                    } else if (field == OP_TASK && type == OBJECT) {
+                        operation.setTask(readTaskFields());
+                    } else if (field == OP_TASK_ID && type == VARINT) {
+                        operation.setTaskId((int) zigzag(readVarint()));
+                    } else if (field == OP_PATCH && type == OBJECT) {
+                        operation.setPatch(readPatch());
+                    } else {
+                        skip(type);
+                    }
+                }
+                return operation;
+            } catch (BufferUnderflowException e) {
+                throw new EOFException("Запись операции обрывается");
+            }
+        }
+
+        private Task readTaskFields() throws IOException {
+            int id = 0;
+            String name = null;
+            String description = null;
+            LocalDate dueDate = null;
+            int priority = 0;
+            String assignedTo = null;
+            TaskStatus status = null;
+            LocalDate lastCompleted = null;
+            String type = null;
+            String recurrence = null;
+            long version = 0;
+            String householdId = null;
+            long hlc = 0;
+
+            long key;
+            while ((key = readVarint()) != END) {
+                int field = (int) (key >>> 2);
+                int wire = (int) (key & 3);
+                switch (field << 2 | wire) {
+                    case TASK_ID << 2 | VARINT -> id = (int) zigzag(readVarint());
+                    case TASK_NAME << 2 | STRING -> name = readString();
+                    case TASK_DESCRIPTION << 2 | STRING -> description = readString();
+                    case TASK_DUE_DATE << 2 | VARINT -> dueDate = LocalDate.ofEpochDay(zigzag(readVarint()));
+                    case TASK_PRIORITY << 2 | VARINT -> priority = (int) readVarint();
+                    case TASK_ASSIGNED_TO << 2 | STRING -> assignedTo = readString();
+                    case TASK_STATUS << 2 | VARINT -> status = readStatus();
+                    case TASK_LAST_COMPLETED << 2 | VARINT -> lastCompleted = LocalDate.ofEpochDay(zigzag(readVarint()));
+                    case TASK_TYPE << 2 | STRING -> type = readString();
+                    case TASK_RECURRENCE << 2 | STRING -> recurrence = readString();
+                    case TASK_VERSION << 2 | VARINT -> version = readVarint();
+                    case TASK_HOUSEHOLD << 2 | STRING -> householdId = readString();
+                    case TASK_HLC << 2 | VARINT -> hlc = readVarint();
+                    default -> skip(wire);
+                }
+            }
+
+            Task task = new Task(id, name, description, dueDate, priority, assignedTo, status, lastCompleted);
+            task.setType(type);
+            task.setRecurrence(RecurrenceRule.parse(recurrence));
+            task.setVersion(version);
+            task.setHouseholdId(householdId);
+            task.setHlc(hlc);
+            return task;
+        }
+
+        private TaskPatch readPatch() throws IOException {
+            TaskPatch patch = new TaskPatch();
+            long key;
+            while ((key = readVarint()) != END) {
+                int index = (int) (key >>> 2) - 1;
+                int wire = (int) (key & 3);
+                if (index < 0 || index >= PATCH_FIELDS.length || (wire != STRING && wire != VARINT)) {
+                    skip(wire);
+                    continue;
+                }
+                TaskField field = PATCH_FIELDS[index];
+                String text = wire == STRING ? readString() : null;
+                if (wire == VARINT) {
+                    readVarint();
+                }
+                try {
+                    patch.set(field, field.parse(text));
+                } catch (RuntimeException e) {
+                    throw new IOException("Неверное значение поля " + field.getColumn() + ": " + text, e);
+                }
+            }
+            return patch;
+        }
+
+        private TaskStatus readStatus() throws IOException {
+            long ordinal = readVarint();
+            if (ordinal >= STATUSES.length) {
+                throw new IOException("Неизвестный статус задачи: " + ordinal);
+            }
+            return STATUSES[(int) ordinal];
+        }
+
+        private void skip(int type) throws IOException {
+            switch (type) {
+                case VARINT -> readVarint();
+                case STRING -> readString();
+                case OBJECT -> {
+                    long key;
+                    while ((key = readVarint()) != END) {
+                        skip((int) (key & 3));
+                    }
+                }
+                case BYTES -> {
+                    long length = readVarint();
+                    if (length > buffer.remaining()) {
+                        throw new EOFException("Поле обрывается");
+                    }
+                    buffer.position(buffer.position() + (int) length);
+                }
+                default -> throw new IOException("Неизвестный тип поля: " + type);
+            }
+        }
+
+        private String readString() throws IOException {
+            long ref = readVarint();
+            if ((ref & 1) == 0) {
+                long index = (ref >>> 1) - 1;
+                if (index < 0 || index >= strings.size()) {
+                    throw new IOException("Ссылка на неизвестную строку: " + index);
+                }
+                return strings.get((int) index);
+            }
+            long length = ref >>> 1;
+            if (length > buffer.remaining()) {
+                throw new EOFException("Строка обрывается");
+            }
+            String value = decodeUtf8((int) length);
+            strings.add(value);
+            return value;
+        }
+
+        private String decodeUtf8(int length) {
+            int position = buffer.position();
+            String value;
+            if (buffer.hasArray()) {
+                value = new String(buffer.array(), buffer.arrayOffset() + position, length, StandardCharsets.UTF_8);
+            } else {
+                if (scratch == null || scratch.length < length) {
+                    scratch = new byte[Math.max(length, 256)];
+                }
+                buffer.get(position, scratch, 0, length);
+                value = new String(scratch, 0, length, StandardCharsets.UTF_8);
+            }
+            buffer.position(position + length);
+            return value;
+        }
+
+        private long readVarint() throws IOException {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = buffer.get();
+                result |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return result;
+                }
+            }
+            throw new IOException("Слишком длинное число");
+        }
+
+        private static long zigzag(long value) {
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+
+    private static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
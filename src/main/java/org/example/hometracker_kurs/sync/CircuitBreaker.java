@@ -0,0 +1,76 @@
+package org.example.hometracker_kurs.sync;
+
+/**
+ * Предохранитель обращений к хранилищу.
+ *
+ * <p>После {@code failureThreshold} сетевых ошибок подряд предохранитель размыкается: операции
+ * интерфейса сразу уходят в очередь отложенных операций и не ждут тайм-аута соединения.
+ * Проверку связи выполняет фоновый {@link SyncWorker}: перед пробой предохранитель переходит
+ * в полуоткрытое состояние, удачная проба замыкает его, неудачная снова размыкает.
+ */
+public class CircuitBreaker {
+    public enum State {
+        /** Хранилище доступно, операции выполняются напрямую. */
+        CLOSED,
+        /** Хранилище недоступно, операции ставятся в очередь. */
+        OPEN,
+        /** Идёт проверка связи после перерыва. */
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+
+    /**
+     * Создаёт предохранитель.
+     *
+     * @param failureThreshold количество ошибок подряд, после которого предохранитель размыкается
+     */
+    public CircuitBreaker(int failureThreshold) {
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("Порог ошибок должен быть положительным: " + failureThreshold);
+        }
+        this.failureThreshold = failureThreshold;
+    }
+
+    /**
+     * Можно ли обращаться к хранилищу напрямую.
+     *
+     * @return true, если предохранитель замкнут
+     */
+    public synchronized boolean allowRequest() {
+        return state == State.CLOSED;
+    }
+
+    /**
+     * Отмечает начало пробного обращения к разомкнутому хранилищу.
+     */
+    public synchronized void beginTrial() {
+        if (state == State.OPEN) {
+            state = State.HALF_OPEN;
+        }
+    }
+
+    /**
+     * Фиксирует успешное обращение и замыкает предохранитель.
+     */
+    public synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        state = State.CLOSED;
+    }
+
+    /**
+     * Фиксирует сетевую ошибку. Неудачная проба размыкает предохранитель сразу.
+     */
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+}
@@ -0,0 +1,78 @@
+package org.example.hometracker_kurs.sync;
+
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Распознавание ошибок связи с хранилищем.
+ *
+ * <p>Решение принимается по {@code SQLState} и типу исключения, а не по тексту сообщения:
+ * текст зависит от драйвера и языка сервера. Сетевыми считаются
+ * <ul>
+ *     <li>класс {@code 08} стандарта SQL (ошибки соединения);</li>
+ *     <li>{@code 57P01}–{@code 57P03} PostgreSQL: сервер остановлен или ещё не принимает подключения;</li>
+ *     <li>{@code 53300} PostgreSQL: исчерпан лимит подключений;</li>
+ *     <li>{@code 90067} и {@code 90028} H2: соединение разорвано, ошибка ввода-вывода;</li>
+ *     <li>исключения соединения и тайм-аута JDBC, а также сокетные исключения в цепочке причин.</li>
+ * </ul>
+ * Ошибки данных и ограничений (классы {@code 22}, {@code 23} и т.д.) сетевыми не считаются:
+ * повторять такие операции бессмысленно.
+ */
+public final class NetworkErrors {
+    private static final Set<String> NETWORK_SQL_STATES = Set.of("57P01", "57P02", "57P03", "53300", "90067", "90028");
+
+    private NetworkErrors() {
+    }
+
+    /**
+     * Проверяет, вызвана ли ошибка недоступностью хранилища.
+     * Просматриваются цепочка причин и цепочка {@link SQLException#getNextException()}.
+     *
+     * @param error ошибка
+     * @return true, если операцию имеет смысл повторить после восстановления связи
+     */
+    public static boolean isNetworkError(Throwable error) {
+        Set<Throwable> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        return isNetworkError(error, seen);
+    }
+
+    private static boolean isNetworkError(Throwable error, Set<Throwable> seen) {
+        for (Throwable current = error; current != null && seen.add(current); current = current.getCause()) {
+            if (current instanceof SQLException sql) {
+                if (isNetworkSqlException(sql)) {
+                    return true;
+                }
+                SQLException next = sql.getNextException();
+                if (next != null && next != current.getCause() && isNetworkError(next, seen)) {
+                    return true;
+                }
+            } else if (current instanceof SocketException
+                    || current instanceof SocketTimeoutException
+                    || current instanceof UnknownHostException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isNetworkSqlException(SQLException e) {
+        if (e instanceof SQLTransientConnectionException
+                || e instanceof SQLNonTransientConnectionException
+                || e instanceof SQLTimeoutException) {
+            return true;
+        }
+        String state = e.getSQLState();
+        if (state == null) {
+            return false;
+        }
+        return state.startsWith("08") || NETWORK_SQL_STATES.contains(state);
+    }
+}
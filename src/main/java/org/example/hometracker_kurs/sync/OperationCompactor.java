@@ -0,0 +1,183 @@
+package org.example.hometracker_kurs.sync;
+
+import org.example.hometracker_kurs.model.Task;
+import org.example.hometracker_kurs.model.TaskField;
+import org.example.hometracker_kurs.model.TaskPatch;
+import org.example.hometracker_kurs.model.TaskStatus;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Уплотнение очереди отложенных операций: все операции над одной задачей сворачиваются в одну.
+ * <ul>
+ *     <li>несколько изменений подряд — последнее состояние задачи;</li>
+ *     <li>несколько патчей подряд — один патч, поздние значения полей побеждают;</li>
+ *     <li>добавление или изменение и последующие патчи — одна операция с применёнными патчами;</li>
+ *     <li>добавление и последующие изменения — одно добавление с последним состоянием;</li>
+ *     <li>добавление и удаление — операции взаимно уничтожаются;</li>
+ *     <li>изменения и удаление — одно удаление.</li>
+ * </ul>
+ * В результате размер очереди и время воспроизведения зависят от количества разных задач,
+ * а не от количества правок.
+ *
+ * <p>Свёрнутая операция получает номер и ключ идемпотентности последней из свёрнутых операций.
+ * Операции неопределённого пакета ({@link OperationJournal#getInDoubtSequence()}) не уплотняются:
+ * они могли быть уже применены, и замена их ключей привела бы к повторному применению.
+ * По той же причине уплотнение при постановке в очередь не выполняется, пока идёт воспроизведение
+ * ({@link #suspend()}): операции, уже прочитанные воспроизведением, получили бы новые ключи.
+ */
+public class OperationCompactor {
+    private static final Logger logger = Logger.getLogger(OperationCompactor.class.getName());
+    private static final int MIN_COMPACTION_THRESHOLD = 64;
+
+    private final OperationJournal journal;
+    private long nextCompactionAt;
+    private int suspended;
+
+    /**
+     * Создаёт уплотнитель для журнала.
+     *
+     * @param journal журнал отложенных операций
+     */
+    public OperationCompactor(OperationJournal journal) {
+        this.journal = journal;
+        this.nextCompactionAt = Math.max(MIN_COMPACTION_THRESHOLD, journal.pendingCount() * 2);
+    }
+
+    /**
+     * Уплотняет журнал, если очередь выросла вдвое с прошлого уплотнения.
+     * Каждая операция переписывается в среднем не больше двух раз, поэтому постановка в очередь
+     * остаётся амортизированно постоянной по времени.
+     *
+     * @throws IOException если перезапись журнала не удалась
+     */
+    public synchronized void compactIfNeeded() throws IOException {
+        if (suspended == 0 && journal.pendingCount() >= nextCompactionAt) {
+            compactNow();
+        }
+    }
+
+    /**
+     * Откладывает уплотнение при постановке в очередь до вызова {@link #resume()}.
+     */
+    public synchronized void suspend() {
+        suspended++;
+    }
+
+    /**
+     * Снова разрешает уплотнение при постановке в очередь.
+     */
+    public synchronized void resume() {
+        suspended--;
+    }
+
+    /**
+     * Уплотняет журнал немедленно, например перед воспроизведением.
+     *
+     * @return на сколько операций уменьшилась очередь
+     * @throws IOException если перезапись журнала не удалась
+     */
+    public synchronized int compactNow() throws IOException {
+        int removed = journal.rewriteTail(OperationCompactor::compact);
+        nextCompactionAt = Math.max(MIN_COMPACTION_THRESHOLD, journal.pendingCount() * 2);
+        if (removed > 0) {
+            logger.log(Level.INFO, "Compacted pending queue: {0} operations folded, {1} left",
+                    new Object[]{removed, journal.pendingCount()});
+        }
+        return removed;
+    }
+
+    /**
+     * Сворачивает операции по задачам.
+     *
+     * @param operations операции в порядке постановки в очередь
+     * @return по одной операции на задачу (или ни одной, если задача добавлена и удалена)
+     */
+    public static List<QueuedTaskOperation> compact(List<QueuedTaskOperation> operations) {
+        Map<Integer, QueuedTaskOperation> byTask = new LinkedHashMap<>();
+        List<QueuedTaskOperation> unkeyed = new ArrayList<>();
+
+        for (QueuedTaskOperation op : operations) {
+            if (op.getTask() == null && op.getPatch() == null) {
+                unkeyed.add(op);
+                continue;
+            }
+            int taskId = op.getTaskId();
+            QueuedTaskOperation previous = byTask.get(taskId);
+            if (previous == null) {
+                byTask.put(taskId, op);
+                continue;
+            }
+            QueuedTaskOperation folded = fold(previous, op);
+            if (folded == null) {
+                byTask.remove(taskId);
+            } else {
+                byTask.put(taskId, folded);
+            }
+        }
+
+        List<QueuedTaskOperation> result = new ArrayList<>(unkeyed);
+        result.addAll(byTask.values());
+        return result;
+    }
+
+    private static QueuedTaskOperation fold(QueuedTaskOperation previous, QueuedTaskOperation next) {
+        String first = previous.getOperation();
+        String second = next.getOperation();
+
+        if ("delete".equals(first)) {
+            // После удаления задача не может меняться; оставляем удаление, но с последним номером
+            return withState(previous, "delete", next);
+        }
+        if ("delete".equals(second)) {
+            // Задача, добавленная без связи и удалённая, хранилищу не нужна вовсе
+            return "add".equals(first) ? null : withState(next, "delete", next);
+        }
+        if ("patch".equals(second)) {
+            return "patch".equals(first) ? withPatch(previous.getPatch().merge(next.getPatch()), next)
+                    : withPatchApplied(previous, next);
+        }
+        if ("patch".equals(first)) {
+            // Полное состояние перекрывает все поля патча
+            return withState(next, second, next);
+        }
+        // add + update = add с последним состоянием, update + update = последний update
+        return withState(next, first, next);
+    }
+
+    private static QueuedTaskOperation withPatch(TaskPatch patch, QueuedTaskOperation last) {
+        QueuedTaskOperation result = new QueuedTaskOperation(last.getTaskId(), patch);
+        result.setSequence(last.getSequence());
+        result.setIdempotencyKey(last.getIdempotencyKey());
+        return result;
+    }
+
+    private static QueuedTaskOperation withPatchApplied(QueuedTaskOperation previous, QueuedTaskOperation next) {
+        TaskPatch patch = next.getPatch();
+        Task task = previous.getTask();
+        TaskStatus status = (TaskStatus) patch.get(TaskField.STATUS);
+        if (patch.contains(TaskField.STATUS) && task.getStatus() != status
+                && !TaskStatus.isTransitionAllowed(task.getStatus(), status)) {
+            // Такой патч хранилище тоже отклонило бы, и очередь остановилась бы на нём навсегда
+            logger.log(Level.WARNING, "Dropping queued patch #{0}: invalid status transition {1} -> {2}",
+                    new Object[]{next.getSequence(), task.getStatus(), status});
+        } else {
+            patch.applyTo(task);
+        }
+        return withState(previous, previous.getOperation(), next);
+    }
+
+    private static QueuedTaskOperation withState(QueuedTaskOperation source, String operation,
+                                                 QueuedTaskOperation last) {
+        QueuedTaskOperation result = new QueuedTaskOperation(operation, source.getTask());
+        result.setSequence(last.getSequence());
+        result.setIdempotencyKey(last.getIdempotencyKey());
+        return result;
+    }
+}
@@ -0,0 +1,855 @@
+package org.example.hometracker_kurs.sync;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.example.hometracker_kurs.model.RecurrenceRule;
+import org.example.hometracker_kurs.model.Task;
+import org.example.hometracker_kurs.model.TaskField;
+import org.example.hometracker_kurs.model.TaskPatch;
+import org.example.hometracker_kurs.model.TaskStatus;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.UnaryOperator;
+import java.util.zip.CRC32;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Журнал отложенных операций в формате JSON Lines: одна операция — одна строка.
+ * Запись только дописывает строку в конец файла через {@link FileChannel}, поэтому постановка
+ * операции в очередь не зависит от длины очереди.
+ *
+ * <p>Каждой операции присваивается порядковый номер и ключ идемпотентности. Сброс на диск групповой:
+ * поток, вызвавший {@link #sync(long)}, сбрасывает все дописанные к этому моменту строки, и потоки,
+ * ожидавшие своей очереди, обнаруживают, что их операции уже на диске. Подтверждённый префикс журнала удаляется
+ * методом {@link #acknowledge(long)}, неподтверждённый хвост переносится в новый файл без изменений.
+ *
+ * <p>Перед фиксацией пакета при воспроизведении его граница отмечается как «неопределённая»
+ * ({@link #markInDoubt(long)}): до контрольной точки нельзя знать, применён ли пакет, поэтому
+ * {@link #rewriteTail(UnaryOperator)} такие операции не трогает.
+ *
+ * <p>Вместе с контрольной точкой в журнал записываются настоящие идентификаторы задач, добавленных
+ * без связи ({@link #checkpoint(long, Map)}). Поэтому операции над такой задачей, оставшиеся в очереди,
+ * находят её и после перезапуска приложения. Соответствия хранятся, пока очередь не опустеет.
+ *
+ * <p>Операция, которую хранилище отвергло не из-за связи, переносится в отдельный файл
+ * {@code <журнал>.dead} ({@link #deadLetter(QueuedTaskOperation, String)}) и больше не задерживает очередь.
+ *
+ * <p>При уплотнении ({@link #rewriteTail(UnaryOperator)}) оставшиеся операции сохраняются двоичным снимком
+ * {@code <журнал>.snap.<n>} в формате {@link BinaryTaskCodec} с длиной и контрольной суммой CRC32, а новый журнал
+ * начинается со ссылки на снимок; следующие операции снова дописываются строками JSON. Снимок сбрасывается
+ * на диск до замены журнала, поэтому журнал всегда ссылается на целый снимок, а снимки, на которые
+ * он не ссылается, удаляются при открытии. Снимок освобождается, когда подтверждены все его операции.
+ *
+ * <p>Строка, оборванная при аварийном завершении, при открытии журнала отбрасывается.
+ */
+public class OperationJournal implements Closeable {
+    private static final Logger logger = Logger.getLogger(OperationJournal.class.getName());
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final int SNAPSHOT_HEADER = 8;
+
+    private final Path path;
+    private final Object forceLock = new Object();
+    private FileChannel channel;
+    private long size;
+    private long lastSequence;
+    private long acknowledgedSequence;
+    private long inDoubtSequence;
+    private volatile long durableSequence;
+
+    // Номер снимка, на который ссылается журнал (0 — снимка нет), и номер последней операции в нём
+    private long snapshotGeneration;
+    private long snapshotLastSequence;
+
+    // Номера неподтверждённых операций по возрастанию; после уплотнения нумерация идёт с пропусками
+    private final ArrayDeque<Long> pendingSequences = new ArrayDeque<>();
+
+    // Временный идентификатор добавленной задачи -> идентификатор в хранилище
+    private final Map<Integer, Integer> resolvedIds = new HashMap<>();
+
+    /**
+     * Открывает журнал, создавая файл при необходимости, и восстанавливает нумерацию операций.
+     *
+     * @param path путь к файлу журнала
+     * @throws IOException если файл не удаётся открыть или прочитать
+     */
+    public OperationJournal(Path path) throws IOException {
+        this.path = path;
+        this.channel = openChannel(path);
+        recover();
+    }
+
+    private static FileChannel openChannel(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private void recover() throws IOException {
+        long validSize = 0;
+        try (LineReader reader = new LineReader(Files.newInputStream(path))) {
+            byte[] line;
+            while ((line = reader.nextLine()) != null) {
+                JsonNode node;
+                try {
+                    node = objectMapper.readTree(line);
+                } catch (IOException e) {
+                    break;
+                }
+                if (node.has("ack")) {
+                    acknowledgedSequence = Math.max(acknowledgedSequence, node.get("ack").asLong());
+                } else if (node.has("inDoubt")) {
+                    inDoubtSequence = Math.max(inDoubtSequence, node.get("inDoubt").asLong());
+                } else if (node.has("provisional")) {
+                    resolvedIds.put(node.get("provisional").asInt(), node.path("id").asInt());
+                } else if (node.has("snapshot")) {
+                    // Ссылка на снимок стоит в начале файла, поэтому его операции предшествуют строкам журнала
+                    snapshotGeneration = node.get("snapshot").asLong();
+                    for (QueuedTaskOperation op : readSnapshot(snapshotPath(snapshotGeneration))) {
+                        lastSequence = Math.max(lastSequence, op.getSequence());
+                        snapshotLastSequence = op.getSequence();
+                        pendingSequences.addLast(op.getSequence());
+                    }
+                } else {
+                    long sequence = node.path("seq").asLong();
+                    lastSequence = Math.max(lastSequence, sequence);
+                    pendingSequences.addLast(sequence);
+                }
+                validSize = reader.position();
+            }
+        }
+
+        size = channel.size();
+        if (validSize < size) {
+            logger.log(Level.WARNING, "Journal {0}: discarding {1} bytes of an incomplete record",
+                    new Object[]{path, size - validSize});
+            channel.truncate(validSize);
+            channel.force(false);
+            size = validSize;
+        }
+        long acknowledged = acknowledgedSequence;
+        pendingSequences.removeIf(sequence -> sequence <= acknowledged);
+        lastSequence = Math.max(lastSequence, acknowledgedSequence);
+        durableSequence = lastSequence;
+        deleteStaleSnapshots();
+    }
+
+    // Снимок, записанный уплотнением, которое не успело заменить журнал, или не удалённый после замены
+    private void deleteStaleSnapshots() throws IOException {
+        Path current = snapshotGeneration != 0 ? snapshotPath(snapshotGeneration) : null;
+        Path directory = path.toAbsolutePath().getParent();
+        try (DirectoryStream<Path> snapshots = Files.newDirectoryStream(directory, path.getFileName() + ".snap.*")) {
+            for (Path snapshot : snapshots) {
+                if (current == null || !Files.isSameFile(snapshot, current)) {
+                    logger.log(Level.FINE, "Deleting stale journal snapshot {0}", snapshot);
+                    Files.deleteIfExists(snapshot);
+                }
+            }
+        }
+    }
+
+    /**
+     * Дописывает операцию в конец журнала и присваивает ей порядковый номер,
+     * а если ключ идемпотентности ещё не задан — случайный ключ. Задача сохраняется копией; копии задачи,
+     * добавленной без связи с хранилищем, назначается временный идентификатор {@link #provisionalId(long)},
+     * по которому к ней относятся последующие изменения. Операция попадает в кэш файловой системы;
+     * для гарантии сохранности нужно вызвать {@link #sync(long)}.
+     *
+     * @param operation операция (номер записывается в неё же)
+     * @return порядковый номер операции
+     * @throws IOException если запись не удалась
+     */
+    public synchronized long append(QueuedTaskOperation operation) throws IOException {
+        long sequence = lastSequence + 1;
+        operation.setSequence(sequence);
+        if (operation.getIdempotencyKey() == null) {
+            operation.setIdempotencyKey(UUID.randomUUID().toString());
+        }
+        if (operation.getTask() != null) {
+            // Задача вызывающего кода не меняется ни здесь, ни при уплотнении и воспроизведении очереди
+            Task task = operation.getTask().copy();
+            if ("add".equals(operation.getOperation()) && task.getId() <= 0) {
+                task.setId(provisionalId(sequence));
+            }
+            operation.setTask(task);
+        }
+        size = write(channel, encode(operation), size);
+        lastSequence = sequence;
+        pendingSequences.addLast(sequence);
+        return sequence;
+    }
+
+    /**
+     * Возвращает временный идентификатор задачи, добавленной операцией с указанным номером.
+     *
+     * @param sequence номер операции добавления
+     * @return отрицательный идентификатор
+     */
+    public static int provisionalId(long sequence) {
+        return (int) -sequence;
+    }
+
+    /**
+     * Гарантирует, что операция с указанным номером и все предыдущие записаны на диск.
+     * Один вызов {@link FileChannel#force(boolean)} покрывает все операции, дописанные к моменту вызова.
+     *
+     * @param sequence номер операции
+     * @throws IOException если сброс на диск не удался
+     */
+    public void sync(long sequence) throws IOException {
+        if (durableSequence >= sequence) {
+            return;
+        }
+        synchronized (forceLock) {
+            if (durableSequence >= sequence) {
+                return;
+            }
+            long target;
+            FileChannel current;
+            synchronized (this) {
+                target = lastSequence;
+                current = channel;
+            }
+            current.force(false);
+            durableSequence = target;
+        }
+    }
+
+    /**
+     * Дописывает операцию и дожидается её записи на диск.
+     *
+     * @param operation операция
+     * @return порядковый номер операции
+     * @throws IOException если запись не удалась
+     */
+    public long appendDurably(QueuedTaskOperation operation) throws IOException {
+        long sequence = append(operation);
+        sync(sequence);
+        return sequence;
+    }
+
+    /**
+     * Открывает потоковое чтение неподтверждённых операций по порядку.
+     * Операции, дописанные во время чтения, могут как попасть, так и не попасть в выборку.
+     *
+     * @return читатель, который нужно закрыть после использования
+     * @throws IOException если файл не удаётся открыть
+     */
+    public Reader openReader() throws IOException {
+        long after;
+        List<QueuedTaskOperation> snapshot;
+        synchronized (this) {
+            after = acknowledgedSequence;
+            snapshot = snapshotOperations();
+        }
+        return new Reader(Files.newInputStream(path), after, snapshot);
+    }
+
+    /**
+     * Отмечает операции с номерами не больше указанного как применённые, не перезаписывая файл:
+     * в журнал дописывается отметка подтверждения. Место освобождается позже, при {@link #acknowledge(long)}.
+     * Подходит для частых контрольных точек, например после каждого пакета при воспроизведении.
+     *
+     * @param sequence номер последней применённой операции
+     * @throws IOException если запись отметки не удалась
+     */
+    public void checkpoint(long sequence) throws IOException {
+        checkpoint(sequence, Map.of());
+    }
+
+    /**
+     * Записывает контрольную точку вместе с настоящими идентификаторами задач, добавленных
+     * подтверждаемыми операциями. Отметка и идентификаторы сбрасываются на диск одним вызовом.
+     *
+     * @param sequence номер последней применённой операции
+     * @param resolved временный идентификатор -> идентификатор в хранилище
+     * @throws IOException если запись отметки не удалась
+     */
+    public void checkpoint(long sequence, Map<Integer, Integer> resolved) throws IOException {
+        synchronized (forceLock) {
+            synchronized (this) {
+                long target = Math.min(sequence, lastSequence);
+                for (Map.Entry<Integer, Integer> entry : resolved.entrySet()) {
+                    size = write(channel, encodeResolvedId(entry.getKey(), entry.getValue()), size);
+                    resolvedIds.put(entry.getKey(), entry.getValue());
+                }
+                if (target <= acknowledgedSequence) {
+                    if (!resolved.isEmpty()) {
+                        channel.force(false);
+                        durableSequence = lastSequence;
+                    }
+                    return;
+                }
+                size = write(channel, encodeMarker("ack", target), size);
+                channel.force(false);
+                acknowledgedSequence = target;
+                durableSequence = lastSequence;
+                dropPendingThrough(target);
+            }
+        }
+    }
+
+    /**
+     * Переносит операцию, которую хранилище отвергло, в файл отвергнутых операций вместе с причиной
+     * и подтверждает её в журнале. Операция должна быть первой неподтверждённой: предыдущие уже применены.
+     *
+     * @param operation отвергнутая операция
+     * @param reason    причина отказа
+     * @throws IOException если запись не удалась
+     */
+    public void deadLetter(QueuedTaskOperation operation, String reason) throws IOException {
+        ObjectNode node = encodeNode(operation);
+        node.put("error", reason);
+        try (FileChannel out = FileChannel.open(getDeadLetterPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(line(node));
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(false);
+        }
+        checkpoint(operation.getSequence());
+    }
+
+    /**
+     * Возвращает путь к файлу отвергнутых операций.
+     * @return путь рядом с журналом
+     */
+    public Path getDeadLetterPath() {
+        return path.resolveSibling(path.getFileName() + ".dead");
+    }
+
+    /**
+     * Отмечает, что операции с номерами не больше указанного сейчас фиксируются в хранилище
+     * и до следующей контрольной точки их состояние неизвестно.
+     *
+     * @param sequence номер последней операции фиксируемого пакета
+     * @throws IOException если запись отметки не удалась
+     */
+    public void markInDoubt(long sequence) throws IOException {
+        synchronized (forceLock) {
+            synchronized (this) {
+                if (sequence <= Math.max(acknowledgedSequence, inDoubtSequence)) {
+                    return;
+                }
+                size = write(channel, encodeMarker("inDoubt", sequence), size);
+                channel.force(false);
+                inDoubtSequence = sequence;
+                durableSequence = lastSequence;
+            }
+        }
+    }
+
+    /**
+     * Возвращает границу пакета, состояние которого неизвестно (пакет мог быть зафиксирован
+     * перед сбоем, но контрольная точка не записана).
+     *
+     * @return номер последней операции такого пакета или 0, если неопределённых операций нет
+     */
+    public synchronized long getInDoubtSequence() {
+        return inDoubtSequence > acknowledgedSequence ? inDoubtSequence : 0;
+    }
+
+    /**
+     * Преобразует неподтверждённые операции, лежащие после неопределённого пакета, и атомарно
+     * перезаписывает журнал: все неподтверждённые операции сохраняются новым двоичным снимком.
+     * Используется для уплотнения очереди. Преобразование может объединять
+     * и удалять операции, но не должно присваивать новые номера: результат записывается по возрастанию номеров.
+     *
+     * @param transform преобразование списка операций
+     * @return на сколько операций уменьшилась очередь
+     * @throws IOException если перезапись журнала не удалась
+     */
+    public int rewriteTail(UnaryOperator<List<QueuedTaskOperation>> transform) throws IOException {
+        synchronized (forceLock) {
+            synchronized (this) {
+                long boundary = Math.max(acknowledgedSequence, inDoubtSequence);
+                List<QueuedTaskOperation> fixed = new ArrayList<>();
+                List<QueuedTaskOperation> tail = new ArrayList<>();
+                try (Reader reader = new Reader(Files.newInputStream(path), acknowledgedSequence, snapshotOperations())) {
+                    QueuedTaskOperation op;
+                    while ((op = reader.next()) != null) {
+                        (op.getSequence() <= boundary ? fixed : tail).add(op);
+                    }
+                }
+
+                List<QueuedTaskOperation> rewritten = new ArrayList<>(transform.apply(tail));
+                rewritten.sort(Comparator.comparingLong(QueuedTaskOperation::getSequence));
+                fixed.addAll(rewritten);
+
+                replaceFile(fixed);
+                return tail.size() - rewritten.size();
+            }
+        }
+    }
+
+    /**
+     * Возвращает настоящий идентификатор задачи, добавленной без связи с хранилищем.
+     *
+     * @param provisionalId временный идентификатор
+     * @return идентификатор в хранилище или null, если добавление ещё не применено
+     */
+    public synchronized Integer resolvedId(int provisionalId) {
+        return resolvedIds.get(provisionalId);
+    }
+
+    /**
+     * Возвращает номер последней подтверждённой операции.
+     * @return порядковый номер или 0
+     */
+    public synchronized long getAcknowledgedSequence() {
+        return acknowledgedSequence;
+    }
+
+    /**
+     * Удаляет из журнала операции с номерами не больше указанного.
+     * Оставшийся хвост вместе с отметкой подтверждения записывается в новый файл (снимок сохраняется,
+     * пока в нём есть неподтверждённые операции),
+     * который атомарно заменяет старый, поэтому после сбоя журнал содержит либо старый, либо новый вариант.
+     *
+     * @param sequence номер последней применённой операции
+     * @throws IOException если перезапись журнала не удалась
+     */
+    public void acknowledge(long sequence) throws IOException {
+        synchronized (forceLock) {
+            synchronized (this) {
+                long target = Math.min(sequence, lastSequence);
+                if (target <= acknowledgedSequence) {
+                    return;
+                }
+
+                // Хвост ищется только среди строк журнала: операции снимка остаются в снимке
+                long tailOffset = size;
+                try (Reader reader = new Reader(Files.newInputStream(path), target, List.of())) {
+                    if (reader.next() != null) {
+                        tailOffset = reader.lastRecordOffset();
+                    }
+                }
+
+                if (pendingSequences.isEmpty() || pendingSequences.peekLast() <= target) {
+                    // Ни одна операция в очереди больше не ссылается на временные идентификаторы
+                    resolvedIds.clear();
+                }
+
+                long snapshot = snapshotLastSequence > target ? snapshotGeneration : 0;
+                Path temp = temporaryPath();
+                try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    long position = writeHeader(out, target, snapshot);
+                    long offset = tailOffset;
+                    while (offset < size) {
+                        offset += channel.transferTo(offset, size - offset, out.position(position));
+                        position = out.position();
+                    }
+                    out.force(false);
+                }
+
+                acknowledgedSequence = target;
+                dropPendingThrough(target);
+                swapIn(temp);
+                replaceSnapshot(snapshot, snapshot != 0 ? snapshotLastSequence : 0);
+            }
+        }
+    }
+
+    private void replaceFile(List<QueuedTaskOperation> operations) throws IOException {
+        long snapshot = 0;
+        if (!operations.isEmpty()) {
+            snapshot = snapshotGeneration + 1;
+            writeSnapshot(snapshotPath(snapshot), operations);
+        }
+
+        Path temp = temporaryPath();
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeHeader(out, acknowledgedSequence, snapshot);
+            out.force(false);
+        }
+
+        pendingSequences.clear();
+        for (QueuedTaskOperation op : operations) {
+            pendingSequences.addLast(op.getSequence());
+        }
+        swapIn(temp);
+        replaceSnapshot(snapshot, operations.isEmpty() ? 0 : operations.get(operations.size() - 1).getSequence());
+    }
+
+    // Журнал уже ссылается на новый снимок, поэтому прежний больше не нужен
+    private void replaceSnapshot(long generation, long lastSnapshotSequence) throws IOException {
+        long retired = snapshotGeneration;
+        snapshotGeneration = generation;
+        snapshotLastSequence = lastSnapshotSequence;
+        if (retired != 0 && retired != generation) {
+            Files.deleteIfExists(snapshotPath(retired));
+        }
+    }
+
+    private Path snapshotPath(long generation) {
+        return path.resolveSibling(path.getFileName() + ".snap." + generation);
+    }
+
+    private List<QueuedTaskOperation> snapshotOperations() throws IOException {
+        return snapshotGeneration != 0 ? readSnapshot(snapshotPath(snapshotGeneration)) : List.of();
+    }
+
+    // Снимок — одна запись: длина данных, их контрольная сумма CRC32 и операции в формате BinaryTaskCodec
+    private static void writeSnapshot(Path target, List<QueuedTaskOperation> operations) throws IOException {
+        ByteBuffer payload = BinaryTaskCodec.encodeOperations(operations);
+        CRC32 checksum = new CRC32();
+        checksum.update(payload.duplicate());
+        ByteBuffer header = ByteBuffer.allocate(SNAPSHOT_HEADER)
+                .putInt(payload.remaining())
+                .putInt((int) checksum.getValue())
+                .flip();
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer[] buffers = {header, payload};
+            while (payload.hasRemaining()) {
+                out.write(buffers);
+            }
+            out.force(false);
+        }
+    }
+
+    private static List<QueuedTaskOperation> readSnapshot(Path source) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(source));
+        if (buffer.remaining() < SNAPSHOT_HEADER || buffer.getInt() != buffer.remaining() - Integer.BYTES) {
+            throw new IOException("Снимок журнала " + source + " обрывается");
+        }
+        int expected = buffer.getInt();
+        CRC32 checksum = new CRC32();
+        checksum.update(buffer.duplicate());
+        if ((int) checksum.getValue() != expected) {
+            throw new IOException("Снимок журнала " + source + " повреждён: контрольная сумма не совпадает");
+        }
+        return BinaryTaskCodec.decodeOperations(buffer);
+    }
+
+    private Path temporaryPath() {
+        return path.resolveSibling(path.getFileName() + ".tmp");
+    }
+
+    // Новый файл начинается с отметок, чтобы после перезапуска не потерять нумерацию, неопределённый пакет,
+    // идентификаторы уже добавленных задач и снимок с операциями
+    private long writeHeader(FileChannel out, long acknowledged, long snapshot) throws IOException {
+        long position = write(out, encodeMarker("ack", acknowledged), 0);
+        if (inDoubtSequence > acknowledged) {
+            position = write(out, encodeMarker("inDoubt", inDoubtSequence), position);
+        }
+        for (Map.Entry<Integer, Integer> entry : resolvedIds.entrySet()) {
+            position = write(out, encodeResolvedId(entry.getKey(), entry.getValue()), position);
+        }
+        if (snapshot != 0) {
+            position = write(out, encodeMarker("snapshot", snapshot), position);
+        }
+        return position;
+    }
+
+    private void swapIn(Path temp) throws IOException {
+        channel.close();
+        try {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            // Файловая система не умеет атомарно заменять файл; новый файл уже сброшен на диск
+            logger.log(Level.FINE, "Atomic move is not supported for {0}, replacing the file", path);
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+        channel = openChannel(path);
+        size = channel.size();
+        durableSequence = lastSequence;
+    }
+
+    private void dropPendingThrough(long sequence) {
+        while (!pendingSequences.isEmpty() && pendingSequences.peekFirst() <= sequence) {
+            pendingSequences.pollFirst();
+        }
+    }
+
+    private static long write(FileChannel target, byte[] bytes, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            position += target.write(buffer, position);
+        }
+        return position;
+    }
+
+    /**
+     * Возвращает количество неподтверждённых операций.
+     * @return размер очереди
+     */
+    public synchronized long pendingCount() {
+        return pendingSequences.size();
+    }
+
+    /**
+     * Возвращает номер последней дописанной операции.
+     * @return порядковый номер или 0, если операций не было
+     */
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Кодирует операцию в строку журнала (JSON и перевод строки).
+     *
+     * @param operation операция
+     * @return байты строки
+     * @throws IOException если операцию не удалось сериализовать
+     */
+    public static byte[] encodeLine(QueuedTaskOperation operation) throws IOException {
+        return encode(operation);
+    }
+
+    /**
+     * Разбирает строку журнала с операцией.
+     *
+     * @param line байты строки
+     * @return операция
+     * @throws IOException если строка не является JSON
+     */
+    public static QueuedTaskOperation decodeLine(byte[] line) throws IOException {
+        return decode(objectMapper.readTree(line));
+    }
+
+    private static byte[] encode(QueuedTaskOperation operation) throws IOException {
+        return line(encodeNode(operation));
+    }
+
+    private static ObjectNode encodeNode(QueuedTaskOperation operation) {
+        ObjectNode node = objectMapper.createObjectNode();
+        node.put("seq", operation.getSequence());
+        node.put("operation", operation.getOperation());
+        node.put("key", operation.getIdempotencyKey());
+        if (operation.getTask() != null) {
+            node.set("task", encodeTask(operation.getTask()));
+        }
+        if (operation.getPatch() != null) {
+            node.put("taskId", operation.getTaskId());
+            node.set("patch", encodePatch(operation.getPatch()));
+        }
+        return node;
+    }
+
+    private static byte[] encodeMarker(String field, long sequence) throws IOException {
+        ObjectNode node = objectMapper.createObjectNode();
+        node.put(field, sequence);
+        return line(node);
+    }
+
+    private static byte[] encodeResolvedId(int provisionalId, int id) throws IOException {
+        ObjectNode node = objectMapper.createObjectNode();
+        node.put("provisional", provisionalId);
+        node.put("id", id);
+        return line(node);
+    }
+
+    private static byte[] line(ObjectNode node) throws IOException {
+        // Компактная запись не содержит переводов строк: они экранируются внутри строковых значений
+        byte[] json = objectMapper.writeValueAsBytes(node);
+        byte[] result = new byte[json.length + 1];
+        System.arraycopy(json, 0, result, 0, json.length);
+        result[json.length] = '\n';
+        return result;
+    }
+
+    private static ObjectNode encodeTask(Task task) {
+        ObjectNode node = objectMapper.createObjectNode();
+        node.put("id", task.getId());
+        node.put("name", task.getName());
+        node.put("description", task.getDescription());
+        node.put("dueDate", task.getDueDate() != null ? task.getDueDate().toString() : null);
+        node.put("priority", task.getPriority());
+        node.put("assignedTo", task.getAssignedTo());
+        node.put("status", task.getStatus() != null ? task.getStatus().name() : null);
+        node.put("lastCompleted", task.getLastCompleted() != null ? task.getLastCompleted().toString() : null);
+        node.put("type", task.getType());
+        node.put("recurrence", task.getRecurrence() != null ? task.getRecurrence().format() : null);
+        node.put("version", task.getVersion());
+        node.put("householdId", task.getHouseholdId());
+        return node;
+    }
+
+    // Патч хранится по именам столбцов; значения в текстовом виде TaskField.format
+    private static ObjectNode encodePatch(TaskPatch patch) {
+        ObjectNode node = objectMapper.createObjectNode();
+        for (Map.Entry<TaskField, Object> entry : patch.getValues().entrySet()) {
+            node.put(entry.getKey().getColumn(), entry.getKey().format(entry.getValue()));
+        }
+        return node;
+    }
+
+    // Неизвестное поле, статус или дата — такие же повреждения записи, как неразборчивый JSON,
+    // поэтому они доходят до вызывающего кода как IOException, а не как исключение времени выполнения
+    private static QueuedTaskOperation decode(JsonNode node) throws IOException {
+        try {
+            QueuedTaskOperation operation = new QueuedTaskOperation(node.path("operation").asText(),
+                    node.hasNonNull("task") ? decodeTask(node.get("task")) : null);
+            if (node.hasNonNull("patch")) {
+                operation.setTaskId(node.path("taskId").asInt());
+                operation.setPatch(decodePatch(node.get("patch")));
+            }
+            operation.setSequence(node.path("seq").asLong());
+            operation.setIdempotencyKey(textOrNull(node, "key"));
+            return operation;
+        } catch (RuntimeException e) {
+            throw new IOException("Запись журнала #" + node.path("seq").asLong() + " повреждена: " + e.getMessage(), e);
+        }
+    }
+
+    private static Task decodeTask(JsonNode node) {
+        Task task = new Task(
+                node.path("id").asInt(),
+                textOrNull(node, "name"),
+                textOrNull(node, "description"),
+                dateOrNull(node, "dueDate"),
+                node.path("priority").asInt(),
+                textOrNull(node, "assignedTo"),
+                node.hasNonNull("status") ? TaskStatus.valueOf(node.get("status").asText()) : null,
+                dateOrNull(node, "lastCompleted"));
+        task.setType(textOrNull(node, "type"));
+        task.setRecurrence(RecurrenceRule.parse(textOrNull(node, "recurrence")));
+        task.setVersion(node.path("version").asLong());
+        task.setHouseholdId(textOrNull(node, "householdId"));
+        return task;
+    }
+
+    private static TaskPatch decodePatch(JsonNode node) {
+        TaskPatch patch = new TaskPatch();
+        Iterator<String> columns = node.fieldNames();
+        while (columns.hasNext()) {
+            String column = columns.next();
+            TaskField field = TaskField.ofColumn(column);
+            patch.set(field, field.parse(textOrNull(node, column)));
+        }
+        return patch;
+    }
+
+    private static String textOrNull(JsonNode node, String field) {
+        return node.hasNonNull(field) ? node.get(field).asText() : null;
+    }
+
+    private static LocalDate dateOrNull(JsonNode node, String field) {
+        return node.hasNonNull(field) ? LocalDate.parse(node.get(field).asText()) : null;
+    }
+
+    /**
+     * Потоковое чтение операций журнала: сначала операции снимка, прочитанного при открытии,
+     * затем строки журнала, из которых в памяти находится только текущая.
+     */
+    public static final class Reader implements Closeable {
+        private final LineReader lines;
+        private final long afterSequence;
+        private final Iterator<QueuedTaskOperation> snapshot;
+        private long lastRecordOffset;
+
+        private Reader(InputStream in, long afterSequence, List<QueuedTaskOperation> snapshot) {
+            this.lines = new LineReader(in);
+            this.afterSequence = afterSequence;
+            this.snapshot = snapshot.iterator();
+        }
+
+        /**
+         * Читает следующую неподтверждённую операцию.
+         *
+         * @return операция или null, если журнал прочитан до конца
+         * @throws IOException если файл не удаётся прочитать
+         */
+        public QueuedTaskOperation next() throws IOException {
+            while (snapshot.hasNext()) {
+                QueuedTaskOperation op = snapshot.next();
+                if (op.getSequence() > afterSequence) {
+                    return op;
+                }
+            }
+            while (true) {
+                long offset = lines.position();
+                byte[] line = lines.nextLine();
+                if (line == null) {
+                    return null;
+                }
+                JsonNode node;
+                try {
+                    node = objectMapper.readTree(line);
+                } catch (IOException e) {
+                    // Строка дописывается прямо сейчас — остальное прочитаем в следующий раз
+                    return null;
+                }
+                if (!node.has("seq") || node.get("seq").asLong() <= afterSequence) {
+                    continue;
+                }
+                lastRecordOffset = offset;
+                return decode(node);
+            }
+        }
+
+        private long lastRecordOffset() {
+            return lastRecordOffset;
+        }
+
+        @Override
+        public void close() throws IOException {
+            lines.close();
+        }
+    }
+
+    /**
+     * Читает строки, завершённые символом перевода строки, и отслеживает смещение в файле.
+     * Последняя строка без перевода строки считается недописанной и не возвращается.
+     */
+    private static final class LineReader implements Closeable {
+        private final InputStream in;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+        private long position;
+
+        LineReader(InputStream in) {
+            this.in = new BufferedInputStream(in, 64 * 1024);
+        }
+
+        byte[] nextLine() throws IOException {
+            line.reset();
+            int b;
+            while ((b = in.read()) != -1) {
+                if (b == '\n') {
+                    position += line.size() + 1;
+                    return line.toByteArray();
+                }
+                line.write(b);
+            }
+            return null;
+        }
+
+        long position() {
+            return position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -3,41 +3,111 @@ package org.example.hometracker_kurs.sync;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.example.hometracker_kurs.model.Task;
+import org.example.hometracker_kurs.model.TaskPatch;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class PendingTaskQueue {
-    private static final File queueFile = new File("pending_tasks.json");
+    private static final File legacyQueueFile = new File("pending_tasks.json");
+    private static final Path journalFile = Path.of("pending_tasks.jsonl");
     private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final Logger logger = Logger.getLogger(PendingTaskQueue.class.getName());
 
-    public static synchronized void enqueue(Task task, String operation) {
-        List<QueuedTaskOperation> queue = loadQueue();
-        queue.add(new QueuedTaskOperation(operation, task));
-        saveQueue(queue);
+    // Журнал открывается при первом обращении; дальше запись не требует общей блокировки очереди
+    private static final class Holder {
+        private static final OperationJournal JOURNAL = openJournal();
+        private static final OperationCompactor COMPACTOR = new OperationCompactor(JOURNAL);
     }
 
-    public static synchronized List<QueuedTaskOperation> loadQueue() {
-        if (!queueFile.exists()) return new ArrayList<>();
+    private static OperationJournal openJournal() {
         try {
-            return objectMapper.readValue(queueFile, new TypeReference<>() {});
+            OperationJournal journal = new OperationJournal(journalFile);
+            migrateLegacyQueue(journal);
+            return journal;
         } catch (IOException e) {
-            e.printStackTrace();
-            return new ArrayList<>();
+            throw new UncheckedIOException("Не удалось открыть журнал отложенных операций", e);
         }
     }
 
-    public static synchronized void clearQueue() {
-        queueFile.delete();
+    // Очередь прежнего формата (один JSON-массив) переносится в журнал один раз
+    private static void migrateLegacyQueue(OperationJournal journal) throws IOException {
+        if (!legacyQueueFile.exists()) return;
+        List<QueuedTaskOperation> legacy;
+        try {
+            legacy = objectMapper.readValue(legacyQueueFile, new TypeReference<>() {});
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Legacy queue " + legacyQueueFile + " is unreadable, skipping migration", e);
+            return;
+        }
+        long last = 0;
+        for (QueuedTaskOperation op : legacy) {
+            last = journal.append(op);
+        }
+        journal.sync(last);
+        legacyQueueFile.delete();
+    }
+
+    public static OperationJournal journal() {
+        return Holder.JOURNAL;
+    }
+
+    public static OperationCompactor compactor() {
+        return Holder.COMPACTOR;
+    }
+
+    public static long enqueue(Task task, String operation) {
+        return enqueue(new QueuedTaskOperation(operation, task));
+    }
+
+    public static long enqueuePatch(int taskId, TaskPatch patch) {
+        return enqueue(new QueuedTaskOperation(taskId, patch));
+    }
+
+    private static long enqueue(QueuedTaskOperation op) {
+        long sequence;
+        try {
+            sequence = journal().appendDurably(op);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось сохранить операцию в очередь", e);
+        }
+        // Пока связи нет, правки одной задачи сворачиваются, и очередь растёт только с числом задач
+        try {
+            compactor().compactIfNeeded();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Journal compaction failed", e);
+        }
+        return sequence;
     }
 
-    private static synchronized void saveQueue(List<QueuedTaskOperation> queue) {
+    public static List<QueuedTaskOperation> loadQueue() {
+        List<QueuedTaskOperation> queue = new ArrayList<>();
+        try (OperationJournal.Reader reader = journal().openReader()) {
+            QueuedTaskOperation op;
+            while ((op = reader.next()) != null) {
+                queue.add(op);
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to read the operation journal", e);
+        }
+        return queue;
+    }
+
+    public static void acknowledge(long sequence) {
         try {
-            objectMapper.writerWithDefaultPrettyPrinter().writeValue(queueFile, queue);
+            journal().acknowledge(sequence);
         } catch (IOException e) {
-            e.printStackTrace();
+            logger.log(Level.WARNING, "Failed to acknowledge journal operations up to #" + sequence, e);
         }
     }
+
+    public static void clearQueue() {
+        acknowledge(journal().getLastSequence());
+    }
 }
@@ -1,10 +1,15 @@
 package org.example.hometracker_kurs.sync;
 
 import org.example.hometracker_kurs.model.Task;
+import org.example.hometracker_kurs.model.TaskPatch;
 
 public class QueuedTaskOperation {
-    private String operation; // "add", "update", "delete"
+    private String operation; // "add", "update", "patch", "delete"
     private Task task;
+    private int taskId; // для "patch": вместо всей задачи хранятся её идентификатор и изменённые поля
+    private TaskPatch patch;
+    private long sequence; // номер в журнале, присваивается при постановке в очередь
+    private String idempotencyKey; // по нему хранилище распознаёт повторную отправку
 
     public QueuedTaskOperation() {} // для Jackson
 
@@ -13,6 +18,12 @@ public class QueuedTaskOperation {
         this.task = task;
     }
 
+    public QueuedTaskOperation(int taskId, TaskPatch patch) {
+        this.operation = "patch";
+        this.taskId = taskId;
+        this.patch = patch;
+    }
+
     public String getOperation() {
         return operation;
     }
@@ -21,6 +32,22 @@ public class QueuedTaskOperation {
         return task;
     }
 
+    public int getTaskId() {
+        return task != null ? task.getId() : taskId;
+    }
+
+    public TaskPatch getPatch() {
+        return patch;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
     public void setOperation(String operation) {
         this.operation = operation;
     }
@@ -28,4 +55,20 @@ public class QueuedTaskOperation {
     public void setTask(Task task) {
         this.task = task;
     }
+
+    public void setTaskId(int taskId) {
+        this.taskId = taskId;
+    }
+
+    public void setPatch(TaskPatch patch) {
+        this.patch = patch;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public void setIdempotencyKey(String idempotencyKey) {
+        this.idempotencyKey = idempotencyKey;
+    }
 }
@@ -0,0 +1,314 @@
+package org.example.hometracker_kurs.sync;
+
+import org.example.hometracker_kurs.dao.DailyCapacity;
+import org.example.hometracker_kurs.dao.TaskDAO;
+import org.example.hometracker_kurs.model.Task;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Воспроизведение журнала отложенных операций в хранилище.
+ *
+ * <p>Операции читаются из журнала потоком и применяются пакетами: каждый пакет — одна транзакция.
+ * После фиксации пакета в журнал записывается контрольная точка, поэтому при обрыве связи
+ * повторяется только незавершённый пакет. Каждая операция несёт ключ идемпотентности, который
+ * сохраняется в хранилище в той же транзакции; операции, чьи ключи уже известны хранилищу
+ * (пакет был зафиксирован, а контрольная точка не успела записаться), пропускаются.
+ * Так каждая операция применяется ровно один раз.
+ *
+ * <p>Операция, которую хранилище отвергает не из-за связи (нарушено ограничение, задача удалена и т.п.),
+ * повторами не исправится. Она переносится в файл отвергнутых операций
+ * ({@link OperationJournal#deadLetter(QueuedTaskOperation, String)}), и очередь продолжается со следующей.
+ *
+ * <p>Перед воспроизведением очередь уплотняется ({@link OperationCompactor}), поэтому количество
+ * операций не превышает количества затронутых задач; пока воспроизведение идёт, очередь не уплотняется.
+ * Задачи, добавленные без связи, имеют временные отрицательные идентификаторы; настоящие идентификаторы
+ * записываются в журнал вместе с контрольной точкой, и последующие операции, в том числе после
+ * перезапуска приложения, применяются к ним.
+ */
+public class ReplayEngine implements Synchronizer {
+    private static final Logger logger = Logger.getLogger(ReplayEngine.class.getName());
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    private final TaskDAO taskDAO;
+    private final OperationJournal journal;
+    private final OperationCompactor compactor;
+    private final int batchSize;
+
+    /**
+     * Результат воспроизведения.
+     *
+     * @param applied      применено операций
+     * @param skipped      пропущено операций, уже применённых ранее
+     * @param deadLettered отвергнуто хранилищем и перенесено из очереди
+     * @param batches      зафиксировано пакетов
+     * @param lastSequence номер последней подтверждённой операции
+     */
+    public record Result(long applied, long skipped, long deadLettered, int batches, long lastSequence) {}
+
+    /**
+     * Создаёт воспроизведение с размером пакета по умолчанию.
+     *
+     * @param taskDAO хранилище задач
+     * @param journal журнал отложенных операций
+     */
+    public ReplayEngine(TaskDAO taskDAO, OperationJournal journal) {
+        this(taskDAO, journal, new OperationCompactor(journal), DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Создаёт воспроизведение.
+     *
+     * @param taskDAO   хранилище задач
+     * @param journal   журнал отложенных операций
+     * @param compactor уплотнитель того же журнала
+     * @param batchSize количество операций в одной транзакции
+     */
+    public ReplayEngine(TaskDAO taskDAO, OperationJournal journal, OperationCompactor compactor, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Размер пакета должен быть положительным: " + batchSize);
+        }
+        this.taskDAO = taskDAO;
+        this.journal = journal;
+        this.compactor = compactor;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Применяет все неподтверждённые операции журнала.
+     * Если пакет завершился ошибкой, он откатывается и повторяется по одной операции: операции, отвергнутые
+     * хранилищем, убираются из очереди, остальные фиксируются. При потере связи следующий вызов
+     * продолжит с первой неприменённой операции.
+     *
+     * @return итоги воспроизведения
+     * @throws SQLException если связь с хранилищем потеряна
+     * @throws IOException  если журнал не удаётся прочитать или записать
+     */
+    public synchronized Result replay() throws SQLException, IOException {
+        long applied = 0;
+        long skipped = 0;
+        long deadLettered = 0;
+        int batches = 0;
+
+        skipped += resolveInDoubt();
+        compactor.compactNow();
+
+        compactor.suspend();
+        try (OperationJournal.Reader reader = journal.openReader()) {
+            List<QueuedTaskOperation> batch = new ArrayList<>(batchSize);
+            while (fillBatch(reader, batch)) {
+                long last = batch.get(batch.size() - 1).getSequence();
+                journal.markInDoubt(last);
+                try {
+                    long[] counts = applyCommitted(batch, last);
+                    applied += counts[0];
+                    skipped += counts[1];
+                    batches++;
+                } catch (SQLException e) {
+                    if (NetworkErrors.isNetworkError(e)) {
+                        throw e;
+                    }
+                    // Пакет откатился целиком; чтобы одна ошибочная операция не отменяла остальные,
+                    // он повторяется по одной операции, а отвергнутые операции убираются из очереди
+                    logger.log(Level.WARNING, "Replay batch ending at #" + last + " failed, retrying operation by operation", e);
+                    for (QueuedTaskOperation op : batch) {
+                        try {
+                            long[] counts = applyCommitted(List.of(op), op.getSequence());
+                            applied += counts[0];
+                            skipped += counts[1];
+                            batches++;
+                        } catch (SQLException rejected) {
+                            if (NetworkErrors.isNetworkError(rejected)) {
+                                throw rejected;
+                            }
+                            logger.log(Level.SEVERE, "Operation #" + op.getSequence() + " rejected by storage, moved to "
+                                    + journal.getDeadLetterPath(), rejected);
+                            journal.deadLetter(op, rejected.getMessage());
+                            deadLettered++;
+                        }
+                    }
+                }
+                batch.clear();
+            }
+        } finally {
+            compactor.resume();
+            if (batches > 0) {
+                // Контрольные точки только дописывались; подтверждённый префикс удаляется один раз в конце
+                journal.acknowledge(journal.getAcknowledgedSequence());
+            }
+        }
+
+        if (skipped > 0) {
+            logger.log(Level.INFO, "Replay skipped {0} operations that were already applied", skipped);
+        }
+        if (deadLettered > 0) {
+            logger.log(Level.WARNING, "Replay moved {0} rejected operations out of the queue", deadLettered);
+        }
+        return new Result(applied, skipped, deadLettered, batches, journal.getAcknowledgedSequence());
+    }
+
+    @Override
+    public void ping() throws SQLException {
+        taskDAO.ping();
+    }
+
+    @Override
+    public long pendingCount() {
+        return journal.pendingCount();
+    }
+
+    @Override
+    public boolean synchronize() throws SQLException, IOException {
+        if (journal.pendingCount() == 0) {
+            return false;
+        }
+        Result result = replay();
+        logger.log(Level.INFO, "Replayed {0} operations, skipped {1}", new Object[]{result.applied(), result.skipped()});
+        return result.applied() > 0;
+    }
+
+    // Применяет операции одной транзакцией и подтверждает их в журнале
+    private long[] applyCommitted(List<QueuedTaskOperation> operations, long last) throws SQLException, IOException {
+        Map<Integer, Integer> createdIds = new HashMap<>();
+        // Операции приняты, пока хранилище было недоступно; отказ по пределу задач на день потерял бы их
+        long[] counts = DailyCapacity.exempt(() -> taskDAO.inTransaction(dao -> applyBatch(dao, operations, createdIds)));
+        journal.checkpoint(last, createdIds);
+        return counts;
+    }
+
+    private boolean fillBatch(OperationJournal.Reader reader, List<QueuedTaskOperation> batch) throws IOException {
+        QueuedTaskOperation op;
+        while (batch.size() < batchSize && (op = reader.next()) != null) {
+            batch.add(op);
+        }
+        return !batch.isEmpty();
+    }
+
+    /**
+     * Разбирается с пакетом, который фиксировался в момент сбоя: если хранилище уже знает его ключи,
+     * пакет подтверждается без повторного применения.
+     */
+    private long resolveInDoubt() throws SQLException, IOException {
+        long inDoubt = journal.getInDoubtSequence();
+        if (inDoubt == 0) {
+            return 0;
+        }
+
+        List<QueuedTaskOperation> operations = new ArrayList<>();
+        try (OperationJournal.Reader reader = journal.openReader()) {
+            QueuedTaskOperation op;
+            while ((op = reader.next()) != null && op.getSequence() <= inDoubt) {
+                operations.add(op);
+            }
+        }
+        Map<String, Integer> known = taskDAO.getAppliedOperations(keysOf(operations));
+
+        long resolved = 0;
+        long lastApplied = 0;
+        Map<Integer, Integer> createdIds = new HashMap<>();
+        for (QueuedTaskOperation op : operations) {
+            Integer taskId = known.get(op.getIdempotencyKey());
+            if (taskId == null) {
+                break;
+            }
+            rememberProvisionalId(op, taskId, createdIds);
+            lastApplied = op.getSequence();
+            resolved++;
+        }
+        if (lastApplied > 0) {
+            journal.checkpoint(lastApplied, createdIds);
+        }
+        return resolved;
+    }
+
+    private long[] applyBatch(TaskDAO dao, List<QueuedTaskOperation> batch, Map<Integer, Integer> createdIds)
+            throws SQLException {
+        Map<String, Integer> alreadyApplied = dao.getAppliedOperations(keysOf(batch));
+
+        long applied = 0;
+        long skipped = 0;
+        for (QueuedTaskOperation op : batch) {
+            String key = op.getIdempotencyKey();
+            if (key != null && alreadyApplied.containsKey(key)) {
+                rememberProvisionalId(op, alreadyApplied.get(key), createdIds);
+                skipped++;
+                continue;
+            }
+            if ("patch".equals(op.getOperation())) {
+                int taskId = applyPatch(dao, op, createdIds);
+                if (key != null) {
+                    dao.markOperationApplied(key, taskId);
+                }
+                applied++;
+                continue;
+            }
+            if (op.getTask() == null) {
+                throw new SQLException("Операция #" + op.getSequence() + " не содержит задачи");
+            }
+            // Операция не меняется: после отката пакета она повторяется с прежним временным идентификатором
+            Task task = op.getTask().copy();
+            int provisionalId = task.getId();
+            if (!"add".equals(op.getOperation()) && provisionalId < 0) {
+                task.setId(resolveProvisionalId(provisionalId, createdIds));
+            }
+            switch (op.getOperation()) {
+                case "add" -> dao.addTask(task);
+                case "update" -> dao.updateTask(task);
+                case "delete" -> dao.deleteTask(task.getId());
+                default -> throw new SQLException("Неизвестная операция #" + op.getSequence() + ": " + op.getOperation());
+            }
+            if ("add".equals(op.getOperation()) && provisionalId < 0) {
+                createdIds.put(provisionalId, task.getId());
+            }
+            if (key != null) {
+                dao.markOperationApplied(key, task.getId());
+            }
+            applied++;
+        }
+        return new long[]{applied, skipped};
+    }
+
+    private int applyPatch(TaskDAO dao, QueuedTaskOperation op, Map<Integer, Integer> createdIds)
+            throws SQLException {
+        if (op.getPatch() == null) {
+            throw new SQLException("Операция #" + op.getSequence() + " не содержит изменённых полей");
+        }
+        int taskId = op.getTaskId() < 0 ? resolveProvisionalId(op.getTaskId(), createdIds) : op.getTaskId();
+        dao.patchTask(taskId, op.getPatch());
+        return taskId;
+    }
+
+    private int resolveProvisionalId(int provisionalId, Map<Integer, Integer> createdIds) throws SQLException {
+        Integer id = createdIds.get(provisionalId);
+        if (id == null) {
+            id = journal.resolvedId(provisionalId);
+        }
+        if (id == null) {
+            throw new SQLException("Задача с временным идентификатором " + provisionalId + " ещё не добавлена в хранилище");
+        }
+        return id;
+    }
+
+    private static void rememberProvisionalId(QueuedTaskOperation op, int taskId, Map<Integer, Integer> target) {
+        if ("add".equals(op.getOperation()) && op.getTask() != null && op.getTask().getId() < 0) {
+            target.put(op.getTask().getId(), taskId);
+        }
+    }
+
+    private static List<String> keysOf(List<QueuedTaskOperation> operations) {
+        List<String> keys = new ArrayList<>(operations.size());
+        for (QueuedTaskOperation op : operations) {
+            if (op.getIdempotencyKey() != null) {
+                keys.add(op.getIdempotencyKey());
+            }
+        }
+        return keys;
+    }
+}
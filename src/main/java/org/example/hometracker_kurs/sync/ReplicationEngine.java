@@ -0,0 +1,318 @@
+package org.example.hometracker_kurs.sync;
+
+import org.example.hometracker_kurs.dao.H2TaskDAO;
+import org.example.hometracker_kurs.dao.ReplicaStore;
+import org.example.hometracker_kurs.model.Task;
+import org.example.hometracker_kurs.model.TaskChangeSet;
+import org.example.hometracker_kurs.model.TaskOccurrence;
+
+import java.security.SecureRandom;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Двусторонняя синхронизация локальной реплики H2 с сервером.
+ *
+ * <p>Приложение читает и пишет только локальную базу, поэтому интерфейс никогда не ждёт сети.
+ * Обмен идёт журналами изменений: каждая сторона отдаёт строки и удаления с версией выше
+ * своей отметки ({@link org.example.hometracker_kurs.dao.TaskDAO#getChangesSince(long)}),
+ * отметки хранятся в локальной базе. Переносятся только изменившиеся строки, а не вся таблица.
+ *
+ * <p>Конфликты разрешаются одинаково на обеих сторонах ({@link ReplicaStore}): из двух изменений
+ * одной задачи остаётся изменение с большей меткой гибридных логических часов, удаление побеждает
+ * любое изменение. Поэтому после обмена в обе стороны реплика и сервер совпадают.
+ *
+ * <p>Идентификаторы задач на сервере и в реплике независимы; соответствие хранится в реплике.
+ * Вставка на сервер сопровождается ключом идемпотентности, поэтому если ответ сервера потерялся,
+ * повторная отправка находит уже созданную строку вместо того, чтобы создать вторую.
+ *
+ * <p>Сохранённые повторения задач передаются так же, по своим отметкам: после отправки и приёма
+ * реплика получает состояние повторений с сервера.
+ *
+ * <p>Синхронизация работает через собственное соединение с локальной базой и закрывает его вместе с собой,
+ * поэтому её транзакции не смешиваются с транзакциями интерфейса. Приём выполняется в транзакции,
+ * во время которой другие соединения реплики не пишут ({@link H2TaskDAO#inExclusiveTransaction}):
+ * иначе локальная запись между чтением версии и сдвигом отметки отправки не была бы отправлена.
+ */
+public class ReplicationEngine implements Synchronizer, AutoCloseable {
+    private static final Logger logger = Logger.getLogger(ReplicationEngine.class.getName());
+    static final String PUSHED = "pushed";
+    static final String PULLED = "pulled";
+    static final String NODE = "node";
+    static final String OCCURRENCES_PUSHED = "occurrencesPushed";
+    static final String OCCURRENCES_PULLED = "occurrencesPulled";
+
+    /**
+     * Подключение к серверу; вызывается повторно, пока подключиться не удастся.
+     */
+    @FunctionalInterface
+    public interface RemoteConnector {
+        ReplicaStore connect() throws SQLException;
+    }
+
+    private final H2TaskDAO local;
+    private final RemoteConnector connector;
+    private ReplicaStore remote;
+    private String nodeKey;
+
+    /**
+     * Создаёт синхронизацию реплики.
+     *
+     * @param local     локальная реплика с отдельным от интерфейса соединением; закрывается в {@link #close()}
+     * @param connector подключение к серверу
+     */
+    public ReplicationEngine(H2TaskDAO local, RemoteConnector connector) {
+        this.local = local;
+        this.connector = connector;
+    }
+
+    @Override
+    public synchronized void ping() throws SQLException {
+        remote().ping();
+    }
+
+    @Override
+    public long pendingCount() throws SQLException {
+        return local.countChangesSince(local.getSyncWatermark(PUSHED));
+    }
+
+    /**
+     * Отправляет локальные изменения на сервер, затем принимает серверные.
+     *
+     * @return true, если реплика получила изменения с сервера
+     * @throws SQLException если обмен прерван; отметки не сдвигаются, следующий обмен повторит его
+     */
+    @Override
+    public synchronized boolean synchronize() throws SQLException {
+        ReplicaStore server = remote();
+        int pushed = push(server) + pushOccurrences(server);
+        int pulled = pull(server) + pullOccurrences(server);
+        if (pushed > 0 || pulled > 0) {
+            logger.log(Level.INFO, "Replica sync: {0} changes sent, {1} received", new Object[]{pushed, pulled});
+        }
+        return pulled > 0;
+    }
+
+    private int push(ReplicaStore server) throws SQLException {
+        long watermark = local.getSyncWatermark(PUSHED);
+        TaskChangeSet changes = local.getChangesSince(watermark);
+        if (changes.isEmpty()) {
+            return 0;
+        }
+
+        List<Task> tasks = new ArrayList<>(changes.getInserted());
+        tasks.addAll(changes.getUpdated());
+        List<Integer> localIds = new ArrayList<>();
+        tasks.forEach(task -> localIds.add(task.getId()));
+        localIds.addAll(changes.getDeletedIds());
+        Map<Integer, Integer> remoteIds = new HashMap<>(local.getRemoteIds(localIds));
+        remoteIds.putAll(recoverLostMappings(server, localIds, remoteIds));
+
+        Map<Integer, Integer> created = new HashMap<>();
+        int[] applied = {0};
+        server.inTransaction(dao -> {
+            for (Task task : tasks) {
+                int localId = task.getId();
+                Integer remoteId = remoteIds.get(localId);
+                task.setId(remoteId != null ? remoteId : 0);
+                if (server.applyReplicated(task)) {
+                    applied[0]++;
+                }
+                if (remoteId == null) {
+                    server.markOperationApplied(insertKey(localId), task.getId());
+                    created.put(localId, task.getId());
+                }
+            }
+            for (int localId : changes.getDeletedIds()) {
+                Integer remoteId = remoteIds.get(localId);
+                // Задача, удалённая до первой отправки, на сервере не появлялась
+                if (remoteId != null && server.deleteReplicated(remoteId)) {
+                    applied[0]++;
+                }
+            }
+            return null;
+        });
+
+        local.inTransaction(dao -> {
+            for (Map.Entry<Integer, Integer> entry : created.entrySet()) {
+                local.mapIds(entry.getKey(), entry.getValue());
+            }
+            local.setSyncWatermark(PUSHED, changes.getVersion());
+            return null;
+        });
+        return applied[0];
+    }
+
+    /**
+     * Находит серверные строки, созданные прошлой отправкой, ответ на которую не дошёл до реплики.
+     */
+    private Map<Integer, Integer> recoverLostMappings(ReplicaStore server, List<Integer> localIds,
+                                                      Map<Integer, Integer> known) throws SQLException {
+        Map<String, Integer> byKey = new HashMap<>();
+        for (int localId : localIds) {
+            if (!known.containsKey(localId)) {
+                byKey.put(insertKey(localId), localId);
+            }
+        }
+        Map<Integer, Integer> recovered = new HashMap<>();
+        if (byKey.isEmpty()) {
+            return recovered;
+        }
+        server.getAppliedOperations(byKey.keySet())
+                .forEach((key, remoteId) -> recovered.put(byKey.get(key), remoteId));
+        return recovered;
+    }
+
+    private int pull(ReplicaStore server) throws SQLException {
+        long watermark = local.getSyncWatermark(PULLED);
+        TaskChangeSet changes = server.getChangesSince(watermark);
+        if (changes.isEmpty() && changes.getVersion() == watermark) {
+            return 0;
+        }
+
+        List<Task> tasks = new ArrayList<>(changes.getInserted());
+        tasks.addAll(changes.getUpdated());
+
+        return local.inExclusiveTransaction(dao -> {
+            // Принятые строки меняют версии реплики; если своих неотправленных изменений нет,
+            // отметка отправки сдвигается вместе с ними, чтобы не отправлять серверу его же строки
+            boolean nothingToPush = local.getSyncWatermark(PUSHED) >= local.getCurrentVersion();
+
+            List<Integer> remoteIds = new ArrayList<>();
+            tasks.forEach(task -> remoteIds.add(task.getId()));
+            remoteIds.addAll(changes.getDeletedIds());
+            Map<Integer, Integer> localIds = local.getLocalIds(remoteIds);
+
+            int applied = 0;
+            for (Task task : tasks) {
+                int remoteId = task.getId();
+                Integer localId = localIds.get(remoteId);
+                task.setId(localId != null ? localId : 0);
+                if (local.applyReplicated(task)) {
+                    applied++;
+                    if (localId == null) {
+                        local.mapIds(task.getId(), remoteId);
+                    }
+                }
+            }
+            for (int remoteId : changes.getDeletedIds()) {
+                Integer localId = localIds.get(remoteId);
+                if (localId != null && local.deleteReplicated(localId)) {
+                    applied++;
+                }
+            }
+
+            local.setSyncWatermark(PULLED, changes.getVersion());
+            if (nothingToPush) {
+                local.setSyncWatermark(PUSHED, local.getCurrentVersion());
+            }
+            return applied;
+        });
+    }
+
+    private int pushOccurrences(ReplicaStore server) throws SQLException {
+        long watermark = local.getSyncWatermark(OCCURRENCES_PUSHED);
+        List<TaskOccurrence> changed = local.getOccurrencesChangedSince(watermark);
+        if (changed.isEmpty()) {
+            return 0;
+        }
+
+        List<Integer> localIds = new ArrayList<>();
+        changed.forEach(occurrence -> localIds.add(occurrence.getTaskId()));
+        // Задачи отправлены раньше повторений, поэтому соответствие уже известно; повторения задачи,
+        // удалённой до отправки, серверу не нужны
+        Map<Integer, Integer> remoteIds = local.getRemoteIds(localIds);
+        int[] sent = {0};
+        server.inTransaction(dao -> {
+            for (TaskOccurrence occurrence : changed) {
+                Integer remoteId = remoteIds.get(occurrence.getTaskId());
+                if (remoteId != null) {
+                    server.saveOccurrence(withTaskId(occurrence, remoteId));
+                    sent[0]++;
+                }
+            }
+            return null;
+        });
+        local.setSyncWatermark(OCCURRENCES_PUSHED, changed.get(changed.size() - 1).getVersion());
+        return sent[0];
+    }
+
+    private int pullOccurrences(ReplicaStore server) throws SQLException {
+        long watermark = local.getSyncWatermark(OCCURRENCES_PULLED);
+        List<TaskOccurrence> changed = server.getOccurrencesChangedSince(watermark);
+        if (changed.isEmpty()) {
+            return 0;
+        }
+
+        return local.inExclusiveTransaction(dao -> {
+            // Как и для задач: без своих неотправленных повторений отметка отправки сдвигается вместе
+            // с принятыми, иначе они ушли бы обратно на сервер
+            boolean nothingToPush = local.getSyncWatermark(OCCURRENCES_PUSHED) >= local.getCurrentOccurrenceVersion();
+
+            List<Integer> remoteIds = new ArrayList<>();
+            changed.forEach(occurrence -> remoteIds.add(occurrence.getTaskId()));
+            Map<Integer, Integer> localIds = local.getLocalIds(remoteIds);
+
+            int applied = 0;
+            for (TaskOccurrence occurrence : changed) {
+                Integer localId = localIds.get(occurrence.getTaskId());
+                if (localId != null) {
+                    local.saveOccurrence(withTaskId(occurrence, localId));
+                    applied++;
+                }
+            }
+
+            local.setSyncWatermark(OCCURRENCES_PULLED, changed.get(changed.size() - 1).getVersion());
+            if (nothingToPush) {
+                local.setSyncWatermark(OCCURRENCES_PUSHED, local.getCurrentOccurrenceVersion());
+            }
+            return applied;
+        });
+    }
+
+    private static TaskOccurrence withTaskId(TaskOccurrence occurrence, int taskId) {
+        return new TaskOccurrence(taskId, occurrence.getOccurrenceDate(), occurrence.getStatus(),
+                occurrence.getDueDate(), occurrence.getAssignedTo(), occurrence.getCompletedDate());
+    }
+
+    private String insertKey(int localId) throws SQLException {
+        return "replica:" + nodeKey() + ":" + localId;
+    }
+
+    // Идентификатор реплики отличает её вставки от вставок других устройств того же домохозяйства
+    private String nodeKey() throws SQLException {
+        if (nodeKey == null) {
+            long node = local.getSyncWatermark(NODE);
+            if (node == 0) {
+                node = new SecureRandom().nextLong() & Long.MAX_VALUE | 1;
+                local.setSyncWatermark(NODE, node);
+            }
+            nodeKey = Long.toHexString(node);
+        }
+        return nodeKey;
+    }
+
+    private ReplicaStore remote() throws SQLException {
+        if (remote == null) {
+            remote = connector.connect();
+        }
+        return remote;
+    }
+
+    @Override
+    public synchronized void close() throws SQLException {
+        try {
+            if (remote != null) {
+                remote.close();
+                remote = null;
+            }
+        } finally {
+            local.close();
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package org.example.hometracker_kurs.sync;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Фоновая синхронизация очереди отложенных операций.
+ *
+ * <p>Рабочий поток-демон периодически проверяет связь дешёвым запросом ({@link Synchronizer#ping()}).
+ * Пока хранилище недоступно, проверки повторяются с экспоненциальной задержкой ({@link Backoff}),
+ * а предохранитель ({@link CircuitBreaker}) разомкнут, и операции интерфейса сразу уходят в очередь.
+ * Как только проба проходит, предохранитель замыкается и локальные изменения доставляются
+ * ({@link Synchronizer#synchronize()}: воспроизведение очереди или обмен с репликой).
+ * При доступном хранилище проверка выполняется раз в {@code idleInterval}.
+ *
+ * <p>Каждое изменение состояния передаётся слушателю; слушатель вызывается в рабочем потоке,
+ * поэтому интерфейс должен сам перейти в свой поток.
+ */
+public class SyncWorker {
+    private static final Logger logger = Logger.getLogger(SyncWorker.class.getName());
+    public static final Duration DEFAULT_IDLE_INTERVAL = Duration.ofSeconds(30);
+
+    public enum Status {
+        /** Хранилище доступно, очередь пуста. */
+        ONLINE,
+        /** Воспроизводится очередь. */
+        SYNCING,
+        /** Хранилище недоступно, ожидается следующая проверка. */
+        OFFLINE,
+        /** Связь есть, но воспроизведение завершилось ошибкой хранилища. */
+        FAILED
+    }
+
+    /**
+     * Состояние синхронизации.
+     *
+     * @param status      состояние
+     * @param pending     изменений, ещё не доставленных в хранилище (-1, если неизвестно)
+     * @param retryIn     через сколько будет следующая попытка
+     * @param message     описание ошибки или null
+     * @param dataChanged обмен изменил данные, которые показывает приложение
+     */
+    public record SyncState(Status status, long pending, Duration retryIn, String message, boolean dataChanged) {}
+
+    @FunctionalInterface
+    public interface Listener {
+        void onStateChanged(SyncState state);
+    }
+
+    private final Synchronizer synchronizer;
+    private final CircuitBreaker circuitBreaker;
+    private final Backoff backoff;
+    private final Duration idleInterval;
+    private final Listener listener;
+    private final ScheduledExecutorService executor;
+    private ScheduledFuture<?> nextRun;
+    private boolean running;
+    private boolean syncRequested;
+    private volatile SyncState lastState;
+
+    /**
+     * Создаёт рабочий поток синхронизации; проверки начинаются после {@link #start()}.
+     *
+     * @param synchronizer   способ доставки изменений
+     * @param circuitBreaker предохранитель, общий с сервисом задач
+     * @param backoff        задержки между проверками при недоступном хранилище
+     * @param idleInterval   период проверки при доступном хранилище
+     * @param listener       получатель состояний
+     */
+    public SyncWorker(Synchronizer synchronizer, CircuitBreaker circuitBreaker, Backoff backoff,
+                      Duration idleInterval, Listener listener) {
+        this.synchronizer = synchronizer;
+        this.circuitBreaker = circuitBreaker;
+        this.backoff = backoff;
+        this.idleInterval = idleInterval;
+        this.listener = listener;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sync-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Запускает первую проверку немедленно.
+     */
+    public void start() {
+        requestSync();
+    }
+
+    /**
+     * Просит выполнить проверку и синхронизацию как можно скорее, не дожидаясь расписания.
+     * Пока хранилище недоступно, запрос не сбивает экспоненциальную задержку: иначе каждая локальная
+     * запись запускала бы пробу немедленно и сбрасывала задержку к первой попытке.
+     */
+    public synchronized void requestSync() {
+        if (executor.isShutdown()) {
+            return;
+        }
+        if (running) {
+            // Текущий цикл сам запланирует следующий сразу после завершения
+            syncRequested = true;
+            return;
+        }
+        if (backingOff()) {
+            return;
+        }
+        if (nextRun != null) {
+            nextRun.cancel(false);
+        }
+        nextRun = executor.schedule(this::runCycle, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Сообщает о сетевой ошибке, замеченной вне рабочего потока (например, при сохранении задачи).
+     */
+    public void reportFailure() {
+        circuitBreaker.recordFailure();
+        if (lastState == null || lastState.status() != Status.OFFLINE) {
+            publish(Status.OFFLINE, null, "соединение потеряно");
+        }
+    }
+
+    public SyncState getLastState() {
+        return lastState;
+    }
+
+    /**
+     * Останавливает рабочий поток; начатое воспроизведение прерывается между пакетами.
+     */
+    public synchronized void stop() {
+        executor.shutdownNow();
+    }
+
+    private void runCycle() {
+        synchronized (this) {
+            running = true;
+            syncRequested = false;
+        }
+        Duration delay;
+        try {
+            delay = syncOnce();
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Sync cycle failed", e);
+            delay = backoff.nextDelay();
+            publish(Status.FAILED, delay, e.getMessage());
+        }
+        schedule(delay);
+    }
+
+    private Duration syncOnce() {
+        circuitBreaker.beginTrial();
+        try {
+            synchronizer.ping();
+        } catch (SQLException e) {
+            return onFailure(e);
+        }
+        circuitBreaker.recordSuccess();
+
+        // Обмен выполняется и при пустой локальной очереди: у реплики могут быть изменения на сервере
+        boolean changed;
+        try {
+            if (synchronizer.pendingCount() > 0) {
+                publish(Status.SYNCING, null, null);
+            }
+            changed = synchronizer.synchronize();
+        } catch (SQLException | IOException e) {
+            return onFailure(e);
+        }
+
+        backoff.reset();
+        publish(Status.ONLINE, idleInterval, null, changed);
+        return idleInterval;
+    }
+
+    private Duration onFailure(Exception e) {
+        Duration delay = backoff.nextDelay();
+        if (NetworkErrors.isNetworkError(e)) {
+            circuitBreaker.recordFailure();
+            logger.log(Level.FINE, "Storage unreachable, next probe in {0} ms", delay.toMillis());
+            publish(Status.OFFLINE, delay, e.getMessage());
+        } else {
+            // Ошибка данных не лечится ожиданием, но и отказываться от очереди нельзя: повторяем с задержкой
+            logger.log(Level.WARNING, "Background sync failed", e);
+            publish(Status.FAILED, delay, e.getMessage());
+        }
+        return delay;
+    }
+
+    private synchronized void schedule(Duration delay) {
+        running = false;
+        if (executor.isShutdown()) {
+            return;
+        }
+        if (syncRequested && !backingOff()) {
+            delay = Duration.ZERO;
+        }
+        syncRequested = false;
+        nextRun = executor.schedule(this::runCycle, delay.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    // Задержку сбрасывает только успешный цикл
+    private boolean backingOff() {
+        SyncState state = lastState;
+        return state != null && (state.status() == Status.OFFLINE || state.status() == Status.FAILED);
+    }
+
+    private void publish(Status status, Duration retryIn, String message) {
+        publish(status, retryIn, message, false);
+    }
+
+    private void publish(Status status, Duration retryIn, String message, boolean dataChanged) {
+        long pending;
+        try {
+            pending = synchronizer.pendingCount();
+        } catch (SQLException e) {
+            pending = -1;
+        }
+        SyncState state = new SyncState(status, pending, retryIn, message, dataChanged);
+        lastState = state;
+        try {
+            listener.onStateChanged(state);
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Sync listener failed", e);
+        }
+    }
+}
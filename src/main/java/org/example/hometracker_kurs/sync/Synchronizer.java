@@ -0,0 +1,36 @@
+package org.example.hometracker_kurs.sync;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+/**
+ * Способ доставки локальных изменений в хранилище, которым управляет {@link SyncWorker}:
+ * воспроизведение очереди отложенных операций ({@link ReplayEngine})
+ * или двусторонний обмен с офлайн-репликой ({@link ReplicationEngine}).
+ */
+public interface Synchronizer {
+
+    /**
+     * Дешёвая проверка доступности хранилища.
+     *
+     * @throws SQLException если хранилище недоступно
+     */
+    void ping() throws SQLException;
+
+    /**
+     * Количество локальных изменений, ещё не доставленных в хранилище.
+     *
+     * @return количество изменений
+     * @throws SQLException если локальное состояние не удалось прочитать
+     */
+    long pendingCount() throws SQLException;
+
+    /**
+     * Выполняет один полный обмен.
+     *
+     * @return true, если изменились данные, которые читает приложение
+     * @throws SQLException если обмен прерван ошибкой хранилища
+     * @throws IOException  если не удалось прочитать или записать локальный журнал
+     */
+    boolean synchronize() throws SQLException, IOException;
+}
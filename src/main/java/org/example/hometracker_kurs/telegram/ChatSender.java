@@ -0,0 +1,19 @@
+package org.example.hometracker_kurs.telegram;
+
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+
+/**
+ * Отправка текстового сообщения в чат Telegram.
+ */
+@FunctionalInterface
+public interface ChatSender {
+    /**
+     * Отправляет сообщение.
+     *
+     * @param chatId идентификатор чата
+     * @param text   текст в разметке Markdown
+     * @throws TelegramApiException если Bot API отклонил запрос или не ответил;
+     *                              ответ с ошибкой приходит как {@link org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException}
+     */
+    void send(long chatId, String text) throws TelegramApiException;
+}
@@ -0,0 +1,270 @@
+package org.example.hometracker_kurs.telegram;
+
+import org.example.hometracker_kurs.sync.Backoff;
+import org.telegram.telegrambots.meta.api.objects.ResponseParameters;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Рассылка сообщений нескольким чатам Telegram с соблюдением ограничений Bot API.
+ *
+ * <p>Сообщения отправляются небольшим пулом потоков планировщика. Перед каждой отправкой резервируются
+ * жетоны из ведра чата и из общего ведра бота ({@link TokenBucket}); если жетона ещё нет, отправка
+ * откладывается в планировщике на нужное время, а поток тем временем отправляет сообщения в другие чаты.
+ * Вызывающий поток никогда не ждёт. Ответ 429 приостанавливает ведро чата на указанное сервером время
+ * {@code retry_after}, после чего отправка повторяется; сетевые ошибки и ошибки сервера повторяются
+ * с экспоненциальной задержкой. Остальные ошибки 4xx не повторяются.
+ */
+public class NotificationFanout implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(NotificationFanout.class.getName());
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private final ChatSender sender;
+    private final Limits limits;
+    private final int maxAttempts;
+    private final TokenBucket globalBucket;
+    private final Map<Long, TokenBucket> chatBuckets = new ConcurrentHashMap<>();
+    private final ScheduledThreadPoolExecutor executor;
+    private final Set<Job> pending = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Ограничения частоты отправки.
+     *
+     * @param globalPerSecond      сообщений в секунду от бота во все чаты
+     * @param privatePerSecond     сообщений в секунду в один личный чат
+     * @param groupPerSecond       сообщений в секунду в одну группу (идентификатор группы отрицателен)
+     * @param burst                сколько сообщений подряд допускается без ожидания
+     */
+    public record Limits(double globalPerSecond, double privatePerSecond, double groupPerSecond, int burst) {
+        /** Ограничения, опубликованные Telegram: 30 сообщений в секунду, 1 в секунду на чат, 20 в минуту на группу. */
+        public static final Limits TELEGRAM = new Limits(30, 1, 20 / 60.0, 1);
+    }
+
+    /**
+     * Один вызов Bot API в чат, например ответ на команду с клавиатурой.
+     */
+    @FunctionalInterface
+    public interface ChatCall {
+        /**
+         * Выполняет вызов.
+         *
+         * @throws TelegramApiException если Bot API отклонил запрос или не ответил
+         */
+        void send() throws TelegramApiException;
+    }
+
+    /**
+     * Результат доставки сообщения.
+     *
+     * @param chatId    идентификатор чата
+     * @param delivered true, если Bot API принял сообщение
+     * @param attempts  число сделанных попыток
+     * @param errorCode код последней ошибки Bot API или null
+     */
+    public record Delivery(long chatId, boolean delivered, int attempts, Integer errorCode) {
+    }
+
+    /**
+     * Создаёт рассылку с ограничениями Telegram, четырьмя потоками и пятью попытками на сообщение.
+     *
+     * @param sender способ отправки сообщения
+     */
+    public NotificationFanout(ChatSender sender) {
+        this(sender, Limits.TELEGRAM, 4, 5);
+    }
+
+    /**
+     * Создаёт рассылку.
+     *
+     * @param sender        способ отправки сообщения
+     * @param limits        ограничения частоты
+     * @param threads       число потоков отправки
+     * @param maxAttempts   наибольшее число попыток на сообщение
+     */
+    public NotificationFanout(ChatSender sender, Limits limits, int threads, int maxAttempts) {
+        this.sender = sender;
+        this.limits = limits;
+        this.maxAttempts = maxAttempts;
+        this.globalBucket = new TokenBucket(limits.globalPerSecond(), limits.burst());
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ScheduledThreadPoolExecutor(threads, runnable -> {
+            Thread thread = new Thread(runnable, "telegram-fanout-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Ставит сообщение в очередь отправки.
+     *
+     * @param chatId идентификатор чата
+     * @param text   текст сообщения
+     * @return результат доставки; будущее не завершается исключением
+     */
+    public CompletableFuture<Delivery> send(long chatId, String text) {
+        return submit(chatId, () -> sender.send(chatId, text));
+    }
+
+    /**
+     * Ставит в очередь отправки произвольный вызов Bot API в чат; ограничения частоты и повторы
+     * действуют так же, как для текстовых сообщений.
+     *
+     * @param chatId идентификатор чата
+     * @param call   вызов Bot API
+     * @return результат доставки; будущее не завершается исключением
+     */
+    public CompletableFuture<Delivery> submit(long chatId, ChatCall call) {
+        Job job = new Job(chatId, call);
+        pending.add(job);
+        job.start();
+        return job.result;
+    }
+
+    /**
+     * Рассылает сообщения нескольким чатам.
+     *
+     * @param messages текст сообщения для каждого чата
+     * @return результаты доставки в порядке обхода {@code messages}
+     */
+    public CompletableFuture<List<Delivery>> broadcast(Map<Long, String> messages) {
+        // Вёдра чатов, простоявшие достаточно долго, ничего не ограничивают
+        chatBuckets.values().removeIf(TokenBucket::isIdle);
+        List<CompletableFuture<Delivery>> futures = new ArrayList<>(messages.size());
+        messages.forEach((chatId, text) -> futures.add(send(chatId, text)));
+        return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new))
+                .thenApply(ignored -> futures.stream().map(CompletableFuture::join).toList());
+    }
+
+    /**
+     * Доставка одного сообщения. Шаги выполняются по очереди в потоках пула, и каждый шаг
+     * планирует следующий: ожидание жетона или паузы между попытками — это задержка в планировщике,
+     * а не сон потока, поэтому ждущее сообщение не занимает поток и не задерживает сообщения в другие чаты.
+     */
+    private final class Job {
+        private final long chatId;
+        private final ChatCall call;
+        private final TokenBucket chatBucket;
+        private final CompletableFuture<Delivery> result = new CompletableFuture<>();
+        private int attempt;
+        private Integer errorCode;
+        private Backoff backoff;
+
+        private Job(long chatId, ChatCall call) {
+            this.chatId = chatId;
+            this.call = call;
+            this.chatBucket = chatBuckets.computeIfAbsent(chatId, NotificationFanout.this::newChatBucket);
+        }
+
+        // Жетон чата, затем общий: общий жетон берётся, только когда чат уже готов, и не пропадает зря
+        private void start() {
+            attempt++;
+            schedule(this::takeGlobalToken, chatBucket.reserve());
+        }
+
+        private void takeGlobalToken() {
+            schedule(this::sendNow, globalBucket.reserve());
+        }
+
+        private void sendNow() {
+            try {
+                call.send();
+                finish(true);
+                return;
+            } catch (TelegramApiRequestException e) {
+                errorCode = e.getErrorCode();
+                Integer retryAfter = retryAfter(e);
+                if (errorCode != null && errorCode == TOO_MANY_REQUESTS && retryAfter != null) {
+                    logger.fine(() -> "Чат " + chatId + ": превышен лимит, повтор через " + retryAfter + " с");
+                    // Следующий жетон чата будет выдан по окончании паузы
+                    chatBucket.pause(Duration.ofSeconds(retryAfter));
+                    retry(0);
+                    return;
+                }
+                if (errorCode != null && errorCode >= 400 && errorCode < 500 && errorCode != TOO_MANY_REQUESTS) {
+                    logger.warning("Чат " + chatId + ": сообщение отклонено (" + errorCode + "): " + e.getApiResponse());
+                    finish(false);
+                    return;
+                }
+                logger.log(Level.FINE, "Чат " + chatId + ": ошибка Bot API, повтор", e);
+            } catch (TelegramApiException e) {
+                logger.log(Level.FINE, "Чат " + chatId + ": ошибка соединения с Bot API, повтор", e);
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Чат " + chatId + ": сообщение не отправлено", e);
+                finish(false);
+                return;
+            }
+
+            if (backoff == null) {
+                backoff = new Backoff(Duration.ofMillis(500), Duration.ofSeconds(30));
+            }
+            retry(backoff.nextDelay().toNanos());
+        }
+
+        private void retry(long delayNanos) {
+            if (attempt >= maxAttempts) {
+                logger.warning("Чат " + chatId + ": сообщение не доставлено за " + maxAttempts + " попыток");
+                finish(false);
+                return;
+            }
+            schedule(this::start, delayNanos);
+        }
+
+        private void finish(boolean delivered) {
+            pending.remove(this);
+            result.complete(new Delivery(chatId, delivered, attempt, delivered ? null : errorCode));
+        }
+
+        private void schedule(Runnable step, long delayNanos) {
+            try {
+                executor.schedule(step, delayNanos, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                // Рассылка закрыта: сообщение не будет отправлено
+                finish(false);
+            }
+        }
+    }
+
+    private TokenBucket newChatBucket(long chatId) {
+        return new TokenBucket(chatId < 0 ? limits.groupPerSecond() : limits.privatePerSecond(), limits.burst());
+    }
+
+    private static Integer retryAfter(TelegramApiRequestException e) {
+        ResponseParameters parameters = e.getParameters();
+        return parameters == null ? null : parameters.getRetryAfter();
+    }
+
+    /**
+     * Останавливает потоки отправки, дожидаясь уже поставленных в очередь сообщений.
+     * Повторы, которые пришлось бы планировать после закрытия, завершаются недоставкой.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        // Сообщения, снятые с расписания, завершаются недоставкой, чтобы никто не ждал их вечно
+        for (Job job : List.copyOf(pending)) {
+            job.finish(false);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package org.example.hometracker_kurs.telegram;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Подписчики Telegram-бота: чаты, получающие ежедневные напоминания.
+ * Чат может быть привязан к исполнителю — тогда в него приходят только задачи этого исполнителя.
+ * Список хранится в JSON-файле; файл перезаписывается целиком через временный файл и атомарное
+ * переименование, поэтому сбой во время записи не портит его.
+ */
+public class SubscriberRegistry {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Path file;
+    private final Map<Long, Subscriber> subscribers = new LinkedHashMap<>();
+
+    /**
+     * Подписчик.
+     *
+     * @param chatId   идентификатор чата
+     * @param assignee исполнитель, чьи задачи получает чат, или null — все задачи
+     */
+    public record Subscriber(long chatId, String assignee) {
+        /**
+         * Проверяет, относится ли задача исполнителя к этому подписчику.
+         *
+         * @param taskAssignee исполнитель задачи
+         * @return true, если подписчик получает все задачи или задача назначена его исполнителю
+         */
+        public boolean receives(String taskAssignee) {
+            return assignee == null || (taskAssignee != null && assignee.equalsIgnoreCase(taskAssignee.trim()));
+        }
+    }
+
+    /**
+     * Открывает реестр, загружая подписчиков из файла, если он существует.
+     *
+     * @param file путь к файлу реестра
+     * @throws IOException если файл существует, но не читается
+     */
+    public SubscriberRegistry(Path file) throws IOException {
+        this.file = file;
+        if (Files.exists(file)) {
+            for (JsonNode node : objectMapper.readTree(file.toFile())) {
+                long chatId = node.path("chatId").asLong();
+                String assignee = node.hasNonNull("assignee") ? node.get("assignee").asText() : null;
+                subscribers.put(chatId, new Subscriber(chatId, assignee));
+            }
+        }
+    }
+
+    /**
+     * Подписывает чат; привязка к исполнителю у уже подписанного чата сохраняется.
+     *
+     * @param chatId идентификатор чата
+     * @return true, если чат не был подписан
+     * @throws IOException если реестр не удалось сохранить
+     */
+    public synchronized boolean subscribe(long chatId) throws IOException {
+        if (subscribers.containsKey(chatId)) {
+            return false;
+        }
+        subscribers.put(chatId, new Subscriber(chatId, null));
+        save();
+        return true;
+    }
+
+    /**
+     * Привязывает чат к исполнителю, подписывая его при необходимости.
+     *
+     * @param chatId   идентификатор чата
+     * @param assignee исполнитель или null, чтобы получать все задачи
+     * @throws IOException если реестр не удалось сохранить
+     */
+    public synchronized void setAssignee(long chatId, String assignee) throws IOException {
+        String normalized = assignee == null || assignee.isBlank() ? null : assignee.trim();
+        subscribers.put(chatId, new Subscriber(chatId, normalized));
+        save();
+    }
+
+    /**
+     * Отписывает чат.
+     *
+     * @param chatId идентификатор чата
+     * @return true, если чат был подписан
+     * @throws IOException если реестр не удалось сохранить
+     */
+    public synchronized boolean unsubscribe(long chatId) throws IOException {
+        if (subscribers.remove(chatId) == null) {
+            return false;
+        }
+        save();
+        return true;
+    }
+
+    /**
+     * Возвращает подписчика.
+     *
+     * @param chatId идентификатор чата
+     * @return подписчик или пусто, если чат не подписан
+     */
+    public synchronized Optional<Subscriber> get(long chatId) {
+        return Optional.ofNullable(subscribers.get(chatId));
+    }
+
+    /**
+     * Возвращает снимок списка подписчиков в порядке подписки.
+     * @return подписчики
+     */
+    public synchronized List<Subscriber> getSubscribers() {
+        return new ArrayList<>(subscribers.values());
+    }
+
+    private void save() throws IOException {
+        ArrayNode array = objectMapper.createArrayNode();
+        for (Subscriber subscriber : subscribers.values()) {
+            ObjectNode node = array.addObject();
+            node.put("chatId", subscriber.chatId());
+            node.put("assignee", subscriber.assignee());
+        }
+        Path absolute = file.toAbsolutePath();
+        Path temp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(temp.toFile(), array);
+        Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
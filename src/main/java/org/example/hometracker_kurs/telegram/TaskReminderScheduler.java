@@ -0,0 +1,199 @@
+package org.example.hometracker_kurs.telegram;
+
+import org.example.hometracker_kurs.model.Task;
+import org.example.hometracker_kurs.model.TaskChangeSet;
+import org.example.hometracker_kurs.model.TaskStatus;
+import org.example.hometracker_kurs.scheduler.JobScheduler;
+import org.example.hometracker_kurs.service.TaskService;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Напоминания о задачах: по одному на каждую активную задачу со сроком, за заданное время
+ * до начала дня срока в указанном часовом поясе.
+ *
+ * <p>Таймеры хранятся в {@link TimingWheel} по идентификатору задачи, так что изменение задачи
+ * переставляет её напоминание за O(1). При запуске таймеры восстанавливаются из хранилища одним
+ * запросом по индексу сроков. Изменения подхватываются по версиям хранилища: сразу после записи через
+ * любой {@link TaskService} этого процесса и раз в {@link #POLL_INTERVAL} — для других клиентов общего
+ * хранилища. Запрос изменений выполняется в рабочем потоке, а поток колеса только ставит и снимает таймеры
+ * и поэтому не опаздывает с напоминаниями, пока хранилище отвечает медленно. Напоминания, время которых
+ * уже прошло к моменту постановки, не отправляются — иначе каждый перезапуск повторял бы их.
+ */
+public class TaskReminderScheduler implements AutoCloseable {
+    public static final String LEAD_PROPERTY = "hometracker.reminderLeadHours";
+    public static final Duration DEFAULT_LEAD = Duration.ofHours(12);
+    public static final Duration POLL_INTERVAL = Duration.ofSeconds(30);
+
+    private static final Logger logger = Logger.getLogger(TaskReminderScheduler.class.getName());
+    private static final LocalDate LAST_DATE = LocalDate.of(9999, 12, 31);
+    // Ключ таймера опроса изменений; таймеры задач имеют ключи Integer
+    private static final Object POLL = new Object();
+
+    private final TaskService taskService;
+    private final Duration lead;
+    private final ZoneId zone;
+    private final Consumer<Task> reminder;
+    private final TimingWheel<Object> wheel;
+    private final Executor executor;
+    private final Runnable pollRequest = this::requestPoll;
+    // Запросы, пришедшие, пока опрос ждёт рабочий поток, объединяются в один опрос
+    private final AtomicBoolean pollQueued = new AtomicBoolean();
+    private final Object pollLock = new Object();
+    private volatile boolean closed;
+    private long version;
+
+    /**
+     * Создаёт планировщик напоминаний; таймеры ставятся методом {@link #start()}.
+     *
+     * @param taskService сервис задач
+     * @param lead        за сколько до начала дня срока напоминать
+     * @param zone        часовой пояс, в котором считаются дни
+     * @param reminder    отправка напоминания; вызывается в потоке колеса и не должна блокироваться
+     */
+    public TaskReminderScheduler(TaskService taskService, Duration lead, ZoneId zone, Consumer<Task> reminder) {
+        this.taskService = taskService;
+        this.lead = lead;
+        this.zone = zone;
+        this.reminder = reminder;
+        this.wheel = new TimingWheel<>(Duration.ofSeconds(1), "task-reminders");
+        this.executor = JobScheduler.shared().workers();
+    }
+
+    /**
+     * Возвращает время напоминания, заданное системным свойством {@code hometracker.reminderLeadHours}.
+     *
+     * @return время в часах из свойства или {@link #DEFAULT_LEAD}
+     */
+    public static Duration configuredLead() {
+        return Duration.ofHours(Long.getLong(LEAD_PROPERTY, DEFAULT_LEAD.toHours()));
+    }
+
+    /**
+     * Восстанавливает напоминания из хранилища и начинает следить за изменениями задач.
+     *
+     * @throws SQLException если задачи не удалось прочитать
+     */
+    public void start() throws SQLException {
+        // Версия читается до задач: изменение между запросами будет получено первым опросом
+        long startVersion = taskService.getCurrentVersion();
+        List<Task> tasks = taskService.getTasksDueBetween(LocalDate.now(zone), LAST_DATE, TaskStatus.ACTIVE);
+        synchronized (this) {
+            version = startVersion;
+        }
+        for (Task task : tasks) {
+            taskChanged(task);
+        }
+        logger.info("Восстановлено напоминаний: " + wheel.size());
+        TaskService.addChangeListener(pollRequest);
+        schedulePoll();
+    }
+
+    /**
+     * Переставляет напоминание задачи после её изменения.
+     *
+     * @param task задача в новом состоянии
+     */
+    public void taskChanged(Task task) {
+        if (task.getStatus() != TaskStatus.ACTIVE || task.getDueDate() == null) {
+            wheel.cancel(task.getId());
+            return;
+        }
+        Instant at = remindAt(task.getDueDate());
+        if (at.isAfter(Instant.now())) {
+            wheel.schedule(task.getId(), at, () -> reminder.accept(task));
+        } else {
+            wheel.cancel(task.getId());
+        }
+    }
+
+    /**
+     * Снимает напоминание удалённой задачи.
+     *
+     * @param taskId идентификатор задачи
+     */
+    public void taskDeleted(int taskId) {
+        wheel.cancel(taskId);
+    }
+
+    /**
+     * Возвращает число ожидающих напоминаний.
+     * @return число напоминаний
+     */
+    public int size() {
+        // Таймер опроса изменений не считается
+        return wheel.isScheduled(POLL) ? wheel.size() - 1 : wheel.size();
+    }
+
+    private Instant remindAt(LocalDate dueDate) {
+        return dueDate.atStartOfDay(zone).minus(lead).toInstant();
+    }
+
+    private void schedulePoll() {
+        if (!closed) {
+            wheel.schedule(POLL, Instant.now().plus(POLL_INTERVAL), pollRequest);
+        }
+    }
+
+    /**
+     * Запрашивает внеочередную проверку изменений задач; сама проверка выполняется в рабочем потоке.
+     */
+    public void requestPoll() {
+        if (closed || !pollQueued.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(this::poll);
+        } catch (RejectedExecutionException e) {
+            pollQueued.set(false);
+        }
+    }
+
+    private void poll() {
+        // Флаг снимается до чтения версии: запись после этого момента запросит ещё один опрос
+        pollQueued.set(false);
+        synchronized (pollLock) {
+            if (closed) {
+                return;
+            }
+            try {
+                long since;
+                synchronized (this) {
+                    since = version;
+                }
+                TaskChangeSet changes = taskService.changesSince(since);
+                changes.getInserted().forEach(this::taskChanged);
+                changes.getUpdated().forEach(this::taskChanged);
+                changes.getDeletedIds().forEach(this::taskDeleted);
+                synchronized (this) {
+                    version = changes.getVersion();
+                }
+            } catch (SQLException e) {
+                logger.warning("Не удалось получить изменения задач для напоминаний: " + e.getMessage());
+            } finally {
+                // Плановый опрос отсчитывается от последнего, внеочередной его откладывает
+                schedulePoll();
+            }
+        }
+    }
+
+    /**
+     * Останавливает поток напоминаний и перестаёт следить за изменениями задач.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        TaskService.removeChangeListener(pollRequest);
+        wheel.close();
+    }
+}
@@ -2,40 +2,75 @@ package org.example.hometracker_kurs.telegram;
 
 import org.example.hometracker_kurs.config.TelegramConfig;
 import org.example.hometracker_kurs.model.Task;
-import org.example.hometracker_kurs.model.TaskStatus;
 import org.example.hometracker_kurs.service.TaskService;
+import org.example.hometracker_kurs.telegram.SubscriberRegistry.Subscriber;
 import org.telegram.telegrambots.bots.TelegramLongPollingBot;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.updates.SetWebhook;
 import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Telegram бот для управления задачами и напоминаний.
  * Позволяет получать список задач на текущий день и отправляет уведомления.
+ * Напоминания рассылаются всем подписанным чатам; чат, привязанный к исполнителю,
+ * получает только его задачи.
  */
 public class TelegramReminderBot extends TelegramLongPollingBot {
+    private static final Path SUBSCRIBERS_FILE = Path.of("telegram_subscribers.json");
+    private static final int FORBIDDEN = 403;
+    private static final Logger logger = Logger.getLogger(TelegramReminderBot.class.getName());
+
     private final TaskService taskService;
     private final String token;
-    private final TelegramConfig config;
-    private String chatId;
+    private final SubscriberRegistry subscribers;
+    private final NotificationFanout fanout;
+    private final UpdatePipeline pipeline;
 
     /**
      * Конструктор бота.
+     * Если подписчиков ещё нет, подписывается чат из конфигурации.
      * @param config конфигурация с токеном бота и chatId
      * @param taskService сервис для работы с задачами
+     * @throws IOException если файл подписчиков не читается
+     */
+    public TelegramReminderBot(TelegramConfig config, TaskService taskService) throws IOException {
+        this(config.getTelegramBotToken(), taskService, new SubscriberRegistry(SUBSCRIBERS_FILE));
+
+        String configuredChatId = config.getTelegramChatId();
+        if (subscribers.getSubscribers().isEmpty() && configuredChatId != null && !configuredChatId.isBlank()) {
+            subscribers.subscribe(Long.parseLong(configuredChatId.trim()));
+        }
+    }
+
+    /**
+     * Конструктор бота с заданным реестром подписчиков.
+     * @param token токен бота
+     * @param taskService сервис для работы с задачами
+     * @param subscribers реестр подписчиков
      */
-    public TelegramReminderBot(TelegramConfig config, TaskService taskService) {
-        this.config = config;
-        this.token = config.getTelegramBotToken();
-        this.chatId = config.getTelegramChatId();
+    TelegramReminderBot(String token, TaskService taskService, SubscriberRegistry subscribers) {
+        this.token = token;
         this.taskService = taskService;
+        this.subscribers = subscribers;
+        this.fanout = new NotificationFanout(this::sendText);
+        this.pipeline = new UpdatePipeline(getBotUsername(), this::handleUpdate, UpdatePipeline.DEFAULT_CAPACITY);
     }
 
     /**
@@ -57,55 +92,108 @@ public class TelegramReminderBot extends TelegramLongPollingBot {
     }
 
     /**
-     * Обрабатывает входящие обновления от Telegram.
+     * Принимает входящее обновление от Telegram и передаёт его конвейеру обработки,
+     * чтобы запросы к базе и отправка ответов не задерживали получение следующих обновлений.
      * @param update входящее обновление
      */
     @Override
     public void onUpdateReceived(Update update) {
+        pipeline.submit(update);
+    }
+
+    /**
+     * Обрабатывает обновление; вызывается конвейером по порядку для каждого чата.
+     * @param update входящее обновление
+     */
+    void handleUpdate(Update update) {
+        SendMessage reply = replyTo(update);
+        if (reply != null) {
+            sendReply(reply);
+        }
+    }
+
+    /**
+     * Обрабатывает обновление, полученное через webhook: ответ возвращается вызывающему,
+     * чтобы отправить его в теле ответа на тот же запрос.
+     * @param update входящее обновление
+     * @return будущий ответ; null, если отвечать не нужно
+     */
+    public CompletableFuture<SendMessage> respondTo(Update update) {
+        return pipeline.submit(update, this::replyTo);
+    }
+
+    /**
+     * Формирует ответ на команду или нажатие кнопки.
+     * @param update входящее обновление
+     * @return ответное сообщение или null, если отвечать не нужно
+     */
+    private SendMessage replyTo(Update update) {
         if (update.hasMessage() && update.getMessage().hasText()) {
-            this.chatId = update.getMessage().getChatId().toString();
-            String message = update.getMessage().getText().trim().toLowerCase();
-
-            switch (message) {
-                case "/start":
-                    sendWelcomeMessage();
-                    break;
-                case "/tasks":
-                    sendDailyTasks();
-                    break;
-                default:
-                    sendMessage("❗ Неизвестная команда. Нажми /start для помощи.");
-                    break;
+            long chatId = update.getMessage().getChatId();
+            String[] parts = update.getMessage().getText().trim().split("\\s+", 2);
+            // В группах команда может прийти как /tasks@MyFamTaskBot
+            String command = parts[0].split("@", 2)[0].toLowerCase();
+            String argument = parts.length > 1 ? parts[1].trim() : "";
+
+            try {
+                switch (command) {
+                    case "/start":
+                        subscribers.subscribe(chatId);
+                        return welcomeMessage(chatId);
+                    case "/tasks":
+                        return dailyTasksMessage(chatId);
+                    case "/me":
+                        if (argument.isEmpty()) {
+                            return message(chatId, "❗ Укажи имя исполнителя: `/me Имя`");
+                        }
+                        subscribers.setAssignee(chatId, argument);
+                        return message(chatId, "👤 Теперь я напоминаю только о задачах исполнителя: "
+                                + escapeMarkdown(argument) + ".");
+                    case "/all":
+                        subscribers.setAssignee(chatId, null);
+                        return message(chatId, "👥 Теперь я напоминаю обо всех задачах.");
+                    case "/stop":
+                        subscribers.unsubscribe(chatId);
+                        return message(chatId, "🔕 Напоминания отключены. Нажми /start, чтобы включить их снова.");
+                    default:
+                        return message(chatId, "❗ Неизвестная команда. Нажми /start для помощи.");
+                }
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Чат " + chatId + ": не удалось сохранить подписку", e);
+                return message(chatId, "❗ Не удалось сохранить подписку: " + e.getMessage());
             }
 
         } else if (update.hasCallbackQuery()) {
-            this.chatId = update.getCallbackQuery().getMessage().getChatId().toString();
+            long chatId = update.getCallbackQuery().getMessage().getChatId();
             String callback = update.getCallbackQuery().getData();
 
             if ("/tasks".equals(callback)) {
-                sendDailyTasks();
+                return dailyTasksMessage(chatId);
             }
         }
+        return null;
     }
 
     /**
-     * Отправляет приветственное сообщение с инструкциями.
+     * Формирует приветственное сообщение с инструкциями.
+     * @param chatId идентификатор чата
+     * @return сообщение с кнопкой запроса задач
      */
-    private void sendWelcomeMessage() {
+    private SendMessage welcomeMessage(long chatId) {
         String text = """
                 👋 *Привет! Я бот для напоминаний о домашних делах.*
                 
                 Вот что я умею:
                 ✅ `/tasks` — показать задачи на сегодня
                 ⏰ Я сам напомню о задачах каждый день в *8:00*
+                👤 `/me Имя` — напоминать только о задачах этого исполнителя
+                👥 `/all` — напоминать обо всех задачах
+                🔕 `/stop` — отключить напоминания
 
                 Просто нажми кнопку внизу или введи команду.
                 """;
 
-        SendMessage message = new SendMessage();
-        message.setChatId(chatId);
-        message.setText(text);
-        message.enableMarkdown(true);
+        SendMessage message = message(chatId, text);
 
         // Кнопки под сообщением
         InlineKeyboardMarkup keyboard = new InlineKeyboardMarkup();
@@ -121,68 +209,197 @@ public class TelegramReminderBot extends TelegramLongPollingBot {
 
         keyboard.setKeyboard(rows);
         message.setReplyMarkup(keyboard);
+        return message;
+    }
+
+    /**
+     * Рассылает список задач на текущий день всем подписчикам.
+     * Активные задачи с датой выполнения сегодня берутся из сводки, которую сервис держит в памяти;
+     * каждому чату уходят задачи его исполнителя. Чаты, заблокировавшие бота, отписываются.
+     */
+    public void sendDailyTasks() {
+        List<Subscriber> recipients = subscribers.getSubscribers();
+        if (recipients.isEmpty()) {
+            return;
+        }
 
+        List<Task> todayTasks;
         try {
-            execute(message);
-        } catch (TelegramApiException e) {
-            e.printStackTrace();
+            todayTasks = taskService.getDailyDigest(LocalDate.now());
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Ошибка при получении задач для рассылки", e);
+            return;
         }
+
+        Map<Long, String> messages = new LinkedHashMap<>();
+        for (Subscriber subscriber : recipients) {
+            messages.put(subscriber.chatId(), formatDailyTasks(todayTasks, subscriber));
+        }
+        fanout.broadcast(messages).thenAccept(this::dropBlockedChats);
     }
 
     /**
-     * Отправляет список задач на текущий день.
-     * Фильтрует активные задачи с датой выполнения сегодня.
+     * Напоминает о задаче подписчикам, которые получают задачи её исполнителя.
+     * Вызывается планировщиком напоминаний и не блокируется: сообщения уходят через рассылку.
+     * @param task задача
      */
-    public void sendDailyTasks() {
-        try {
-            List<Task> todayTasks = taskService.getAllTasks().stream()
-                    .filter(task -> task.getDueDate() != null
-                            && task.getDueDate().isEqual(LocalDate.now())
-                            && task.getStatus() == TaskStatus.ACTIVE)
-                    .collect(Collectors.toList());
-
-            if (todayTasks.isEmpty()) {
-                sendMessage("✅ На сегодня нет активных задач.");
-                return;
+    public void sendTaskReminder(Task task) {
+        String text = "⏰ *Напоминание:* " + task.getName() + "\n"
+                + "📌 " + task.getDescription() + "\n"
+                + "👤 " + task.getAssignedTo() + "\n"
+                + "📅 Срок: " + task.getDueDate();
+
+        Map<Long, String> messages = new LinkedHashMap<>();
+        for (Subscriber subscriber : subscribers.getSubscribers()) {
+            if (subscriber.receives(task.getAssignedTo())) {
+                messages.put(subscriber.chatId(), text);
             }
+        }
+        if (!messages.isEmpty()) {
+            fanout.broadcast(messages).thenAccept(this::dropBlockedChats);
+        }
+    }
 
-            StringBuilder sb = new StringBuilder("📅 *Задачи на сегодня:*\n\n");
+    /**
+     * Отписывает чаты, в которые рассылка не прошла из-за блокировки бота.
+     * @param deliveries результаты рассылки
+     */
+    private void dropBlockedChats(List<NotificationFanout.Delivery> deliveries) {
+        for (NotificationFanout.Delivery delivery : deliveries) {
+            if (!delivery.delivered() && Integer.valueOf(FORBIDDEN).equals(delivery.errorCode())) {
+                try {
+                    subscribers.unsubscribe(delivery.chatId());
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Чат " + delivery.chatId() + ": не удалось отписать заблокировавший бота чат", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Формирует список задач на текущий день для одного чата.
+     * @param chatId идентификатор чата
+     * @return сообщение со списком задач
+     */
+    private SendMessage dailyTasksMessage(long chatId) {
+        try {
+            List<Task> todayTasks = taskService.getDailyDigest(LocalDate.now());
+            Subscriber subscriber = subscribers.get(chatId).orElse(new Subscriber(chatId, null));
+            return message(chatId, formatDailyTasks(todayTasks, subscriber));
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Чат " + chatId + ": ошибка при получении задач", e);
+            return message(chatId, "❗ Ошибка при получении задач: " + e.getMessage());
+        }
+    }
 
-            for (Task task : todayTasks) {
-                sb.append("🔹 *").append(task.getName()).append("*\n")
-                        .append("📌 ").append(task.getDescription()).append("\n")
-                        .append("👤 ").append(task.getAssignedTo()).append("\n")
-                        .append("🏷️ ").append(task.getType()).append("\n")
-                        .append("📅 ").append(task.getDueDate()).append("\n\n");
+    /**
+     * Формирует сообщение со списком задач подписчика.
+     * @param todayTasks задачи на сегодня
+     * @param subscriber подписчик
+     * @return текст сообщения
+     */
+    private String formatDailyTasks(List<Task> todayTasks, Subscriber subscriber) {
+        StringBuilder sb = new StringBuilder("📅 *Задачи на сегодня:*\n\n");
+        int count = 0;
+
+        for (Task task : todayTasks) {
+            if (!subscriber.receives(task.getAssignedTo())) {
+                continue;
             }
+            sb.append("🔹 *").append(task.getName()).append("*\n")
+                    .append("📌 ").append(task.getDescription()).append("\n")
+                    .append("👤 ").append(task.getAssignedTo()).append("\n")
+                    .append("🏷️ ").append(task.getType()).append("\n")
+                    .append("📅 ").append(task.getDueDate()).append("\n\n");
+            count++;
+        }
 
-            sendMessage(sb.toString());
+        return count == 0 ? "✅ На сегодня нет активных задач." : sb.toString();
+    }
 
-        } catch (Exception e) {
-            sendMessage("❗ Ошибка при получении задач: " + e.getMessage());
-            e.printStackTrace();
+    /**
+     * Переключает бота на приём обновлений через webhook: запускает встроенный сервер
+     * и регистрирует его адрес в Telegram. Вместо этого не нужно регистрировать бота для long polling.
+     * @param settings настройки webhook
+     * @return запущенный сервер
+     * @throws IOException если сервер не удалось запустить
+     * @throws TelegramApiException если Telegram не принял адрес
+     */
+    public WebhookServer startWebhook(WebhookSettings settings) throws IOException, TelegramApiException {
+        WebhookServer server = new WebhookServer(new InetSocketAddress(settings.port()), WebhookSettings.PATH,
+                settings.secret(), this::respondTo, this::sendReply, Duration.ofSeconds(5));
+        SetWebhook setWebhook = new SetWebhook();
+        setWebhook.setUrl(settings.webhookUrl());
+        setWebhook.setSecretToken(settings.secret());
+        try {
+            execute(setWebhook);
+        } catch (TelegramApiException e) {
+            server.close();
+            throw e;
         }
+        return server;
     }
 
     /**
-     * Отправляет текстовое сообщение в чат.
-     * @param text текст сообщения
+     * Отправляет ответ на команду через рассылку, чтобы ответы соблюдали те же ограничения частоты
+     * и повторялись после ответа 429. Чат, заблокировавший бота, отписывается.
+     * @param reply вызов метода Bot API с ответом
      */
-    private void sendMessage(String text) {
-        if (chatId == null) {
-            System.err.println("❗ chatId is null. Cannot send message.");
+    public void sendReply(BotApiMethod<?> reply) {
+        if (reply instanceof SendMessage message) {
+            long chatId = Long.parseLong(message.getChatId());
+            fanout.submit(chatId, () -> execute(message))
+                    .thenAccept(delivery -> dropBlockedChats(List.of(delivery)));
             return;
         }
+        // Прочие вызовы не адресованы чату и не подпадают под его ограничение
+        try {
+            execute(reply);
+        } catch (TelegramApiException e) {
+            logger.log(Level.WARNING, "Не удалось отправить ответ", e);
+        }
+    }
+
+    /**
+     * Отправляет текстовое сообщение в чат сразу; используется рассылкой.
+     * @param chatId идентификатор чата
+     * @param text текст сообщения
+     * @throws TelegramApiException если Bot API отклонил запрос
+     */
+    private void sendText(long chatId, String text) throws TelegramApiException {
+        execute(message(chatId, text));
+    }
+
+    /**
+     * Экранирует символы разметки Markdown в тексте, введённом пользователем, чтобы Bot API
+     * не отклонил сообщение из-за незакрытого выделения. Экранированный текст нельзя помещать
+     * внутрь выделения: там экранирование не действует.
+     * @param text исходный текст
+     * @return текст, который показывается как есть
+     */
+    static String escapeMarkdown(String text) {
+        StringBuilder sb = new StringBuilder(text.length() + 8);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '_' || c == '*' || c == '`' || c == '[') {
+                sb.append('\\');
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
 
+    /**
+     * Создаёт текстовое сообщение в разметке Markdown.
+     * @param chatId идентификатор чата
+     * @param text текст сообщения
+     * @return сообщение
+     */
+    private static SendMessage message(long chatId, String text) {
         SendMessage message = new SendMessage();
-        message.setChatId(chatId);
+        message.setChatId(String.valueOf(chatId));
         message.setText(text);
         message.enableMarkdown(true);
-
-        try {
-            execute(message);
-        } catch (TelegramApiException e) {
-            e.printStackTrace();
-        }
+        return message;
     }
-}
\ No newline at end of file
+}
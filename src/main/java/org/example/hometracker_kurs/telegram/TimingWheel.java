@@ -0,0 +1,235 @@
+package org.example.hometracker_kurs.telegram;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Иерархическое колесо таймеров: отложенные действия, привязанные к ключу, по одному на ключ.
+ *
+ * <p>Время делится на такты. Колесо состоит из {@value #LEVELS} уровней по {@value #SLOTS} ячеек;
+ * ячейка уровня k охватывает {@code 64^k} тактов. Таймер кладётся в ячейку самого низкого уровня,
+ * который дотягивается до срока, и спускается на уровень ниже, когда время доходит до его ячейки.
+ * Ячейки — двусвязные списки, а таймеры ищутся по ключу в хеш-таблице, поэтому постановка,
+ * перенос и отмена выполняются за O(1) независимо от числа таймеров.
+ *
+ * <p>Колесо ведёт один поток. Действия выполняются в нём же и должны быть короткими.
+ * Если поток не работал (например, компьютер спал), пропущенные такты обрабатываются сразу
+ * после пробуждения и просроченные действия выполняются с опозданием, но не теряются.
+ *
+ * @param <K> тип ключа таймера
+ */
+public class TimingWheel<K> implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(TimingWheel.class.getName());
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 5;
+    // Дальше этого таймер лежит в верхнем уровне и заново раскладывается при каждом его обороте
+    private static final long SPAN = 1L << (SLOT_BITS * LEVELS);
+
+    private final long tickMillis;
+    private final LongSupplier clock;
+    private final long startMillis;
+    private final Entry<K>[][] slots;
+    private final Map<K, Entry<K>> entries = new HashMap<>();
+    private final Thread driver;
+    private long currentTick;
+    private volatile boolean running = true;
+
+    private static final class Entry<K> {
+        final K key;
+        final long deadlineTick;
+        final Runnable action;
+        Entry<K> prev = this;
+        Entry<K> next = this;
+
+        Entry(K key, long deadlineTick, Runnable action) {
+            this.key = key;
+            this.deadlineTick = deadlineTick;
+            this.action = action;
+        }
+    }
+
+    /**
+     * Создаёт колесо и запускает поток, который его ведёт.
+     *
+     * @param tick длительность такта — точность срабатывания
+     * @param name имя потока
+     */
+    public TimingWheel(Duration tick, String name) {
+        this(tick, System::currentTimeMillis, name, true);
+    }
+
+    @SuppressWarnings("unchecked")
+    TimingWheel(Duration tick, LongSupplier clock, String name, boolean start) {
+        if (tick.toMillis() < 1) {
+            throw new IllegalArgumentException("Такт колеса должен быть не короче миллисекунды: " + tick);
+        }
+        this.tickMillis = tick.toMillis();
+        this.clock = clock;
+        this.startMillis = clock.getAsLong();
+        this.slots = new Entry[LEVELS][SLOTS];
+        for (Entry<K>[] level : slots) {
+            for (int i = 0; i < SLOTS; i++) {
+                level[i] = new Entry<>(null, 0, null);
+            }
+        }
+        this.driver = new Thread(this::run, name);
+        driver.setDaemon(true);
+        if (start) {
+            driver.start();
+        }
+    }
+
+    /**
+     * Ставит таймер; прежний таймер с тем же ключом заменяется.
+     * Срок в прошлом срабатывает на ближайшем такте.
+     *
+     * @param key    ключ
+     * @param at     момент срабатывания
+     * @param action действие
+     */
+    public synchronized void schedule(K key, Instant at, Runnable action) {
+        cancel(key);
+        long deadline = Math.max(currentTick + 1, Math.ceilDiv(at.toEpochMilli() - startMillis, tickMillis));
+        Entry<K> entry = new Entry<>(key, deadline, action);
+        entries.put(key, entry);
+        place(entry);
+    }
+
+    /**
+     * Снимает таймер.
+     *
+     * @param key ключ
+     * @return true, если таймер был поставлен
+     */
+    public synchronized boolean cancel(K key) {
+        Entry<K> entry = entries.remove(key);
+        if (entry == null) {
+            return false;
+        }
+        unlink(entry);
+        return true;
+    }
+
+    /**
+     * Проверяет, поставлен ли таймер.
+     *
+     * @param key ключ
+     * @return true, если таймер ждёт срабатывания
+     */
+    public synchronized boolean isScheduled(K key) {
+        return entries.containsKey(key);
+    }
+
+    /**
+     * Возвращает число ожидающих таймеров.
+     * @return число таймеров
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Продвигает колесо до указанного момента и снимает сработавшие таймеры.
+     *
+     * @param nowMillis текущее время по часам колеса
+     * @return действия сработавших таймеров в порядке сроков
+     */
+    synchronized List<Runnable> advance(long nowMillis) {
+        long target = Math.floorDiv(nowMillis - startMillis, tickMillis);
+        List<Runnable> expired = new ArrayList<>();
+        while (currentTick < target) {
+            currentTick++;
+            int topLevel = 0;
+            while (topLevel + 1 < LEVELS && (currentTick & ((1L << (SLOT_BITS * (topLevel + 1))) - 1)) == 0) {
+                topLevel++;
+            }
+            // Сначала верхние уровни: их таймеры могут спуститься в ячейку, которую тут же нужно разобрать
+            for (int level = topLevel; level >= 1; level--) {
+                cascade(level, slotIndex(currentTick, level));
+            }
+            Entry<K> head = slots[0][slotIndex(currentTick, 0)];
+            while (head.next != head) {
+                Entry<K> entry = head.next;
+                unlink(entry);
+                entries.remove(entry.key);
+                expired.add(entry.action);
+            }
+        }
+        return expired;
+    }
+
+    private void cascade(int level, int index) {
+        Entry<K> head = slots[level][index];
+        while (head.next != head) {
+            Entry<K> entry = head.next;
+            unlink(entry);
+            place(entry);
+        }
+    }
+
+    private void place(Entry<K> entry) {
+        long delta = entry.deadlineTick - currentTick;
+        int level = 0;
+        while (level + 1 < LEVELS && delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        long slotTick = Math.min(entry.deadlineTick, currentTick + SPAN - 1);
+        Entry<K> head = slots[level][slotIndex(slotTick, level)];
+        entry.prev = head.prev;
+        entry.next = head;
+        head.prev.next = entry;
+        head.prev = entry;
+    }
+
+    private static int slotIndex(long tick, int level) {
+        return (int) ((tick >>> (SLOT_BITS * level)) & SLOT_MASK);
+    }
+
+    private static <K> void unlink(Entry<K> entry) {
+        entry.prev.next = entry.next;
+        entry.next.prev = entry.prev;
+        entry.prev = entry;
+        entry.next = entry;
+    }
+
+    private void run() {
+        while (running) {
+            for (Runnable action : advance(clock.getAsLong())) {
+                try {
+                    action.run();
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "Ошибка при срабатывании таймера", e);
+                }
+            }
+            long nextTickAt;
+            synchronized (this) {
+                nextTickAt = startMillis + (currentTick + 1) * tickMillis;
+            }
+            try {
+                Thread.sleep(Math.max(1, nextTickAt - clock.getAsLong()));
+            } catch (InterruptedException e) {
+                if (!running) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Останавливает поток колеса; ожидающие таймеры не срабатывают.
+     */
+    @Override
+    public void close() {
+        running = false;
+        driver.interrupt();
+    }
+}
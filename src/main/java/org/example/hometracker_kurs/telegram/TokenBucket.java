@@ -0,0 +1,86 @@
+package org.example.hometracker_kurs.telegram;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Ограничитель частоты «ведро с жетонами»: жетоны пополняются с постоянной скоростью до ёмкости ведра,
+ * каждая отправка забирает один жетон. Если жетонов нет, отправка резервирует будущий жетон
+ * и получает время ожидания, поэтому отправки, ждущие одно ведро, выстраиваются в очередь без гонок.
+ */
+public class TokenBucket {
+    private final double permitsPerNano;
+    private final double capacity;
+    private final LongSupplier clock;
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * Создаёт ведро, изначально полное.
+     *
+     * @param permitsPerSecond скорость пополнения
+     * @param burst            ёмкость ведра — сколько отправок подряд допускается без ожидания
+     */
+    public TokenBucket(double permitsPerSecond, int burst) {
+        this(permitsPerSecond, burst, System::nanoTime);
+    }
+
+    TokenBucket(double permitsPerSecond, int burst, LongSupplier clock) {
+        if (permitsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Некорректные параметры ограничителя: " + permitsPerSecond + "/с, " + burst);
+        }
+        this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.capacity = burst;
+        this.clock = clock;
+        this.tokens = burst;
+        this.lastRefill = clock.getAsLong();
+    }
+
+    /**
+     * Резервирует жетон.
+     *
+     * @return сколько наносекунд нужно подождать перед отправкой (0 — можно сразу)
+     */
+    public synchronized long reserve() {
+        long now = clock.getAsLong();
+        refill(now);
+        tokens -= 1;
+        long readyAt = lastRefill + (tokens >= 0 ? 0 : (long) Math.ceil(-tokens / permitsPerNano));
+        return Math.max(0, readyAt - now);
+    }
+
+    /**
+     * Приостанавливает выдачу жетонов, например после ответа 429 с {@code retry_after}.
+     * Уже выданные резервы не отменяются; следующий жетон будет выдан по окончании паузы.
+     *
+     * @param duration длительность паузы
+     */
+    public synchronized void pause(Duration duration) {
+        long now = clock.getAsLong();
+        refill(now);
+        long until = now + duration.toNanos();
+        if (until > lastRefill) {
+            // Жетоны, накопленные за паузу, не превращаются в пачку отправок сразу после неё
+            tokens = Math.min(1, tokens + (until - lastRefill) * permitsPerNano);
+            lastRefill = until;
+        }
+    }
+
+    /**
+     * Проверяет, что ведро полное, то есть ограничитель давно не использовался.
+     *
+     * @return true, если ведро можно удалить без потери ограничения
+     */
+    public synchronized boolean isIdle() {
+        refill(clock.getAsLong());
+        return tokens >= capacity;
+    }
+
+    private void refill(long now) {
+        if (now > lastRefill) {
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * permitsPerNano);
+            lastRefill = now;
+        }
+    }
+}
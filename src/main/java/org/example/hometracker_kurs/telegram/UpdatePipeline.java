@@ -0,0 +1,329 @@
+package org.example.hometracker_kurs.telegram;
+
+import org.example.hometracker_kurs.dao.metrics.LatencyHistogram;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Конвейер обработки обновлений бота, отделяющий поток получения обновлений от их обработки.
+ *
+ * <p>Каждый чат обслуживается своей очередью: обновления одного чата обрабатываются строго по порядку,
+ * разные чаты — параллельно в виртуальных потоках, поэтому медленный запрос к базе задерживает
+ * только тот чат, которому он нужен. Обновления с уже виденным {@code update_id} отбрасываются.
+ * Общее число принятых, но не обработанных обновлений ограничено: когда предел достигнут,
+ * {@link #submit(Update)} ждёт, притормаживая получение обновлений, и это ожидание учитывается в метриках.
+ * Обновление запоминается как виденное только после того, как принято в очередь: если ожидание прервано,
+ * повторная доставка того же обновления будет обработана. Метрики публикуются через JMX.
+ *
+ * <p>Обработчики разных чатов обращаются к хранилищу одновременно; хранилища сервиса задач обёрнуты
+ * в {@link org.example.hometracker_kurs.dao.SerializedTaskDAO}, поэтому их вызовы не перемешиваются
+ * на общем соединении.
+ */
+public class UpdatePipeline implements UpdatePipelineMBean, AutoCloseable {
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static final Logger logger = Logger.getLogger(UpdatePipeline.class.getName());
+    private static final String JMX_DOMAIN = "org.example.hometracker_kurs";
+    // Обновления без чата обрабатываются общей очередью
+    private static final long NO_CHAT = 0;
+    private static final int DEDUP_WINDOW = 4096;
+
+    private final Consumer<Update> handler;
+    private final int capacity;
+    private final Semaphore permits;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<Long, ArrayDeque<Pending>> lanes = new HashMap<>();
+    private final Set<Integer> seenIds = new HashSet<>();
+    private final int[] seenOrder = new int[DEDUP_WINDOW];
+    private long seenCount;
+    private final ObjectName objectName;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder blockedSubmits = new LongAdder();
+    private final LongAdder blockedNanos = new LongAdder();
+    private final AtomicInteger maxPending = new AtomicInteger();
+    private final LatencyHistogram queueLatency = new LatencyHistogram();
+    private final LatencyHistogram handleLatency = new LatencyHistogram();
+
+    private record Pending(Update update, long submittedAt, Runnable work) {
+    }
+
+    /**
+     * Создаёт конвейер и регистрирует его метрики в JMX.
+     *
+     * @param name     имя конвейера в имени MBean
+     * @param handler  обработчик обновления; исключения обработчика записываются в журнал
+     * @param capacity наибольшее число принятых, но не обработанных обновлений
+     */
+    public UpdatePipeline(String name, Consumer<Update> handler, int capacity) {
+        this.handler = handler;
+        this.capacity = capacity;
+        this.permits = new Semaphore(capacity);
+        this.objectName = register(name);
+    }
+
+    /**
+     * Принимает обновление в обработку.
+     * Если очередь заполнена, ждёт, пока освободится место.
+     *
+     * @param update обновление
+     * @return false, если обновление уже было принято раньше или ожидание прервано
+     */
+    public boolean submit(Update update) {
+        return enqueue(update, () -> handler.accept(update));
+    }
+
+    /**
+     * Принимает обновление с собственным обработчиком, результат которого нужен вызывающему,
+     * например, чтобы вернуть ответ в теле ответа на webhook. Порядок внутри чата, отбрасывание
+     * повторов и ограничение очереди действуют так же, как для {@link #submit(Update)}.
+     *
+     * @param update обновление
+     * @param work   обработчик
+     * @param <T>    тип результата
+     * @return результат обработчика; null, если обновление уже было принято раньше или не принято вовсе
+     */
+    public <T> CompletableFuture<T> submit(Update update, Function<Update, T> work) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        boolean accepted = enqueue(update, () -> {
+            try {
+                result.complete(work.apply(update));
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+                throw e;
+            }
+        });
+        if (!accepted) {
+            result.complete(null);
+        }
+        return result;
+    }
+
+    private boolean enqueue(Update update, Runnable work) {
+        // Уже принятый повтор отбрасывается сразу, не дожидаясь места в очереди
+        if (isSeen(update.getUpdateId())) {
+            duplicates.increment();
+            return false;
+        }
+        if (!permits.tryAcquire()) {
+            blockedSubmits.increment();
+            long waitStart = System.nanoTime();
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } finally {
+                blockedNanos.add(System.nanoTime() - waitStart);
+            }
+        }
+        // Тот же повтор мог быть принят, пока этот вызов ждал места
+        if (!remember(update.getUpdateId())) {
+            permits.release();
+            duplicates.increment();
+            return false;
+        }
+        submitted.increment();
+        maxPending.accumulateAndGet(capacity - permits.availablePermits(), Math::max);
+
+        long chatId = chatIdOf(update);
+        boolean startLane;
+        synchronized (lanes) {
+            ArrayDeque<Pending> lane = lanes.get(chatId);
+            startLane = lane == null;
+            if (startLane) {
+                lane = new ArrayDeque<>();
+                lanes.put(chatId, lane);
+            }
+            lane.add(new Pending(update, System.nanoTime(), work));
+        }
+        if (startLane) {
+            try {
+                executor.execute(() -> drain(chatId));
+            } catch (RejectedExecutionException e) {
+                // Конвейер закрыт; обновление будет получено заново после перезапуска
+                synchronized (lanes) {
+                    lanes.remove(chatId);
+                }
+                permits.release();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Очередь чата остаётся в таблице, пока её разбирает поток, поэтому второй поток для чата не запускается
+    private void drain(long chatId) {
+        while (true) {
+            Pending pending;
+            synchronized (lanes) {
+                pending = lanes.get(chatId).poll();
+                if (pending == null) {
+                    lanes.remove(chatId);
+                    return;
+                }
+            }
+            process(pending);
+        }
+    }
+
+    private void process(Pending pending) {
+        long start = System.nanoTime();
+        queueLatency.record((start - pending.submittedAt()) / 1_000);
+        try {
+            pending.work().run();
+            processed.increment();
+        } catch (RuntimeException e) {
+            failed.increment();
+            logger.log(Level.WARNING, "Ошибка обработки обновления " + pending.update().getUpdateId(), e);
+        } finally {
+            handleLatency.record((System.nanoTime() - start) / 1_000);
+            permits.release();
+        }
+    }
+
+    private boolean isSeen(Integer updateId) {
+        if (updateId == null) {
+            return false;
+        }
+        synchronized (seenIds) {
+            return seenIds.contains(updateId);
+        }
+    }
+
+    private boolean remember(Integer updateId) {
+        if (updateId == null) {
+            return true;
+        }
+        synchronized (seenIds) {
+            if (!seenIds.add(updateId)) {
+                return false;
+            }
+            int slot = (int) (seenCount++ % DEDUP_WINDOW);
+            if (seenCount > DEDUP_WINDOW) {
+                seenIds.remove(seenOrder[slot]);
+            }
+            seenOrder[slot] = updateId;
+            return true;
+        }
+    }
+
+    private static long chatIdOf(Update update) {
+        Message message = update.hasMessage() ? update.getMessage()
+                : update.hasEditedMessage() ? update.getEditedMessage()
+                : update.hasCallbackQuery() ? update.getCallbackQuery().getMessage()
+                : null;
+        return message != null && message.getChatId() != null ? message.getChatId() : NO_CHAT;
+    }
+
+    private ObjectName register(String name) {
+        try {
+            ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=UpdatePipeline,name=" + name);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+            return objectName;
+        } catch (JMException e) {
+            logger.log(Level.WARNING, "Не удалось зарегистрировать MBean конвейера " + name, e);
+            return null;
+        }
+    }
+
+    @Override
+    public long getSubmitted() { return submitted.sum(); }
+
+    @Override
+    public long getDuplicates() { return duplicates.sum(); }
+
+    @Override
+    public long getProcessed() { return processed.sum(); }
+
+    @Override
+    public long getFailed() { return failed.sum(); }
+
+    @Override
+    public int getCapacity() { return capacity; }
+
+    @Override
+    public int getPending() { return capacity - permits.availablePermits(); }
+
+    @Override
+    public int getMaxPending() { return maxPending.get(); }
+
+    @Override
+    public int getActiveChats() {
+        synchronized (lanes) {
+            return lanes.size();
+        }
+    }
+
+    @Override
+    public long getBlockedSubmits() { return blockedSubmits.sum(); }
+
+    @Override
+    public long getBlockedMicros() { return blockedNanos.sum() / 1_000; }
+
+    @Override
+    public double getMeanQueueMicros() { return queueLatency.getMean(); }
+
+    @Override
+    public long getP99QueueMicros() { return queueLatency.getPercentile(99); }
+
+    @Override
+    public double getMeanHandleMicros() { return handleLatency.getMean(); }
+
+    @Override
+    public long getP99HandleMicros() { return handleLatency.getPercentile(99); }
+
+    /**
+     * Прекращает приём обновлений и дожидается обработки уже принятых.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        // Повторное закрытие ничего не делает
+        if (objectName != null && server.isRegistered(objectName)) {
+            try {
+                server.unregisterMBean(objectName);
+            } catch (JMException e) {
+                logger.log(Level.WARNING, "Не удалось снять регистрацию MBean конвейера", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package org.example.hometracker_kurs.telegram;
+
+/**
+ * JMX-интерфейс метрик конвейера обновлений бота.
+ * Задержки публикуются в микросекундах.
+ */
+public interface UpdatePipelineMBean {
+    long getSubmitted();
+    long getDuplicates();
+    long getProcessed();
+    long getFailed();
+    int getCapacity();
+    int getPending();
+    int getMaxPending();
+    int getActiveChats();
+    long getBlockedSubmits();
+    long getBlockedMicros();
+    double getMeanQueueMicros();
+    long getP99QueueMicros();
+    double getMeanHandleMicros();
+    long getP99HandleMicros();
+}
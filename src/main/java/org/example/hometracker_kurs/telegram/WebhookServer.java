@@ -0,0 +1,162 @@
+package org.example.hometracker_kurs.telegram;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Приёмник обновлений Telegram в режиме webhook на встроенном HTTP-сервере JDK.
+ *
+ * <p>Каждый запрос обрабатывается в своём виртуальном потоке. Запросы без правильного заголовка
+ * {@value #SECRET_HEADER} отклоняются. Ответ на команду возвращается прямо в теле ответа на webhook
+ * в виде вызова метода Bot API, так что ответ пользователю не требует отдельного запроса к Telegram.
+ * Если обработчик не уложился в отведённое время, сервер отвечает пустым телом, чтобы Telegram
+ * не повторял обновление, а ответ отправляется отдельным запросом, когда будет готов.
+ */
+public class WebhookServer implements AutoCloseable {
+    public static final String SECRET_HEADER = "X-Telegram-Bot-Api-Secret-Token";
+
+    private static final Logger logger = Logger.getLogger(WebhookServer.class.getName());
+    private static final int MAX_BODY_BYTES = 1 << 20;
+    private static final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final byte[] secret;
+    private final Function<Update, CompletableFuture<? extends BotApiMethod<?>>> handler;
+    private final Consumer<BotApiMethod<?>> lateReplies;
+    private final Duration replyTimeout;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final HttpServer server;
+
+    /**
+     * Запускает сервер.
+     *
+     * @param address      адрес и порт (порт 0 — любой свободный)
+     * @param path         путь, на который Telegram присылает обновления
+     * @param secret       секретный токен, переданный Telegram в {@code setWebhook}
+     * @param handler      обработчик обновления, возвращающий будущий ответ (null — без ответа)
+     * @param lateReplies  отправка ответов, не успевших к ответу на webhook
+     * @param replyTimeout сколько ждать ответа обработчика
+     * @throws IOException если порт занят
+     */
+    public WebhookServer(InetSocketAddress address, String path, String secret,
+                         Function<Update, CompletableFuture<? extends BotApiMethod<?>>> handler,
+                         Consumer<BotApiMethod<?>> lateReplies, Duration replyTimeout) throws IOException {
+        this.secret = secret.getBytes(StandardCharsets.UTF_8);
+        this.handler = handler;
+        this.lateReplies = lateReplies;
+        this.replyTimeout = replyTimeout;
+        this.server = HttpServer.create(address, 0);
+        server.createContext(path, this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Возвращает порт, на котором слушает сервер.
+     * @return номер порта
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().add("Allow", "POST");
+                respond(exchange, 405, null);
+                return;
+            }
+            String token = exchange.getRequestHeaders().getFirst(SECRET_HEADER);
+            if (token == null || !MessageDigest.isEqual(secret, token.getBytes(StandardCharsets.UTF_8))) {
+                respond(exchange, 401, null);
+                return;
+            }
+            byte[] body = readBody(exchange.getRequestBody());
+            if (body == null) {
+                respond(exchange, 413, null);
+                return;
+            }
+
+            Update update;
+            try {
+                update = objectMapper.readValue(body, Update.class);
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Некорректное обновление webhook", e);
+                respond(exchange, 400, null);
+                return;
+            }
+            respond(exchange, 200, awaitReply(update));
+        }
+    }
+
+    private BotApiMethod<?> awaitReply(Update update) {
+        CompletableFuture<? extends BotApiMethod<?>> future = handler.apply(update);
+        try {
+            return future.get(replyTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.thenAccept(reply -> {
+                if (reply != null) {
+                    lateReplies.accept(reply);
+                }
+            });
+        } catch (ExecutionException e) {
+            // Повтор обновления Telegram'ом ошибку не исправит, поэтому запрос всё равно подтверждается
+            logger.log(Level.WARNING, "Ошибка обработки обновления " + update.getUpdateId(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    private static byte[] readBody(InputStream in) throws IOException {
+        byte[] body = in.readNBytes(MAX_BODY_BYTES + 1);
+        return body.length > MAX_BODY_BYTES ? null : body;
+    }
+
+    private static void respond(HttpExchange exchange, int status, BotApiMethod<?> reply) throws IOException {
+        if (reply == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        ObjectNode json = objectMapper.valueToTree(reply);
+        json.put("method", reply.getMethod());
+        byte[] bytes = objectMapper.writeValueAsBytes(json);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Останавливает сервер, давая текущим запросам секунду на завершение.
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,60 @@
+package org.example.hometracker_kurs.telegram;
+
+import java.security.SecureRandom;
+import java.util.Optional;
+
+/**
+ * Настройки режима webhook. Режим включается системным свойством {@code hometracker.telegram.webhookUrl}
+ * с внешним HTTPS-адресом, по которому Telegram достучится до сервера (обычно через обратный прокси);
+ * без него бот получает обновления через long polling.
+ *
+ * @param publicUrl внешний адрес без пути, например {@code https://home.example.org}
+ * @param port      локальный порт встроенного сервера
+ * @param secret    секретный токен, которым Telegram подписывает запросы
+ */
+public record WebhookSettings(String publicUrl, int port, String secret) {
+    public static final String URL_PROPERTY = "hometracker.telegram.webhookUrl";
+    public static final String PORT_PROPERTY = "hometracker.telegram.webhookPort";
+    public static final String SECRET_PROPERTY = "hometracker.telegram.webhookSecret";
+    public static final String PATH = "/telegram/webhook";
+    public static final int DEFAULT_PORT = 8443;
+
+    private static final String SECRET_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789_-";
+
+    /**
+     * Читает настройки из системных свойств.
+     * Если секрет не задан, для текущего запуска создаётся случайный.
+     *
+     * @return настройки или пусто, если режим webhook не выбран
+     */
+    public static Optional<WebhookSettings> fromSystemProperties() {
+        String url = System.getProperty(URL_PROPERTY);
+        if (url == null || url.isBlank()) {
+            return Optional.empty();
+        }
+        String secret = System.getProperty(SECRET_PROPERTY);
+        if (secret == null || secret.isBlank()) {
+            secret = randomSecret();
+        }
+        int port = Integer.getInteger(PORT_PROPERTY, DEFAULT_PORT);
+        return Optional.of(new WebhookSettings(url.replaceAll("/+$", ""), port, secret));
+    }
+
+    /**
+     * Возвращает адрес, который регистрируется в Telegram.
+     * @return внешний адрес вместе с путём приёмника
+     */
+    public String webhookUrl() {
+        return publicUrl + PATH;
+    }
+
+    // Telegram допускает в секрете только латинские буквы, цифры, '_' и '-'
+    private static String randomSecret() {
+        SecureRandom random = new SecureRandom();
+        StringBuilder sb = new StringBuilder(32);
+        for (int i = 0; i < 32; i++) {
+            sb.append(SECRET_ALPHABET.charAt(random.nextInt(SECRET_ALPHABET.length())));
+        }
+        return sb.toString();
+    }
+}
@@ -8,13 +8,22 @@ import javafx.stage.Stage;
 import org.example.hometracker_kurs.config.DatabaseConfig;
 import org.example.hometracker_kurs.config.ExcelConfig;
 import org.example.hometracker_kurs.config.TelegramConfig;
+import org.example.hometracker_kurs.controller.MainController;
+import org.example.hometracker_kurs.scheduler.CalendarTrigger;
 import org.example.hometracker_kurs.service.TaskService;
-import org.example.hometracker_kurs.telegram.Scheduler;
+import org.example.hometracker_kurs.telegram.TaskReminderScheduler;
 import org.example.hometracker_kurs.telegram.TelegramReminderBot;
+import org.example.hometracker_kurs.telegram.WebhookSettings;
 import org.telegram.telegrambots.meta.TelegramBotsApi;
 import org.telegram.telegrambots.updatesreceivers.DefaultBotSession;
 
+import java.time.ZoneId;
+import java.util.Optional;
+
 public class HouseholdTrackerApp extends Application {
+    private TaskReminderScheduler reminders;
+    private MainController controller;
+
     @Override
     public void start(Stage stage) {
         try {
@@ -35,17 +44,26 @@ public class HouseholdTrackerApp extends Application {
             dbConfig = new DatabaseConfig();
             excelConfig = new ExcelConfig();
             TaskService taskService = new TaskService("postgres", dbConfig, excelConfig);
-            TelegramReminderBot bot = new TelegramReminderBot(telegramConfig, taskService);
 
             try {
-                TelegramBotsApi botsApi = new TelegramBotsApi(DefaultBotSession.class);
-                botsApi.registerBot(bot);
-                Scheduler.scheduleDailyReminder(bot::sendDailyTasks);
+                TelegramReminderBot bot = new TelegramReminderBot(telegramConfig, taskService);
+                Optional<WebhookSettings> webhook = WebhookSettings.fromSystemProperties();
+                if (webhook.isPresent()) {
+                    bot.startWebhook(webhook.get());
+                } else {
+                    TelegramBotsApi botsApi = new TelegramBotsApi(DefaultBotSession.class);
+                    botsApi.registerBot(bot);
+                }
+                taskService.scheduleJob("telegram-daily-reminder", CalendarTrigger.parse("0 8 * * *"), bot::sendDailyTasks);
+                reminders = new TaskReminderScheduler(taskService,
+                        TaskReminderScheduler.configuredLead(), ZoneId.systemDefault(), bot::sendTaskReminder);
+                reminders.start();
             } catch (Exception e) {
                 e.printStackTrace();
             }
 
             Parent root = loader.load();
+            controller = loader.getController();
             stage.setScene(new Scene(root));
             stage.setTitle("Трекер домашних дел");
             stage.setWidth(1450);
@@ -56,6 +74,16 @@ public class HouseholdTrackerApp extends Application {
         }
     }
 
+    @Override
+    public void stop() {
+        if (reminders != null) {
+            reminders.close();
+        }
+        if (controller != null) {
+            controller.shutdown();
+        }
+    }
+
     public static void main(String[] args) {
         launch();
     }
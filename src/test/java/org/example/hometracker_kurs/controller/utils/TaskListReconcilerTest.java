@@ -0,0 +1,125 @@
+package org.example.hometracker_kurs.controller.utils;
+
+import javafx.collections.ListChangeListener;
+import org.example.hometracker_kurs.model.Task;
+import org.example.hometracker_kurs.model.TaskChangeSet;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Сопоставление списка строк с полным результатом запроса и применение наборов изменений.
+ */
+class TaskListReconcilerTest {
+
+    private static final LocalDate DAY = LocalDate.of(2025, 1, 1);
+
+    private final TaskListReconciler reconciler = new TaskListReconciler();
+    private final Set<Integer> removedIds = new HashSet<>();
+
+    TaskListReconcilerTest() {
+        reconciler.getItems().addListener((ListChangeListener<Task>) change -> {
+            while (change.next()) {
+                for (Task task : change.getRemoved()) {
+                    removedIds.add(task.getId());
+                }
+            }
+        });
+    }
+
+    private static Task task(int id, int day, long version) {
+        Task task = new Task(id, "Задача " + id, "", DAY.plusDays(day), 1, "", null, null);
+        task.setVersion(version);
+        return task;
+    }
+
+    private static List<Task> tasks(int... ids) {
+        List<Task> tasks = new ArrayList<>();
+        for (int id : ids) {
+            tasks.add(task(id, id, 1));
+        }
+        return tasks;
+    }
+
+    private List<Integer> ids() {
+        return reconciler.getItems().stream().map(Task::getId).toList();
+    }
+
+    @Test
+    void reconcileInsertsAndRemovesWithoutTouchingOtherRows() {
+        reconciler.reconcile(tasks(1, 2, 3, 4));
+        Task kept = reconciler.getItems().get(0);
+        removedIds.clear();
+
+        reconciler.reconcile(tasks(1, 3, 4, 5));
+
+        assertEquals(List.of(1, 3, 4, 5), ids());
+        assertEquals(Set.of(2), removedIds, "Неизменившиеся строки не должны убираться из списка");
+        assertSame(kept, reconciler.getItems().get(0));
+    }
+
+    @Test
+    void reconcileMovesRowAndReplacesChangedOne() {
+        reconciler.reconcile(tasks(1, 2, 3, 4));
+        removedIds.clear();
+
+        List<Task> fresh = tasks(1, 2, 3, 4);
+        fresh.set(1, task(2, 2, 2));
+        fresh.add(0, fresh.remove(3));
+        reconciler.reconcile(fresh);
+
+        assertEquals(List.of(4, 1, 2, 3), ids());
+        assertEquals(2, reconciler.getItems().get(2).getVersion());
+        assertEquals(Set.of(2, 4), removedIds);
+        assertFalse(reconciler.isDefaultOrder());
+    }
+
+    @Test
+    void fullReorderGivesSameResult() {
+        int[] ascending = new int[2000];
+        int[] descending = new int[2000];
+        for (int i = 0; i < ascending.length; i++) {
+            ascending[i] = i + 1;
+            descending[i] = ascending.length - i;
+        }
+        reconciler.reconcile(tasks(ascending));
+
+        reconciler.reconcile(tasks(descending));
+
+        assertEquals(tasks(descending).stream().map(Task::getId).toList(), ids());
+    }
+
+    @Test
+    void applyKeepsDefaultOrder() {
+        reconciler.reconcile(tasks(1, 2, 3, 4));
+        assertTrue(reconciler.isDefaultOrder());
+        Task kept = reconciler.getItems().get(2);
+        removedIds.clear();
+
+        // Задача 1 переносится на более поздний срок, задача 2 удаляется, задача 5 добавляется между 3 и 4
+        reconciler.apply(new TaskChangeSet(
+                List.of(task(5, 3, 1)),
+                List.of(task(1, 10, 2)),
+                List.of(2),
+                2));
+
+        assertEquals(List.of(3, 5, 4, 1), ids());
+        assertSame(kept, reconciler.getItems().get(0));
+        assertEquals(Set.of(1, 2), removedIds);
+    }
+
+    @Test
+    void applyRefusesUserOrderedList() {
+        reconciler.reconcile(tasks(3, 2, 1));
+
+        assertFalse(reconciler.isDefaultOrder());
+        assertThrows(IllegalStateException.class,
+                () -> reconciler.apply(new TaskChangeSet(List.of(), List.of(), List.of(1), 2)));
+    }
+}
@@ -0,0 +1,90 @@
+package org.example.hometracker_kurs.dao;
+
+import org.example.hometracker_kurs.model.Task;
+import org.example.hometracker_kurs.model.TaskField;
+import org.example.hometracker_kurs.model.TaskPatch;
+import org.example.hometracker_kurs.model.TaskStatus;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.sql.SQLException;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Отложенная запись книги после изменения отдельных полей задач.
+ */
+class ExcelTaskDAOTest {
+
+    private static int addTask(ExcelTaskDAO dao) throws SQLException {
+        Task task = new Task(0, "Пропылесосить", "", null, 1, "Анна", TaskStatus.ACTIVE, null);
+        task.setType("Уборка");
+        dao.addTask(task);
+        return task.getId();
+    }
+
+    private static String storedName(String file, int id) throws SQLException {
+        return new ExcelTaskDAO(file, Households.DEFAULT).getTaskById(id).getName();
+    }
+
+    @Test
+    void patchesAreWrittenTogetherOnFlush(@TempDir Path dir) throws Exception {
+        Path path = dir.resolve("tasks.xlsx");
+        String file = path.toString();
+        ExcelTaskDAO dao = new ExcelTaskDAO(file, Households.DEFAULT, Duration.ofHours(1));
+        int id = addTask(dao);
+        FileTime written = Files.getLastModifiedTime(path);
+        long size = Files.size(path);
+
+        for (int i = 1; i <= 20; i++) {
+            dao.patchTask(id, new TaskPatch().set(TaskField.NAME, "Пропылесосить " + i));
+        }
+
+        assertEquals(written, Files.getLastModifiedTime(path), "Патчи не должны перезаписывать файл");
+        assertEquals(size, Files.size(path));
+        assertEquals("Пропылесосить", storedName(file, id));
+        assertEquals("Пропылесосить 20", dao.getTaskById(id).getName());
+
+        dao.flush();
+        assertEquals("Пропылесосить 20", storedName(file, id));
+    }
+
+    @Test
+    void pendingPatchesAreWrittenInBackgroundAndOnClose(@TempDir Path dir) throws Exception {
+        String file = dir.resolve("tasks.xlsx").toString();
+        ExcelTaskDAO dao = new ExcelTaskDAO(file, Households.DEFAULT, Duration.ofMillis(50));
+        int id = addTask(dao);
+
+        dao.patchTask(id, new TaskPatch().set(TaskField.NAME, "Помыть окна"));
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!"Помыть окна".equals(storedName(file, id)) && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals("Помыть окна", storedName(file, id));
+
+        ExcelTaskDAO slow = new ExcelTaskDAO(file, Households.DEFAULT, Duration.ofHours(1));
+        slow.patchTask(id, new TaskPatch().set(TaskField.PRIORITY, 4));
+        slow.close();
+        assertEquals(4, new ExcelTaskDAO(file, Households.DEFAULT).getTaskById(id).getPriority());
+    }
+
+    @Test
+    void failedUnitOfWorkKeepsEarlierPatchPending(@TempDir Path dir) throws Exception {
+        String file = dir.resolve("tasks.xlsx").toString();
+        ExcelTaskDAO dao = new ExcelTaskDAO(file, Households.DEFAULT, Duration.ofHours(1));
+        int id = addTask(dao);
+        dao.patchTask(id, new TaskPatch().set(TaskField.NAME, "Вынести мусор"));
+
+        assertThrows(SQLException.class, () -> dao.inTransaction(work -> {
+            work.deleteTask(id);
+            throw new SQLException("отмена");
+        }));
+        dao.close();
+
+        assertEquals("Вынести мусор", storedName(file, id));
+    }
+}
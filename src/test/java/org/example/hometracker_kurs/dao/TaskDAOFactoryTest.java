@@ -0,0 +1,84 @@
+package org.example.hometracker_kurs.dao;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Порядок декораторов хранилища: задержки в метриках не включают ожидание блокировки.
+ */
+class TaskDAOFactoryTest {
+
+    private static final long HOLD_MILLIS = 300;
+
+    private final CountDownLatch holding = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    // Хранилище, в котором ping держит соединение до сигнала, а остальные вызовы выполняются сразу
+    private TaskDAO storage() {
+        return (TaskDAO) Proxy.newProxyInstance(TaskDAO.class.getClassLoader(), new Class<?>[]{TaskDAO.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "ping" -> {
+                        holding.countDown();
+                        release.await(10, TimeUnit.SECONDS);
+                        yield null;
+                    }
+                    case "countTasks" -> 0;
+                    case "getHouseholdId" -> Households.DEFAULT;
+                    default -> null;
+                });
+    }
+
+    private static long maxMicros(String backend, String method) throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        Set<ObjectName> names = server.queryNames(new ObjectName(
+                "org.example.hometracker_kurs:type=TaskDAO,backend=" + backend + ",method=" + method + ",*"), null);
+        assertEquals(1, names.size());
+        return (Long) server.getAttribute(names.iterator().next(), "MaxMicros");
+    }
+
+    @Test
+    void storageLatencyExcludesWaitForLock() throws Exception {
+        String backend = "test" + System.nanoTime();
+        TaskDAO dao = TaskDAOFactory.decorate(backend, storage());
+
+        Thread holder = new Thread(() -> {
+            try {
+                dao.ping();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        holder.start();
+        assertTrue(holding.await(5, TimeUnit.SECONDS));
+
+        Thread waiter = new Thread(() -> {
+            try {
+                dao.countTasks(null);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        waiter.start();
+        Thread.sleep(HOLD_MILLIS);
+        release.countDown();
+        holder.join(5000);
+        waiter.join(5000);
+
+        try {
+            assertTrue(maxMicros(backend, "ping") >= HOLD_MILLIS * 1000);
+            long counted = maxMicros(backend, "countTasks");
+            assertTrue(counted < HOLD_MILLIS * 1000 / 2, "countTasks ждал блокировку, а в метриках " + counted + " мкс");
+        } finally {
+            dao.close();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package org.example.hometracker_kurs.scheduler;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Расчёт времени запусков по расписанию, в том числе в дни перехода на летнее и зимнее время.
+ */
+class CalendarTriggerTest {
+
+    private static final ZoneId BERLIN = ZoneId.of("Europe/Berlin");
+
+    private static Instant at(String localDateTime) {
+        return LocalDateTime.parse(localDateTime).atZone(BERLIN).toInstant();
+    }
+
+    private static String local(Instant instant) {
+        return ZonedDateTime.ofInstant(instant, BERLIN).toLocalDateTime().toString();
+    }
+
+    @Test
+    void dailyTriggerFiresAtLocalTime() {
+        CalendarTrigger trigger = CalendarTrigger.parse("0 8 * * *", BERLIN);
+
+        assertEquals("2024-05-10T08:00", local(trigger.next(at("2024-05-10T07:59"))));
+        assertEquals("2024-05-11T08:00", local(trigger.next(at("2024-05-10T08:00"))));
+    }
+
+    @Test
+    void listsRangesAndStepsAreSupported() {
+        CalendarTrigger trigger = CalendarTrigger.parse("*/15 9-17 * * 1-5", BERLIN);
+
+        // 2024-05-10 — пятница, следующий рабочий день — понедельник
+        assertEquals("2024-05-10T17:45", local(trigger.next(at("2024-05-10T17:30"))));
+        assertEquals("2024-05-13T09:00", local(trigger.next(at("2024-05-10T17:45"))));
+    }
+
+    @Test
+    void dayOfMonthOrDayOfWeekMatches() {
+        // 1-е число или воскресенье
+        CalendarTrigger trigger = CalendarTrigger.parse("0 12 1 * 0", BERLIN);
+
+        assertEquals("2024-05-05T12:00", local(trigger.next(at("2024-05-01T12:00"))));
+        assertEquals("2024-06-01T12:00", local(trigger.next(at("2024-05-26T12:00"))));
+    }
+
+    @Test
+    void runInSpringForwardGapIsShiftedForward() {
+        // 31 марта 2024 года часы в Берлине переводятся с 02:00 на 03:00
+        CalendarTrigger trigger = CalendarTrigger.parse("30 2 * * *", BERLIN);
+
+        Instant fire = trigger.next(at("2024-03-31T00:00"));
+        assertEquals("2024-03-31T03:30", local(fire));
+        assertEquals("2024-04-01T02:30", local(trigger.next(fire)));
+    }
+
+    @Test
+    void runInFallBackOverlapFiresOnce() {
+        // 27 октября 2024 года время с 02:00 до 03:00 наступает дважды
+        CalendarTrigger trigger = CalendarTrigger.parse("30 2 * * *", BERLIN);
+
+        Instant fire = trigger.next(at("2024-10-27T00:00"));
+        assertEquals(ZonedDateTime.of(2024, 10, 27, 2, 30, 0, 0, BERLIN).withEarlierOffsetAtOverlap().toInstant(), fire);
+        assertEquals("2024-10-28T02:30", local(trigger.next(fire)));
+    }
+
+    @Test
+    void leapDayIsFoundYearsAhead() {
+        CalendarTrigger trigger = CalendarTrigger.parse("0 0 29 2 *", BERLIN);
+
+        assertEquals("2028-02-29T00:00", local(trigger.next(at("2024-03-01T00:00"))));
+    }
+
+    @Test
+    void invalidExpressionsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> CalendarTrigger.parse("0 8 * *", BERLIN));
+        assertThrows(IllegalArgumentException.class, () -> CalendarTrigger.parse("60 8 * * *", BERLIN));
+        assertThrows(IllegalArgumentException.class, () -> CalendarTrigger.parse("0 8-6 * * *", BERLIN));
+        assertThrows(IllegalArgumentException.class, () -> CalendarTrigger.parse("0 x * * *", BERLIN));
+    }
+}
@@ -0,0 +1,139 @@
+package org.example.hometracker_kurs.sync;
+
+import org.example.hometracker_kurs.model.RecurrenceRule;
+import org.example.hometracker_kurs.model.Task;
+import org.example.hometracker_kurs.model.TaskField;
+import org.example.hometracker_kurs.model.TaskPatch;
+import org.example.hometracker_kurs.model.TaskStatus;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Кодирование задач и отложенных операций в двоичный формат и обратно, пропуск неизвестных полей.
+ */
+class BinaryTaskCodecTest {
+
+    private static Task task(int id) {
+        Task task = new Task(id, "Полить цветы 🌱", "На балконе\nи в комнате", LocalDate.of(1969, 12, 31),
+                3, "Анна", TaskStatus.POSTPONED, LocalDate.of(2025, 3, 1));
+        task.setType("Уборка");
+        task.setRecurrence(RecurrenceRule.daily(LocalDate.of(2025, 1, 1), 2));
+        task.setVersion(17);
+        task.setHouseholdId("family");
+        task.setHlc(123_456_789_012L);
+        return task;
+    }
+
+    private static void assertSameTask(Task expected, Task actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getDescription(), actual.getDescription());
+        assertEquals(expected.getDueDate(), actual.getDueDate());
+        assertEquals(expected.getPriority(), actual.getPriority());
+        assertEquals(expected.getAssignedTo(), actual.getAssignedTo());
+        assertEquals(expected.getStatus(), actual.getStatus());
+        assertEquals(expected.getLastCompleted(), actual.getLastCompleted());
+        assertEquals(expected.getType(), actual.getType());
+        assertEquals(expected.getRecurrence(), actual.getRecurrence());
+        assertEquals(expected.getVersion(), actual.getVersion());
+        assertEquals(expected.getHouseholdId(), actual.getHouseholdId());
+        assertEquals(expected.getHlc(), actual.getHlc());
+    }
+
+    @Test
+    void taskSurvivesRoundTrip() throws IOException {
+        Task task = task(-42);
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        BinaryTaskCodec.encoder(buffer).writeTask(task);
+
+        Task decoded = BinaryTaskCodec.decoder(buffer.flip()).readTask();
+
+        assertSameTask(task, decoded);
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    void operationsSurviveRoundTripFromDirectBuffer() throws IOException {
+        QueuedTaskOperation add = new QueuedTaskOperation("add", task(1));
+        add.setSequence(1);
+        add.setIdempotencyKey("key-1");
+        TaskPatch patch = new TaskPatch()
+                .set(TaskField.PRIORITY, 5)
+                .set(TaskField.DUE_DATE, null)
+                .set(TaskField.STATUS, TaskStatus.COMPLETED);
+        QueuedTaskOperation edit = new QueuedTaskOperation(1, patch);
+        edit.setSequence(300);
+        edit.setIdempotencyKey("key-2");
+
+        ByteBuffer encoded = BinaryTaskCodec.encodeOperations(List.of(add, edit));
+        ByteBuffer direct = ByteBuffer.allocateDirect(encoded.remaining()).put(encoded).flip();
+        List<QueuedTaskOperation> decoded = BinaryTaskCodec.decodeOperations(direct);
+
+        assertEquals(2, decoded.size());
+        assertEquals("add", decoded.get(0).getOperation());
+        assertEquals("key-1", decoded.get(0).getIdempotencyKey());
+        assertSameTask(add.getTask(), decoded.get(0).getTask());
+        assertEquals(300, decoded.get(1).getSequence());
+        assertEquals(1, decoded.get(1).getTaskId());
+        assertEquals(patch, decoded.get(1).getPatch());
+        assertNull(decoded.get(1).getTask());
+    }
+
+    @Test
+    void repeatedStringsAreWrittenOnce() throws IOException {
+        List<QueuedTaskOperation> operations = new ArrayList<>();
+        for (int i = 1; i <= 100; i++) {
+            QueuedTaskOperation operation = new QueuedTaskOperation("update", task(i));
+            operation.setSequence(i);
+            operations.add(operation);
+        }
+
+        ByteBuffer one = BinaryTaskCodec.encodeOperations(operations.subList(0, 1));
+        ByteBuffer all = BinaryTaskCodec.encodeOperations(operations);
+        List<QueuedTaskOperation> decoded = BinaryTaskCodec.decodeOperations(all.duplicate());
+
+        // Все строки, кроме первой записи, — ссылки в несколько байт
+        assertTrue(all.remaining() < one.remaining() + 99 * 64, "Размер " + all.remaining());
+        assertSame(decoded.get(0).getTask().getAssignedTo(), decoded.get(99).getTask().getAssignedTo());
+    }
+
+    @Test
+    void unknownFieldsAreSkipped() throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[]{
+                'H', 'T', 1,
+                (byte) (30 << 2 | 1), 3, 'x',     // неизвестное строковое поле 30 со строкой "x"
+                (byte) (31 << 2), (byte) 0x96, 1, // неизвестное числовое поле 31
+                1 << 2, 10,                       // идентификатор 5 в zigzag
+                2 << 2 | 1, 2,                    // название — ссылка на первую строку потока
+                0});
+
+        Task task = BinaryTaskCodec.decoder(buffer).readTask();
+
+        assertEquals(5, task.getId());
+        assertEquals("x", task.getName());
+    }
+
+    @Test
+    void newerFormatVersionIsRejected() {
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[]{'H', 'T', (byte) (BinaryTaskCodec.FORMAT_VERSION + 1)});
+
+        assertThrows(IOException.class, () -> BinaryTaskCodec.decoder(buffer));
+    }
+
+    @Test
+    void truncatedRecordIsReportedAsIoError() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        BinaryTaskCodec.encoder(buffer).writeTask(task(1));
+        buffer.flip().limit(buffer.limit() - 5);
+
+        BinaryTaskCodec.Decoder decoder = BinaryTaskCodec.decoder(buffer);
+        assertThrows(IOException.class, decoder::readTask);
+    }
+}
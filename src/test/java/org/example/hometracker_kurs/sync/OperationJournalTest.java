@@ -0,0 +1,138 @@
+package org.example.hometracker_kurs.sync;
+
+import org.example.hometracker_kurs.model.Task;
+import org.example.hometracker_kurs.model.TaskField;
+import org.example.hometracker_kurs.model.TaskPatch;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Уплотнение журнала в двоичный снимок: восстановление после перезапуска, освобождение и проверка целостности.
+ */
+class OperationJournalTest {
+
+    private static Task task(int id) {
+        return new Task(id, "Задача " + id, "", LocalDate.of(2025, 1, id), 1, "Анна", null, null);
+    }
+
+    // Пять изменений каждой из трёх задач; после уплотнения остаётся по одной операции на задачу
+    private static void fill(OperationJournal journal) throws IOException {
+        for (int round = 1; round <= 5; round++) {
+            for (int id = 1; id <= 3; id++) {
+                journal.append(new QueuedTaskOperation(id, new TaskPatch().set(TaskField.PRIORITY, round)));
+            }
+        }
+    }
+
+    private static List<QueuedTaskOperation> readAll(OperationJournal journal) throws IOException {
+        List<QueuedTaskOperation> result = new ArrayList<>();
+        try (OperationJournal.Reader reader = journal.openReader()) {
+            QueuedTaskOperation op;
+            while ((op = reader.next()) != null) {
+                result.add(op);
+            }
+        }
+        return result;
+    }
+
+    private static List<Long> sequences(List<QueuedTaskOperation> operations) {
+        return operations.stream().map(QueuedTaskOperation::getSequence).toList();
+    }
+
+    @Test
+    void compactedQueueIsReadFromSnapshotAfterReopen(@TempDir Path dir) throws IOException {
+        Path path = dir.resolve("pending.jsonl");
+        try (OperationJournal journal = new OperationJournal(path)) {
+            fill(journal);
+            assertEquals(12, journal.rewriteTail(OperationCompactor::compact));
+            journal.append(new QueuedTaskOperation("add", task(4)));
+        }
+        assertTrue(Files.exists(dir.resolve("pending.jsonl.snap.1")));
+
+        try (OperationJournal journal = new OperationJournal(path)) {
+            List<QueuedTaskOperation> pending = readAll(journal);
+
+            assertEquals(List.of(13L, 14L, 15L, 16L), sequences(pending));
+            assertEquals(5, pending.get(0).getPatch().get(TaskField.PRIORITY));
+            assertEquals("add", pending.get(3).getOperation());
+            assertEquals(4, journal.pendingCount());
+            assertEquals(16, journal.getLastSequence());
+        }
+    }
+
+    @Test
+    void snapshotIsReleasedOnceAcknowledged(@TempDir Path dir) throws IOException {
+        Path path = dir.resolve("pending.jsonl");
+        try (OperationJournal journal = new OperationJournal(path)) {
+            fill(journal);
+            journal.rewriteTail(OperationCompactor::compact);
+            journal.append(new QueuedTaskOperation("add", task(4)));
+
+            journal.acknowledge(14);
+            assertTrue(Files.exists(dir.resolve("pending.jsonl.snap.1")), "В снимке осталась операция #15");
+            assertEquals(List.of(15L, 16L), sequences(readAll(journal)));
+
+            journal.acknowledge(15);
+            assertFalse(Files.exists(dir.resolve("pending.jsonl.snap.1")));
+            assertEquals(List.of(16L), sequences(readAll(journal)));
+        }
+
+        try (OperationJournal journal = new OperationJournal(path)) {
+            assertEquals(List.of(16L), sequences(readAll(journal)));
+        }
+    }
+
+    @Test
+    void repeatedCompactionReplacesSnapshot(@TempDir Path dir) throws IOException {
+        Path path = dir.resolve("pending.jsonl");
+        try (OperationJournal journal = new OperationJournal(path)) {
+            fill(journal);
+            journal.rewriteTail(OperationCompactor::compact);
+            journal.append(new QueuedTaskOperation(1, new TaskPatch().set(TaskField.NAME, "Новое название")));
+            journal.rewriteTail(OperationCompactor::compact);
+
+            assertFalse(Files.exists(dir.resolve("pending.jsonl.snap.1")));
+            assertTrue(Files.exists(dir.resolve("pending.jsonl.snap.2")));
+            List<QueuedTaskOperation> pending = readAll(journal);
+            assertEquals(List.of(14L, 15L, 16L), sequences(pending));
+            assertEquals("Новое название", pending.get(2).getPatch().get(TaskField.NAME));
+            assertEquals(5, pending.get(2).getPatch().get(TaskField.PRIORITY));
+        }
+    }
+
+    @Test
+    void damagedSnapshotIsReported(@TempDir Path dir) throws IOException {
+        Path path = dir.resolve("pending.jsonl");
+        try (OperationJournal journal = new OperationJournal(path)) {
+            fill(journal);
+            journal.rewriteTail(OperationCompactor::compact);
+        }
+        Path snapshot = dir.resolve("pending.jsonl.snap.1");
+        byte[] bytes = Files.readAllBytes(snapshot);
+        bytes[bytes.length - 2] ^= 0x40;
+        Files.write(snapshot, bytes);
+
+        assertThrows(IOException.class, () -> new OperationJournal(path));
+    }
+
+    @Test
+    void unreferencedSnapshotIsDeletedOnOpen(@TempDir Path dir) throws IOException {
+        Path path = dir.resolve("pending.jsonl");
+        Path orphan = dir.resolve("pending.jsonl.snap.7");
+        Files.write(orphan, new byte[]{1, 2, 3});
+
+        try (OperationJournal journal = new OperationJournal(path)) {
+            assertEquals(0, journal.pendingCount());
+        }
+        assertFalse(Files.exists(orphan));
+    }
+}
@@ -0,0 +1,151 @@
+package org.example.hometracker_kurs.telegram;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.*;
+import org.telegram.telegrambots.bots.DefaultAbsSender;
+import org.telegram.telegrambots.bots.DefaultBotOptions;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Рассылка через заглушку Bot API: первый запрос в каждый чат получает ответ 429 с retry_after,
+ * рассылка должна выждать паузу, доставить каждое сообщение ровно один раз и не превысить лимиты.
+ */
+class NotificationFanoutTest {
+
+    private static final String TOKEN = "123:TEST";
+    private static final Pattern CHAT_ID = Pattern.compile("\"chat_id\"\\s*:\\s*\"?(-?\\d+)");
+    private static final int RETRY_AFTER_SECONDS = 1;
+    private static final double GLOBAL_PER_SECOND = 5;
+    private static final double CHAT_PER_SECOND = 2;
+
+    private HttpServer server;
+    private final List<Request> requests = new ArrayList<>();
+    private final Set<Long> throttledChats = ConcurrentHashMap.newKeySet();
+
+    private record Request(long chatId, long nanos, boolean accepted) {
+    }
+
+    private static class StubSender extends DefaultAbsSender implements ChatSender {
+        StubSender(DefaultBotOptions options) {
+            super(options);
+        }
+
+        @Override
+        public String getBotToken() {
+            return TOKEN;
+        }
+
+        @Override
+        public void send(long chatId, String text) throws TelegramApiException {
+            SendMessage message = new SendMessage();
+            message.setChatId(String.valueOf(chatId));
+            message.setText(text);
+            execute(message);
+        }
+    }
+
+    @BeforeEach
+    void startStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/bot" + TOKEN + "/sendMessage", this::handle);
+        server.start();
+    }
+
+    @AfterEach
+    void stopStub() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        long now = System.nanoTime();
+        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        Matcher matcher = CHAT_ID.matcher(body);
+        long chatId = matcher.find() ? Long.parseLong(matcher.group(1)) : 0;
+
+        boolean accepted = !throttledChats.add(chatId);
+        synchronized (requests) {
+            requests.add(new Request(chatId, now, accepted));
+        }
+        String response = accepted
+                ? "{\"ok\":true,\"result\":{\"message_id\":1,\"date\":0,\"chat\":{\"id\":" + chatId
+                        + ",\"type\":\"private\"},\"text\":\"ok\"}}"
+                : "{\"ok\":false,\"error_code\":429,\"description\":\"Too Many Requests: retry after "
+                        + RETRY_AFTER_SECONDS + "\",\"parameters\":{\"retry_after\":" + RETRY_AFTER_SECONDS + "}}";
+        byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(accepted ? 200 : 429, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Test
+    void broadcastRetriesAfter429AndRespectsLimits() throws Exception {
+        DefaultBotOptions options = new DefaultBotOptions();
+        options.setBaseUrl("http://localhost:" + server.getAddress().getPort() + "/bot");
+        NotificationFanout.Limits limits = new NotificationFanout.Limits(GLOBAL_PER_SECOND, CHAT_PER_SECOND, CHAT_PER_SECOND, 1);
+
+        try (NotificationFanout fanout = new NotificationFanout(new StubSender(options), limits, 2, 5)) {
+            // Прогрев HTTP-клиента, чтобы первое соединение не исказило интервалы между запросами
+            throttledChats.add(0L);
+            assertTrue(fanout.send(0L, "warmup").get(10, TimeUnit.SECONDS).delivered());
+            synchronized (requests) {
+                requests.clear();
+            }
+
+            Map<Long, String> messages = new LinkedHashMap<>();
+            for (long chatId = 1; chatId <= 6; chatId++) {
+                messages.put(chatId, "Задачи для чата " + chatId);
+            }
+            List<NotificationFanout.Delivery> deliveries = fanout.broadcast(messages).get(30, TimeUnit.SECONDS);
+
+            assertEquals(messages.size(), deliveries.size());
+            for (NotificationFanout.Delivery delivery : deliveries) {
+                assertTrue(delivery.delivered(), "Сообщение в чат " + delivery.chatId() + " должно быть доставлено");
+                assertEquals(2, delivery.attempts(), "Одна попытка после 429 и одна успешная");
+            }
+        }
+
+        List<Request> log;
+        synchronized (requests) {
+            log = new ArrayList<>(requests);
+        }
+        for (long chatId = 1; chatId <= 6; chatId++) {
+            long id = chatId;
+            List<Request> perChat = log.stream().filter(r -> r.chatId() == id).toList();
+            assertEquals(1, perChat.stream().filter(Request::accepted).count(), "Ровно одно сообщение в чат " + id);
+            assertEquals(2, perChat.size());
+            long gap = perChat.get(1).nanos() - perChat.get(0).nanos();
+            assertTrue(gap >= TimeUnit.MILLISECONDS.toNanos(RETRY_AFTER_SECONDS * 1000L - 50),
+                    "Повтор в чат " + id + " раньше retry_after: " + TimeUnit.NANOSECONDS.toMillis(gap) + " мс");
+        }
+
+        // В любом окне длиной в секунду не больше запросов, чем допускают скорость и ёмкость общего ведра
+        long window = TimeUnit.SECONDS.toNanos(1);
+        long allowed = (long) GLOBAL_PER_SECOND + 1;
+        for (Request first : log) {
+            long inWindow = log.stream()
+                    .filter(r -> r.nanos() >= first.nanos() && r.nanos() < first.nanos() + window)
+                    .count();
+            assertTrue(inWindow <= allowed, "Превышен общий лимит: " + inWindow + " запросов за секунду");
+        }
+    }
+}
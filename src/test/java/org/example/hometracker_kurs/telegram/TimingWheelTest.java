@@ -0,0 +1,102 @@
+package org.example.hometracker_kurs.telegram;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Колесо таймеров без собственного потока: время задаётся вручную и продвигается вызовом {@code advance}.
+ */
+class TimingWheelTest {
+
+    private static final long START = 1_000_000L;
+    private static final long TICK = 1000;
+
+    private final List<String> fired = new ArrayList<>();
+    private final TimingWheel<String> wheel = new TimingWheel<>(Duration.ofMillis(TICK), () -> START, "test", false);
+
+    private void schedule(String key, long afterMillis) {
+        wheel.schedule(key, Instant.ofEpochMilli(START + afterMillis), () -> fired.add(key));
+    }
+
+    private void advanceTo(long afterMillis) {
+        wheel.advance(START + afterMillis).forEach(Runnable::run);
+    }
+
+    @Test
+    void firesOnDeadlineTickAndNotBefore() {
+        schedule("a", 5 * TICK);
+
+        advanceTo(5 * TICK - 1);
+        assertTrue(fired.isEmpty());
+        assertTrue(wheel.isScheduled("a"));
+
+        advanceTo(5 * TICK);
+        assertEquals(List.of("a"), fired);
+        assertFalse(wheel.isScheduled("a"));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void timersFireInDeadlineOrderAcrossLevels() {
+        // Такты попадают в разные уровни колеса: 64, 64^2 и 64^3 тактов
+        schedule("year", 300_000 * TICK);
+        schedule("hour", 3_600 * TICK);
+        schedule("minute", 70 * TICK);
+        schedule("second", TICK);
+
+        advanceTo(400_000 * TICK);
+
+        assertEquals(List.of("second", "minute", "hour", "year"), fired);
+    }
+
+    @Test
+    void cascadedTimerKeepsItsExactTick() {
+        schedule("a", 4_097 * TICK);
+
+        advanceTo(4_096 * TICK);
+        assertTrue(fired.isEmpty(), "Таймер спустился на нижний уровень, но его такт ещё не наступил");
+
+        advanceTo(4_097 * TICK);
+        assertEquals(List.of("a"), fired);
+    }
+
+    @Test
+    void reschedulingReplacesTimerWithSameKey() {
+        schedule("a", 10 * TICK);
+        schedule("a", 100 * TICK);
+        assertEquals(1, wheel.size());
+
+        advanceTo(50 * TICK);
+        assertTrue(fired.isEmpty());
+
+        advanceTo(100 * TICK);
+        assertEquals(List.of("a"), fired);
+    }
+
+    @Test
+    void cancelledTimerDoesNotFire() {
+        schedule("a", 10 * TICK);
+        schedule("b", 10 * TICK);
+
+        assertTrue(wheel.cancel("a"));
+        assertFalse(wheel.cancel("a"));
+        advanceTo(10 * TICK);
+
+        assertEquals(List.of("b"), fired);
+    }
+
+    @Test
+    void pastDeadlineFiresOnNextTick() {
+        advanceTo(10 * TICK);
+        schedule("late", 0);
+
+        advanceTo(11 * TICK);
+        assertEquals(List.of("late"), fired);
+    }
+}
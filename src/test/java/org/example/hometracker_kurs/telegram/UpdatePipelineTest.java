@@ -0,0 +1,137 @@
+package org.example.hometracker_kurs.telegram;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.*;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Порядок обработки внутри чата, параллельность между чатами и отбрасывание повторов обновлений.
+ */
+class UpdatePipelineTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<Long, List<Integer>> handled = new ConcurrentHashMap<>();
+    private UpdatePipeline pipeline;
+
+    private Update update(int updateId, long chatId) throws Exception {
+        return objectMapper.readValue("""
+                {"update_id": %d,
+                 "message": {"message_id": %d, "date": 1700000000,
+                             "chat": {"id": %d, "type": "private"},
+                             "text": "/tasks"}}
+                """.formatted(updateId, updateId, chatId), Update.class);
+    }
+
+    private void record(Update update) {
+        handled.computeIfAbsent(update.getMessage().getChatId(), id -> new ArrayList<>()).add(update.getUpdateId());
+    }
+
+    private void start(Consumer<Update> handler, int capacity) {
+        pipeline = new UpdatePipeline("test-" + System.nanoTime(), handler, capacity);
+    }
+
+    @AfterEach
+    void stop() {
+        if (pipeline != null) {
+            pipeline.close();
+        }
+    }
+
+    @Test
+    void updatesOfOneChatAreHandledInOrder() throws Exception {
+        start(this::record, 64);
+
+        for (int id = 1; id <= 20; id++) {
+            assertTrue(pipeline.submit(update(id, id % 2 == 0 ? 2 : 1)));
+        }
+        pipeline.close();
+
+        assertEquals(List.of(1, 3, 5, 7, 9, 11, 13, 15, 17, 19), handled.get(1L));
+        assertEquals(List.of(2, 4, 6, 8, 10, 12, 14, 16, 18, 20), handled.get(2L));
+        assertEquals(20, pipeline.getProcessed());
+    }
+
+    @Test
+    void slowChatDoesNotDelayOtherChats() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch otherHandled = new CountDownLatch(1);
+        start(update -> {
+            try {
+                if (update.getMessage().getChatId() == 1) {
+                    release.await(10, TimeUnit.SECONDS);
+                } else {
+                    otherHandled.countDown();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 64);
+
+        pipeline.submit(update(1, 1));
+        pipeline.submit(update(2, 2));
+
+        assertTrue(otherHandled.await(5, TimeUnit.SECONDS), "Второй чат ждал медленный первый");
+        release.countDown();
+    }
+
+    @Test
+    void duplicateUpdateIsDropped() throws Exception {
+        start(this::record, 64);
+
+        assertTrue(pipeline.submit(update(1, 1)));
+        assertFalse(pipeline.submit(update(1, 1)));
+        pipeline.close();
+
+        assertEquals(List.of(1), handled.get(1L));
+        assertEquals(1, pipeline.getDuplicates());
+    }
+
+    @Test
+    void updateInterruptedWhileWaitingIsAcceptedOnRedelivery() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        start(update -> {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            record(update);
+        }, 1);
+        assertTrue(pipeline.submit(update(1, 1)));
+
+        // Очередь заполнена: вторая отправка ждёт места, и ожидание прерывается
+        AtomicBoolean accepted = new AtomicBoolean(true);
+        Thread submitter = new Thread(() -> {
+            try {
+                accepted.set(pipeline.submit(update(2, 1)));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        submitter.start();
+        while (pipeline.getBlockedSubmits() == 0) {
+            Thread.sleep(5);
+        }
+        submitter.interrupt();
+        submitter.join(5000);
+        assertFalse(accepted.get());
+
+        release.countDown();
+        assertTrue(pipeline.submit(update(2, 1)), "Непринятое обновление не должно считаться повтором");
+        pipeline.close();
+
+        assertEquals(List.of(1, 2), handled.get(1L));
+        assertEquals(0, pipeline.getDuplicates());
+    }
+}
@@ -0,0 +1,155 @@
+package org.example.hometracker_kurs.telegram;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Приём обновлений webhook без сети: образцы обновлений отправляются POST-запросами на localhost.
+ */
+class WebhookServerTest {
+
+    private static final String SECRET = "test_secret-123";
+    private static final String SAMPLE_UPDATE = """
+            {"update_id": 1001,
+             "message": {"message_id": 7, "date": 1700000000,
+                         "chat": {"id": 42, "type": "private", "first_name": "Мама"},
+                         "from": {"id": 42, "is_bot": false, "first_name": "Мама"},
+                         "text": "/tasks"}}
+            """;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final CopyOnWriteArrayList<BotApiMethod<?>> lateReplies = new CopyOnWriteArrayList<>();
+    private WebhookServer server;
+
+    private record Response(int status, String body) {
+    }
+
+    private void start(Function<Update, CompletableFuture<? extends BotApiMethod<?>>> handler) throws IOException {
+        server = new WebhookServer(new InetSocketAddress("localhost", 0), WebhookSettings.PATH, SECRET,
+                handler, lateReplies::add, Duration.ofMillis(500));
+    }
+
+    @AfterEach
+    void stop() {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    private Response post(String secret, String body) throws IOException {
+        URL url = URI.create("http://localhost:" + server.getPort() + WebhookSettings.PATH).toURL();
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/json");
+        if (secret != null) {
+            connection.setRequestProperty(WebhookServer.SECRET_HEADER, secret);
+        }
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        int status = connection.getResponseCode();
+        InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        String response = in == null ? "" : new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        connection.disconnect();
+        return new Response(status, response);
+    }
+
+    private static SendMessage reply(Update update, String text) {
+        SendMessage message = new SendMessage();
+        message.setChatId(String.valueOf(update.getMessage().getChatId()));
+        message.setText(text);
+        return message;
+    }
+
+    @Test
+    void replyIsReturnedInWebhookResponse() throws Exception {
+        start(update -> CompletableFuture.completedFuture(reply(update, "ответ на " + update.getMessage().getText())));
+
+        Response response = post(SECRET, SAMPLE_UPDATE);
+
+        assertEquals(200, response.status());
+        JsonNode json = objectMapper.readTree(response.body());
+        assertEquals("sendmessage", json.path("method").asText().toLowerCase());
+        assertEquals("42", json.path("chat_id").asText());
+        assertEquals("ответ на /tasks", json.path("text").asText());
+    }
+
+    @Test
+    void botCommandIsAnsweredInWebhookResponse(@TempDir Path dir) throws Exception {
+        SubscriberRegistry subscribers = new SubscriberRegistry(dir.resolve("subscribers.json"));
+        TelegramReminderBot bot = new TelegramReminderBot("123:TEST", null, subscribers);
+        start(bot::respondTo);
+
+        Response response = post(SECRET, SAMPLE_UPDATE.replace("\"/tasks\"", "\"/me Анна_Б\""));
+
+        assertEquals(200, response.status());
+        JsonNode json = objectMapper.readTree(response.body());
+        assertEquals("sendmessage", json.path("method").asText().toLowerCase());
+        assertEquals("42", json.path("chat_id").asText());
+        // Имя экранировано, иначе символ подчёркивания открыл бы выделение Markdown
+        assertTrue(json.path("text").asText().contains("Анна\\_Б"), json.path("text").asText());
+        assertEquals("Анна_Б", subscribers.get(42).orElseThrow().assignee());
+
+        // Повторная доставка того же обновления подтверждается без второго ответа
+        assertEquals("", post(SECRET, SAMPLE_UPDATE.replace("\"/tasks\"", "\"/me Анна_Б\"")).body());
+    }
+
+    @Test
+    void requestsWithoutValidSecretAreRejected() throws Exception {
+        CopyOnWriteArrayList<Update> handled = new CopyOnWriteArrayList<>();
+        start(update -> {
+            handled.add(update);
+            return CompletableFuture.completedFuture(null);
+        });
+
+        assertEquals(401, post(null, SAMPLE_UPDATE).status());
+        assertEquals(401, post("wrong", SAMPLE_UPDATE).status());
+        assertEquals(400, post(SECRET, "{not json").status());
+        assertTrue(handled.isEmpty(), "Обработчик не должен вызываться для отклонённых запросов");
+    }
+
+    @Test
+    void slowReplyIsAcknowledgedAndSentSeparately() throws Exception {
+        CompletableFuture<SendMessage> pending = new CompletableFuture<>();
+        start(update -> pending);
+
+        Response response = post(SECRET, SAMPLE_UPDATE);
+        assertEquals(200, response.status());
+        assertEquals("", response.body());
+
+        SendMessage late = new SendMessage();
+        late.setChatId("42");
+        late.setText("готово");
+        pending.complete(late);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (lateReplies.isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, lateReplies.size());
+        assertSame(late, lateReplies.get(0));
+    }
+}